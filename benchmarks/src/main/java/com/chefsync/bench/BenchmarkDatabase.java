@@ -0,0 +1,143 @@
+package com.chefsync.bench;
+
+import com.chefsync.Checkpoints;
+import com.chefsync.DBInit;
+import com.chefsync.DataGenerator;
+import com.chefsync.RecipeNeighbours;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Seeded benchmark databases, one file per recipe count.
+ *
+ * Files are generated once by {@link DataGenerator} with a fixed seed and reused by
+ * later runs, since generating a million recipes takes far longer than a benchmark
+ * iteration. Override the location with -Dchefsync.bench.dir.
+ */
+public class BenchmarkDatabase {
+
+    private static final String SEED_CHECKPOINT = "bench.seed";
+    private static final long SEED = 42L;
+
+    /**
+     * What the benchmarks need to know about a seeded database.
+     */
+    public static class Fixture {
+        public final String path;
+        public final int recipeCount;
+        public final int userId;
+        public final int planId;
+        // A user with high ratings, so has recommendations
+        public final int raterId;
+        public final String popularTag;
+        // The most used generated tags, most used first
+        public final List<String> popularTags;
+
+        Fixture(String path, int recipeCount, int userId, int planId, int raterId, List<String> popularTags) {
+            this.path = path;
+            this.recipeCount = recipeCount;
+            this.userId = userId;
+            this.planId = planId;
+            this.raterId = raterId;
+            this.popularTag = popularTags.isEmpty() ? "Vegetarian" : popularTags.get(0);
+            this.popularTags = Collections.unmodifiableList(popularTags);
+        }
+    }
+
+    /**
+     * Return the database for the given recipe count, generating it first if needed.
+     */
+    public static Fixture prepare(int recipeCount) throws SQLException {
+        File dir = new File(System.getProperty("chefsync.bench.dir", "target/bench-db"));
+        dir.mkdirs();
+        String path = new File(dir, "recipes-" + recipeCount + ".db").getPath();
+
+        if (!isComplete(path)) {
+            for (String suffix : new String[] {"", "-wal", "-shm"}) {
+                new File(path + suffix).delete();
+            }
+            DBInit.initializeDatabase(path);
+            generate(path, recipeCount);
+        } else {
+            // Brings a database seeded by an older build up to the current schema
+            DBInit.initializeDatabase(path);
+        }
+
+        try (Connection conn = DBInit.connect(path);
+             Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM RecipeNeighbours LIMIT 1")) {
+                if (!rs.next()) {
+                    // Databases seeded before recommendations existed have no neighbours yet
+                    RecipeNeighbours.build(conn, RecipeNeighbours.DEFAULT_NEIGHBOURS);
+                }
+            }
+            int userId;
+            int planId;
+            int raterId;
+            // Every generated user has a pantry, so the owner of the last plan serves both screens
+            try (ResultSet rs = stmt.executeQuery("SELECT PlanID, UserID FROM MealPlans ORDER BY PlanID DESC LIMIT 1")) {
+                if (!rs.next()) {
+                    throw new SQLException("Benchmark database " + path + " has no meal plans");
+                }
+                userId = rs.getInt("UserID");
+                planId = rs.getInt("PlanID");
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT UserID FROM RecipeFeedback WHERE Rating >= 4 ORDER BY FeedbackID DESC LIMIT 1")) {
+                raterId = rs.next() ? rs.getInt("UserID") : userId;
+            }
+            // Tag use is Zipf-distributed, so the lowest generated TagIDs are the most used ones
+            List<String> popularTags = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery("SELECT Name FROM Tags WHERE Description = 'Generated tag' ORDER BY TagID LIMIT 4")) {
+                while (rs.next()) {
+                    popularTags.add(rs.getString("Name"));
+                }
+            }
+            return new Fixture(path, recipeCount, userId, planId, raterId, popularTags);
+        }
+    }
+
+    private static boolean isComplete(String path) {
+        if (!new File(path).exists()) {
+            return false;
+        }
+        try (Connection conn = DBInit.connect(path)) {
+            return Checkpoints.read(conn, SEED_CHECKPOINT).completed;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void generate(String path, int recipeCount) throws SQLException {
+        int users = Math.max(100, recipeCount / 10);
+        DataGenerator.Config config = new DataGenerator.Config()
+                .seed(SEED)
+                .recipes(recipeCount)
+                .users(users)
+                .ingredients(Math.min(5000, Math.max(500, recipeCount / 2)))
+                .tags(60)
+                .pantryItems(users * 25)
+                .mealPlans(Math.max(10, users / 10))
+                .feedback(recipeCount * 3);
+
+        try (Connection conn = DBInit.connect(path)) {
+            new DataGenerator(config).generate(conn);
+
+            conn.setAutoCommit(false);
+            Checkpoints.write(conn, SEED_CHECKPOINT, recipeCount, true);
+            conn.commit();
+            conn.setAutoCommit(true);
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA optimize");
+                stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.chefsync.bench;
+
+import com.chefsync.ConnectionManager;
+import com.chefsync.NutritionRollup;
+import com.chefsync.RecipeDetail;
+import com.chefsync.RecipeDetailCache;
+import com.chefsync.RecipeManager;
+import com.chefsync.RecipeSearchIndex;
+import com.chefsync.ShoppingList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RecipeManager query paths behind the interactive screens, run against seeded
+ * databases. Throughput and SampleTime (latency percentiles) modes; run through
+ * BenchmarkRunner to also get the allocation rate from the GC profiler.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class RecipeQueryBenchmark {
+
+    private static final int HOT_RECIPES = 100;
+    // A week of three meals
+    private static final int BATCH_SIZE = 21;
+
+    @Param({"1000", "100000", "1000000"})
+    public int recipes;
+
+    private ConnectionManager db;
+    private RecipeManager manager;
+    // Holds nothing, so every lookup through it goes to the database
+    private RecipeDetailCache uncached;
+    private BenchmarkDatabase.Fixture fixture;
+    private PrintStream sink;
+    private Map<String, Object> keywordCriteria;
+    private Map<String, Object> filterCriteria;
+    private List<String> tags;
+    private Map<String, Object> dietaryCriteria;
+    private List<String> dietaryTags;
+    private Map<String, Object> topRatedCriteria;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        fixture = BenchmarkDatabase.prepare(recipes);
+        db = new ConnectionManager(new ConnectionManager.Config().databasePath(fixture.path));
+        manager = new RecipeManager(db);
+        uncached = new RecipeDetailCache(0);
+        sink = new PrintStream(OutputStream.nullOutputStream());
+
+        keywordCriteria = new HashMap<>();
+        keywordCriteria.put("Keywords", RecipeSearchIndex.toMatchQuery("spicy chick"));
+
+        filterCriteria = new HashMap<>();
+        filterCriteria.put("Cuisine", "Italian");
+        filterCriteria.put("DifficultyLevel", "Easy");
+        filterCriteria.put("MaxCookTime", 30);
+        tags = Collections.singletonList(fixture.popularTag);
+
+        // Two common tags together, without a third
+        dietaryCriteria = new HashMap<>();
+        dietaryCriteria.put("MatchAllTags", true);
+        dietaryCriteria.put("ExcludedTags", fixture.popularTags.subList(2, Math.min(3, fixture.popularTags.size())));
+        dietaryTags = fixture.popularTags.subList(0, Math.min(2, fixture.popularTags.size()));
+
+        topRatedCriteria = new HashMap<>();
+        topRatedCriteria.put("Cuisine", "Italian");
+        topRatedCriteria.put("MinRating", 4.0);
+        topRatedCriteria.put("SortBy", "rating");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    /**
+     * Per-thread source of recipe IDs, so detail lookups do not all hit one cached page.
+     */
+    @State(Scope.Thread)
+    public static class RecipeIds {
+        private final SplittableRandom random = new SplittableRandom(7);
+
+        private final int[] hot = new int[HOT_RECIPES];
+
+        int next(int recipeCount) {
+            return 1 + random.nextInt(recipeCount);
+        }
+
+        int nextHot(int recipeCount) {
+            int slot = random.nextInt(HOT_RECIPES);
+            if (hot[slot] == 0) {
+                // The lowest IDs carry the most generated feedback, so sample the hot set from the whole range
+                hot[slot] = next(recipeCount);
+            }
+            return hot[slot];
+        }
+
+        int[] nextBatch(int recipeCount) {
+            int[] batch = new int[BATCH_SIZE];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = next(recipeCount);
+            }
+            return batch;
+        }
+    }
+
+    @Benchmark
+    public List<Object[]> pantryBasedRecommendations() throws SQLException {
+        return manager.findPantryRecommendations(fixture.userId, 10);
+    }
+
+    @Benchmark
+    public List<Object[]> advancedRecipeSearchKeywords() throws SQLException {
+        return manager.searchRecipes(keywordCriteria, Collections.emptyList());
+    }
+
+    @Benchmark
+    public List<Object[]> advancedRecipeSearchFilters() throws SQLException {
+        return manager.searchRecipes(filterCriteria, tags);
+    }
+
+    @Benchmark
+    public List<Object[]> advancedRecipeSearchDietary() throws SQLException {
+        return manager.searchRecipes(dietaryCriteria, dietaryTags);
+    }
+
+    @Benchmark
+    public List<Object[]> advancedRecipeSearchTopRated() throws SQLException {
+        return manager.searchRecipes(topRatedCriteria, Collections.emptyList());
+    }
+
+    /**
+     * One more view, then the cuisine's trending list; the view is an in-memory update.
+     */
+    @Benchmark
+    public List<Object[]> trendingRecipes(RecipeIds ids) throws SQLException {
+        manager.getTrendingTracker().recordView(ids.next(fixture.recipeCount), "Italian");
+        return manager.getTrendingRecipes("Italian", 10);
+    }
+
+    @Benchmark
+    public List<Object[]> recommendedForYou() throws SQLException {
+        return manager.getRecommendations(fixture.raterId, 10);
+    }
+
+    @Benchmark
+    public List<Object[]> similarRecipes(RecipeIds ids) throws SQLException {
+        return manager.getSimilarRecipes(ids.next(fixture.recipeCount), 5);
+    }
+
+    /**
+     * The whole details screen: the detail (a cache hit once warm, unless the catalog
+     * outgrows the cache), similar recipes and the trending view count.
+     */
+    @Benchmark
+    public boolean viewRecipeDetails(RecipeIds ids) throws SQLException {
+        return manager.printRecipeDetails(ids.next(fixture.recipeCount), sink);
+    }
+
+    /**
+     * Details for a small working set of recipes, so after warmup every lookup is a
+     * RecipeDetailCache hit.
+     */
+    @Benchmark
+    public boolean viewRecipeDetailsCached(RecipeIds ids) throws SQLException {
+        return manager.printRecipeDetails(ids.nextHot(fixture.recipeCount), sink);
+    }
+
+    /**
+     * One recipe's details read from the database and printed on every call, through a
+     * cache that holds nothing, without the similar-recipes and trending work.
+     */
+    @Benchmark
+    public boolean viewRecipeDetailsUncached(RecipeIds ids) throws SQLException {
+        RecipeDetail detail = uncached.get(ids.next(fixture.recipeCount), id -> {
+            try (ConnectionManager.Lease lease = db.reader()) {
+                return RecipeDetail.load(lease, id);
+            }
+        });
+        if (detail == null) {
+            return false;
+        }
+        detail.print(sink);
+        return true;
+    }
+
+    /**
+     * Details for a batch of random recipes, mostly cache misses read in one query.
+     */
+    @Benchmark
+    public Map<Integer, RecipeDetail> recipeDetailsBatch(RecipeIds ids) throws SQLException {
+        return manager.getRecipeDetails(ids.nextBatch(fixture.recipeCount));
+    }
+
+    @Benchmark
+    public boolean viewMealPlanDetails() throws SQLException {
+        return manager.printMealPlanDetails(fixture.userId, fixture.planId, sink);
+    }
+
+    @Benchmark
+    public NutritionRollup.Totals mealPlanNutrition() throws SQLException {
+        return manager.getMealPlanNutrition(fixture.userId, fixture.planId);
+    }
+
+    @Benchmark
+    public ShoppingList shoppingList() throws SQLException {
+        return manager.generateShoppingList(fixture.userId, new int[] {fixture.planId}, 6);
+    }
+}
@@ -0,0 +1,78 @@
+package com.chefsync.bench;
+
+import com.chefsync.TableFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TableFormatter over result sets shaped like the search screen's: formatTable into a
+ * String, and the streaming renderer writing to a discarding Writer.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TableFormatterBenchmark {
+
+    private static final String[] HEADERS = {"ID", "Title", "Cuisine", "Difficulty", "Cook Time", "Servings"};
+    private static final int[] MAX_WIDTHS = {5, 20, 10, 10, 11, 8};
+    private static final String[] CUISINES = {"Italian", "Mexican", "Indian", "Chinese", "Japanese", "French"};
+    private static final String[] DIFFICULTIES = {"Easy", "Medium", "Hard"};
+    private static final int SAMPLE_ROWS = 100;
+    private static final Writer SINK = Writer.nullWriter();
+
+    @Param({"10", "1000", "100000"})
+    public int rows;
+
+    private List<Object[]> data;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        data = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            data.add(new Object[] {
+                i + 1,
+                "Recipe with a fairly long title " + i,
+                CUISINES[random.nextInt(CUISINES.length)],
+                DIFFICULTIES[random.nextInt(DIFFICULTIES.length)],
+                (5 + random.nextInt(120)) + " minutes",
+                1 + random.nextInt(8)
+            });
+        }
+    }
+
+    @Benchmark
+    public String formatTable() {
+        return TableFormatter.formatTable(HEADERS, data, MAX_WIDTHS);
+    }
+
+    @Benchmark
+    public void streamTable() throws IOException {
+        try (TableFormatter table = new TableFormatter(SINK, HEADERS, MAX_WIDTHS, SAMPLE_ROWS)) {
+            for (Object[] row : data) {
+                table.addRow(row);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Named progress markers for long-running batch jobs, stored in the Checkpoints table.
+ * A job writes its checkpoint in the same transaction as the batch it describes.
+ */
+public class Checkpoints {
+
+    public static class Position {
+        public final long value;
+        public final boolean completed;
+
+        Position(long value, boolean completed) {
+            this.value = value;
+            this.completed = completed;
+        }
+    }
+
+    public static Position read(Connection conn, String name) throws SQLException {
+        String sql = "SELECT Position, Completed FROM Checkpoints WHERE Name = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new Position(rs.getLong("Position"), rs.getInt("Completed") == 1);
+                }
+            }
+        }
+        return new Position(0, false);
+    }
+
+    public static void write(Connection conn, String name, long position, boolean completed) throws SQLException {
+        String sql = "INSERT INTO Checkpoints (Name, Position, Completed, UpdatedAt) VALUES (?, ?, ?, CURRENT_TIMESTAMP) " +
+                     "ON CONFLICT(Name) DO UPDATE SET Position = excluded.Position, " +
+                     "Completed = excluded.Completed, UpdatedAt = excluded.UpdatedAt";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, name);
+            pstmt.setLong(2, position);
+            pstmt.setInt(3, completed ? 1 : 0);
+            pstmt.executeUpdate();
+        }
+    }
+
+    public static void clear(Connection conn, String name) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM Checkpoints WHERE Name = ?")) {
+            pstmt.setString(1, name);
+            pstmt.executeUpdate();
+        }
+    }
+}
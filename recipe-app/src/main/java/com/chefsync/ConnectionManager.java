@@ -0,0 +1,354 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Owns the SQLite connections used by the application.
+ *
+ * The database runs in WAL mode with a single writer connection (guarded by a lock,
+ * since SQLite only allows one writer at a time) and a bounded pool of read-only
+ * reader connections, so reads never queue behind an open write transaction.
+ * Each connection keeps its prepared statements (see {@link StatementCache}), which
+ * callers borrow through {@link Lease#prepare}.
+ */
+public class ConnectionManager implements AutoCloseable {
+
+    /**
+     * Pool sizing and per-connection PRAGMA settings.
+     * Defaults can be overridden with -Dchefsync.* system properties.
+     */
+    public static class Config {
+        String databasePath = System.getProperty("chefsync.db", DBInit.DB_PATH);
+        int readerPoolSize = Integer.getInteger("chefsync.readers", 4);
+        long acquireTimeoutMillis = Long.getLong("chefsync.acquireTimeoutMillis", 30000L);
+        int busyTimeoutMillis = Integer.getInteger("chefsync.busyTimeoutMillis", 5000);
+        String synchronous = System.getProperty("chefsync.synchronous", "NORMAL");
+        boolean foreignKeys = Boolean.parseBoolean(System.getProperty("chefsync.foreignKeys", "true"));
+        int statementCacheSize = StatementCache.DEFAULT_SIZE;
+
+        public Config databasePath(String path) {
+            this.databasePath = path;
+            return this;
+        }
+
+        public Config readerPoolSize(int size) {
+            if (size < 1) {
+                throw new IllegalArgumentException("Reader pool size must be at least 1");
+            }
+            this.readerPoolSize = size;
+            return this;
+        }
+
+        public Config acquireTimeoutMillis(long millis) {
+            this.acquireTimeoutMillis = millis;
+            return this;
+        }
+
+        public Config busyTimeoutMillis(int millis) {
+            this.busyTimeoutMillis = millis;
+            return this;
+        }
+
+        public Config synchronous(String level) {
+            this.synchronous = level;
+            return this;
+        }
+
+        public Config foreignKeys(boolean enabled) {
+            this.foreignKeys = enabled;
+            return this;
+        }
+
+        /**
+         * Prepared statements kept per connection; 0 prepares every statement afresh.
+         */
+        public Config statementCacheSize(int size) {
+            if (size < 0) {
+                throw new IllegalArgumentException("Statement cache size must not be negative");
+            }
+            this.statementCacheSize = size;
+            return this;
+        }
+    }
+
+    /**
+     * A borrowed connection. Closing the lease hands the connection back;
+     * for the writer any work that was not committed is rolled back first.
+     */
+    public class Lease implements AutoCloseable {
+        private final Connection conn;
+        private final boolean writer;
+        private boolean released;
+
+        private Lease(Connection conn, boolean writer) {
+            this.conn = conn;
+            this.writer = writer;
+        }
+
+        public Connection connection() {
+            return conn;
+        }
+
+        /**
+         * A prepared statement for {@code sql}, reused from earlier leases of this
+         * connection when possible. Close it as usual; it stays valid until then or
+         * until the lease is closed.
+         *
+         * @param name Label for the statement in {@link #getStatementTimings()}
+         */
+        public PreparedStatement prepare(String name, String sql) throws SQLException {
+            return prepare(name, sql, Statement.NO_GENERATED_KEYS);
+        }
+
+        /**
+         * @param autoGeneratedKeys As for {@link Connection#prepareStatement(String, int)}
+         */
+        public PreparedStatement prepare(String name, String sql, int autoGeneratedKeys) throws SQLException {
+            if (released) {
+                throw new SQLException("Lease has been closed");
+            }
+            return statements.get(conn).prepare(name, sql, autoGeneratedKeys);
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            statements.get(conn).release();
+            if (writer) {
+                try {
+                    conn.rollback();
+                } catch (SQLException e) {
+                    System.err.println("Error rolling back writer connection: " + e.getMessage());
+                }
+                writerLock.unlock();
+            } else {
+                readers.offer(conn);
+            }
+        }
+    }
+
+    /**
+     * Wait-time counters for one kind of connection.
+     */
+    public static class PoolStats {
+        private final AtomicLong acquisitions = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+
+        void record(long waitNanos) {
+            acquisitions.incrementAndGet();
+            totalWaitNanos.addAndGet(waitNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        }
+
+        public long getAcquisitions() {
+            return acquisitions.get();
+        }
+
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+
+        public double getAverageWaitMillis() {
+            long count = acquisitions.get();
+            return count == 0 ? 0.0 : totalWaitNanos.get() / (count * 1_000_000.0);
+        }
+
+        public double getMaxWaitMillis() {
+            return maxWaitNanos.get() / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("acquired=%d, timeouts=%d, avgWait=%.3fms, maxWait=%.3fms",
+                    getAcquisitions(), getTimeouts(), getAverageWaitMillis(), getMaxWaitMillis());
+        }
+    }
+
+    private final Config config;
+    private final Connection writerConn;
+    private final ReentrantLock writerLock = new ReentrantLock(true);
+    private final BlockingQueue<Connection> readers;
+    private final List<Connection> allReaders = new ArrayList<>();
+    private final PoolStats writerStats = new PoolStats();
+    private final PoolStats readerStats = new PoolStats();
+    private final Map<Connection, StatementCache> statements = new IdentityHashMap<>();
+    private final ConcurrentMap<String, StatementCache.Timing> statementTimings = new ConcurrentHashMap<>();
+
+    public ConnectionManager() throws SQLException {
+        this(new Config());
+    }
+
+    public ConnectionManager(Config config) throws SQLException {
+        this.config = config;
+        this.readers = new ArrayBlockingQueue<>(config.readerPoolSize);
+
+        try {
+            // The writer is opened first so that it can switch the database into WAL mode
+            writerConn = DBInit.connect(config.databasePath);
+            configure(writerConn, false);
+            writerConn.setAutoCommit(false);
+            statements.put(writerConn, new StatementCache(writerConn, config.statementCacheSize, statementTimings));
+
+            for (int i = 0; i < config.readerPoolSize; i++) {
+                Connection reader = DBInit.connect(config.databasePath);
+                configure(reader, true);
+                statements.put(reader, new StatementCache(reader, config.statementCacheSize, statementTimings));
+                allReaders.add(reader);
+                readers.add(reader);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void configure(Connection conn, boolean readOnly) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + config.busyTimeoutMillis);
+            if (!readOnly) {
+                stmt.execute("PRAGMA journal_mode = WAL");
+            }
+            stmt.execute("PRAGMA synchronous = " + config.synchronous);
+            stmt.execute("PRAGMA foreign_keys = " + (config.foreignKeys ? "ON" : "OFF"));
+            if (readOnly) {
+                stmt.execute("PRAGMA query_only = ON");
+            }
+        }
+    }
+
+    /**
+     * Borrow the writer connection. Only one caller can hold it at a time; a thread that
+     * already holds it may not borrow it again, since closing the inner lease would roll
+     * back the outer transaction.
+     */
+    public Lease writer() throws SQLException {
+        if (writerLock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("This thread already holds the writer connection");
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = writerLock.tryLock(config.acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the writer connection", e);
+        }
+        if (!acquired) {
+            writerStats.timeouts.incrementAndGet();
+            throw new SQLException("Timed out waiting for the writer connection");
+        }
+        writerStats.record(System.nanoTime() - start);
+        return new Lease(writerConn, true);
+    }
+
+    /**
+     * Borrow a read-only connection from the pool, waiting if all are in use.
+     */
+    public Lease reader() throws SQLException {
+        long start = System.nanoTime();
+        Connection conn;
+        try {
+            conn = readers.poll(config.acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a reader connection", e);
+        }
+        if (conn == null) {
+            readerStats.timeouts.incrementAndGet();
+            throw new SQLException("Timed out waiting for a reader connection");
+        }
+        readerStats.record(System.nanoTime() - start);
+        return new Lease(conn, false);
+    }
+
+    /**
+     * Re-analyze tables that have no statistics or have grown or shrunk a lot since they
+     * were last analyzed. Every table is checked, not only those the connection has
+     * queried: the writer rarely reads, and statistics taken while the database was
+     * nearly empty make the planner scan whole tables once it is not. Sampling is
+     * limited, so this is cheap when run often. Runs in the caller's transaction.
+     */
+    static void optimize(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA analysis_limit = 1000");
+            stmt.execute("PRAGMA optimize = 0x10002");
+        }
+    }
+
+    public PoolStats getWriterStats() {
+        return writerStats;
+    }
+
+    public PoolStats getReaderStats() {
+        return readerStats;
+    }
+
+    /**
+     * Execution counts and times per statement name, sorted by name.
+     */
+    public Map<String, StatementCache.Timing> getStatementTimings() {
+        return new TreeMap<>(statementTimings);
+    }
+
+    public String getDatabasePath() {
+        return config.databasePath;
+    }
+
+    public int getReaderPoolSize() {
+        return config.readerPoolSize;
+    }
+
+    @Override
+    public void close() {
+        for (StatementCache cache : statements.values()) {
+            cache.close();
+        }
+
+        for (Connection reader : allReaders) {
+            try {
+                reader.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing reader connection: " + e.getMessage());
+            }
+        }
+        allReaders.clear();
+        readers.clear();
+
+        if (writerConn != null) {
+            try {
+                writerConn.rollback();
+                // Refresh planner statistics where they are missing or stale, as SQLite recommends on close
+                optimize(writerConn);
+                writerConn.commit();
+            } catch (SQLException e) {
+                System.err.println("Error optimizing database: " + e.getMessage());
+            }
+            try {
+                writerConn.rollback();
+                writerConn.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing writer connection: " + e.getMessage());
+            }
+        }
+    }
+}
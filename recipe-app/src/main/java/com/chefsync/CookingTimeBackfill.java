@@ -0,0 +1,99 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Fills Recipes.PrepMinutes, CookMinutes and TotalMinutes from the free-text
+ * PrepTime and CookingTime columns.
+ *
+ * Rows are processed in RecipeID order in small batches, each committed on its own
+ * together with a checkpoint, so the writer is never held for long and an
+ * interrupted run resumes where it stopped.
+ */
+public class CookingTimeBackfill {
+
+    static final String CHECKPOINT = "backfill.cooking_minutes";
+    private static final int DEFAULT_BATCH_SIZE = 2000;
+
+    /**
+     * Run (or resume) the backfill. Does nothing once it has completed.
+     *
+     * @return Number of rows updated
+     */
+    public static int run(Connection conn) throws SQLException {
+        return run(conn, DEFAULT_BATCH_SIZE);
+    }
+
+    public static int run(Connection conn, int batchSize) throws SQLException {
+        Checkpoints.Position position = Checkpoints.read(conn, CHECKPOINT);
+        if (position.completed) {
+            return 0;
+        }
+
+        String selectSql = "SELECT RecipeID, PrepTime, CookingTime FROM Recipes " +
+                           "WHERE RecipeID > ? ORDER BY RecipeID LIMIT ?";
+        String updateSql = "UPDATE Recipes SET PrepMinutes = ?, CookMinutes = ?, TotalMinutes = ? WHERE RecipeID = ?";
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        int updated = 0;
+        long lastId = position.value;
+        long start = System.nanoTime();
+        try (PreparedStatement select = conn.prepareStatement(selectSql);
+             PreparedStatement update = conn.prepareStatement(updateSql)) {
+            while (true) {
+                select.setLong(1, lastId);
+                select.setInt(2, batchSize);
+
+                int rows = 0;
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                        lastId = rs.getLong("RecipeID");
+                        Integer prep = DurationParser.parseMinutes(rs.getString("PrepTime"));
+                        Integer cook = DurationParser.parseMinutes(rs.getString("CookingTime"));
+                        setNullableInt(update, 1, prep);
+                        setNullableInt(update, 2, cook);
+                        setNullableInt(update, 3, DurationParser.totalMinutes(prep, cook));
+                        update.setLong(4, lastId);
+                        update.addBatch();
+                    }
+                }
+
+                if (rows == 0) {
+                    break;
+                }
+                update.executeBatch();
+                Checkpoints.write(conn, CHECKPOINT, lastId, false);
+                conn.commit();
+                updated += rows;
+            }
+
+            Checkpoints.write(conn, CHECKPOINT, lastId, true);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        if (updated > 0) {
+            System.out.printf("Backfilled cooking times for %d recipes in %.1f s.%n",
+                    updated, (System.nanoTime() - start) / 1e9);
+        }
+        return updated;
+    }
+
+    static void setNullableInt(PreparedStatement pstmt, int index, Integer value) throws SQLException {
+        if (value == null) {
+            pstmt.setNull(index, Types.INTEGER);
+        } else {
+            pstmt.setInt(index, value);
+        }
+    }
+}
@@ -1,24 +1,23 @@
 package com.chefsync;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
 
 public class DBInit {
 
-    private static final String DB_PATH = "recipe_manager.db"; // Relative to recipe-app directory
-    private static final String SCHEMA_PATH = "schema.sql"; // Relative to recipe-app directory
+    static final String DB_PATH = "recipe_manager.db"; // Relative to recipe-app directory
+    static final String SCHEMA_PATH = "schema.sql"; // Relative to recipe-app directory
 
     public static String hashPassword(String password) {
         try {
@@ -41,9 +40,13 @@ public class DBInit {
     }
 
     public static Connection connect() throws SQLException {
+        return connect(DB_PATH);
+    }
+
+    public static Connection connect(String dbPath) throws SQLException {
         // SQLite connection string
-        // The database file will be created in the recipe-app directory
-        String url = "jdbc:sqlite:" + DB_PATH;
+        // The default database file is created in the recipe-app directory
+        String url = "jdbc:sqlite:" + dbPath;
         
         // Connect to the database
         Connection conn = DriverManager.getConnection(url);
@@ -56,103 +59,40 @@ public class DBInit {
         return conn;
     }
 
+    /**
+     * Create the database if it does not exist, or upgrade it in place to the
+     * latest schema version. Existing data is never dropped.
+     */
     public static void initializeDatabase() {
-        // Remove existing database if it exists
-        try {
-            Files.deleteIfExists(Paths.get(DB_PATH));
-        } catch (IOException e) {
-            System.err.println("Error deleting existing database: " + e.getMessage());
-            return; // Stop initialization if we can't delete the old DB
-        }
-
-        try (Connection conn = connect()) {
-             // Ensure WAL mode is not enabled to prevent readonly issues
-             try (Statement stmt = conn.createStatement()) {
-                 stmt.execute("PRAGMA journal_mode = DELETE");
-             }
-             
-             try (Statement stmt = conn.createStatement();
-                  BufferedReader reader = new BufferedReader(new FileReader(SCHEMA_PATH))) {
-
-                // Read and execute schema from SQL file
-                StringBuilder schemaScript = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    schemaScript.append(line).append(System.lineSeparator());
-                }
-
-                String[] individualStatements = schemaScript.toString().split(";");
+        initializeDatabase(DB_PATH);
+    }
 
-                for (String statement : individualStatements) {
-                    if (!statement.trim().isEmpty()) {
-                        stmt.executeUpdate(statement.trim() + ";"); // Add back semicolon for execution
-                    }
-                }
-                System.out.println("Database schema created successfully.");
-
-                // Insert sample users with hashed passwords
-                String sqlUsers = "INSERT INTO Users (Username, Email, Password, Bio) VALUES (?, ?, ?, ?)";
-                try (PreparedStatement pstmtUsers = conn.prepareStatement(sqlUsers)) {
-                    String[][] sampleUsers = {
-                        {"demo_user", "demo@example.com", hashPassword("password123"), "Demo User Bio"},
-                        {"chef_master", "chef@example.com", hashPassword("cookmaster"), "Professional Chef"}
-                    };
-                    for (String[] user : sampleUsers) {
-                        pstmtUsers.setString(1, user[0]);
-                        pstmtUsers.setString(2, user[1]);
-                        pstmtUsers.setString(3, user[2]);
-                        pstmtUsers.setString(4, user[3]);
-                        pstmtUsers.executeUpdate();
-                    }
-                    System.out.println("Sample users inserted successfully.");
-                }
+    public static void initializeDatabase(String dbPath) {
+        try (Connection conn = connect(dbPath)) {
+            // WAL mode lets the reader pool in ConnectionManager run alongside the writer
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA journal_mode = WAL");
+            }
 
-                // Insert sample ingredients
-                String sqlIngredients = "INSERT INTO Ingredients (Name, Category, Unit, NutritionalInfo) VALUES (?, ?, ?, ?)";
-                try (PreparedStatement pstmtIngredients = conn.prepareStatement(sqlIngredients)) {
-                    String[][] sampleIngredients = {
-                        {"Chicken Breast", "Protein", "grams", "High protein, low fat"},
-                        {"Brown Rice", "Carbohydrate", "grams", "Whole grain, nutritious"},
-                        {"Olive Oil", "Oil", "ml", "Heart-healthy fat"},
-                        {"Tomato", "Vegetable", "pieces", "Rich in vitamins"},
-                        {"Garlic", "Herb", "cloves", "Flavor enhancer"}
-                    };
-                    for (String[] ingredient : sampleIngredients) {
-                        pstmtIngredients.setString(1, ingredient[0]);
-                        pstmtIngredients.setString(2, ingredient[1]);
-                        pstmtIngredients.setString(3, ingredient[2]);
-                        pstmtIngredients.setString(4, ingredient[3]);
-                        pstmtIngredients.executeUpdate();
-                    }
-                    System.out.println("Sample ingredients inserted successfully.");
-                }
+            int startVersion = SchemaMigrator.currentVersion(conn);
+            int applied = SchemaMigrator.migrate(conn);
+            if (applied > 0) {
+                System.out.println("Database schema at version " + SchemaMigrator.latestVersion() + ".");
+            }
 
-                // Insert sample tags
-                String sqlTags = "INSERT INTO Tags (Name, Description) VALUES (?, ?)";
-                try (PreparedStatement pstmtTags = conn.prepareStatement(sqlTags)) {
-                    String[][] sampleTags = {
-                        {"Healthy", "Nutritious recipes"},
-                        {"Quick Meal", "Recipes under 30 minutes"},
-                        {"Vegetarian", "No meat recipes"},
-                        {"Gluten-Free", "Suitable for gluten-sensitive diets"}
-                    };
-                    for (String[] tag : sampleTags) {
-                        pstmtTags.setString(1, tag[0]);
-                        pstmtTags.setString(2, tag[1]);
-                        pstmtTags.executeUpdate();
-                    }
-                    System.out.println("Sample tags inserted successfully.");
-                }
+            if (startVersion == 0) {
+                insertSampleData(conn);
             }
-            
-            // Make sure the database is properly closed and committed
-            try {
-                conn.commit();
-            } catch (SQLException e) {
-                System.err.println("Error committing changes: " + e.getMessage());
+
+            // Put back what a killed --generate run dropped
+            if (DataGenerator.restorePending(conn)) {
+                System.out.println("Restored indexes and triggers left out by an unfinished data generation run.");
             }
-            
-            System.out.println("Database " + DB_PATH + " initialized successfully!");
+
+            // Resumable, batched; a no-op once it has completed
+            CookingTimeBackfill.run(conn);
+
+            System.out.println("Database " + dbPath + " initialized successfully!");
 
         } catch (SQLException e) {
             System.err.println("Database initialization error: " + e.getMessage());
@@ -163,7 +103,7 @@ public class DBInit {
         
         // Set read and write permissions for the database file
         try {
-            File dbFile = new File(DB_PATH);
+            File dbFile = new File(dbPath);
             if (dbFile.exists()) {
                 dbFile.setReadable(true, false);
                 dbFile.setWritable(true, false);
@@ -174,6 +114,72 @@ public class DBInit {
         }
     }
 
+    private static void insertSampleData(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            // Insert sample users with hashed passwords
+            String sqlUsers = "INSERT OR IGNORE INTO Users (Username, Email, Password, Bio) VALUES (?, ?, ?, ?)";
+            try (PreparedStatement pstmtUsers = conn.prepareStatement(sqlUsers)) {
+                String[][] sampleUsers = {
+                    {"demo_user", "demo@example.com", hashPassword("password123"), "Demo User Bio"},
+                    {"chef_master", "chef@example.com", hashPassword("cookmaster"), "Professional Chef"}
+                };
+                for (String[] user : sampleUsers) {
+                    pstmtUsers.setString(1, user[0]);
+                    pstmtUsers.setString(2, user[1]);
+                    pstmtUsers.setString(3, user[2]);
+                    pstmtUsers.setString(4, user[3]);
+                    pstmtUsers.executeUpdate();
+                }
+                System.out.println("Sample users inserted successfully.");
+            }
+
+            // Insert sample ingredients (schema.sql already seeds some of these names)
+            String sqlIngredients = "INSERT OR IGNORE INTO Ingredients (Name, Category, Unit, NutritionalInfo) VALUES (?, ?, ?, ?)";
+            try (PreparedStatement pstmtIngredients = conn.prepareStatement(sqlIngredients)) {
+                String[][] sampleIngredients = {
+                    {"Chicken Breast", "Protein", "grams", "High protein, low fat"},
+                    {"Brown Rice", "Carbohydrate", "grams", "Whole grain, nutritious"},
+                    {"Olive Oil", "Oil", "ml", "Heart-healthy fat"},
+                    {"Tomato", "Vegetable", "pieces", "Rich in vitamins"},
+                    {"Garlic", "Herb", "cloves", "Flavor enhancer"}
+                };
+                for (String[] ingredient : sampleIngredients) {
+                    pstmtIngredients.setString(1, ingredient[0]);
+                    pstmtIngredients.setString(2, ingredient[1]);
+                    pstmtIngredients.setString(3, ingredient[2]);
+                    pstmtIngredients.setString(4, ingredient[3]);
+                    pstmtIngredients.executeUpdate();
+                }
+                System.out.println("Sample ingredients inserted successfully.");
+            }
+
+            // Insert sample tags
+            String sqlTags = "INSERT OR IGNORE INTO Tags (Name, Description) VALUES (?, ?)";
+            try (PreparedStatement pstmtTags = conn.prepareStatement(sqlTags)) {
+                String[][] sampleTags = {
+                    {"Healthy", "Nutritious recipes"},
+                    {"Quick Meal", "Recipes under 30 minutes"},
+                    {"Vegetarian", "No meat recipes"},
+                    {"Gluten-Free", "Suitable for gluten-sensitive diets"}
+                };
+                for (String[] tag : sampleTags) {
+                    pstmtTags.setString(1, tag[0]);
+                    pstmtTags.setString(2, tag[1]);
+                    pstmtTags.executeUpdate();
+                }
+                System.out.println("Sample tags inserted successfully.");
+            }
+
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
     public static void main(String[] args) {
         // To run this, you need the SQLite JDBC driver in your classpath.
         // Example: java -cp .:sqlite-jdbc-3.43.0.0.jar com.chefsync.DBInit
@@ -181,7 +187,152 @@ public class DBInit {
         // and place it in a 'lib' directory, then adjust classpath.
         // For now, this main method allows direct execution.
         // We'll also need to create a lib directory and download the SQLite JDBC driver.
+        Map<String, String> options = parseOptions(args);
+        String dbPath = options.getOrDefault("db", DB_PATH);
+
         System.out.println("Initializing database...");
-        initializeDatabase();
+        initializeDatabase(dbPath);
+
+        if (options.containsKey("generate")) {
+            // e.g. --generate --seed 7 --users 100000 --recipes 1000000 --feedback 5000000
+            try (Connection conn = connect(dbPath)) {
+                new DataGenerator(generatorConfig(options)).generate(conn);
+            } catch (SQLException | NumberFormatException e) {
+                System.err.println("Error generating data: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (options.containsKey("import")) {
+            // e.g. --import recipes.csv --user demo_user [--format csv|jsonl] [--chunk-size 5000] [--restart]
+            importRecipes(dbPath, options);
+        }
+
+        if (options.containsKey("export")) {
+            // e.g. --export recipes.jsonl [--format csv|jsonl] [--page-size 2000]
+            exportRecipes(dbPath, options);
+        }
+
+        if (options.containsKey("build-neighbours")) {
+            // e.g. --build-neighbours [--neighbours 20]
+            try (Connection conn = connect(dbPath)) {
+                int neighbours = Integer.parseInt(options.getOrDefault("neighbours",
+                        String.valueOf(RecipeNeighbours.DEFAULT_NEIGHBOURS)));
+                long start = System.nanoTime();
+                System.out.println("Building recipe neighbours...");
+                int rows = RecipeNeighbours.build(conn, neighbours);
+                System.out.printf("Built %,d recipe neighbours in %.1f s.%n", rows, (System.nanoTime() - start) / 1e9);
+            } catch (SQLException | IllegalArgumentException e) {
+                System.err.println("Error building recipe neighbours: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (options.containsKey("check-plans")) {
+            try (Connection conn = connect(dbPath)) {
+                if (!QueryPlanVerifier.verify(conn)) {
+                    System.err.println("Some queries are not served by an index.");
+                    System.exit(1);
+                }
+            } catch (SQLException e) {
+                System.err.println("Error checking query plans: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void importRecipes(String dbPath, Map<String, String> options) {
+        String path = options.get("import");
+        String username = options.get("user");
+        if (path.isEmpty() || username == null) {
+            System.err.println("Usage: --import <file.csv|file.jsonl> --user <username>");
+            System.exit(1);
+        }
+
+        try (ConnectionManager db = new ConnectionManager(new ConnectionManager.Config().databasePath(dbPath))) {
+            Integer userId = null;
+            try (ConnectionManager.Lease lease = db.reader();
+                 PreparedStatement pstmt = lease.connection().prepareStatement("SELECT UserID FROM Users WHERE Username = ?")) {
+                pstmt.setString(1, username);
+                ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) {
+                    userId = rs.getInt("UserID");
+                }
+            }
+            if (userId == null) {
+                System.err.println("Unknown user: " + username);
+                System.exit(1);
+            }
+
+            if (options.containsKey("restart")) {
+                try (ConnectionManager.Lease lease = db.writer()) {
+                    Checkpoints.clear(lease.connection(), RecipeImporter.checkpointName(path));
+                    lease.connection().commit();
+                }
+            }
+
+            RecipeImporter.Format format = options.containsKey("format")
+                    ? RecipeImporter.Format.valueOf(options.get("format").toUpperCase())
+                    : RecipeImporter.Format.forFile(path);
+            int chunkSize = Integer.parseInt(options.getOrDefault("chunk-size", "5000"));
+            new RecipeImporter(db, chunkSize).importFile(path, format, userId);
+        } catch (SQLException | IOException | IllegalArgumentException e) {
+            System.err.println("Error importing recipes: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void exportRecipes(String dbPath, Map<String, String> options) {
+        String path = options.get("export");
+        if (path.isEmpty()) {
+            System.err.println("Usage: --export <file.csv|file.jsonl>");
+            System.exit(1);
+        }
+
+        try (ConnectionManager db = new ConnectionManager(new ConnectionManager.Config().databasePath(dbPath))) {
+            RecipeExporter.Format format = options.containsKey("format")
+                    ? RecipeExporter.Format.valueOf(options.get("format").toUpperCase())
+                    : RecipeExporter.Format.forFile(path);
+            int pageSize = Integer.parseInt(options.getOrDefault("page-size", "2000"));
+            new RecipeExporter(db, pageSize).exportFile(path, format);
+        } catch (SQLException | IOException | IllegalArgumentException e) {
+            System.err.println("Error exporting recipes: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parse "--name value" pairs and bare "--flag" switches.
+     */
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                System.err.println("Ignoring unexpected argument: " + args[i]);
+                continue;
+            }
+            String name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(name, args[++i]);
+            } else {
+                options.put(name, "");
+            }
+        }
+        return options;
+    }
+
+    private static DataGenerator.Config generatorConfig(Map<String, String> options) {
+        DataGenerator.Config config = new DataGenerator.Config();
+        if (options.containsKey("seed")) config.seed(Long.parseLong(options.get("seed")));
+        if (options.containsKey("users")) config.users(Integer.parseInt(options.get("users")));
+        if (options.containsKey("recipes")) config.recipes(Integer.parseInt(options.get("recipes")));
+        if (options.containsKey("ingredients")) config.ingredients(Integer.parseInt(options.get("ingredients")));
+        if (options.containsKey("ingredients-per-recipe")) config.ingredientsPerRecipe(Integer.parseInt(options.get("ingredients-per-recipe")));
+        if (options.containsKey("tags")) config.tags(Integer.parseInt(options.get("tags")));
+        if (options.containsKey("pantry-items")) config.pantryItems(Integer.parseInt(options.get("pantry-items")));
+        if (options.containsKey("meal-plans")) config.mealPlans(Integer.parseInt(options.get("meal-plans")));
+        if (options.containsKey("feedback")) config.feedback(Integer.parseInt(options.get("feedback")));
+        if (options.containsKey("skew")) config.skew(Double.parseDouble(options.get("skew")));
+        return config;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,675 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic data for load testing, run with: DBInit --generate [options]
+ *
+ * The same seed and counts always produce the same rows. Popularity is skewed the way
+ * real data is: ingredient use, tag use, recipe authorship and feedback per recipe all
+ * follow Zipf distributions, so a few staples and hit recipes dominate and the rest
+ * form a long tail.
+ *
+ * Rows are written with batched prepared statements in large transactions, with the
+ * full-text, nutrition and rating insert triggers and the non-unique indexes dropped and
+ * rebuilt in one pass at the end. What has to be put back is recorded in BulkLoadRestore
+ * in the same transaction that drops them, so a run that is killed part way is repaired
+ * by {@link #restorePending} the next time DBInit opens the database.
+ */
+public class DataGenerator {
+
+    /**
+     * Target row counts and tuning. Generated rows are added to whatever the database
+     * already holds.
+     */
+    public static class Config {
+        long seed = 42L;
+        int users = 10000;
+        int recipes = 100000;
+        int ingredients = 5000;
+        int ingredientsPerRecipe = 9;
+        int tags = 60;
+        int pantryItems = 200000;
+        int mealPlans = 5000;
+        int feedback = 300000;
+        double skew = 1.0;
+        int batchSize = 10000;
+        int rowsPerTransaction = 500000;
+
+        public Config seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Config users(int users) {
+            this.users = users;
+            return this;
+        }
+
+        public Config recipes(int recipes) {
+            this.recipes = recipes;
+            return this;
+        }
+
+        /** Size of the ingredient vocabulary that recipes and pantries draw from. */
+        public Config ingredients(int ingredients) {
+            this.ingredients = ingredients;
+            return this;
+        }
+
+        /** Average; each recipe gets between half and one and a half times this. */
+        public Config ingredientsPerRecipe(int count) {
+            this.ingredientsPerRecipe = count;
+            return this;
+        }
+
+        public Config tags(int tags) {
+            this.tags = tags;
+            return this;
+        }
+
+        public Config pantryItems(int pantryItems) {
+            this.pantryItems = pantryItems;
+            return this;
+        }
+
+        public Config mealPlans(int mealPlans) {
+            this.mealPlans = mealPlans;
+            return this;
+        }
+
+        public Config feedback(int feedback) {
+            this.feedback = feedback;
+            return this;
+        }
+
+        /** Zipf exponent; 0 is uniform, larger values concentrate on the head. */
+        public Config skew(double skew) {
+            this.skew = skew;
+            return this;
+        }
+
+        public Config batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public Config rowsPerTransaction(int rows) {
+            this.rowsPerTransaction = rows;
+            return this;
+        }
+    }
+
+    /**
+     * Samples ranks 0..n-1 with probability proportional to 1 / (rank + 1)^s.
+     */
+    static class ZipfSampler {
+        private final double[] cdf;
+
+        ZipfSampler(int n, double s) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1.0 / Math.pow(i + 1, s);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= sum;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            int index = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(index >= 0 ? index : -index - 1, cdf.length - 1);
+        }
+    }
+
+    private static final String[] CUISINES = {
+        "Italian", "Mexican", "Indian", "Chinese", "Japanese", "French", "Thai", "Greek",
+        "American", "Spanish", "Korean", "Vietnamese", "Lebanese", "Moroccan", "Ethiopian"
+    };
+    private static final String[] DIFFICULTIES = {"Easy", "Medium", "Hard"};
+    private static final String[] MEAL_TYPES = {"Breakfast", "Lunch", "Dinner"};
+    private static final String[] CATEGORIES = {
+        "Vegetable", "Fruit", "Protein", "Dairy", "Grain", "Spice", "Herb", "Oil", "Condiment", "Baking"
+    };
+    private static final String[] UNITS = {"grams", "ml", "pieces", "tbsp", "tsp", "cups"};
+    private static final String[] ADJECTIVES = {
+        "Smoked", "Fresh", "Dried", "Roasted", "Wild", "Sweet", "Spicy", "Pickled", "Toasted", "Ground",
+        "Crispy", "Creamy", "Golden", "Charred", "Zesty", "Herbed", "Braised", "Glazed", "Tangy", "Rustic"
+    };
+    private static final String[] NOUNS = {
+        "Tomato", "Garlic", "Basil", "Chicken", "Lentil", "Paprika", "Ginger", "Lemon", "Mushroom", "Salmon",
+        "Chickpea", "Spinach", "Pepper", "Onion", "Rice", "Noodle", "Tofu", "Cumin", "Honey", "Almond",
+        "Carrot", "Potato", "Beef", "Pork", "Shrimp", "Coconut", "Apple", "Oat", "Cheese", "Yogurt"
+    };
+    private static final String[] DISHES = {
+        "Soup", "Salad", "Curry", "Stew", "Pasta", "Stir-Fry", "Tacos", "Bowl", "Pie", "Risotto",
+        "Skewers", "Casserole", "Wraps", "Bake", "Fritters", "Dumplings", "Traybake", "Flatbread"
+    };
+    private static final String[] STEPS = {
+        "Chop the vegetables finely.", "Heat the oil in a large pan.", "Season generously.",
+        "Simmer gently until thickened.", "Stir in the herbs.", "Bake until golden.",
+        "Whisk everything together.", "Rest for five minutes before serving.", "Toast the spices.",
+        "Bring to a boil, then reduce the heat.", "Fold in the remaining ingredients.", "Garnish and serve."
+    };
+    private static final String[] COMMENTS = {
+        "Loved it!", "Great weeknight dinner.", "Needed more salt.", "Family favourite now.",
+        "Took longer than stated.", "Would make again.", "A bit bland for me.", "Perfect as written."
+    };
+    private static final LocalDate BASE_DATE = LocalDate.of(2024, 1, 1);
+    private static final String[] DATES = new String[800];
+
+    static {
+        for (int i = 0; i < DATES.length; i++) {
+            DATES[i] = BASE_DATE.plusDays(i).toString();
+        }
+    }
+
+    private final Config config;
+    private final SplittableRandom random;
+    private long rowsWritten;
+    private long pendingRows;
+    private long rowsSinceCommit;
+
+    public DataGenerator(Config config) {
+        this.config = config;
+        this.random = new SplittableRandom(config.seed);
+    }
+
+    /**
+     * Generate all rows into the given database.
+     *
+     * @return Number of rows inserted
+     */
+    public long generate(Connection conn) throws SQLException {
+        long start = System.nanoTime();
+        boolean autoCommit = conn.getAutoCommit();
+        try (Statement stmt = conn.createStatement()) {
+            // Durability does not matter for throwaway data; a crash just means regenerating
+            stmt.execute("PRAGMA synchronous = OFF");
+            stmt.execute("PRAGMA cache_size = -262144");
+            stmt.execute("PRAGMA temp_store = MEMORY");
+        }
+        // An earlier run that died has to be put right before its rows count as existing data
+        restorePending(conn);
+        conn.setAutoCommit(false);
+        int firstRecipeId = nextId(conn, "Recipes", "RecipeID");
+        int firstPlanId = nextId(conn, "MealPlans", "PlanID");
+        int firstFeedbackId = nextId(conn, "RecipeFeedback", "FeedbackID");
+        try {
+            suspend(conn, firstRecipeId, firstPlanId, firstFeedbackId);
+
+            int firstUserId = insertUsers(conn);
+            int firstIngredientId = insertIngredients(conn);
+            int firstTagId = insertTags(conn);
+            insertRecipes(conn, firstRecipeId, firstUserId, firstIngredientId, firstTagId);
+            insertPantry(conn, firstUserId, firstIngredientId);
+            insertMealPlans(conn, firstUserId, firstRecipeId);
+            insertFeedback(conn, firstUserId, firstRecipeId);
+
+            conn.commit();
+            long indexStart = System.nanoTime();
+            restorePending(conn);
+            System.out.printf("  indexes, search index, nutrition and rating totals rebuilt in %.1f s%n",
+                    (System.nanoTime() - indexStart) / 1e9);
+        } catch (SQLException e) {
+            conn.rollback();
+            // Earlier transactions may have committed without the indexes and triggers;
+            // put them back and index whatever did get written
+            restorePending(conn);
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Generated %,d rows in %.1f s (%,.0f rows/s).%n", rowsWritten, seconds, rowsWritten / seconds);
+        return rowsWritten;
+    }
+
+    private int insertUsers(Connection conn) throws SQLException {
+        int firstId = nextId(conn, "Users", "UserID");
+        long start = System.nanoTime();
+        long rowsBefore = rowsWritten;
+        // One hash for everyone: generated users all log in with "password123"
+        String password = DBInit.hashPassword("password123");
+        String sql = "INSERT INTO Users (UserID, Username, Email, Password, Bio, CreatedAt) VALUES (?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < config.users; i++) {
+                int id = firstId + i;
+                pstmt.setInt(1, id);
+                pstmt.setString(2, "user_" + id);
+                pstmt.setString(3, "user_" + id + "@example.com");
+                pstmt.setString(4, password);
+                pstmt.setString(5, random.nextInt(4) == 0 ? "Home cook #" + id : null);
+                pstmt.setString(6, date(random.nextInt(365)));
+                add(pstmt);
+                flushIfFull(conn, pstmt);
+            }
+            flush(conn, pstmt);
+        }
+        report("users", rowsWritten - rowsBefore, start);
+        return firstId;
+    }
+
+    private int insertIngredients(Connection conn) throws SQLException {
+        int firstId = nextId(conn, "Ingredients", "IngredientID");
+        long start = System.nanoTime();
+        long rowsBefore = rowsWritten;
+        String sql = "INSERT INTO Ingredients (IngredientID, Name, Category, Unit) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < config.ingredients; i++) {
+                int id = firstId + i;
+                pstmt.setInt(1, id);
+                pstmt.setString(2, ADJECTIVES[i % ADJECTIVES.length] + " " + NOUNS[(i / ADJECTIVES.length) % NOUNS.length] + " " + id);
+                pstmt.setString(3, CATEGORIES[random.nextInt(CATEGORIES.length)]);
+                pstmt.setString(4, UNITS[random.nextInt(UNITS.length)]);
+                add(pstmt);
+                flushIfFull(conn, pstmt);
+            }
+            flush(conn, pstmt);
+        }
+        report("ingredients", rowsWritten - rowsBefore, start);
+        return firstId;
+    }
+
+    private int insertTags(Connection conn) throws SQLException {
+        int firstId = nextId(conn, "Tags", "TagID");
+        String sql = "INSERT INTO Tags (TagID, Name, Description) VALUES (?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < config.tags; i++) {
+                int id = firstId + i;
+                pstmt.setInt(1, id);
+                pstmt.setString(2, ADJECTIVES[i % ADJECTIVES.length] + " " + DISHES[i % DISHES.length] + " " + id);
+                pstmt.setString(3, "Generated tag");
+                add(pstmt);
+                flushIfFull(conn, pstmt);
+            }
+            flush(conn, pstmt);
+        }
+        return firstId;
+    }
+
+    private void insertRecipes(Connection conn, int firstId, int firstUserId, int firstIngredientId, int firstTagId) throws SQLException {
+        long start = System.nanoTime();
+        long rowsBefore = rowsWritten;
+
+        ZipfSampler authors = new ZipfSampler(config.users, config.skew);
+        ZipfSampler ingredients = new ZipfSampler(config.ingredients, config.skew);
+        ZipfSampler tags = config.tags > 0 ? new ZipfSampler(config.tags, config.skew) : null;
+        int[] chosen = new int[Math.max(1, config.ingredientsPerRecipe * 3 / 2)];
+
+        String recipeSql = "INSERT INTO Recipes (RecipeID, UserID, Title, Instructions, PrepTime, CookingTime, Servings, " +
+                           "Calories, Protein, Carbs, Fats, Cuisine, DifficultyLevel, IsPublic, " +
+                           "PrepMinutes, CookMinutes, TotalMinutes) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String ingredientSql = "INSERT INTO RecipeIngredients (RecipeID, IngredientID, Quantity, Unit) VALUES (?, ?, ?, ?)";
+        String tagSql = "INSERT INTO RecipeTags (RecipeID, TagID) VALUES (?, ?)";
+
+        try (PreparedStatement recipeStmt = conn.prepareStatement(recipeSql);
+             PreparedStatement ingredientStmt = conn.prepareStatement(ingredientSql);
+             PreparedStatement tagStmt = conn.prepareStatement(tagSql)) {
+            for (int i = 0; i < config.recipes; i++) {
+                int recipeId = firstId + i;
+                int prep = 5 * (1 + random.nextInt(12));
+                int cook = 5 * (1 + random.nextInt(36));
+
+                recipeStmt.setInt(1, recipeId);
+                recipeStmt.setInt(2, firstUserId + authors.sample(random));
+                recipeStmt.setString(3, ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " " +
+                                        NOUNS[random.nextInt(NOUNS.length)] + " " + DISHES[random.nextInt(DISHES.length)]);
+                recipeStmt.setString(4, instructions());
+                recipeStmt.setString(5, prep + " minutes");
+                recipeStmt.setString(6, cook + " minutes");
+                recipeStmt.setInt(7, 1 + random.nextInt(8));
+                recipeStmt.setDouble(8, 150 + random.nextInt(850));
+                recipeStmt.setDouble(9, random.nextInt(60));
+                recipeStmt.setDouble(10, random.nextInt(120));
+                recipeStmt.setDouble(11, random.nextInt(50));
+                recipeStmt.setString(12, CUISINES[random.nextInt(CUISINES.length)]);
+                recipeStmt.setString(13, DIFFICULTIES[random.nextInt(DIFFICULTIES.length)]);
+                recipeStmt.setInt(14, random.nextInt(10) == 0 ? 0 : 1);
+                recipeStmt.setInt(15, prep);
+                recipeStmt.setInt(16, cook);
+                recipeStmt.setInt(17, prep + cook);
+                add(recipeStmt);
+
+                int count = distinctSample(ingredients, chosen, config.ingredientsPerRecipe / 2 + random.nextInt(config.ingredientsPerRecipe + 1));
+                for (int j = 0; j < count; j++) {
+                    ingredientStmt.setInt(1, recipeId);
+                    ingredientStmt.setInt(2, firstIngredientId + chosen[j]);
+                    ingredientStmt.setDouble(3, 1 + random.nextInt(500));
+                    ingredientStmt.setString(4, UNITS[random.nextInt(UNITS.length)]);
+                    add(ingredientStmt);
+                }
+
+                if (tags != null) {
+                    count = distinctSample(tags, chosen, Math.min(random.nextInt(4), config.tags));
+                    for (int j = 0; j < count; j++) {
+                        tagStmt.setInt(1, recipeId);
+                        tagStmt.setInt(2, firstTagId + chosen[j]);
+                        add(tagStmt);
+                    }
+                }
+
+                flushIfFull(conn, recipeStmt, ingredientStmt, tagStmt);
+            }
+            flush(conn, recipeStmt, ingredientStmt, tagStmt);
+        }
+        report("recipes (with ingredients and tags)", rowsWritten - rowsBefore, start);
+    }
+
+    private void insertPantry(Connection conn, int firstUserId, int firstIngredientId) throws SQLException {
+        long start = System.nanoTime();
+        long rowsBefore = rowsWritten;
+        ZipfSampler ingredients = new ZipfSampler(config.ingredients, config.skew);
+        // Each user keeps the same number of items; the long tail is in which ingredients they hold
+        int perUser = config.users == 0 ? 0 : Math.min(config.ingredients, config.pantryItems / config.users);
+        int[] chosen = new int[Math.max(1, perUser)];
+
+        String sql = "INSERT INTO Pantry (UserID, IngredientID, Quantity, Unit, PurchaseDate, ExpiryDate) VALUES (?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int u = 0; u < config.users && perUser > 0; u++) {
+                int count = distinctSample(ingredients, chosen, perUser);
+                for (int j = 0; j < count; j++) {
+                    int purchased = random.nextInt(365);
+                    pstmt.setInt(1, firstUserId + u);
+                    pstmt.setInt(2, firstIngredientId + chosen[j]);
+                    pstmt.setDouble(3, 1 + random.nextInt(1000));
+                    pstmt.setString(4, UNITS[random.nextInt(UNITS.length)]);
+                    pstmt.setString(5, date(purchased));
+                    pstmt.setString(6, date(purchased + 3 + random.nextInt(60)));
+                    add(pstmt);
+                    flushIfFull(conn, pstmt);
+                }
+            }
+            flush(conn, pstmt);
+        }
+        report("pantry items", rowsWritten - rowsBefore, start);
+    }
+
+    private void insertMealPlans(Connection conn, int firstUserId, int firstRecipeId) throws SQLException {
+        int firstId = nextId(conn, "MealPlans", "PlanID");
+        long start = System.nanoTime();
+        long rowsBefore = rowsWritten;
+        ZipfSampler recipes = new ZipfSampler(config.recipes, config.skew);
+
+        String planSql = "INSERT INTO MealPlans (PlanID, UserID, Name, StartDate, EndDate) VALUES (?, ?, ?, ?, ?)";
+        String entrySql = "INSERT OR IGNORE INTO MealPlanRecipes (PlanID, RecipeID, MealDate, MealType) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement planStmt = conn.prepareStatement(planSql);
+             PreparedStatement entryStmt = conn.prepareStatement(entrySql)) {
+            for (int i = 0; i < config.mealPlans && config.recipes > 0; i++) {
+                int planId = firstId + i;
+                int startDay = random.nextInt(365);
+                int days = 7;
+                planStmt.setInt(1, planId);
+                planStmt.setInt(2, firstUserId + random.nextInt(config.users));
+                planStmt.setString(3, "Week " + (startDay / 7 + 1) + " plan");
+                planStmt.setString(4, date(startDay));
+                planStmt.setString(5, date(startDay + days - 1));
+                add(planStmt);
+
+                for (int d = 0; d < days; d++) {
+                    for (String mealType : MEAL_TYPES) {
+                        entryStmt.setInt(1, planId);
+                        entryStmt.setInt(2, firstRecipeId + recipes.sample(random));
+                        entryStmt.setString(3, date(startDay + d));
+                        entryStmt.setString(4, mealType);
+                        add(entryStmt);
+                    }
+                }
+
+                flushIfFull(conn, planStmt, entryStmt);
+            }
+            flush(conn, planStmt, entryStmt);
+        }
+        report("meal plans (with entries)", rowsWritten - rowsBefore, start);
+    }
+
+    private void insertFeedback(Connection conn, int firstUserId, int firstRecipeId) throws SQLException {
+        long start = System.nanoTime();
+        long rowsBefore = rowsWritten;
+        if (config.recipes == 0 || config.users == 0) {
+            return;
+        }
+        // Most recipes get no reviews, a handful get thousands. Counts are drawn up front so the
+        // rows can be written in RecipeID order, which keeps the RecipeID-leading indexes append-only
+        ZipfSampler popularity = new ZipfSampler(config.recipes, config.skew);
+        int[] reviews = new int[config.recipes];
+        for (int i = 0; i < config.feedback; i++) {
+            reviews[popularity.sample(random)]++;
+        }
+
+        String sql = "INSERT OR IGNORE INTO RecipeFeedback (RecipeID, UserID, Rating, Comment, ActualCookingTime, " +
+                     "DifficultyRating, CreatedAt) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int r = 0; r < config.recipes; r++) {
+                // A user reviews a recipe at most once; repeats are skipped by the unique index
+                for (int k = 0; k < reviews[r]; k++) {
+                    pstmt.setInt(1, firstRecipeId + r);
+                    pstmt.setInt(2, firstUserId + random.nextInt(config.users));
+                    // Ratings lean positive, as they do on real recipe sites
+                    pstmt.setInt(3, Math.min(5, 2 + random.nextInt(3) + random.nextInt(2)));
+                    pstmt.setString(4, random.nextInt(3) == 0 ? null : COMMENTS[random.nextInt(COMMENTS.length)]);
+                    pstmt.setString(5, random.nextInt(2) == 0 ? null : String.valueOf(10 + random.nextInt(120)));
+                    pstmt.setString(6, String.valueOf(1 + random.nextInt(5)));
+                    pstmt.setString(7, date(random.nextInt(730)) + " 12:00:00");
+                    add(pstmt);
+                }
+                flushIfFull(conn, pstmt);
+            }
+            flush(conn, pstmt);
+        }
+        report("feedback rows", rowsWritten - rowsBefore, start);
+    }
+
+    /**
+     * Draw up to {@code count} distinct ranks into {@code out}; returns how many were drawn.
+     */
+    private int distinctSample(ZipfSampler sampler, int[] out, int count) {
+        count = Math.min(count, out.length);
+        int drawn = 0;
+        int attempts = 0;
+        while (drawn < count && attempts < count * 8) {
+            attempts++;
+            int candidate = sampler.sample(random);
+            boolean duplicate = false;
+            for (int k = 0; k < drawn; k++) {
+                if (out[k] == candidate) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                out[drawn++] = candidate;
+            }
+        }
+        return drawn;
+    }
+
+    private String instructions() {
+        StringBuilder sb = new StringBuilder();
+        int steps = 3 + random.nextInt(6);
+        for (int i = 0; i < steps; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(i + 1).append(". ").append(STEPS[random.nextInt(STEPS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static String date(int daysAfterBase) {
+        return daysAfterBase < DATES.length ? DATES[daysAfterBase] : BASE_DATE.plusDays(daysAfterBase).toString();
+    }
+
+    private void add(PreparedStatement pstmt) throws SQLException {
+        pstmt.addBatch();
+        pendingRows++;
+    }
+
+    /**
+     * Send the queued batches once enough rows are pending, and commit once the
+     * transaction has grown large enough. Statements are executed in the order given,
+     * so parents must come before the rows that reference them.
+     */
+    private void flushIfFull(Connection conn, PreparedStatement... statements) throws SQLException {
+        if (pendingRows >= config.batchSize) {
+            flush(conn, statements);
+        }
+    }
+
+    private void flush(Connection conn, PreparedStatement... statements) throws SQLException {
+        for (PreparedStatement pstmt : statements) {
+            // INSERT OR IGNORE reports 0 for skipped duplicates, so this counts real rows
+            for (int count : pstmt.executeBatch()) {
+                rowsWritten += Math.max(count, 0);
+            }
+        }
+        rowsSinceCommit += pendingRows;
+        pendingRows = 0;
+        if (rowsSinceCommit >= config.rowsPerTransaction) {
+            conn.commit();
+            rowsSinceCommit = 0;
+        }
+    }
+
+    /**
+     * Drop the non-unique indexes on the tables being loaded; building them once at the
+     * end is far cheaper than maintaining them row by row. Unique indexes stay, since
+     * the INSERT OR IGNORE statements rely on them.
+     *
+     * @return The CREATE INDEX statements needed to restore them
+     */
+    /**
+     * Drop the insert triggers and non-unique indexes, recording how to put them back, and
+     * commit both together.
+     */
+    static void suspend(Connection conn, int firstRecipeId, int firstPlanId, int firstFeedbackId)
+            throws SQLException {
+        String record = "INSERT INTO BulkLoadRestore (Name, Definition, FromID) VALUES (?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(record)) {
+            for (String definition : dropSecondaryIndexes(conn)) {
+                pstmt.setString(1, "index");
+                pstmt.setString(2, definition);
+                pstmt.setNull(3, java.sql.Types.INTEGER);
+                pstmt.addBatch();
+            }
+            Object[][] resumes = {
+                {"RecipeSearch", firstRecipeId}, {"NutritionRollup", firstPlanId}, {"RatingAggregates", firstFeedbackId}
+            };
+            for (Object[] resume : resumes) {
+                pstmt.setString(1, (String) resume[0]);
+                pstmt.setNull(2, java.sql.Types.VARCHAR);
+                pstmt.setInt(3, (Integer) resume[1]);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        RecipeSearchIndex.suspendForBulkLoad(conn);
+        NutritionRollup.suspendForBulkLoad(conn);
+        RatingAggregates.suspendForBulkLoad(conn);
+        conn.commit();
+    }
+
+    /**
+     * Put back the triggers and indexes an unfinished bulk load dropped, and index the rows
+     * it wrote. Does nothing if there is none.
+     *
+     * @return Whether anything was restored
+     */
+    public static boolean restorePending(Connection conn) throws SQLException {
+        List<String> indexes = new ArrayList<>();
+        int[] fromIds = {-1, -1, -1};
+        List<String> resumes = Arrays.asList("RecipeSearch", "NutritionRollup", "RatingAggregates");
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT Name, Definition, FromID FROM BulkLoadRestore")) {
+            while (rs.next()) {
+                String name = rs.getString(1);
+                if (name.equals("index")) {
+                    indexes.add(rs.getString(2));
+                } else if (resumes.contains(name)) {
+                    fromIds[resumes.indexOf(name)] = rs.getInt(3);
+                }
+            }
+        }
+        if (indexes.isEmpty() && fromIds[0] < 0 && fromIds[1] < 0 && fromIds[2] < 0) {
+            return false;
+        }
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            createIndexes(conn, indexes);
+            if (fromIds[0] >= 0) {
+                RecipeSearchIndex.resumeAfterBulkLoad(conn, fromIds[0]);
+            }
+            if (fromIds[1] >= 0) {
+                NutritionRollup.resumeAfterBulkLoad(conn, fromIds[1]);
+            }
+            if (fromIds[2] >= 0) {
+                RatingAggregates.resumeAfterBulkLoad(conn, fromIds[2]);
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DELETE FROM BulkLoadRestore");
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return true;
+    }
+
+    private static List<String> dropSecondaryIndexes(Connection conn) throws SQLException {
+        List<String> names = new ArrayList<>();
+        List<String> definitions = new ArrayList<>();
+        String sql = "SELECT name, sql FROM sqlite_master WHERE type = 'index' AND sql IS NOT NULL " +
+                     "AND sql NOT LIKE 'CREATE UNIQUE%' AND tbl_name IN " +
+                     "('Users', 'Recipes', 'RecipeIngredients', 'RecipeTags', 'Pantry', 'MealPlans', " +
+                     "'MealPlanRecipes', 'RecipeFeedback')";
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                names.add(rs.getString("name"));
+                definitions.add(rs.getString("sql"));
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            for (String name : names) {
+                stmt.executeUpdate("DROP INDEX IF EXISTS " + name);
+            }
+        }
+        return definitions;
+    }
+
+    private static void createIndexes(Connection conn, List<String> definitions) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String definition : definitions) {
+                stmt.executeUpdate(definition.replaceFirst("(?i)^CREATE INDEX ", "CREATE INDEX IF NOT EXISTS "));
+            }
+        }
+    }
+
+    private static int nextId(Connection conn, String table, String idColumn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(" + idColumn + "), 0) + 1 FROM " + table)) {
+            return rs.next() ? rs.getInt(1) : 1;
+        }
+    }
+
+    private static void report(String what, long rows, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("  %,d %s in %.1f s (%,.0f rows/s)%n", rows, what, seconds, rows / Math.max(seconds, 1e-9));
+    }
+}
@@ -0,0 +1,172 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Resident {@link RecipeBitmap} of RecipeIDs per tag and per category, so dietary filters
+ * ("Vegan and Gluten-Free, but not Spicy") are answered by bitmap operations instead of
+ * joins through RecipeTags and RecipeCategories.
+ *
+ * A name is looked up as both a tag and a category; a recipe carrying either matches it.
+ */
+public class DietaryIndex {
+
+    private final Map<String, RecipeBitmap> tags = new HashMap<>();
+    private final Map<String, RecipeBitmap> categories = new HashMap<>();
+    private int maxRecipeId;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Build the bitmaps from RecipeTags and RecipeCategories, each read in one pass over its
+     * (ID, RecipeID) index so RecipeIDs arrive in order.
+     */
+    public static DietaryIndex load(Connection conn) throws SQLException {
+        DietaryIndex index = new DietaryIndex();
+        index.loadLinks(conn, "SELECT t.Name, rt.RecipeID FROM Tags t " +
+                "JOIN RecipeTags rt ON rt.TagID = t.TagID ORDER BY t.TagID, rt.RecipeID", index.tags);
+        index.loadLinks(conn, "SELECT c.Name, rc.RecipeID FROM Categories c " +
+                "JOIN RecipeCategories rc ON rc.CategoryID = c.CategoryID ORDER BY c.CategoryID, rc.RecipeID",
+                index.categories);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(RecipeID), 0) FROM Recipes")) {
+            index.maxRecipeId = rs.next() ? rs.getInt(1) : 0;
+        }
+        return index;
+    }
+
+    private void loadLinks(Connection conn, String sql, Map<String, RecipeBitmap> bitmaps) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            String name = null;
+            RecipeBitmap bitmap = null;
+            while (rs.next()) {
+                String next = rs.getString(1);
+                if (!next.equals(name)) {
+                    name = next;
+                    bitmap = bitmaps.computeIfAbsent(name, n -> new RecipeBitmap());
+                }
+                bitmap.add(rs.getInt(2));
+            }
+        }
+    }
+
+    /**
+     * Record the tags of a newly inserted recipe.
+     */
+    public void addRecipe(int recipeId, Collection<String> tagNames) {
+        lock.writeLock().lock();
+        try {
+            for (String name : tagNames) {
+                tags.computeIfAbsent(name, n -> new RecipeBitmap()).add(recipeId);
+            }
+            maxRecipeId = Math.max(maxRecipeId, recipeId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Recipes carrying all (or any) of {@code include} and none of {@code exclude}.
+     *
+     * @param include Tag or category names; empty for no requirement
+     * @param matchAll Whether a recipe needs every name in {@code include}, rather than one
+     * @param exclude Tag or category names ruling a recipe out
+     * @return The matching recipes, or null if {@code include} is empty; use
+     *         {@link #excluded} to rule recipes out then
+     */
+    public RecipeBitmap matching(Collection<String> include, boolean matchAll, Collection<String> exclude) {
+        if (include.isEmpty()) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            RecipeBitmap result = null;
+            for (String name : include) {
+                RecipeBitmap recipes = recipesFor(name);
+                if (result == null) {
+                    result = recipes;
+                } else {
+                    result = matchAll ? result.and(recipes) : result.or(recipes);
+                }
+            }
+            if (!exclude.isEmpty()) {
+                result = result.andNot(union(exclude));
+            }
+            // Never hand out a bitmap the index still updates
+            return include.size() == 1 && exclude.isEmpty() ? result.copy() : result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Recipes carrying any of the given tag or category names.
+     */
+    public RecipeBitmap excluded(Collection<String> exclude) {
+        lock.readLock().lock();
+        try {
+            return exclude.size() == 1 ? union(exclude).copy() : union(exclude);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private RecipeBitmap union(Collection<String> names) {
+        RecipeBitmap result = null;
+        for (String name : names) {
+            result = result == null ? recipesFor(name) : result.or(recipesFor(name));
+        }
+        return result != null ? result : new RecipeBitmap();
+    }
+
+    // The index's own bitmap where the name is only a tag or only a category
+    private RecipeBitmap recipesFor(String name) {
+        RecipeBitmap tagged = tags.get(name);
+        RecipeBitmap categorized = categories.get(name);
+        if (tagged != null && categorized != null) {
+            return tagged.or(categorized);
+        }
+        if (tagged != null) {
+            return tagged;
+        }
+        return categorized != null ? categorized : new RecipeBitmap();
+    }
+
+    /**
+     * The highest RecipeID seen, as an upper bound on how many recipes a filter selects from.
+     */
+    public int getMaxRecipeId() {
+        lock.readLock().lock();
+        try {
+            return maxRecipeId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate heap used by the bitmaps, in bytes.
+     */
+    public long getMemoryBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (RecipeBitmap bitmap : tags.values()) {
+                bytes += bitmap.getMemoryBytes();
+            }
+            for (RecipeBitmap bitmap : categories.values()) {
+                bytes += bitmap.getMemoryBytes();
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.chefsync;
+
+import java.util.Locale;
+
+/**
+ * Parses free-text durations such as "45", "1 hour", "1h 30m", "1.5 hrs", "1 1/2 hours",
+ * "1:15" or "20-30 minutes" into whole minutes.
+ */
+public class DurationParser {
+
+    /**
+     * Parse a duration into minutes.
+     *
+     * A bare number is taken as minutes. For a range the upper bound is used,
+     * so that "maximum cooking time" filters stay conservative.
+     *
+     * @param text Duration text, may be null
+     * @return Minutes, or null if the text has no recognisable duration
+     */
+    public static Integer parseMinutes(String text) {
+        if (text == null) {
+            return null;
+        }
+        String s = text.trim().toLowerCase(Locale.ROOT);
+        if (s.isEmpty()) {
+            return null;
+        }
+
+        // "h:mm" clock notation
+        int colon = s.indexOf(':');
+        if (colon > 0 && s.matches("\\d{1,3}:\\d{2}")) {
+            return Integer.parseInt(s.substring(0, colon)) * 60 + Integer.parseInt(s.substring(colon + 1));
+        }
+
+        // For ranges keep only the upper bound: "20-30 min" -> "30 min", "1 1/2 to 2 hours" -> "2 hours"
+        s = s.replaceAll("(?<![\\d./])\\d+(?:\\.\\d+)?(?:\\s+\\d+/\\d+|/\\d+)?\\s*(?:-|–|to)\\s*(?=\\d)", "");
+
+        double total = 0;
+        boolean found = false;
+        int i = 0;
+        int n = s.length();
+        while (i < n) {
+            char c = s.charAt(i);
+            if (!Character.isDigit(c) && c != '.') {
+                i++;
+                continue;
+            }
+
+            int start = i;
+            while (i < n && (Character.isDigit(s.charAt(i)) || s.charAt(i) == '.')) {
+                i++;
+            }
+            double value;
+            try {
+                value = Double.parseDouble(s.substring(start, i));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            // A fraction is one number with the unit after it: "1/2 hour", "1 1/2 hours"
+            int[] fraction = fraction(s, i);
+            if (fraction != null && s.charAt(i) == '/') {
+                value /= fraction[1];
+                i = fraction[2];
+            } else if (fraction != null) {
+                value += (double) fraction[0] / fraction[1];
+                i = fraction[2];
+            }
+
+            while (i < n && s.charAt(i) == ' ') {
+                i++;
+            }
+            int unitStart = i;
+            while (i < n && Character.isLetter(s.charAt(i))) {
+                i++;
+            }
+            String unit = s.substring(unitStart, i);
+
+            double factor = unitFactor(unit);
+            if (factor < 0) {
+                continue;
+            }
+            total += value * factor;
+            found = true;
+        }
+
+        return found ? (int) Math.round(total) : null;
+    }
+
+    /**
+     * The fraction at {@code i}: either "/b" right after a whole number, or " a/b" after
+     * spaces. Returns {a, b, index after it}, with a unused for "/b"; null if there is
+     * none or b is 0.
+     */
+    private static int[] fraction(String s, int i) {
+        int n = s.length();
+        int j = i;
+        int numerator = 0;
+        if (j < n && s.charAt(j) != '/') {
+            while (j < n && s.charAt(j) == ' ') {
+                j++;
+            }
+            if (j == i) {
+                return null;
+            }
+            int numStart = j;
+            while (j < n && Character.isDigit(s.charAt(j))) {
+                j++;
+            }
+            if (j == numStart || j - numStart > 6) {
+                return null;
+            }
+            numerator = Integer.parseInt(s.substring(numStart, j));
+        }
+        if (j >= n || s.charAt(j) != '/') {
+            return null;
+        }
+        j++;
+        int denStart = j;
+        while (j < n && Character.isDigit(s.charAt(j))) {
+            j++;
+        }
+        if (j == denStart || j - denStart > 6) {
+            return null;
+        }
+        int denominator = Integer.parseInt(s.substring(denStart, j));
+        return denominator == 0 ? null : new int[] {numerator, denominator, j};
+    }
+
+    /**
+     * Minutes per unit, 1 for a missing unit, or -1 for an unknown word.
+     */
+    private static double unitFactor(String unit) {
+        switch (unit) {
+            case "":
+            case "m":
+            case "min":
+            case "mins":
+            case "minute":
+            case "minutes":
+                return 1;
+            case "h":
+            case "hr":
+            case "hrs":
+            case "hour":
+            case "hours":
+                return 60;
+            case "d":
+            case "day":
+            case "days":
+                return 24 * 60;
+            case "s":
+            case "sec":
+            case "secs":
+            case "second":
+            case "seconds":
+                return 1.0 / 60;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Total of prep and cooking time, or whichever is known if only one is.
+     */
+    public static Integer totalMinutes(Integer prepMinutes, Integer cookMinutes) {
+        if (prepMinutes == null) {
+            return cookMinutes;
+        }
+        if (cookMinutes == null) {
+            return prepMinutes;
+        }
+        return prepMinutes + cookMinutes;
+    }
+}
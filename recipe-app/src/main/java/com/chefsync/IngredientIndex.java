@@ -0,0 +1,342 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Resident inverted index from IngredientID to the recipes that use it.
+ *
+ * Each posting list holds sorted RecipeIDs, delta-encoded as varints in a byte array.
+ * Per-recipe ingredient totals live in a plain int array indexed by RecipeID, so
+ * pantry matching never has to touch RecipeIngredients.
+ */
+public class IngredientIndex {
+
+    /**
+     * One ranked recommendation.
+     */
+    public static class Match {
+        public final int recipeId;
+        public final int matched;
+        public final int total;
+        // Matched ingredients the pantry should use soon
+        public final int useSoon;
+
+        Match(int recipeId, int matched, int total, int useSoon) {
+            this.recipeId = recipeId;
+            this.matched = matched;
+            this.total = total;
+            this.useSoon = useSoon;
+        }
+
+        public double ratio() {
+            return total == 0 ? 0.0 : (double) matched / total;
+        }
+    }
+
+    /**
+     * Sorted RecipeIDs stored as varint-encoded gaps.
+     */
+    static class PostingList {
+        private byte[] data = new byte[8];
+        private int length;
+        private int size;
+        private int last;
+
+        void add(int recipeId) {
+            if (size > 0 && recipeId <= last) {
+                insertOutOfOrder(recipeId);
+                return;
+            }
+            writeVarint(size == 0 ? recipeId : recipeId - last);
+            last = recipeId;
+            size++;
+        }
+
+        private void insertOutOfOrder(int recipeId) {
+            int[] ids = decode();
+            int pos = Arrays.binarySearch(ids, recipeId);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            length = 0;
+            size = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (i == pos) {
+                    add(recipeId);
+                }
+                add(ids[i]);
+            }
+            if (pos == ids.length) {
+                add(recipeId);
+            }
+        }
+
+        private void writeVarint(int value) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+            }
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+
+        int[] decode() {
+            int[] ids = new int[size];
+            Cursor cursor = new Cursor(this);
+            for (int i = 0; i < size; i++) {
+                ids[i] = cursor.next();
+            }
+            return ids;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int byteSize() {
+            return length;
+        }
+    }
+
+    /**
+     * Forward iterator over a posting list. Returns -1 once exhausted.
+     */
+    static class Cursor {
+        private final byte[] data;
+        private final int length;
+        private int offset;
+        private int current;
+
+        Cursor(PostingList list) {
+            this.data = list.data;
+            this.length = list.length;
+        }
+
+        int next() {
+            if (offset >= length) {
+                return -1;
+            }
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            current += value;
+            return current;
+        }
+    }
+
+    private PostingList[] postings = new PostingList[64];
+    private int[] ingredientCounts = new int[1024];
+    private int recipeCount;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Build the index from RecipeIngredients in one ordered pass over the
+     * (IngredientID, RecipeID) index.
+     */
+    public static IngredientIndex load(Connection conn) throws SQLException {
+        IngredientIndex index = new IngredientIndex();
+        String sql = "SELECT IngredientID, RecipeID FROM RecipeIngredients ORDER BY IngredientID, RecipeID";
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                index.addPosting(rs.getInt(1), rs.getInt(2));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Record the ingredients of a newly inserted recipe.
+     */
+    public void addRecipe(int recipeId, int[] ingredientIds) {
+        lock.writeLock().lock();
+        try {
+            for (int ingredientId : ingredientIds) {
+                addPosting(ingredientId, recipeId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addPosting(int ingredientId, int recipeId) {
+        if (ingredientId >= postings.length) {
+            postings = Arrays.copyOf(postings, Math.max(postings.length * 2, ingredientId + 1));
+        }
+        if (recipeId >= ingredientCounts.length) {
+            ingredientCounts = Arrays.copyOf(ingredientCounts, Math.max(ingredientCounts.length * 2, recipeId + 1));
+        }
+
+        PostingList list = postings[ingredientId];
+        if (list == null) {
+            list = new PostingList();
+            postings[ingredientId] = list;
+        }
+        int before = list.size();
+        list.add(recipeId);
+        if (list.size() > before) {
+            if (ingredientCounts[recipeId] == 0) {
+                recipeCount++;
+            }
+            ingredientCounts[recipeId]++;
+        }
+    }
+
+    /**
+     * Rank recipes by the share of their ingredients found in the pantry.
+     *
+     * @param pantryIngredientIds Ingredients the user has
+     * @param limit Maximum number of results
+     * @return Matches ordered by match ratio, then by number of matched ingredients
+     */
+    public List<Match> topMatches(int[] pantryIngredientIds, int limit) {
+        return topMatches(pantryIngredientIds, new int[0], limit);
+    }
+
+    /**
+     * Rank recipes by the share of their ingredients found in the pantry, counting the
+     * ones that should be used soon twice.
+     *
+     * The pantry's posting lists are merged in RecipeID order, so each recipe's match
+     * count is known as soon as the merge moves past it and only the current top
+     * {@code limit} candidates are kept.
+     *
+     * @param pantryIngredientIds Ingredients the user has
+     * @param useSoonIngredientIds Those of them close to expiry
+     * @param limit Maximum number of results
+     * @return Matches ordered by weighted match ratio, then by number of matched ingredients
+     */
+    public List<Match> topMatches(int[] pantryIngredientIds, int[] useSoonIngredientIds, int limit) {
+        lock.readLock().lock();
+        try {
+            // Min-heap of cursors keyed by their current RecipeID
+            PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> Integer.compare(a[0], b[0]));
+            List<Cursor> cursors = new ArrayList<>();
+            List<Boolean> boosted = new ArrayList<>();
+            for (int ingredientId : pantryIngredientIds) {
+                if (ingredientId < 0 || ingredientId >= postings.length || postings[ingredientId] == null) {
+                    continue;
+                }
+                Cursor cursor = new Cursor(postings[ingredientId]);
+                int first = cursor.next();
+                if (first >= 0) {
+                    heads.add(new int[] {first, cursors.size()});
+                    cursors.add(cursor);
+                    boosted.add(contains(useSoonIngredientIds, ingredientId));
+                }
+            }
+
+            // Worst-ranked candidate on top, so it can be evicted cheaply
+            PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, IngredientIndex::compareRank);
+            while (!heads.isEmpty()) {
+                int recipeId = heads.peek()[0];
+                int matched = 0;
+                int useSoon = 0;
+                while (!heads.isEmpty() && heads.peek()[0] == recipeId) {
+                    int[] head = heads.poll();
+                    matched++;
+                    if (boosted.get(head[1])) {
+                        useSoon++;
+                    }
+                    int next = cursors.get(head[1]).next();
+                    if (next >= 0) {
+                        head[0] = next;
+                        heads.add(head);
+                    }
+                }
+
+                Match match = new Match(recipeId, matched, ingredientCounts[recipeId], useSoon);
+                if (best.size() < limit) {
+                    best.add(match);
+                } else if (compareRank(match, best.peek()) > 0) {
+                    best.poll();
+                    best.add(match);
+                }
+            }
+
+            List<Match> results = new ArrayList<>(best);
+            results.sort(Collections.reverseOrder(IngredientIndex::compareRank));
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean contains(int[] ids, int id) {
+        for (int candidate : ids) {
+            if (candidate == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Orders matches from worst to best: weighted ratio, then matched count, then lower RecipeID first.
+     */
+    private static int compareRank(Match a, Match b) {
+        // Compare (matched + useSoon)/total ratios exactly via cross-multiplication
+        int cmp = Long.compare((long) (a.matched + a.useSoon) * b.total, (long) (b.matched + b.useSoon) * a.total);
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = Integer.compare(a.matched, b.matched);
+        if (cmp != 0) {
+            return cmp;
+        }
+        return Integer.compare(b.recipeId, a.recipeId);
+    }
+
+    public int getIngredientCount(int recipeId) {
+        lock.readLock().lock();
+        try {
+            return recipeId >= 0 && recipeId < ingredientCounts.length ? ingredientCounts[recipeId] : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getRecipeCount() {
+        lock.readLock().lock();
+        try {
+            return recipeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate heap used by posting data and counts, in bytes.
+     */
+    public long getMemoryBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = (long) ingredientCounts.length * Integer.BYTES;
+            for (PostingList list : postings) {
+                if (list != null) {
+                    bytes += list.byteSize();
+                }
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.chefsync;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Page-at-a-time reads of a recipe query ordered by (sort key, RecipeID), ascending or
+ * descending.
+ *
+ * Pages are found by seeking past the last (or before the first) key shown rather than
+ * with OFFSET, so each page costs the same however deep the user has browsed, and rows
+ * inserted meanwhile never shift or repeat entries. Only the current page is held.
+ * The page size defaults to -Dchefsync.pageSize (20).
+ *
+ * A row filter on RecipeID can stand in for a condition that is cheaper to test in memory
+ * than in SQL; rows are then read until enough pass it, rather than a page at a time.
+ */
+public class KeysetPager {
+
+    public static final int DEFAULT_PAGE_SIZE = Integer.getInteger("chefsync.pageSize", 20);
+
+    /**
+     * Turns the current row into the values shown for it.
+     */
+    @FunctionalInterface
+    public interface RowMapper {
+        Object[] map(ResultSet rs) throws SQLException;
+    }
+
+    private final ConnectionManager db;
+    private final String columns;
+    private final String from;
+    private final String where;
+    private final List<Object> params;
+    private final String sortKey;
+    private final String idKey;
+    private final RowMapper mapper;
+    private final int pageSize;
+    private final IntPredicate rowFilter;
+    private final boolean descending;
+
+    private List<Object[]> current = Collections.emptyList();
+    private Object firstSort;
+    private Object lastSort;
+    private int firstId;
+    private int lastId;
+    private boolean hasNext;
+    private boolean hasPrevious;
+    private int pageNumber;
+
+    /**
+     * @param columns The select list passed to {@code mapper}
+     * @param from    The FROM clause, including any joins
+     * @param where   The filter; must not be empty (use "1=1")
+     * @param sortKey An expression that is never NULL, e.g. "r.Title"
+     * @param idKey   The RecipeID expression that breaks ties, e.g. "r.RecipeID"
+     */
+    public KeysetPager(ConnectionManager db, String columns, String from, String where, List<Object> params,
+                       String sortKey, String idKey, RowMapper mapper, int pageSize) {
+        this(db, columns, from, where, params, sortKey, idKey, mapper, pageSize, null);
+    }
+
+    /**
+     * @param rowFilter Only rows whose RecipeID passes are shown; null for all rows
+     */
+    public KeysetPager(ConnectionManager db, String columns, String from, String where, List<Object> params,
+                       String sortKey, String idKey, RowMapper mapper, int pageSize, IntPredicate rowFilter) {
+        this(db, columns, from, where, params, sortKey, idKey, mapper, pageSize, rowFilter, false);
+    }
+
+    /**
+     * @param descending Highest keys first; ties on the sort key then go by descending RecipeID
+     */
+    public KeysetPager(ConnectionManager db, String columns, String from, String where, List<Object> params,
+                       String sortKey, String idKey, RowMapper mapper, int pageSize, IntPredicate rowFilter,
+                       boolean descending) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.db = db;
+        this.columns = columns;
+        this.from = from;
+        this.where = where;
+        this.params = new ArrayList<>(params);
+        this.sortKey = sortKey;
+        this.idKey = idKey;
+        this.mapper = mapper;
+        this.pageSize = pageSize;
+        this.rowFilter = rowFilter;
+        this.descending = descending;
+    }
+
+    public List<Object[]> first() throws SQLException {
+        pageNumber = 0;
+        return fetch(null, 0, true);
+    }
+
+    /**
+     * The page after the current one; the current page again if it is the last.
+     */
+    public List<Object[]> next() throws SQLException {
+        if (pageNumber == 0) {
+            return first();
+        }
+        return hasNext ? fetch(lastSort, lastId, true) : current;
+    }
+
+    /**
+     * The page before the current one; the current page again if it is the first.
+     */
+    public List<Object[]> previous() throws SQLException {
+        if (pageNumber == 0) {
+            return first();
+        }
+        return hasPrevious ? fetch(firstSort, firstId, false) : current;
+    }
+
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    public boolean hasPrevious() {
+        return hasPrevious;
+    }
+
+    /**
+     * 1 for the first page, 0 before anything has been fetched.
+     */
+    public int getPageNumber() {
+        return pageNumber;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * The query for a page: the first page when {@code seek} is false, otherwise the page
+     * after ({@code forward}) or before the last key shown. Takes the filter's parameters,
+     * then the seek key if any, then the row limit.
+     */
+    String pageSql(boolean seek, boolean forward) {
+        // Reading a descending listing backwards is an ascending scan, and vice versa
+        boolean ascending = forward != descending;
+        StringBuilder sql = new StringBuilder("SELECT ").append(columns)
+                .append(", ").append(sortKey).append(" AS PageSortKey, ").append(idKey).append(" AS PageRecipeID")
+                .append(" FROM ").append(from)
+                .append(" WHERE (").append(where).append(")");
+        if (seek) {
+            sql.append(" AND (").append(sortKey).append(", ").append(idKey).append(ascending ? ") > (?, ?)" : ") < (?, ?)");
+        }
+        String direction = ascending ? "" : " DESC";
+        sql.append(" ORDER BY ").append(sortKey).append(direction).append(", ").append(idKey).append(direction);
+        // One extra row tells us whether there is another page in this direction
+        sql.append(" LIMIT ?");
+        return sql.toString();
+    }
+
+    private List<Object[]> fetch(Object sortAfter, int idAfter, boolean forward) throws SQLException {
+        boolean seek = sortAfter != null;
+        String sql = pageSql(seek, forward);
+
+        List<Object[]> rows = new ArrayList<>(pageSize);
+        List<Object> sortKeys = new ArrayList<>(pageSize);
+        List<Integer> ids = new ArrayList<>(pageSize);
+        boolean more = false;
+        try (ConnectionManager.Lease lease = db.reader();
+             PreparedStatement pstmt = lease.prepare("recipes.page", sql)) {
+            int index = 1;
+            for (Object param : params) {
+                pstmt.setObject(index++, param);
+            }
+            if (seek) {
+                pstmt.setObject(index++, sortAfter);
+                pstmt.setInt(index++, idAfter);
+            }
+            // With a row filter there is no telling how many rows make a page; stop reading once full
+            pstmt.setInt(index, rowFilter == null ? pageSize + 1 : -1);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (rowFilter != null && !rowFilter.test(rs.getInt("PageRecipeID"))) {
+                        continue;
+                    }
+                    if (rows.size() == pageSize) {
+                        more = true;
+                        break;
+                    }
+                    rows.add(mapper.map(rs));
+                    sortKeys.add(rs.getObject("PageSortKey"));
+                    ids.add(rs.getInt("PageRecipeID"));
+                }
+            }
+        }
+
+        if (seek && rows.isEmpty()) {
+            // Rows were deleted since the page was shown; stay where we are
+            if (forward) {
+                hasNext = false;
+            } else {
+                hasPrevious = false;
+            }
+            return current;
+        } else if (seek && !forward && !more && rows.size() < pageSize) {
+            // Fewer rows than a page before this one: that is the start, so show a full first page
+            return first();
+        }
+
+        if (!forward) {
+            Collections.reverse(rows);
+            Collections.reverse(sortKeys);
+            Collections.reverse(ids);
+        }
+        if (rows.isEmpty()) {
+            hasNext = false;
+            hasPrevious = false;
+            pageNumber = 1;
+            current = rows;
+            return rows;
+        }
+        firstSort = sortKeys.get(0);
+        firstId = ids.get(0);
+        lastSort = sortKeys.get(sortKeys.size() - 1);
+        lastId = ids.get(ids.size() - 1);
+
+        if (forward) {
+            hasNext = more;
+            hasPrevious = seek;
+            pageNumber++;
+        } else {
+            hasPrevious = more;
+            hasNext = true;
+            pageNumber = more ? Math.max(pageNumber - 1, 2) : 1;
+        }
+        current = rows;
+        return rows;
+    }
+}
@@ -0,0 +1,400 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fills a meal plan with public recipes whose per-serving calories and macros add up to
+ * daily targets.
+ *
+ * Public recipes with nutrition are held in a compact feature table (parallel float arrays,
+ * sorted by calories), so the search never touches the database. Several local searches
+ * run in parallel on a fork-join pool, each from its own random start: one meal at a time
+ * is swapped for a recipe with about the calories its day is missing, and the swap is kept
+ * if it brings the plan closer to the targets without repeating a recipe. The best plan
+ * found wins. A seed makes the result repeatable.
+ */
+public class MealPlanGenerator {
+
+    /**
+     * Daily targets; 0 leaves a nutrient free.
+     */
+    public static class Targets {
+        public final double calories;
+        public final double protein;
+        public final double carbs;
+        public final double fats;
+
+        public Targets(double calories, double protein, double carbs, double fats) {
+            this.calories = calories;
+            this.protein = protein;
+            this.carbs = carbs;
+            this.fats = fats;
+        }
+    }
+
+    /**
+     * A generated plan: {@code recipeIds[day][meal]}, meals in the order requested.
+     */
+    public static class Plan {
+        public final int[][] recipeIds;
+        /** Calories, protein, carbs and fats per day */
+        public final double[][] dayTotals;
+        /** Summed squared relative distance from the targets over all days; lower is better */
+        public final double cost;
+
+        Plan(int[][] recipeIds, double[][] dayTotals, double cost) {
+            this.recipeIds = recipeIds;
+            this.dayTotals = dayTotals;
+            this.cost = cost;
+        }
+    }
+
+    // Cost of a recipe appearing in the plan more than once, per extra use
+    private static final double REPEAT_PENALTY = 0.5;
+    // Cost taken off per meal for a recipe made entirely from pantry ingredients
+    private static final double PANTRY_WEIGHT = 0.02;
+    // Calorie-sorted neighbours considered on either side of the calories a day is missing:
+    // at least this many, or a share of the candidates wide enough to vary the macros
+    private static final int MIN_WINDOW = 200;
+    private static final int WINDOW_SHARE = 256;
+    private static final int MOVES_PER_MEAL = 1000;
+    // Independent searches; fixed so a seed gives the same plan on any number of cores
+    private static final int RESTARTS = 8;
+    // A meal type is only matched against its category when that leaves this many recipes
+    private static final int MIN_MEAL_TYPE_CANDIDATES = 50;
+
+    // Feature table, sorted by calories
+    private final int[] recipeIds;
+    private final float[] calories;
+    private final float[] protein;
+    private final float[] carbs;
+    private final float[] fats;
+    // Table position by RecipeID; -1 for recipes not in the table
+    private final int[] positions;
+
+    private MealPlanGenerator(int[] recipeIds, float[] calories, float[] protein, float[] carbs, float[] fats) {
+        this.recipeIds = recipeIds;
+        this.calories = calories;
+        this.protein = protein;
+        this.carbs = carbs;
+        this.fats = fats;
+        int maxRecipeId = 0;
+        for (int recipeId : recipeIds) {
+            maxRecipeId = Math.max(maxRecipeId, recipeId);
+        }
+        positions = new int[maxRecipeId + 1];
+        Arrays.fill(positions, -1);
+        for (int i = 0; i < recipeIds.length; i++) {
+            positions[recipeIds[i]] = i;
+        }
+    }
+
+    /**
+     * Read the feature table of public recipes with calories, in calorie order straight
+     * from idx_recipes_public_nutrition.
+     */
+    public static MealPlanGenerator load(Connection conn) throws SQLException {
+        int[] ids = new int[1024];
+        float[][] values = new float[4][1024];
+        int count = 0;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT RecipeID, Calories, Protein, Carbs, Fats FROM Recipes " +
+                     "WHERE IsPublic = 1 AND Calories > 0 ORDER BY Calories")) {
+            while (rs.next()) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                    for (int k = 0; k < values.length; k++) {
+                        values[k] = Arrays.copyOf(values[k], count * 2);
+                    }
+                }
+                ids[count] = rs.getInt(1);
+                for (int k = 0; k < values.length; k++) {
+                    values[k][count] = rs.getFloat(k + 2);
+                }
+                count++;
+            }
+        }
+        return new MealPlanGenerator(Arrays.copyOf(ids, count), Arrays.copyOf(values[0], count),
+                Arrays.copyOf(values[1], count), Arrays.copyOf(values[2], count), Arrays.copyOf(values[3], count));
+    }
+
+    public int getRecipeCount() {
+        return recipeIds.length;
+    }
+
+    /**
+     * Approximate heap used by the feature table, in bytes.
+     */
+    public long getMemoryBytes() {
+        return (long) recipeIds.length * (Integer.BYTES + 4 * Float.BYTES) + (long) positions.length * Integer.BYTES;
+    }
+
+    /**
+     * Search for a plan.
+     *
+     * @param mealTypes Meals per day, e.g. Breakfast, Lunch, Dinner; a meal type naming a
+     *                  category (or tag) with enough recipes is filled from it
+     * @param dietary Recipes must be in every one of these tags or categories; null for none
+     * @param excluded Recipes in any of these are left out; null for none
+     * @param pantryScores Share of each recipe's ingredients in the pantry, by RecipeID
+     * @return null if no public recipe fits the dietary filter
+     */
+    public Plan generate(Targets targets, int days, List<String> mealTypes, DietaryIndex dietaryIndex,
+                         List<String> dietary, List<String> excluded, Map<Integer, Double> pantryScores, long seed) {
+        RecipeBitmap allowed = dietary != null && !dietary.isEmpty()
+                ? dietaryIndex.matching(dietary, true, excluded != null ? excluded : List.of())
+                : null;
+        RecipeBitmap ruledOut = allowed == null && excluded != null && !excluded.isEmpty()
+                ? dietaryIndex.excluded(excluded)
+                : null;
+        int[] pool = select(allowed, ruledOut, null);
+        if (pool.length == 0) {
+            return null;
+        }
+
+        // Candidates per meal type, as feature table positions in calorie order
+        int[][] candidates = new int[mealTypes.size()][];
+        for (int m = 0; m < mealTypes.size(); m++) {
+            RecipeBitmap mealType = dietaryIndex.matching(List.of(mealTypes.get(m)), false, List.of());
+            int[] matching = mealType.isEmpty() ? new int[0] : select(allowed, ruledOut, mealType);
+            candidates[m] = matching.length >= MIN_MEAL_TYPE_CANDIDATES ? matching : pool;
+        }
+
+        // Pantry share by table position, for the recipes in the pool
+        Map<Integer, Double> pantryShares = new HashMap<>();
+        if (pantryScores != null && !pantryScores.isEmpty()) {
+            for (int i : pool) {
+                Double share = pantryScores.get(recipeIds[i]);
+                if (share != null) {
+                    pantryShares.put(i, share);
+                }
+            }
+        }
+
+        Search search = new Search(targets, days, candidates, pantryShares);
+        Search.Result best = ForkJoinPool.commonPool().invoke(new Restarts(search, seed, 0, RESTARTS));
+
+        int[][] planned = new int[days][mealTypes.size()];
+        for (int d = 0; d < days; d++) {
+            for (int m = 0; m < mealTypes.size(); m++) {
+                planned[d][m] = recipeIds[best.slots[d * mealTypes.size() + m]];
+            }
+        }
+        return new Plan(planned, best.dayTotals, best.cost);
+    }
+
+    // Ascending table positions of the recipes in allowed and required (where given) but not excluded
+    private int[] select(RecipeBitmap allowed, RecipeBitmap excluded, RecipeBitmap required) {
+        if (allowed == null && required == null) {
+            int[] selected = new int[recipeIds.length];
+            int n = 0;
+            for (int i = 0; i < recipeIds.length; i++) {
+                if (excluded == null || !excluded.contains(recipeIds[i])) {
+                    selected[n++] = i;
+                }
+            }
+            return Arrays.copyOf(selected, n);
+        }
+        // A filter usually selects far fewer recipes than the table holds; walk it instead
+        int[] ids = (allowed != null && required != null ? allowed.and(required) : allowed != null ? allowed : required).toArray();
+        int[] selected = new int[ids.length];
+        int n = 0;
+        for (int recipeId : ids) {
+            if (recipeId < positions.length && positions[recipeId] >= 0
+                    && (excluded == null || !excluded.contains(recipeId))) {
+                selected[n++] = positions[recipeId];
+            }
+        }
+        selected = Arrays.copyOf(selected, n);
+        Arrays.sort(selected);
+        return selected;
+    }
+
+    /**
+     * Splits the restarts in halves until one is left, then runs it; the better plan of
+     * each pair moves up.
+     */
+    @SuppressWarnings("serial")
+    private static final class Restarts extends RecursiveTask<Search.Result> {
+        private final Search search;
+        private final long seed;
+        private final int from;
+        private final int to;
+
+        Restarts(Search search, long seed, int from, int to) {
+            this.search = search;
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Search.Result compute() {
+            if (to - from == 1) {
+                return search.run(new SplittableRandom(seed + from));
+            }
+            int mid = (from + to) >>> 1;
+            Restarts left = new Restarts(search, seed, from, mid);
+            left.fork();
+            Search.Result right = new Restarts(search, seed, mid, to).compute();
+            Search.Result first = left.join();
+            // Ties go to the lower restart, so the result does not depend on scheduling
+            return right.cost < first.cost ? right : first;
+        }
+    }
+
+    /**
+     * One local search. Shared read-only by the restarts; each run keeps its own state.
+     */
+    private final class Search {
+        final double[] target;
+        final int days;
+        final int meals;
+        final int[][] candidates;
+        final Map<Integer, Double> pantryShares;
+        final int[] pantryPicks;
+
+        Search(Targets targets, int days, int[][] candidates, Map<Integer, Double> pantryShares) {
+            this.target = new double[] {targets.calories, targets.protein, targets.carbs, targets.fats};
+            this.days = days;
+            this.meals = candidates.length;
+            this.candidates = candidates;
+            this.pantryShares = pantryShares;
+            this.pantryPicks = pantryShares.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+
+        final class Result {
+            final int[] slots;
+            final double[][] dayTotals;
+            final double cost;
+
+            Result(int[] slots, double[][] dayTotals, double cost) {
+                this.slots = slots;
+                this.dayTotals = dayTotals;
+                this.cost = cost;
+            }
+        }
+
+        Result run(SplittableRandom random) {
+            int[] slots = new int[days * meals];
+            double[][] totals = new double[days][4];
+            double calorieShare = target[0] / meals;
+            for (int d = 0; d < days; d++) {
+                for (int m = 0; m < meals; m++) {
+                    int pick = near(m, calorieShare, random);
+                    slots[d * meals + m] = pick;
+                    add(totals[d], pick, 1);
+                }
+            }
+
+            int moves = MOVES_PER_MEAL * slots.length;
+            for (int move = 0; move < moves; move++) {
+                int slot = random.nextInt(slots.length);
+                int d = slot / meals;
+                int current = slots[slot];
+                int pick;
+                if (pantryPicks.length > 0 && random.nextInt(8) == 0) {
+                    pick = pantryPicks[random.nextInt(pantryPicks.length)];
+                    if (Arrays.binarySearch(candidates[slot % meals], pick) < 0) {
+                        continue;
+                    }
+                } else {
+                    double missing = target[0] > 0 ? target[0] - (totals[d][0] - calories[current]) : -1;
+                    pick = near(slot % meals, missing, random);
+                }
+                if (pick == current) {
+                    continue;
+                }
+
+                double before = dayCost(totals[d]) + repeats(slots, slot, current) - bonus(current);
+                add(totals[d], current, -1);
+                add(totals[d], pick, 1);
+                double after = dayCost(totals[d]) + repeats(slots, slot, pick) - bonus(pick);
+                if (after < before) {
+                    slots[slot] = pick;
+                } else {
+                    add(totals[d], pick, -1);
+                    add(totals[d], current, 1);
+                }
+            }
+
+            double cost = 0;
+            for (int d = 0; d < days; d++) {
+                cost += dayCost(totals[d]);
+            }
+            for (int slot = 0; slot < slots.length; slot++) {
+                cost += repeats(slots, slot, slots[slot]) / 2 - bonus(slots[slot]);
+            }
+            return new Result(slots, totals, cost);
+        }
+
+        // A candidate for meal m with about the given calories; any candidate if negative
+        private int near(int m, double wanted, SplittableRandom random) {
+            int[] list = candidates[m];
+            if (wanted < 0) {
+                return list[random.nextInt(list.length)];
+            }
+            int lo = 0;
+            int hi = list.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (calories[list[mid]] < wanted) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            int window = Math.max(MIN_WINDOW, list.length / WINDOW_SHARE);
+            int from = Math.max(0, lo - window);
+            int to = Math.min(list.length, lo + window);
+            return list[from + random.nextInt(to - from)];
+        }
+
+        private void add(double[] totals, int position, int sign) {
+            totals[0] += sign * calories[position];
+            totals[1] += sign * protein[position];
+            totals[2] += sign * carbs[position];
+            totals[3] += sign * fats[position];
+        }
+
+        private double dayCost(double[] totals) {
+            double cost = 0;
+            for (int k = 0; k < 4; k++) {
+                if (target[k] > 0) {
+                    double off = (totals[k] - target[k]) / target[k];
+                    cost += off * off;
+                }
+            }
+            return cost;
+        }
+
+        // Penalty for the other slots holding the same recipe as slot would
+        private double repeats(int[] slots, int slot, int position) {
+            double penalty = 0;
+            for (int other = 0; other < slots.length; other++) {
+                if (other != slot && slots[other] == position) {
+                    penalty += REPEAT_PENALTY;
+                }
+            }
+            return penalty;
+        }
+
+        private double bonus(int position) {
+            if (pantryPicks.length == 0) {
+                return 0;
+            }
+            Double share = pantryShares.get(position);
+            return share != null ? PANTRY_WEIGHT * share : 0;
+        }
+    }
+}
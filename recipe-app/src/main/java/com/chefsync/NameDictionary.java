@@ -0,0 +1,305 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory name <-> ID lookup for a table with a unique Name column (Ingredients, Tags),
+ * loaded once so resolving a name does not need a query.
+ *
+ * Names are stored back to back in one char array, with the entries' offsets, IDs and
+ * hashes in parallel int arrays and two open-addressing tables (by name and by ID) of
+ * entry numbers. That is a handful of ints per name instead of a String, a boxed Integer
+ * and a map node in each direction.
+ *
+ * A name this process has not seen is looked up in the database on demand, so rows added
+ * elsewhere are still found. Rows created through {@link #resolve} are pending until the
+ * caller commits and calls {@link #publish()}; until then only the writer that created
+ * them sees them, and {@link #discardPending()} forgets them after a rollback. Creation
+ * uses INSERT OR IGNORE followed by a select, so a name added concurrently by another
+ * process resolves to its row instead of failing on the unique constraint.
+ */
+public class NameDictionary {
+
+    private final String table;
+    private final String selectSql;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private char[] chars = new char[1024];
+    private int charCount;
+    // Entry e's name is chars[starts[e], starts[e + 1])
+    private int[] starts = new int[65];
+    private int[] ids = new int[64];
+    private int[] hashes = new int[64];
+    private int count;
+    // Entry number + 1 in each slot, 0 when empty
+    private int[] byName = new int[128];
+    private int[] byId = new int[128];
+
+    // Created by the current writer and not yet committed; only the writer adds to it
+    private final Map<String, Integer> pending = new ConcurrentHashMap<>();
+
+    private NameDictionary(String table, String idColumn) {
+        this.table = table;
+        this.selectSql = "SELECT " + idColumn + " FROM " + table + " WHERE Name = ?";
+    }
+
+    /**
+     * Read every ID and name from {@code table}.
+     */
+    public static NameDictionary load(Connection conn, String table, String idColumn) throws SQLException {
+        NameDictionary dictionary = new NameDictionary(table, idColumn);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT " + idColumn + ", Name FROM " + table)) {
+            while (rs.next()) {
+                dictionary.add(rs.getInt(1), rs.getString(2));
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * The ID of a name already in the dictionary, or -1. Does not query the database.
+     */
+    public int idOf(String name) {
+        lock.readLock().lock();
+        try {
+            int entry = entryOf(name, hash(name));
+            return entry < 0 ? -1 : ids[entry];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The name for an ID, or null if the dictionary does not have it.
+     */
+    public String nameOf(int id) {
+        lock.readLock().lock();
+        try {
+            int mask = byId.length - 1;
+            for (int slot = mix(id) & mask; byId[slot] != 0; slot = (slot + 1) & mask) {
+                int entry = byId[slot] - 1;
+                if (ids[entry] == id) {
+                    return new String(chars, starts[entry], starts[entry + 1] - starts[entry]);
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The ID of a name, borrowing a reader to ask the database only when the dictionary
+     * does not know it.
+     *
+     * @return -1 if there is no such row
+     */
+    public int find(ConnectionManager db, String name) throws SQLException {
+        int id = idOf(name);
+        if (id >= 0) {
+            return id;
+        }
+        try (ConnectionManager.Lease lease = db.reader()) {
+            return find(lease, name);
+        }
+    }
+
+    /**
+     * The ID of a name, asking the database when the dictionary does not know it.
+     *
+     * @return -1 if there is no such row
+     */
+    public int find(ConnectionManager.Lease lease, String name) throws SQLException {
+        int id = idOf(name);
+        if (id >= 0) {
+            return id;
+        }
+        try (PreparedStatement select = lease.prepare(table + ".byName", selectSql)) {
+            select.setString(1, name);
+            try (ResultSet rs = select.executeQuery()) {
+                if (!rs.next()) {
+                    return -1;
+                }
+                id = rs.getInt(1);
+            }
+        }
+        if (!pending.containsKey(name)) {
+            // Not created by the open write transaction, so it is committed
+            put(id, name);
+        }
+        return id;
+    }
+
+    /**
+     * The ID of a name, creating its row with {@code insertSql} if there is none.
+     * Must be called with the writer lease; a created row is pending until {@link #publish()}.
+     *
+     * @param insertSql An INSERT OR IGNORE taking the name, then {@code values}
+     */
+    public int resolve(ConnectionManager.Lease writer, String name, String insertSql, Object... values)
+            throws SQLException {
+        Integer created = pending.get(name);
+        if (created != null) {
+            return created;
+        }
+        int id = find(writer, name);
+        if (id >= 0) {
+            return id;
+        }
+
+        try (PreparedStatement insert = writer.prepare(table + ".insert", insertSql)) {
+            insert.setString(1, name);
+            for (int i = 0; i < values.length; i++) {
+                insert.setObject(i + 2, values[i]);
+            }
+            insert.executeUpdate();
+        }
+        try (PreparedStatement select = writer.prepare(table + ".byName", selectSql)) {
+            select.setString(1, name);
+            try (ResultSet rs = select.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Creating " + table + " row for '" + name + "' failed, no ID obtained.");
+                }
+                id = rs.getInt(1);
+            }
+        }
+        pending.put(name, id);
+        return id;
+    }
+
+    /**
+     * Make the rows created since the last publish visible; call after committing.
+     */
+    public void publish() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<String, Integer> entry : pending.entrySet()) {
+                add(entry.getValue(), entry.getKey());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        pending.clear();
+    }
+
+    /**
+     * Forget rows created since the last publish; call when the transaction was rolled back.
+     * Does nothing after {@link #publish()}, so it is safe in a finally block.
+     */
+    public void discardPending() {
+        pending.clear();
+    }
+
+    private void put(int id, String name) {
+        lock.writeLock().lock();
+        try {
+            add(id, name);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock (or is still loading)
+    private void add(int id, String name) {
+        int hash = hash(name);
+        if (entryOf(name, hash) >= 0) {
+            return;
+        }
+        if (count == ids.length) {
+            int capacity = count * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            starts = Arrays.copyOf(starts, capacity + 1);
+        }
+        if (charCount + name.length() > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + name.length()));
+        }
+        name.getChars(0, name.length(), chars, charCount);
+        charCount += name.length();
+
+        int entry = count++;
+        ids[entry] = id;
+        hashes[entry] = hash;
+        starts[entry + 1] = charCount;
+
+        // Keep both tables at most half full
+        if (count * 2 > byName.length) {
+            rehash(byName.length * 2);
+        } else {
+            insertSlot(byName, hash, entry);
+            insertSlot(byId, mix(id), entry);
+        }
+    }
+
+    private void rehash(int capacity) {
+        byName = new int[capacity];
+        byId = new int[capacity];
+        for (int entry = 0; entry < count; entry++) {
+            insertSlot(byName, hashes[entry], entry);
+            insertSlot(byId, mix(ids[entry]), entry);
+        }
+    }
+
+    private static void insertSlot(int[] slots, int hash, int entry) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = entry + 1;
+    }
+
+    private int entryOf(String name, int hash) {
+        int mask = byName.length - 1;
+        for (int slot = hash & mask; byName[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = byName[slot] - 1;
+            if (hashes[entry] == hash && matches(entry, name)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(int entry, String name) {
+        int start = starts[entry];
+        if (starts[entry + 1] - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (chars[start + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(String name) {
+        return mix(name.hashCode());
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
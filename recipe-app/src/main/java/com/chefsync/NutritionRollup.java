@@ -0,0 +1,252 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Calorie and macro totals per meal plan day (MealPlanDailyNutrition) and per meal plan
+ * (MealPlanNutrition), so a plan's nutrition is read from one row however long it is.
+ *
+ * Triggers keep both tables current: adding or removing a MealPlanRecipes entry adds or
+ * subtracts that recipe's per-serving values, and changing a recipe's values adjusts every
+ * day it is planned on by the difference. A recipe missing nutrition counts as zero.
+ */
+public class NutritionRollup {
+
+    /**
+     * Totals for a day or a whole plan.
+     */
+    public static class Totals {
+        public final int days;
+        public final int meals;
+        public final double calories;
+        public final double protein;
+        public final double carbs;
+        public final double fats;
+
+        Totals(int days, int meals, double calories, double protein, double carbs, double fats) {
+            this.days = days;
+            this.meals = meals;
+            this.calories = calories;
+            this.protein = protein;
+            this.carbs = carbs;
+            this.fats = fats;
+        }
+
+        /**
+         * Averages per planned day; all zero if nothing is planned.
+         */
+        public Totals perDay() {
+            if (days == 0) {
+                return this;
+            }
+            return new Totals(1, meals / days, calories / days, protein / days, carbs / days, fats / days);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Calories: %.0f, Protein: %.1fg, Carbs: %.1fg, Fats: %.1fg", calories, protein, carbs, fats);
+        }
+    }
+
+    static final Totals NONE = new Totals(0, 0, 0, 0, 0, 0);
+
+    static final String[] CREATE_TABLES = {
+        "CREATE TABLE IF NOT EXISTS MealPlanDailyNutrition (" +
+            "PlanID INTEGER NOT NULL, " +
+            "MealDate TEXT NOT NULL, " +
+            "Meals INTEGER NOT NULL, " +
+            "Calories REAL NOT NULL, " +
+            "Protein REAL NOT NULL, " +
+            "Carbs REAL NOT NULL, " +
+            "Fats REAL NOT NULL, " +
+            "PRIMARY KEY (PlanID, MealDate)) WITHOUT ROWID",
+        "CREATE TABLE IF NOT EXISTS MealPlanNutrition (" +
+            "PlanID INTEGER PRIMARY KEY, " +
+            "Days INTEGER NOT NULL, " +
+            "Meals INTEGER NOT NULL, " +
+            "Calories REAL NOT NULL, " +
+            "Protein REAL NOT NULL, " +
+            "Carbs REAL NOT NULL, " +
+            "Fats REAL NOT NULL)",
+        // Finds the plan days a recipe is on when its nutrition changes
+        "CREATE INDEX IF NOT EXISTS idx_meal_plan_recipes_recipe ON MealPlanRecipes(RecipeID)"
+    };
+
+    private static final String MACROS =
+        "IFNULL(r.Calories, 0), IFNULL(r.Protein, 0), IFNULL(r.Carbs, 0), IFNULL(r.Fats, 0)";
+
+    // Count the entry %1$s into its day, then (if the day is new) its plan
+    private static final String ADD_ENTRY =
+        "INSERT INTO MealPlanNutrition (PlanID, Days, Meals, Calories, Protein, Carbs, Fats) " +
+            "SELECT %1$s.PlanID, NOT EXISTS (SELECT 1 FROM MealPlanDailyNutrition " +
+            "WHERE PlanID = %1$s.PlanID AND MealDate = %1$s.MealDate), 1, " + MACROS + " " +
+            "FROM Recipes r WHERE r.RecipeID = %1$s.RecipeID " +
+            "ON CONFLICT (PlanID) DO UPDATE SET Days = Days + excluded.Days, Meals = Meals + 1, " +
+            "Calories = Calories + excluded.Calories, Protein = Protein + excluded.Protein, " +
+            "Carbs = Carbs + excluded.Carbs, Fats = Fats + excluded.Fats; " +
+        "INSERT INTO MealPlanDailyNutrition (PlanID, MealDate, Meals, Calories, Protein, Carbs, Fats) " +
+            "SELECT %1$s.PlanID, %1$s.MealDate, 1, " + MACROS + " " +
+            "FROM Recipes r WHERE r.RecipeID = %1$s.RecipeID " +
+            "ON CONFLICT (PlanID, MealDate) DO UPDATE SET Meals = Meals + 1, " +
+            "Calories = Calories + excluded.Calories, Protein = Protein + excluded.Protein, " +
+            "Carbs = Carbs + excluded.Carbs, Fats = Fats + excluded.Fats; ";
+
+    // Take the entry %1$s out of its day, drop the day once empty, then take it out of its plan
+    private static final String REMOVE_ENTRY =
+        "UPDATE MealPlanDailyNutrition SET Meals = Meals - 1, " +
+            "Calories = MealPlanDailyNutrition.Calories - IFNULL(r.Calories, 0), " +
+            "Protein = MealPlanDailyNutrition.Protein - IFNULL(r.Protein, 0), " +
+            "Carbs = MealPlanDailyNutrition.Carbs - IFNULL(r.Carbs, 0), " +
+            "Fats = MealPlanDailyNutrition.Fats - IFNULL(r.Fats, 0) " +
+            "FROM Recipes r WHERE r.RecipeID = %1$s.RecipeID " +
+            "AND PlanID = %1$s.PlanID AND MealDate = %1$s.MealDate; " +
+        "DELETE FROM MealPlanDailyNutrition WHERE PlanID = %1$s.PlanID AND MealDate = %1$s.MealDate AND Meals <= 0; " +
+        "UPDATE MealPlanNutrition SET Meals = Meals - 1, " +
+            "Days = Days - (NOT EXISTS (SELECT 1 FROM MealPlanDailyNutrition " +
+            "WHERE PlanID = %1$s.PlanID AND MealDate = %1$s.MealDate)), " +
+            "Calories = MealPlanNutrition.Calories - IFNULL(r.Calories, 0), " +
+            "Protein = MealPlanNutrition.Protein - IFNULL(r.Protein, 0), " +
+            "Carbs = MealPlanNutrition.Carbs - IFNULL(r.Carbs, 0), " +
+            "Fats = MealPlanNutrition.Fats - IFNULL(r.Fats, 0) " +
+            "FROM Recipes r WHERE r.RecipeID = %1$s.RecipeID AND PlanID = %1$s.PlanID; " +
+        "DELETE FROM MealPlanNutrition WHERE PlanID = %1$s.PlanID AND Meals <= 0; ";
+
+    // Change per serving, times the number of times the recipe is planned on each day or plan
+    private static final String RECIPE_CHANGE =
+        "Calories = Calories + m.Entries * (IFNULL(new.Calories, 0) - IFNULL(old.Calories, 0)), " +
+        "Protein = Protein + m.Entries * (IFNULL(new.Protein, 0) - IFNULL(old.Protein, 0)), " +
+        "Carbs = Carbs + m.Entries * (IFNULL(new.Carbs, 0) - IFNULL(old.Carbs, 0)), " +
+        "Fats = Fats + m.Entries * (IFNULL(new.Fats, 0) - IFNULL(old.Fats, 0)) ";
+
+    static final String INSERT_TRIGGER =
+        "CREATE TRIGGER IF NOT EXISTS trg_meal_plan_recipes_nutrition_insert AFTER INSERT ON MealPlanRecipes BEGIN " +
+            String.format(ADD_ENTRY, "new") + "END";
+
+    static final String[] TRIGGERS = {
+        INSERT_TRIGGER,
+        "CREATE TRIGGER IF NOT EXISTS trg_meal_plan_recipes_nutrition_delete AFTER DELETE ON MealPlanRecipes BEGIN " +
+            String.format(REMOVE_ENTRY, "old") + "END",
+        "CREATE TRIGGER IF NOT EXISTS trg_meal_plan_recipes_nutrition_update " +
+            "AFTER UPDATE OF PlanID, RecipeID, MealDate ON MealPlanRecipes BEGIN " +
+            String.format(REMOVE_ENTRY, "old") + String.format(ADD_ENTRY, "new") + "END",
+        "CREATE TRIGGER IF NOT EXISTS trg_recipes_nutrition_update AFTER UPDATE OF Calories, Protein, Carbs, Fats ON Recipes " +
+            "WHEN old.Calories IS NOT new.Calories OR old.Protein IS NOT new.Protein " +
+            "OR old.Carbs IS NOT new.Carbs OR old.Fats IS NOT new.Fats BEGIN " +
+            "UPDATE MealPlanDailyNutrition SET " + RECIPE_CHANGE +
+            "FROM (SELECT PlanID, MealDate, COUNT(*) AS Entries FROM MealPlanRecipes " +
+            "WHERE RecipeID = new.RecipeID GROUP BY PlanID, MealDate) m " +
+            "WHERE MealPlanDailyNutrition.PlanID = m.PlanID AND MealPlanDailyNutrition.MealDate = m.MealDate; " +
+            "UPDATE MealPlanNutrition SET " + RECIPE_CHANGE +
+            "FROM (SELECT PlanID, COUNT(*) AS Entries FROM MealPlanRecipes " +
+            "WHERE RecipeID = new.RecipeID GROUP BY PlanID) m " +
+            "WHERE MealPlanNutrition.PlanID = m.PlanID; END",
+        "CREATE TRIGGER IF NOT EXISTS trg_meal_plans_nutrition_delete AFTER DELETE ON MealPlans BEGIN " +
+            "DELETE FROM MealPlanDailyNutrition WHERE PlanID = old.PlanID; " +
+            "DELETE FROM MealPlanNutrition WHERE PlanID = old.PlanID; END"
+    };
+
+    private static final String[] REBUILD_SQL = {
+        "DELETE FROM MealPlanDailyNutrition WHERE PlanID >= ?",
+        "DELETE FROM MealPlanNutrition WHERE PlanID >= ?",
+        "INSERT INTO MealPlanDailyNutrition (PlanID, MealDate, Meals, Calories, Protein, Carbs, Fats) " +
+            "SELECT mpr.PlanID, mpr.MealDate, COUNT(*), TOTAL(r.Calories), TOTAL(r.Protein), TOTAL(r.Carbs), TOTAL(r.Fats) " +
+            "FROM MealPlanRecipes mpr JOIN Recipes r ON r.RecipeID = mpr.RecipeID " +
+            "WHERE mpr.PlanID >= ? GROUP BY mpr.PlanID, mpr.MealDate",
+        "INSERT INTO MealPlanNutrition (PlanID, Days, Meals, Calories, Protein, Carbs, Fats) " +
+            "SELECT PlanID, COUNT(*), SUM(Meals), SUM(Calories), SUM(Protein), SUM(Carbs), SUM(Fats) " +
+            "FROM MealPlanDailyNutrition WHERE PlanID >= ? GROUP BY PlanID"
+    };
+
+    private static final String SELECT_PLAN =
+        "SELECT Days, Meals, Calories, Protein, Carbs, Fats FROM MealPlanNutrition WHERE PlanID = ?";
+
+    private static final String SELECT_DAYS =
+        "SELECT MealDate, Meals, Calories, Protein, Carbs, Fats FROM MealPlanDailyNutrition " +
+        "WHERE PlanID = ? ORDER BY MealDate";
+
+    /**
+     * Migration body: create the tables and triggers, then total the existing meal plans.
+     */
+    static void install(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : CREATE_TABLES) {
+                stmt.executeUpdate(sql);
+            }
+            for (String trigger : TRIGGERS) {
+                stmt.executeUpdate(trigger);
+            }
+        }
+        rebuildFrom(conn, 0);
+    }
+
+    /**
+     * Recompute the totals of every meal plan with an ID of at least {@code fromPlanId}.
+     * Runs inside the caller's transaction.
+     */
+    public static void rebuildFrom(Connection conn, int fromPlanId) throws SQLException {
+        for (String sql : REBUILD_SQL) {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, fromPlanId);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Drop the per-entry insert trigger for a bulk load of meal plans. Pair with
+     * {@link #resumeAfterBulkLoad} in the same transaction.
+     */
+    public static void suspendForBulkLoad(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DROP TRIGGER IF EXISTS trg_meal_plan_recipes_nutrition_insert");
+        }
+    }
+
+    /**
+     * Restore the trigger and total the plans loaded since {@code fromPlanId} in one pass.
+     */
+    public static void resumeAfterBulkLoad(Connection conn, int fromPlanId) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(INSERT_TRIGGER);
+        }
+        rebuildFrom(conn, fromPlanId);
+    }
+
+    /**
+     * A plan's totals; zero if nothing is planned in it.
+     */
+    public static Totals forPlan(ConnectionManager.Lease lease, int planId) throws SQLException {
+        try (PreparedStatement pstmt = lease.prepare("nutrition.plan", SELECT_PLAN)) {
+            pstmt.setInt(1, planId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? read(rs, rs.getInt(1)) : NONE;
+            }
+        }
+    }
+
+    /**
+     * A plan's totals per day with meals planned, by date.
+     */
+    public static Map<String, Totals> byDay(ConnectionManager.Lease lease, int planId) throws SQLException {
+        Map<String, Totals> days = new LinkedHashMap<>();
+        try (PreparedStatement pstmt = lease.prepare("nutrition.days", SELECT_DAYS)) {
+            pstmt.setInt(1, planId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    days.put(rs.getString(1), read(rs, 1));
+                }
+            }
+        }
+        return days;
+    }
+
+    private static Totals read(ResultSet rs, int days) throws SQLException {
+        return new Totals(days, rs.getInt(2), rs.getDouble(3), rs.getDouble(4), rs.getDouble(5), rs.getDouble(6));
+    }
+}
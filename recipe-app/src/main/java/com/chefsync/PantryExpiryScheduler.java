@@ -0,0 +1,206 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Resident schedule of "use it soon" alerts for every user's pantry: a hierarchical
+ * timing wheel of days, keyed by PantryItemID.
+ *
+ * An item falls due -Dchefsync.expiryWarningDays (3) days before its ExpiryDate. Items due
+ * in the next 64 days wait in the day slots of the first wheel, items due in the next 4096
+ * days in the 64-day slots of the second, and later ones in an overflow list. A second-wheel
+ * slot is moved down a wheel when its 64 days begin, and the overflow list is looked at
+ * once every 4096 days, so advancing a day touches one slot per wheel plus the items that
+ * fall due, however many are scheduled.
+ *
+ * Slots are doubly linked lists threaded through arrays indexed by PantryItemID (12 bytes
+ * an item), so scheduling and cancelling are O(1). Removed items need not be cancelled:
+ * they come due like the rest and are dropped when their row is not found.
+ */
+public class PantryExpiryScheduler {
+
+    public static final int WARNING_DAYS = Integer.getInteger("chefsync.expiryWarningDays", 3);
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    // Days covered by the second wheel
+    private static final int HORIZON = WHEEL_SIZE * WHEEL_SIZE;
+
+    // heads[] holds the day wheel, then the 64-day wheel, then the overflow list
+    private static final int SECOND_WHEEL = WHEEL_SIZE;
+    private static final int OVERFLOW = 2 * WHEEL_SIZE;
+
+    // Epoch day, from an ISO date or anything else SQLite's date functions accept
+    private static final String SELECT_EXPIRIES =
+        "SELECT PantryItemID, CAST(julianday(ExpiryDate) - 2440587.5 AS INTEGER) " +
+        "FROM Pantry WHERE ExpiryDate IS NOT NULL";
+
+    private final int[] heads = new int[OVERFLOW + 1];
+    private int[] due = new int[1024];
+    private int[] next = new int[1024];
+    // Previous item in the list, or -(list + 1) for the first; 0 when not scheduled
+    private int[] prev = new int[1024];
+    private long today;
+    private int scheduled;
+
+    /**
+     * @param today The last day already handled (epoch day); items come due from the day after
+     */
+    public PantryExpiryScheduler(long today) {
+        this.today = today;
+    }
+
+    /**
+     * Schedule every pantry item that has not yet expired by {@code today}. Items already in
+     * their warning period come due on {@code today} itself, so alerts missed while the app
+     * was not running are given on the first {@link #advanceTo}.
+     */
+    public static PantryExpiryScheduler load(Connection conn, long today) throws SQLException {
+        PantryExpiryScheduler scheduler = new PantryExpiryScheduler(today - 1);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(SELECT_EXPIRIES)) {
+            while (rs.next()) {
+                long expiry = rs.getLong(2);
+                if (!rs.wasNull()) {
+                    scheduler.insertItem(rs.getInt(1), expiry);
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Schedule (or reschedule) the alert for a pantry item expiring on {@code expiryDay}.
+     * Items already past their expiry are not scheduled.
+     */
+    public synchronized void schedule(int pantryItemId, long expiryDay) {
+        unlink(pantryItemId);
+        insertItem(pantryItemId, expiryDay);
+    }
+
+    public synchronized void cancel(int pantryItemId) {
+        unlink(pantryItemId);
+    }
+
+    private void insertItem(int pantryItemId, long expiryDay) {
+        if (pantryItemId <= 0 || expiryDay <= today) {
+            return;
+        }
+        if (pantryItemId >= due.length) {
+            int capacity = Math.max(due.length * 2, pantryItemId + 1);
+            due = Arrays.copyOf(due, capacity);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+        }
+        due[pantryItemId] = (int) Math.max(expiryDay - WARNING_DAYS, today + 1);
+        link(pantryItemId);
+        scheduled++;
+    }
+
+    /**
+     * Put an item in the list for its due day: its day slot if that is within the first
+     * wheel, its 64-day slot if within the second, otherwise the overflow list.
+     */
+    private void link(int pantryItemId) {
+        long ahead = due[pantryItemId] - today;
+        int list;
+        if (ahead < WHEEL_SIZE) {
+            list = due[pantryItemId] & WHEEL_MASK;
+        } else if (ahead < HORIZON) {
+            list = SECOND_WHEEL + ((due[pantryItemId] >>> WHEEL_BITS) & WHEEL_MASK);
+        } else {
+            list = OVERFLOW;
+        }
+        int first = heads[list];
+        next[pantryItemId] = first;
+        prev[pantryItemId] = -(list + 1);
+        if (first != 0) {
+            prev[first] = pantryItemId;
+        }
+        heads[list] = pantryItemId;
+    }
+
+    private void unlink(int pantryItemId) {
+        if (pantryItemId <= 0 || pantryItemId >= prev.length || prev[pantryItemId] == 0) {
+            return;
+        }
+        int before = prev[pantryItemId];
+        int after = next[pantryItemId];
+        if (before < 0) {
+            heads[-before - 1] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != 0) {
+            prev[after] = before;
+        }
+        prev[pantryItemId] = 0;
+        next[pantryItemId] = 0;
+        scheduled--;
+    }
+
+    /**
+     * Detach a whole list and return its first item; the rest follow through next[].
+     */
+    private int take(int list) {
+        int first = heads[list];
+        heads[list] = 0;
+        return first;
+    }
+
+    /**
+     * Move the wheel forward to {@code day}, one day at a time.
+     *
+     * @return The PantryItemIDs that came due, in no particular order
+     */
+    public synchronized int[] advanceTo(long day) {
+        int[] fired = new int[16];
+        int count = 0;
+        while (today < day) {
+            today++;
+            int slot = (int) today;
+            if ((slot & (HORIZON - 1)) == 0) {
+                cascade(take(OVERFLOW));
+            }
+            if ((slot & WHEEL_MASK) == 0) {
+                cascade(take(SECOND_WHEEL + ((slot >>> WHEEL_BITS) & WHEEL_MASK)));
+            }
+            for (int id = take(slot & WHEEL_MASK); id != 0; ) {
+                int following = next[id];
+                prev[id] = 0;
+                next[id] = 0;
+                scheduled--;
+                if (count == fired.length) {
+                    fired = Arrays.copyOf(fired, count * 2);
+                }
+                fired[count++] = id;
+                id = following;
+            }
+        }
+        return Arrays.copyOf(fired, count);
+    }
+
+    /**
+     * Relink a detached list against the current day, which moves it down a wheel.
+     */
+    private void cascade(int first) {
+        for (int id = first; id != 0; ) {
+            int following = next[id];
+            link(id);
+            id = following;
+        }
+    }
+
+    public synchronized long getToday() {
+        return today;
+    }
+
+    public synchronized int size() {
+        return scheduled;
+    }
+}
@@ -0,0 +1,147 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs EXPLAIN QUERY PLAN over the lookups RecipeManager issues and reports any that
+ * fall back to a full table scan or an unexpected temporary sort. Run with: DBInit --check-plans
+ */
+public class QueryPlanVerifier {
+
+    private static final Map<String, String> QUERIES = new LinkedHashMap<>();
+
+    // Ranked full-text matches have to be sorted; the page LIMIT keeps that sort to a top-k.
+    // Tag matches are only passed as a list when there are few enough to sort.
+    private static final Set<String> SORT_EXPECTED = new HashSet<>(Arrays.asList("keyword search", "search by tag"));
+
+    static {
+        QUERIES.put("login",
+            "SELECT UserID, Username FROM Users WHERE Username = ? AND Password = ?");
+        QUERIES.put("my recipes, next page",
+            "SELECT RecipeID, Title FROM Recipes WHERE (UserID = ?) AND (Title, RecipeID) > (?, ?) " +
+            "ORDER BY Title, RecipeID LIMIT ?");
+        QUERIES.put("public recipes, next page",
+            "SELECT RecipeID, Title FROM Recipes WHERE (IsPublic = 1) AND (Title, RecipeID) > (?, ?) " +
+            "ORDER BY Title, RecipeID LIMIT ?");
+        QUERIES.put("public recipes, previous page",
+            "SELECT RecipeID, Title FROM Recipes WHERE (IsPublic = 1) AND (Title, RecipeID) < (?, ?) " +
+            "ORDER BY Title DESC, RecipeID DESC LIMIT ?");
+        QUERIES.put("all recipes, next page",
+            "SELECT RecipeID, Title FROM Recipes WHERE (1=1) AND (Title, RecipeID) > (?, ?) " +
+            "ORDER BY Title, RecipeID LIMIT ?");
+        QUERIES.put("search by cuisine and difficulty",
+            "SELECT r.RecipeID FROM Recipes r WHERE (r.Cuisine = ? AND r.DifficultyLevel = ? AND r.IsPublic = 1) " +
+            "AND (r.Title, r.RecipeID) > (?, ?) ORDER BY r.Title, r.RecipeID LIMIT ?");
+        QUERIES.put("search by max cooking time",
+            "SELECT r.RecipeID FROM Recipes r WHERE (1=1 AND r.CookMinutes <= ? AND r.IsPublic = 1) " +
+            "AND (r.CookMinutes, r.RecipeID) > (?, ?) ORDER BY r.CookMinutes, r.RecipeID LIMIT ?");
+        // Tags are resolved against DietaryIndex; a short list of matches is passed as JSON
+        QUERIES.put("search by tag",
+            "SELECT r.RecipeID FROM Recipes r WHERE (1=1 AND r.RecipeID IN (SELECT value FROM json_each(?)) " +
+            "AND r.IsPublic = 1) AND (r.Title, r.RecipeID) > (?, ?) ORDER BY r.Title, r.RecipeID LIMIT ?");
+        QUERIES.put("search by rating, next page",
+            "SELECT r.RecipeID FROM Recipes r WHERE (1=1 AND r.IsPublic = 1) " +
+            "AND (r.AvgRating, r.RecipeID) < (?, ?) ORDER BY r.AvgRating DESC, r.RecipeID DESC LIMIT ?");
+        QUERIES.put("search by cuisine and rating, previous page",
+            "SELECT r.RecipeID FROM Recipes r WHERE (1=1 AND r.Cuisine = ? AND r.IsPublic = 1) " +
+            "AND (r.AvgRating, r.RecipeID) > (?, ?) ORDER BY r.AvgRating, r.RecipeID LIMIT ?");
+        QUERIES.put("keyword search",
+            "SELECT r.RecipeID, r.Title FROM RecipeSearch s JOIN Recipes r ON r.RecipeID = s.rowid " +
+            "WHERE RecipeSearch MATCH ? AND r.Cuisine = ? AND r.IsPublic = 1 ORDER BY s.rank, r.RecipeID LIMIT ?");
+        QUERIES.put("recipe ingredients",
+            "SELECT i.Name, ri.Quantity, ri.Unit FROM RecipeIngredients ri " +
+            "JOIN Ingredients i ON ri.IngredientID = i.IngredientID WHERE ri.RecipeID = ?");
+        QUERIES.put("recipes using ingredient",
+            "SELECT RecipeID FROM RecipeIngredients WHERE IngredientID = ?");
+        QUERIES.put("recipe tags",
+            "SELECT t.Name FROM RecipeTags rt JOIN Tags t ON rt.TagID = t.TagID WHERE rt.RecipeID = ?");
+        QUERIES.put("recipe feedback",
+            "SELECT u.Username, rf.Rating FROM RecipeFeedback rf JOIN Users u ON rf.UserID = u.UserID " +
+            "WHERE rf.RecipeID = ? ORDER BY rf.CreatedAt DESC");
+        QUERIES.put("existing feedback",
+            "SELECT FeedbackID FROM RecipeFeedback WHERE RecipeID = ? AND UserID = ?");
+        QUERIES.put("user ratings, best first",
+            "SELECT RecipeID, Rating FROM RecipeFeedback WHERE UserID = ? ORDER BY Rating DESC");
+        QUERIES.put("recipe neighbours",
+            "SELECT RecipeID, NeighbourID, Similarity FROM RecipeNeighbours " +
+            "WHERE RecipeID IN (SELECT value FROM json_each(?))");
+        QUERIES.put("user meal plans",
+            "SELECT PlanID, Name FROM MealPlans WHERE UserID = ?");
+        QUERIES.put("meal plan recipes",
+            "SELECT r.Title, mpr.MealDate, mpr.MealType FROM MealPlanRecipes mpr " +
+            "JOIN Recipes r ON mpr.RecipeID = r.RecipeID WHERE mpr.PlanID = ? ORDER BY mpr.MealDate, mpr.MealType");
+        QUERIES.put("pantry items",
+            "SELECT i.Name, p.Quantity FROM Pantry p JOIN Ingredients i ON p.IngredientID = i.IngredientID WHERE p.UserID = ?");
+        QUERIES.put("pantry ingredient ids",
+            "SELECT IngredientID FROM Pantry WHERE UserID = ?");
+        QUERIES.put("remove pantry item",
+            "SELECT PantryItemID FROM Pantry WHERE UserID = ? AND IngredientID = " +
+            "(SELECT IngredientID FROM Ingredients WHERE Name = ?)");
+        QUERIES.put("pantry ingredients, use soon",
+            "SELECT IngredientID, date(ExpiryDate) BETWEEN date('now', 'localtime') AND date('now', 'localtime', ?) AS UseSoon " +
+            "FROM Pantry WHERE UserID = ?");
+        QUERIES.put("unseen pantry alerts",
+            "SELECT i.Name, a.ExpiryDate FROM PantryAlerts a JOIN Pantry p ON p.PantryItemID = a.PantryItemID " +
+            "JOIN Ingredients i ON i.IngredientID = p.IngredientID WHERE a.UserID = ? AND a.Seen = 0 ORDER BY a.ExpiryDate");
+    }
+
+    /**
+     * Explain every registered query and print its plan.
+     *
+     * @return true if no query needs a full scan or a temporary B-tree
+     */
+    public static boolean verify(Connection conn) throws SQLException {
+        boolean ok = true;
+        for (Map.Entry<String, String> query : QUERIES.entrySet()) {
+            List<String> plan = explain(conn, query.getValue());
+            List<String> problems = problems(plan, SORT_EXPECTED.contains(query.getKey()));
+
+            System.out.println((problems.isEmpty() ? "[ok]   " : "[FAIL] ") + query.getKey());
+            for (String step : plan) {
+                System.out.println("         " + step);
+            }
+            ok &= problems.isEmpty();
+        }
+        return ok;
+    }
+
+    static List<String> explain(Connection conn, String sql) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                plan.add(rs.getString("detail"));
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * The steps of a plan that read a whole table, or sort when {@code sortExpected} is false.
+     */
+    static List<String> problems(List<String> plan, boolean sortExpected) {
+        List<String> problems = new ArrayList<>();
+        for (String step : plan) {
+            boolean sort = step.contains("USE TEMP B-TREE") && !sortExpected;
+            if (isFullScan(step) || sort) {
+                problems.add(step);
+            }
+        }
+        return problems;
+    }
+
+    private static boolean isFullScan(String step) {
+        // "SCAN r USING [COVERING] INDEX ..." walks an index; a bare "SCAN r" reads the whole table
+        return step.startsWith("SCAN ") && !step.contains(" INDEX ");
+    }
+}
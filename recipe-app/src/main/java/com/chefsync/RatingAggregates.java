@@ -0,0 +1,144 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Per-recipe rating count, sum and 1-5 star distribution (RecipeRatings), with the average
+ * and count copied onto Recipes.AvgRating and Recipes.RatingCount so rating filters and
+ * "top rated" orderings are served by indexes on Recipes.
+ *
+ * Triggers on RecipeFeedback keep both current as feedback is inserted, updated or deleted;
+ * a feedback row without a rating does not count. Overwriting a review must be an UPDATE
+ * (or an upsert, as {@code enhanceRecipeFeedback} does): INSERT OR REPLACE deletes the old
+ * row without firing delete triggers, so its rating would be counted twice.
+ */
+public class RatingAggregates {
+
+    static final String[] CREATE_TABLES = {
+        "CREATE TABLE IF NOT EXISTS RecipeRatings (" +
+            "RecipeID INTEGER PRIMARY KEY, " +
+            "RatingCount INTEGER NOT NULL, " +
+            "RatingSum INTEGER NOT NULL, " +
+            "Stars1 INTEGER NOT NULL, " +
+            "Stars2 INTEGER NOT NULL, " +
+            "Stars3 INTEGER NOT NULL, " +
+            "Stars4 INTEGER NOT NULL, " +
+            "Stars5 INTEGER NOT NULL)",
+        // 0 until a recipe is rated, so both stay NOT NULL and usable as keyset sort keys
+        "ALTER TABLE Recipes ADD COLUMN AvgRating REAL NOT NULL DEFAULT 0",
+        "ALTER TABLE Recipes ADD COLUMN RatingCount INTEGER NOT NULL DEFAULT 0",
+        // Top rated overall, or with a minimum rating
+        "CREATE INDEX IF NOT EXISTS idx_recipes_public_rating ON Recipes(IsPublic, AvgRating)",
+        // Top rated in a cuisine
+        "CREATE INDEX IF NOT EXISTS idx_recipes_public_cuisine_rating ON Recipes(IsPublic, Cuisine, AvgRating)"
+    };
+
+    // Count the rating of feedback row %1$s
+    private static final String ADD_RATING =
+        "INSERT INTO RecipeRatings (RecipeID, RatingCount, RatingSum, Stars1, Stars2, Stars3, Stars4, Stars5) " +
+            "SELECT %1$s.RecipeID, 1, %1$s.Rating, %1$s.Rating = 1, %1$s.Rating = 2, %1$s.Rating = 3, " +
+            "%1$s.Rating = 4, %1$s.Rating = 5 WHERE %1$s.Rating IS NOT NULL " +
+            "ON CONFLICT (RecipeID) DO UPDATE SET RatingCount = RatingCount + 1, " +
+            "RatingSum = RatingSum + excluded.RatingSum, Stars1 = Stars1 + excluded.Stars1, " +
+            "Stars2 = Stars2 + excluded.Stars2, Stars3 = Stars3 + excluded.Stars3, " +
+            "Stars4 = Stars4 + excluded.Stars4, Stars5 = Stars5 + excluded.Stars5; ";
+
+    // Take the rating of feedback row %1$s back out
+    private static final String REMOVE_RATING =
+        "UPDATE RecipeRatings SET RatingCount = RatingCount - 1, RatingSum = RatingSum - %1$s.Rating, " +
+            "Stars1 = Stars1 - (%1$s.Rating = 1), Stars2 = Stars2 - (%1$s.Rating = 2), " +
+            "Stars3 = Stars3 - (%1$s.Rating = 3), Stars4 = Stars4 - (%1$s.Rating = 4), " +
+            "Stars5 = Stars5 - (%1$s.Rating = 5) " +
+            "WHERE RecipeID = %1$s.RecipeID AND %1$s.Rating IS NOT NULL; " +
+        "DELETE FROM RecipeRatings WHERE RecipeID = %1$s.RecipeID AND RatingCount <= 0; ";
+
+    // Copy the recipe's average and count onto Recipes
+    private static final String SYNC_RECIPE =
+        "UPDATE Recipes SET " +
+            "AvgRating = IFNULL((SELECT CAST(RatingSum AS REAL) / RatingCount FROM RecipeRatings " +
+            "WHERE RecipeID = %1$s.RecipeID), 0), " +
+            "RatingCount = IFNULL((SELECT RatingCount FROM RecipeRatings WHERE RecipeID = %1$s.RecipeID), 0) " +
+            "WHERE RecipeID = %1$s.RecipeID; ";
+
+    static final String INSERT_TRIGGER =
+        "CREATE TRIGGER IF NOT EXISTS trg_feedback_rating_insert AFTER INSERT ON RecipeFeedback " +
+            "WHEN new.Rating IS NOT NULL BEGIN " +
+            String.format(ADD_RATING + SYNC_RECIPE, "new") + "END";
+
+    static final String[] TRIGGERS = {
+        INSERT_TRIGGER,
+        "CREATE TRIGGER IF NOT EXISTS trg_feedback_rating_delete AFTER DELETE ON RecipeFeedback " +
+            "WHEN old.Rating IS NOT NULL BEGIN " +
+            String.format(REMOVE_RATING + SYNC_RECIPE, "old") + "END",
+        "CREATE TRIGGER IF NOT EXISTS trg_feedback_rating_update AFTER UPDATE OF RecipeID, Rating ON RecipeFeedback " +
+            "WHEN old.RecipeID IS NOT new.RecipeID OR old.Rating IS NOT new.Rating BEGIN " +
+            String.format(REMOVE_RATING, "old") + String.format(ADD_RATING, "new") +
+            String.format(SYNC_RECIPE, "old") + String.format(SYNC_RECIPE, "new") + "END"
+    };
+
+    // The recipes with feedback from FeedbackID ? on
+    private static final String CHANGED_RECIPES =
+        "(SELECT DISTINCT RecipeID FROM RecipeFeedback WHERE FeedbackID >= ?)";
+
+    private static final String[] REBUILD_SQL = {
+        "DELETE FROM RecipeRatings WHERE RecipeID IN " + CHANGED_RECIPES,
+        "INSERT INTO RecipeRatings (RecipeID, RatingCount, RatingSum, Stars1, Stars2, Stars3, Stars4, Stars5) " +
+            "SELECT RecipeID, COUNT(*), SUM(Rating), SUM(Rating = 1), SUM(Rating = 2), SUM(Rating = 3), " +
+            "SUM(Rating = 4), SUM(Rating = 5) FROM RecipeFeedback " +
+            "WHERE Rating IS NOT NULL AND RecipeID IN " + CHANGED_RECIPES + " GROUP BY RecipeID",
+        "UPDATE Recipes SET AvgRating = CAST(rr.RatingSum AS REAL) / rr.RatingCount, RatingCount = rr.RatingCount " +
+            "FROM RecipeRatings rr WHERE rr.RecipeID = Recipes.RecipeID AND rr.RecipeID IN " + CHANGED_RECIPES
+    };
+
+    /**
+     * Migration body: create the table, columns, indexes and triggers, then total the
+     * existing feedback.
+     */
+    static void install(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : CREATE_TABLES) {
+                stmt.executeUpdate(sql);
+            }
+            for (String trigger : TRIGGERS) {
+                stmt.executeUpdate(trigger);
+            }
+        }
+        rebuildFrom(conn, 0);
+    }
+
+    /**
+     * Recompute the ratings of every recipe with feedback from {@code fromFeedbackId} on.
+     * Runs inside the caller's transaction.
+     */
+    public static void rebuildFrom(Connection conn, int fromFeedbackId) throws SQLException {
+        for (String sql : REBUILD_SQL) {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, fromFeedbackId);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Drop the per-row insert trigger for a bulk load of feedback. Pair with
+     * {@link #resumeAfterBulkLoad} in the same transaction.
+     */
+    public static void suspendForBulkLoad(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DROP TRIGGER IF EXISTS trg_feedback_rating_insert");
+        }
+    }
+
+    /**
+     * Restore the trigger and total the recipes given feedback since {@code fromFeedbackId}.
+     */
+    public static void resumeAfterBulkLoad(Connection conn, int fromFeedbackId) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(INSERT_TRIGGER);
+        }
+        rebuildFrom(conn, fromFeedbackId);
+    }
+}
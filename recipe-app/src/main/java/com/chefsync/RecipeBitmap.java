@@ -0,0 +1,397 @@
+package com.chefsync;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of RecipeIDs in the roaring bitmap layout.
+ *
+ * IDs are split by their high 16 bits into chunks of 65536. A chunk holding up to 4096
+ * IDs keeps their low 16 bits as a sorted char array; a fuller one switches to a plain
+ * 8 KB bitset, so no chunk costs more than 2 bytes per ID or 1 bit per possible ID.
+ * The set operations work a chunk at a time and return a new bitmap, leaving both
+ * inputs unchanged. IDs must not be negative. Not thread-safe.
+ */
+public class RecipeBitmap {
+
+    // Largest array chunk; 4096 chars is the same 8 KB as a bitset chunk
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    /**
+     * The low 16 bits of the IDs in one chunk: sorted in {@code values}, or set in {@code words}.
+     */
+    private static final class Chunk {
+        char[] values;
+        long[] words;
+        int cardinality;
+
+        static Chunk ofValues(char[] values, int cardinality) {
+            Chunk chunk = new Chunk();
+            chunk.values = values;
+            chunk.cardinality = cardinality;
+            return chunk;
+        }
+
+        /**
+         * A chunk for the bits in {@code words}, as an array chunk if there are few enough;
+         * null if none are set.
+         */
+        static Chunk ofWords(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality == 0) {
+                return null;
+            }
+            Chunk chunk = new Chunk();
+            chunk.cardinality = cardinality;
+            if (cardinality > ARRAY_MAX) {
+                chunk.words = words;
+                return chunk;
+            }
+            chunk.values = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < WORDS; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    chunk.values[n++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+                }
+            }
+            return chunk;
+        }
+
+        boolean contains(char low) {
+            if (words != null) {
+                return (words[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        void add(char low) {
+            if (words != null) {
+                long bit = 1L << low;
+                if ((words[low >>> 6] & bit) == 0) {
+                    words[low >>> 6] |= bit;
+                    cardinality++;
+                }
+                return;
+            }
+            // IDs mostly arrive in order, so try appending first
+            int pos = cardinality == 0 || values[cardinality - 1] < low
+                    ? -cardinality - 1
+                    : Arrays.binarySearch(values, 0, cardinality, low);
+            if (pos >= 0) {
+                return;
+            }
+            if (cardinality == ARRAY_MAX) {
+                words = toWords();
+                values = null;
+                add(low);
+                return;
+            }
+            pos = -pos - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(values, pos, values, pos + 1, cardinality - pos);
+            values[pos] = low;
+            cardinality++;
+        }
+
+        long[] toWords() {
+            if (words != null) {
+                return words.clone();
+            }
+            long[] bits = new long[WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bits[values[i] >>> 6] |= 1L << values[i];
+            }
+            return bits;
+        }
+
+        Chunk copy() {
+            Chunk chunk = new Chunk();
+            chunk.cardinality = cardinality;
+            if (words != null) {
+                chunk.words = words.clone();
+            } else {
+                chunk.values = Arrays.copyOf(values, cardinality);
+            }
+            return chunk;
+        }
+
+        static Chunk and(Chunk a, Chunk b) {
+            if (a.words != null && b.words != null) {
+                long[] bits = new long[WORDS];
+                for (int i = 0; i < WORDS; i++) {
+                    bits[i] = a.words[i] & b.words[i];
+                }
+                return ofWords(bits);
+            }
+            if (a.words != null) {
+                return filter(b, a, true);
+            }
+            if (b.words != null) {
+                return filter(a, b, true);
+            }
+            // Both arrays: merge
+            char[] out = new char[Math.min(a.cardinality, b.cardinality)];
+            int n = 0;
+            for (int i = 0, j = 0; i < a.cardinality && j < b.cardinality; ) {
+                if (a.values[i] < b.values[j]) {
+                    i++;
+                } else if (a.values[i] > b.values[j]) {
+                    j++;
+                } else {
+                    out[n++] = a.values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return n == 0 ? null : ofValues(out, n);
+        }
+
+        static Chunk or(Chunk a, Chunk b) {
+            if (a.words == null && b.words == null && a.cardinality + b.cardinality <= ARRAY_MAX) {
+                char[] out = new char[a.cardinality + b.cardinality];
+                int n = 0;
+                int i = 0;
+                int j = 0;
+                while (i < a.cardinality && j < b.cardinality) {
+                    char x = a.values[i];
+                    char y = b.values[j];
+                    out[n++] = x <= y ? x : y;
+                    if (x <= y) {
+                        i++;
+                    }
+                    if (y <= x) {
+                        j++;
+                    }
+                }
+                while (i < a.cardinality) {
+                    out[n++] = a.values[i++];
+                }
+                while (j < b.cardinality) {
+                    out[n++] = b.values[j++];
+                }
+                return ofValues(out, n);
+            }
+            long[] bits = a.toWords();
+            if (b.words != null) {
+                for (int i = 0; i < WORDS; i++) {
+                    bits[i] |= b.words[i];
+                }
+            } else {
+                for (int i = 0; i < b.cardinality; i++) {
+                    bits[b.values[i] >>> 6] |= 1L << b.values[i];
+                }
+            }
+            return ofWords(bits);
+        }
+
+        static Chunk andNot(Chunk a, Chunk b) {
+            if (a.words == null) {
+                return filter(a, b, false);
+            }
+            long[] bits = a.words.clone();
+            if (b.words != null) {
+                for (int i = 0; i < WORDS; i++) {
+                    bits[i] &= ~b.words[i];
+                }
+            } else {
+                for (int i = 0; i < b.cardinality; i++) {
+                    bits[b.values[i] >>> 6] &= ~(1L << b.values[i]);
+                }
+            }
+            return ofWords(bits);
+        }
+
+        // The values of array chunk a that are (or are not) in b
+        private static Chunk filter(Chunk a, Chunk b, boolean keepIfPresent) {
+            char[] out = new char[a.cardinality];
+            int n = 0;
+            for (int i = 0; i < a.cardinality; i++) {
+                if (b.contains(a.values[i]) == keepIfPresent) {
+                    out[n++] = a.values[i];
+                }
+            }
+            return n == 0 ? null : ofValues(out, n);
+        }
+    }
+
+    // Sorted high 16 bits, and the chunk for each
+    private char[] keys = new char[4];
+    private Chunk[] chunks = new Chunk[4];
+    private int size;
+
+    public RecipeBitmap() {
+    }
+
+    public static RecipeBitmap of(int... recipeIds) {
+        RecipeBitmap bitmap = new RecipeBitmap();
+        for (int recipeId : recipeIds) {
+            bitmap.add(recipeId);
+        }
+        return bitmap;
+    }
+
+    public void add(int recipeId) {
+        if (recipeId < 0) {
+            throw new IllegalArgumentException("Recipe ID must not be negative: " + recipeId);
+        }
+        char key = (char) (recipeId >>> 16);
+        int pos = size > 0 && keys[size - 1] == key ? size - 1 : Arrays.binarySearch(keys, 0, size, key);
+        if (pos < 0) {
+            pos = -pos - 1;
+            insertChunk(pos, key, Chunk.ofValues(new char[4], 0));
+        }
+        chunks[pos].add((char) recipeId);
+    }
+
+    public boolean contains(int recipeId) {
+        if (recipeId < 0) {
+            return false;
+        }
+        int pos = Arrays.binarySearch(keys, 0, size, (char) (recipeId >>> 16));
+        return pos >= 0 && chunks[pos].contains((char) recipeId);
+    }
+
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += chunks[i].cardinality;
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * The IDs in ascending order.
+     */
+    public int[] toArray() {
+        int[] ids = new int[cardinality()];
+        int n = 0;
+        for (int c = 0; c < size; c++) {
+            int high = keys[c] << 16;
+            Chunk chunk = chunks[c];
+            if (chunk.words == null) {
+                for (int i = 0; i < chunk.cardinality; i++) {
+                    ids[n++] = high | chunk.values[i];
+                }
+            } else {
+                for (int i = 0; i < WORDS; i++) {
+                    for (long word = chunk.words[i]; word != 0; word &= word - 1) {
+                        ids[n++] = high | (i * 64 + Long.numberOfTrailingZeros(word));
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    public RecipeBitmap copy() {
+        RecipeBitmap result = new RecipeBitmap();
+        result.keys = Arrays.copyOf(keys, Math.max(4, size));
+        result.chunks = new Chunk[result.keys.length];
+        for (int i = 0; i < size; i++) {
+            result.chunks[i] = chunks[i].copy();
+        }
+        result.size = size;
+        return result;
+    }
+
+    /**
+     * The IDs in both this bitmap and {@code other}.
+     */
+    public RecipeBitmap and(RecipeBitmap other) {
+        RecipeBitmap result = new RecipeBitmap();
+        for (int i = 0, j = 0; i < size && j < other.size; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.append(keys[i], Chunk.and(chunks[i], other.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The IDs in this bitmap, {@code other} or both.
+     */
+    public RecipeBitmap or(RecipeBitmap other) {
+        RecipeBitmap result = new RecipeBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], chunks[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.chunks[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], Chunk.or(chunks[i], other.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The IDs in this bitmap that are not in {@code other}.
+     */
+    public RecipeBitmap andNot(RecipeBitmap other) {
+        RecipeBitmap result = new RecipeBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.size && other.keys[j] == keys[i]) {
+                result.append(keys[i], Chunk.andNot(chunks[i], other.chunks[j]));
+            } else {
+                result.append(keys[i], chunks[i].copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Approximate heap used by the chunks, in bytes.
+     */
+    public long getMemoryBytes() {
+        long bytes = (long) keys.length * (Character.BYTES + 8);
+        for (int i = 0; i < size; i++) {
+            Chunk chunk = chunks[i];
+            bytes += chunk.words != null ? (long) WORDS * Long.BYTES : (long) chunk.values.length * Character.BYTES;
+        }
+        return bytes;
+    }
+
+    // Keys are appended in ascending order; an empty (null) chunk is skipped
+    private void append(char key, Chunk chunk) {
+        if (chunk != null) {
+            insertChunk(size, key, chunk);
+        }
+    }
+
+    private void insertChunk(int pos, char key, Chunk chunk) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            chunks = Arrays.copyOf(chunks, size * 2);
+        }
+        System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+        System.arraycopy(chunks, pos, chunks, pos + 1, size - pos);
+        keys[pos] = key;
+        chunks[pos] = chunk;
+        size++;
+    }
+}
@@ -0,0 +1,329 @@
+package com.chefsync;
+
+import java.io.PrintStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Everything the recipe details screen shows for one recipe, loaded together so it
+ * can be cached and printed without going back to the database. Immutable.
+ */
+public class RecipeDetail {
+
+    public static class Ingredient {
+        public final int ingredientId;
+        public final String name;
+        public final float quantity;
+        public final String unit;
+
+        Ingredient(int ingredientId, String name, float quantity, String unit) {
+            this.ingredientId = ingredientId;
+            this.name = name;
+            this.quantity = quantity;
+            this.unit = unit;
+        }
+    }
+
+    public static class Tag {
+        public final int tagId;
+        public final String name;
+
+        Tag(int tagId, String name) {
+            this.tagId = tagId;
+            this.name = name;
+        }
+    }
+
+    /**
+     * A recipe people who liked this one also liked (see {@link RecipeNeighbours}).
+     */
+    public static class Neighbour {
+        public final int recipeId;
+        public final String title;
+
+        Neighbour(int recipeId, String title) {
+            this.recipeId = recipeId;
+            this.title = title;
+        }
+    }
+
+    public static class Feedback {
+        public final String username;
+        public final int rating;
+        public final String difficultyRating;
+        public final String actualCookingTime;
+        public final String comment;
+        public final String createdAt;
+
+        Feedback(String username, int rating, String difficultyRating, String actualCookingTime,
+                 String comment, String createdAt) {
+            this.username = username;
+            this.rating = rating;
+            this.difficultyRating = difficultyRating;
+            this.actualCookingTime = actualCookingTime;
+            this.comment = comment;
+            this.createdAt = createdAt;
+        }
+    }
+
+    public final int recipeId;
+    public final String title;
+    public final String instructions;
+    public final String cuisine;
+    public final String difficultyLevel;
+    public final String prepTime;
+    public final String cookingTime;
+    public final int servings;
+    public final int calories;
+    public final float protein;
+    public final float carbs;
+    public final float fats;
+    public final double avgRating;
+    public final int ratingCount;
+    /** Ratings given per star, 1 star at index 0 */
+    public final int[] starCounts;
+    public final List<Ingredient> ingredients;
+    public final List<Tag> tags;
+    public final List<Feedback> feedback;
+    public final List<Neighbour> alsoLiked;
+
+    private RecipeDetail(ResultSet rs, List<Ingredient> ingredients, List<Tag> tags, List<Feedback> feedback,
+                         List<Neighbour> alsoLiked) throws SQLException {
+        this.recipeId = rs.getInt("RecipeID");
+        this.title = rs.getString("Title");
+        this.instructions = rs.getString("Instructions");
+        this.cuisine = rs.getString("Cuisine");
+        this.difficultyLevel = rs.getString("DifficultyLevel");
+        this.prepTime = rs.getString("PrepTime");
+        this.cookingTime = rs.getString("CookingTime");
+        this.servings = rs.getInt("Servings");
+        this.calories = rs.getInt("Calories");
+        this.protein = rs.getFloat("Protein");
+        this.carbs = rs.getFloat("Carbs");
+        this.fats = rs.getFloat("Fats");
+        this.avgRating = rs.getDouble("AvgRating");
+        this.ratingCount = rs.getInt("RatingCount");
+        this.starCounts = new int[5];
+        for (int star = 1; star <= 5; star++) {
+            starCounts[star - 1] = rs.getInt("Stars" + star);
+        }
+        this.ingredients = Collections.unmodifiableList(ingredients);
+        this.tags = Collections.unmodifiableList(tags);
+        this.feedback = Collections.unmodifiableList(feedback);
+        this.alsoLiked = Collections.unmodifiableList(alsoLiked);
+    }
+
+    private static final int ALSO_LIKED_LIMIT = 5;
+
+    /*
+     * One row per recipe, with its ingredients, tags and feedback folded into JSON arrays
+     * by correlated subqueries. Each element is a positional json_array rather than a
+     * json_object so the keys are not repeated for every row.
+     */
+    private static final String SELECT_DETAILS = "SELECT " +
+            "r.RecipeID, r.Title, r.Instructions, r.Cuisine, r.DifficultyLevel, " +
+            "r.PrepTime, r.CookingTime, r.Servings, r.Calories, r.Protein, " +
+            "r.Carbs, r.Fats, r.AvgRating, r.RatingCount, " +
+            "rr.Stars1, rr.Stars2, rr.Stars3, rr.Stars4, rr.Stars5, " +
+            "(SELECT json_group_array(json_array(ri.IngredientID, i.Name, ri.Quantity, ri.Unit) " +
+            "ORDER BY ri.IngredientID) " +
+            "FROM RecipeIngredients ri " +
+            "JOIN Ingredients i ON ri.IngredientID = i.IngredientID " +
+            "WHERE ri.RecipeID = r.RecipeID) AS IngredientsJson, " +
+            "(SELECT json_group_array(json_array(rt.TagID, t.Name) ORDER BY rt.TagID) " +
+            "FROM RecipeTags rt " +
+            "JOIN Tags t ON rt.TagID = t.TagID " +
+            "WHERE rt.RecipeID = r.RecipeID) AS TagsJson, " +
+            "(SELECT json_group_array(json_array(u.Username, rf.Rating, rf.DifficultyRating, " +
+            "rf.ActualCookingTime, rf.Comment, rf.CreatedAt) " +
+            "ORDER BY rf.CreatedAt DESC, rf.FeedbackID DESC) " +
+            "FROM RecipeFeedback rf " +
+            "JOIN Users u ON rf.UserID = u.UserID " +
+            "WHERE rf.RecipeID = r.RecipeID) AS FeedbackJson, " +
+            "(SELECT json_group_array(json_array(n.NeighbourID, n.Title) ORDER BY n.Similarity DESC) " +
+            "FROM (SELECT rn.NeighbourID, rn.Similarity, nr.Title FROM RecipeNeighbours rn " +
+            "JOIN Recipes nr ON nr.RecipeID = rn.NeighbourID " +
+            "WHERE rn.RecipeID = r.RecipeID AND nr.IsPublic = 1 " +
+            "ORDER BY rn.Similarity DESC LIMIT " + ALSO_LIKED_LIMIT + ") n) AS AlsoLikedJson " +
+            "FROM Recipes r " +
+            "LEFT JOIN RecipeRatings rr ON rr.RecipeID = r.RecipeID ";
+
+    /**
+     * Load a recipe with its ingredients, tags and feedback (newest first) in one query.
+     *
+     * @return null if there is no recipe with that ID
+     */
+    public static RecipeDetail load(ConnectionManager.Lease lease, int recipeId) throws SQLException {
+        try (PreparedStatement pstmt = lease.prepare("recipes.detail", SELECT_DETAILS + "WHERE r.RecipeID = ?")) {
+            pstmt.setInt(1, recipeId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? fromRow(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * Load several recipes in one query. The IDs are bound as a single JSON array, so
+     * the statement text is the same however many are asked for.
+     *
+     * @return The details found, keyed by recipe ID in the order requested; missing
+     *         recipes are left out
+     */
+    public static Map<Integer, RecipeDetail> loadAll(ConnectionManager.Lease lease, int[] recipeIds) throws SQLException {
+        Map<Integer, RecipeDetail> details = new LinkedHashMap<>();
+        if (recipeIds.length == 0) {
+            return details;
+        }
+
+        for (int recipeId : recipeIds) {
+            details.put(recipeId, null);
+        }
+
+        try (PreparedStatement pstmt = lease.prepare("recipes.details", SELECT_DETAILS +
+                "WHERE r.RecipeID IN (SELECT value FROM json_each(?))")) {
+            pstmt.setString(1, Json.array(recipeIds));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    RecipeDetail detail = fromRow(rs);
+                    details.put(detail.recipeId, detail);
+                }
+            }
+        }
+        details.values().removeIf(Objects::isNull);
+        return details;
+    }
+
+    private static RecipeDetail fromRow(ResultSet rs) throws SQLException {
+        List<Ingredient> ingredients = new ArrayList<>();
+        for (List<Object> row : rows(rs.getString("IngredientsJson"))) {
+            ingredients.add(new Ingredient(toInt(row.get(0)), (String) row.get(1),
+                    (float) toDouble(row.get(2)), (String) row.get(3)));
+        }
+
+        List<Tag> tags = new ArrayList<>();
+        for (List<Object> row : rows(rs.getString("TagsJson"))) {
+            tags.add(new Tag(toInt(row.get(0)), (String) row.get(1)));
+        }
+
+        List<Feedback> feedback = new ArrayList<>();
+        for (List<Object> row : rows(rs.getString("FeedbackJson"))) {
+            feedback.add(new Feedback((String) row.get(0), toInt(row.get(1)), (String) row.get(2),
+                    (String) row.get(3), (String) row.get(4), (String) row.get(5)));
+        }
+
+        List<Neighbour> alsoLiked = new ArrayList<>();
+        for (List<Object> row : rows(rs.getString("AlsoLikedJson"))) {
+            alsoLiked.add(new Neighbour(toInt(row.get(0)), (String) row.get(1)));
+        }
+
+        return new RecipeDetail(rs, ingredients, tags, feedback, alsoLiked);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<List<Object>> rows(String json) {
+        return (List<List<Object>>) Json.parse(json);
+    }
+
+    // Json.parse reads every number as a Double; SQL NULL reads as 0, as ResultSet.getInt does
+    private static int toInt(Object value) {
+        return value != null ? ((Number) value).intValue() : 0;
+    }
+
+    private static double toDouble(Object value) {
+        return value != null ? ((Number) value).doubleValue() : 0;
+    }
+
+    public boolean usesIngredient(int ingredientId) {
+        for (Ingredient ingredient : ingredients) {
+            if (ingredient.ingredientId == ingredientId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasTag(int tagId) {
+        for (Tag tag : tags) {
+            if (tag.tagId == tagId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Print the recipe the way the recipe details screen shows it.
+     */
+    public void print(PrintStream out) {
+        out.println("\n--- Recipe Details ---");
+        out.println("=" + "=".repeat(30));
+        out.println("📜 Title: " + title);
+        out.println("🌍 Cuisine: " + cuisine);
+        out.println("🔥 Difficulty: " + difficultyLevel);
+        out.println("⏰ Prep Time: " + prepTime + " minutes");
+        out.println("🍳 Cooking Time: " + cookingTime + " minutes");
+        out.println("👥 Servings: " + servings);
+
+        out.println("\n🍎 Nutritional Information:");
+        out.println("    Calories: " + calories);
+        out.println("    Protein: " + protein + "g");
+        out.println("    Carbs: " + carbs + "g");
+        out.println("    Fats: " + fats + "g");
+
+        out.println("\n🥬 Ingredients:");
+        for (Ingredient ingredient : ingredients) {
+            out.printf("    - %s: %.2f %s\n", ingredient.name, ingredient.quantity, ingredient.unit);
+        }
+        if (ingredients.isEmpty()) {
+            out.println("    No ingredients found.");
+        }
+
+        if (!tags.isEmpty()) {
+            StringBuilder names = new StringBuilder();
+            for (Tag tag : tags) {
+                if (names.length() > 0) {
+                    names.append(", ");
+                }
+                names.append(tag.name);
+            }
+            out.println("\n🏷️ Tags: " + names);
+        }
+
+        out.println("\n📖 Instructions:");
+        out.println(instructions);
+
+        out.println("\n📝 Recipe Feedback:");
+        if (ratingCount > 0) {
+            out.printf("⭐ Average Rating: %.1f/5 (%d %s)%n", avgRating, ratingCount, ratingCount == 1 ? "rating" : "ratings");
+            for (int star = 5; star >= 1; star--) {
+                out.printf("    %d star: %d%n", star, starCounts[star - 1]);
+            }
+        }
+        for (Feedback entry : feedback) {
+            out.println("\n👤 User: " + entry.username);
+            out.println("⭐ Rating: " + entry.rating + "/5");
+            out.println("🔥 Difficulty Rating: " + entry.difficultyRating + "/5");
+            out.println("⏰ Actual Cooking Time: " +
+                    (entry.actualCookingTime != null ? entry.actualCookingTime + " minutes" : "Not specified"));
+            out.println("💬 Comment: " + (entry.comment != null ? entry.comment : "No comment"));
+            out.println("📅 Submitted: " + entry.createdAt);
+        }
+        if (feedback.isEmpty()) {
+            out.println("No feedback available for this recipe.");
+        }
+
+        if (!alsoLiked.isEmpty()) {
+            out.println("\n👥 People who liked this also liked:");
+            for (Neighbour neighbour : alsoLiked) {
+                out.println("    - " + neighbour.title + " (ID " + neighbour.recipeId + ")");
+            }
+        }
+    }
+}
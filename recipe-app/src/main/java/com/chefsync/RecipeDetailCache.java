@@ -0,0 +1,275 @@
+package com.chefsync;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded LRU cache of {@link RecipeDetail}s, read through on a miss.
+ *
+ * The bound is on size rather than entry count: each detail weighs one unit per row it
+ * was built from (recipe, ingredients, tags, feedback, neighbours), because popular
+ * recipes carry thousands of feedback rows and would otherwise dominate memory. Least
+ * recently used details are evicted until the total fits; a detail heavier than the
+ * whole cache is served but not kept.
+ *
+ * Writers call the invalidate methods after committing a change that alters what a
+ * recipe's details show: its own rows, its feedback, or an ingredient or tag it uses.
+ * A load that overlaps an invalidation is returned but not cached, so a detail read
+ * before a commit can never be stored after it. Only changes made in this process are
+ * seen; the size is set with -Dchefsync.detailCacheRows (default 100000, 0 disables).
+ */
+public class RecipeDetailCache {
+
+    public static final long DEFAULT_CAPACITY = Long.getLong("chefsync.detailCacheRows", 100_000L);
+
+    /**
+     * Reads a recipe from the database.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        RecipeDetail load(int recipeId) throws SQLException;
+    }
+
+    /**
+     * Reads several recipes from the database at once, leaving out any that do not exist.
+     */
+    @FunctionalInterface
+    public interface BatchLoader {
+        Map<Integer, RecipeDetail> loadAll(int[] recipeIds) throws SQLException;
+    }
+
+    /**
+     * Counters since the cache was created.
+     */
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+        private final int size;
+        private final long weight;
+
+        Stats(long hits, long misses, long evictions, long invalidations, int size, long weight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        /**
+         * Number of cached recipes.
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Rows' worth of data held, against the capacity.
+         */
+        public long getWeight() {
+            return weight;
+        }
+
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("size=%d (%d rows), hits=%d, misses=%d (hit rate %.1f%%), evictions=%d, invalidations=%d",
+                    size, weight, hits, misses, getHitRate() * 100, evictions, invalidations);
+        }
+    }
+
+    private final long capacity;
+    // Access order, so iteration starts at the least recently used
+    private final LinkedHashMap<Integer, RecipeDetail> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public RecipeDetailCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Total weight (rows) the cache may hold
+     */
+    public RecipeDetailCache(long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        this.capacity = capacity;
+    }
+
+    static long weigh(RecipeDetail detail) {
+        return 1L + detail.ingredients.size() + detail.tags.size() + detail.feedback.size() + detail.alsoLiked.size();
+    }
+
+    /**
+     * The cached detail for a recipe, loading it on a miss.
+     *
+     * @return null if the recipe does not exist (misses are not cached)
+     */
+    public RecipeDetail get(int recipeId, Loader loader) throws SQLException {
+        long seen;
+        synchronized (this) {
+            RecipeDetail detail = entries.get(recipeId);
+            if (detail != null) {
+                hits++;
+                return detail;
+            }
+            misses++;
+            seen = invalidations;
+        }
+
+        // Loaded without holding the lock, so other lookups carry on meanwhile
+        RecipeDetail detail = loader.load(recipeId);
+        if (detail != null && weigh(detail) <= capacity) {
+            synchronized (this) {
+                if (invalidations == seen) {
+                    put(recipeId, detail);
+                }
+            }
+        }
+        return detail;
+    }
+
+    /**
+     * The details for several recipes, with every miss fetched by one call to {@code loader}.
+     *
+     * @return The details in the order requested; recipes that do not exist are left out
+     */
+    public Map<Integer, RecipeDetail> getAll(int[] recipeIds, BatchLoader loader) throws SQLException {
+        Map<Integer, RecipeDetail> details = new LinkedHashMap<>();
+        int[] missing = new int[recipeIds.length];
+        int missCount = 0;
+        long seen;
+        synchronized (this) {
+            for (int recipeId : recipeIds) {
+                if (details.containsKey(recipeId)) {
+                    continue;
+                }
+                RecipeDetail detail = entries.get(recipeId);
+                if (detail != null) {
+                    hits++;
+                } else {
+                    misses++;
+                    missing[missCount++] = recipeId;
+                }
+                details.put(recipeId, detail);
+            }
+            seen = invalidations;
+        }
+
+        if (missCount > 0) {
+            Map<Integer, RecipeDetail> loaded = loader.loadAll(Arrays.copyOf(missing, missCount));
+            synchronized (this) {
+                for (Map.Entry<Integer, RecipeDetail> entry : loaded.entrySet()) {
+                    if (invalidations == seen && weigh(entry.getValue()) <= capacity) {
+                        put(entry.getKey(), entry.getValue());
+                    }
+                    details.put(entry.getKey(), entry.getValue());
+                }
+            }
+            details.values().removeIf(Objects::isNull);
+        }
+        return details;
+    }
+
+    private void put(int recipeId, RecipeDetail detail) {
+        RecipeDetail previous = entries.put(recipeId, detail);
+        if (previous != null) {
+            weight -= weigh(previous);
+        }
+        weight += weigh(detail);
+
+        Iterator<RecipeDetail> eldest = entries.values().iterator();
+        while (weight > capacity) {
+            weight -= weigh(eldest.next());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(Iterator<RecipeDetail> it, RecipeDetail detail) {
+        it.remove();
+        weight -= weigh(detail);
+    }
+
+    /**
+     * Drop a recipe whose rows or feedback changed.
+     */
+    public synchronized void invalidate(int recipeId) {
+        RecipeDetail removed = entries.remove(recipeId);
+        if (removed != null) {
+            weight -= weigh(removed);
+        }
+        invalidations++;
+    }
+
+    /**
+     * Drop every cached recipe that uses an ingredient that was renamed or changed.
+     */
+    public synchronized void invalidateIngredient(int ingredientId) {
+        for (Iterator<RecipeDetail> it = entries.values().iterator(); it.hasNext(); ) {
+            RecipeDetail detail = it.next();
+            if (detail.usesIngredient(ingredientId)) {
+                remove(it, detail);
+            }
+        }
+        invalidations++;
+    }
+
+    /**
+     * Drop every cached recipe carrying a tag that was renamed or changed.
+     */
+    public synchronized void invalidateTag(int tagId) {
+        for (Iterator<RecipeDetail> it = entries.values().iterator(); it.hasNext(); ) {
+            RecipeDetail detail = it.next();
+            if (detail.hasTag(tagId)) {
+                remove(it, detail);
+            }
+        }
+        invalidations++;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+        invalidations++;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, invalidations, entries.size(), weight);
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,407 @@
+package com.chefsync;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * Writes the recipe catalog to CSV or JSONL, run with:
+ * DBInit --export recipes.jsonl
+ *
+ * Recipes are read a page at a time with a keyset cursor (RecipeID > last id), each
+ * page in one short read transaction on a pooled reader, so the app keeps serving
+ * while an export runs. Ingredients, tags and feedback totals for the page come from
+ * range scans on RecipeID and are merged in id order straight into a reused page
+ * buffer; nothing grows with the size of the catalog.
+ *
+ * Output uses the field names {@link RecipeImporter} reads, so an export can be
+ * imported into another database.
+ */
+public class RecipeExporter {
+
+    public enum Format {
+        CSV, JSONL;
+
+        static Format forFile(String path) {
+            return path.toLowerCase(Locale.ROOT).endsWith(".csv") ? CSV : JSONL;
+        }
+    }
+
+    /**
+     * Totals for one export.
+     */
+    public static class Result {
+        public long recipes;
+        public long ingredients;
+        public long tags;
+        public long bytes;
+        public double seconds;
+
+        public double recipesPerSecond() {
+            return seconds == 0 ? 0 : recipes / seconds;
+        }
+    }
+
+    private static final int DEFAULT_PAGE_SIZE = 2000;
+    private static final int WRITE_BUFFER_CHARS = 1 << 20;
+
+    private static final String RECIPE_SQL =
+            "SELECT RecipeID, UserID, Title, Instructions, PrepTime, CookingTime, Servings, Calories, Protein, " +
+            "Carbs, Fats, Cuisine, DifficultyLevel, IsPublic, CreatedAt " +
+            "FROM Recipes WHERE RecipeID > ? ORDER BY RecipeID LIMIT ?";
+    private static final String INGREDIENT_SQL =
+            "SELECT ri.RecipeID, i.Name, ri.Quantity, ri.Unit FROM RecipeIngredients ri " +
+            "JOIN Ingredients i ON ri.IngredientID = i.IngredientID " +
+            "WHERE ri.RecipeID BETWEEN ? AND ? ORDER BY ri.RecipeID";
+    private static final String TAG_SQL =
+            "SELECT rt.RecipeID, t.Name FROM RecipeTags rt JOIN Tags t ON rt.TagID = t.TagID " +
+            "WHERE rt.RecipeID BETWEEN ? AND ? ORDER BY rt.RecipeID";
+    private static final String FEEDBACK_SQL =
+            "SELECT RecipeID, COUNT(*), AVG(Rating) FROM RecipeFeedback " +
+            "WHERE RecipeID BETWEEN ? AND ? GROUP BY RecipeID ORDER BY RecipeID";
+
+    private static final String[] CSV_HEADER = {
+        "id", "userId", "title", "instructions", "prepTime", "cookingTime", "servings", "calories",
+        "protein", "carbs", "fats", "cuisine", "difficultyLevel", "isPublic", "createdAt",
+        "ingredients", "tags", "ratingCount", "averageRating"
+    };
+
+    private final ConnectionManager db;
+    private final int pageSize;
+
+    // Rendered output for the current page, reused across pages
+    private final StringBuilder page = new StringBuilder(1 << 16);
+    private final StringBuilder ingredientField = new StringBuilder();
+    private final StringBuilder tagField = new StringBuilder();
+
+    public RecipeExporter(ConnectionManager db) {
+        this(db, DEFAULT_PAGE_SIZE);
+    }
+
+    public RecipeExporter(ConnectionManager db, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.db = db;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Export every recipe to {@code path}. The file is written next to its final name
+     * and moved into place once complete, so a failed export never leaves a partial file.
+     */
+    public Result exportFile(String path, Format format) throws IOException, SQLException {
+        Path target = Paths.get(path).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".part");
+        Result result;
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(temp), StandardCharsets.UTF_8), WRITE_BUFFER_CHARS)) {
+            result = export(out, format);
+        } catch (IOException | SQLException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        result.bytes = new File(path).length();
+
+        System.out.printf("Exported %,d recipes (%,d ingredient lines, %,d tags) to %s in %.1f s (%,.0f recipes/s, %.1f MB/s).%n",
+                result.recipes, result.ingredients, result.tags, path, result.seconds,
+                result.recipesPerSecond(), result.bytes / 1e6 / Math.max(result.seconds, 1e-9));
+        return result;
+    }
+
+    /**
+     * Export every recipe to {@code out}. The writer is flushed but not closed.
+     */
+    public Result export(Writer out, Format format) throws IOException, SQLException {
+        Result result = new Result();
+        long start = System.nanoTime();
+
+        if (format == Format.CSV) {
+            for (int i = 0; i < CSV_HEADER.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(CSV_HEADER[i]);
+            }
+            out.append('\n');
+        }
+
+        int lastId = 0;
+        while (true) {
+            page.setLength(0);
+            lastId = readPage(lastId, format, result);
+            if (page.length() == 0) {
+                break;
+            }
+            // Written after the read transaction has ended, so a slow disk never pins the WAL
+            out.append(page);
+        }
+        out.flush();
+
+        result.seconds = (System.nanoTime() - start) / 1e9;
+        return result;
+    }
+
+    /**
+     * Render the page of recipes after {@code afterId} into {@link #page}.
+     *
+     * @return The last RecipeID on the page
+     */
+    private int readPage(int afterId, Format format, Result result) throws SQLException {
+        try (ConnectionManager.Lease lease = db.reader()) {
+            Connection conn = lease.connection();
+            // One read transaction so the recipes and their children are a consistent snapshot
+            conn.setAutoCommit(false);
+            try (PreparedStatement recipeStmt = lease.prepare("export.recipes", RECIPE_SQL)) {
+                recipeStmt.setInt(1, afterId);
+                recipeStmt.setInt(2, pageSize);
+                try (ResultSet recipes = recipeStmt.executeQuery()) {
+                    if (!recipes.next()) {
+                        return afterId;
+                    }
+                    // The page is a contiguous id range, so children come from range scans
+                    int firstId = recipes.getInt(1);
+                    int lastId = lastIdOfPage(lease, afterId);
+                    try (PreparedStatement ingredientStmt = rangeQuery(lease, "export.ingredients", INGREDIENT_SQL, firstId, lastId);
+                         PreparedStatement tagStmt = rangeQuery(lease, "export.tags", TAG_SQL, firstId, lastId);
+                         PreparedStatement feedbackStmt = rangeQuery(lease, "export.feedback", FEEDBACK_SQL, firstId, lastId);
+                         ResultSet ingredients = ingredientStmt.executeQuery();
+                         ResultSet tags = tagStmt.executeQuery();
+                         ResultSet feedback = feedbackStmt.executeQuery()) {
+                        Cursor ingredientCursor = new Cursor(ingredients);
+                        Cursor tagCursor = new Cursor(tags);
+                        Cursor feedbackCursor = new Cursor(feedback);
+                        do {
+                            writeRecipe(recipes, ingredientCursor, tagCursor, feedbackCursor, format, result);
+                        } while (recipes.next());
+                    }
+                    return lastId;
+                }
+            } finally {
+                conn.commit();
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private int lastIdOfPage(ConnectionManager.Lease lease, int afterId) throws SQLException {
+        try (PreparedStatement stmt = lease.prepare("export.lastId",
+                "SELECT MAX(RecipeID) FROM (SELECT RecipeID FROM Recipes WHERE RecipeID > ? ORDER BY RecipeID LIMIT ?)")) {
+            stmt.setInt(1, afterId);
+            stmt.setInt(2, pageSize);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : afterId;
+            }
+        }
+    }
+
+    private static PreparedStatement rangeQuery(ConnectionManager.Lease lease, String name, String sql,
+                                                int firstId, int lastId) throws SQLException {
+        PreparedStatement stmt = lease.prepare(name, sql);
+        stmt.setInt(1, firstId);
+        stmt.setInt(2, lastId);
+        return stmt;
+    }
+
+    /**
+     * A child result set ordered by RecipeID, read in step with the recipes.
+     */
+    private static class Cursor {
+        final ResultSet rs;
+        boolean hasRow;
+
+        Cursor(ResultSet rs) throws SQLException {
+            this.rs = rs;
+            this.hasRow = rs.next();
+        }
+
+        boolean at(int recipeId) throws SQLException {
+            return hasRow && rs.getInt(1) == recipeId;
+        }
+
+        void advance() throws SQLException {
+            hasRow = rs.next();
+        }
+    }
+
+    private void writeRecipe(ResultSet recipe, Cursor ingredients, Cursor tags, Cursor feedback,
+                             Format format, Result result) throws SQLException {
+        int recipeId = recipe.getInt(1);
+        int ratingCount = 0;
+        Double averageRating = null;
+        if (feedback.at(recipeId)) {
+            ratingCount = feedback.rs.getInt(2);
+            averageRating = nullableDouble(feedback.rs, 3);
+            feedback.advance();
+        }
+
+        if (format == Format.JSONL) {
+            page.append("{\"id\":").append(recipeId);
+            page.append(",\"userId\":").append(recipe.getInt(2));
+            jsonField("title", recipe.getString(3));
+            jsonField("instructions", recipe.getString(4));
+            jsonField("prepTime", recipe.getString(5));
+            jsonField("cookingTime", recipe.getString(6));
+            page.append(",\"servings\":");
+            appendNumber(page, nullableDouble(recipe, 7));
+            page.append(",\"calories\":");
+            appendNumber(page, nullableDouble(recipe, 8));
+            page.append(",\"protein\":");
+            appendNumber(page, nullableDouble(recipe, 9));
+            page.append(",\"carbs\":");
+            appendNumber(page, nullableDouble(recipe, 10));
+            page.append(",\"fats\":");
+            appendNumber(page, nullableDouble(recipe, 11));
+            jsonField("cuisine", recipe.getString(12));
+            jsonField("difficultyLevel", recipe.getString(13));
+            page.append(",\"isPublic\":").append(recipe.getInt(14) != 0);
+            jsonField("createdAt", recipe.getString(15));
+
+            page.append(",\"ingredients\":[");
+            for (boolean first = true; ingredients.at(recipeId); ingredients.advance(), first = false) {
+                page.append(first ? "{" : ",{");
+                page.append("\"name\":");
+                quote(ingredients.rs.getString(2));
+                page.append(",\"quantity\":");
+                appendNumber(page, nullableDouble(ingredients.rs, 3));
+                page.append(",\"unit\":");
+                quote(ingredients.rs.getString(4));
+                page.append('}');
+                result.ingredients++;
+            }
+            page.append("],\"tags\":[");
+            for (boolean first = true; tags.at(recipeId); tags.advance(), first = false) {
+                if (!first) {
+                    page.append(',');
+                }
+                quote(tags.rs.getString(2));
+                result.tags++;
+            }
+            page.append("],\"ratingCount\":").append(ratingCount);
+            page.append(",\"averageRating\":");
+            appendNumber(page, averageRating);
+            page.append("}\n");
+        } else {
+            // Same list encoding the importer reads: name:quantity:unit|... and tag|tag
+            ingredientField.setLength(0);
+            for (; ingredients.at(recipeId); ingredients.advance()) {
+                if (ingredientField.length() > 0) {
+                    ingredientField.append('|');
+                }
+                RecipeImporter.appendListItem(ingredientField, ingredients.rs.getString(2));
+                ingredientField.append(':');
+                appendNumber(ingredientField, nullableDouble(ingredients.rs, 3), "");
+                ingredientField.append(':');
+                String unit = ingredients.rs.getString(4);
+                if (unit != null) {
+                    RecipeImporter.appendListItem(ingredientField, unit);
+                }
+                result.ingredients++;
+            }
+            tagField.setLength(0);
+            for (; tags.at(recipeId); tags.advance()) {
+                if (tagField.length() > 0) {
+                    tagField.append('|');
+                }
+                RecipeImporter.appendListItem(tagField, tags.rs.getString(2));
+                result.tags++;
+            }
+
+            page.append(recipeId).append(',').append(recipe.getInt(2));
+            for (int column = 3; column <= 6; column++) {
+                csvField(recipe.getString(column));
+            }
+            for (int column = 7; column <= 11; column++) {
+                page.append(',');
+                appendNumber(page, nullableDouble(recipe, column), "");
+            }
+            csvField(recipe.getString(12));
+            csvField(recipe.getString(13));
+            page.append(',').append(recipe.getInt(14));
+            csvField(recipe.getString(15));
+            csvField(ingredientField);
+            csvField(tagField);
+            page.append(',').append(ratingCount).append(',');
+            appendNumber(page, averageRating, "");
+            page.append('\n');
+        }
+        result.recipes++;
+    }
+
+    private void jsonField(String name, String value) {
+        page.append(",\"").append(name).append("\":");
+        quote(value);
+    }
+
+    private void quote(String value) {
+        try {
+            Json.quote(page, value);
+        } catch (IOException e) {
+            // StringBuilder.append does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Append a CSV field preceded by a comma, quoted only when it has to be.
+     */
+    private void csvField(CharSequence value) {
+        page.append(',');
+        if (value == null) {
+            return;
+        }
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            page.append(value);
+            return;
+        }
+        page.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                page.append('"');
+            }
+            page.append(c);
+        }
+        page.append('"');
+    }
+
+    private static Double nullableDouble(ResultSet rs, int column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static void appendNumber(StringBuilder sb, Double value) {
+        appendNumber(sb, value, "null");
+    }
+
+    /**
+     * Whole numbers are written without a fraction so quantities read "2", not "2.0".
+     */
+    private static void appendNumber(StringBuilder sb, Double value, String nullText) {
+        if (value == null || value.isNaN() || value.isInfinite()) {
+            sb.append(nullText);
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            sb.append(value.longValue());
+        } else {
+            sb.append(value.doubleValue());
+        }
+    }
+}
@@ -0,0 +1,565 @@
+package com.chefsync;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streams recipes from a CSV or JSONL file into the database, run with:
+ * DBInit --import recipes.jsonl --user demo_user
+ *
+ * The file is read one record at a time and written in chunks, each chunk in its own
+ * writer transaction together with a checkpoint of how many records have been
+ * consumed. After a crash, running the same import again skips what was committed.
+ *
+ * JSONL records are objects such as
+ * {"title": "...", "instructions": "...", "cuisine": "Thai", "ingredients":
+ * [{"name": "Rice", "quantity": 200, "unit": "grams"}], "tags": ["Quick Meal"]}.
+ * CSV files have a header row with the same field names; ingredients are written
+ * as "name:quantity:unit|name:quantity:unit" and tags as "tag|tag", with a backslash
+ * before any ':', '|' or '\\' that is part of a name or unit.
+ */
+public class RecipeImporter {
+
+    public enum Format {
+        CSV, JSONL;
+
+        static Format forFile(String path) {
+            return path.toLowerCase(Locale.ROOT).endsWith(".csv") ? CSV : JSONL;
+        }
+    }
+
+    /**
+     * Totals for one run of the importer.
+     */
+    public static class Result {
+        public long recipes;
+        public long rows;
+        public long skipped;
+        public double seconds;
+
+        public double rowsPerSecond() {
+            return seconds == 0 ? 0 : rows / seconds;
+        }
+    }
+
+    static class IngredientLine {
+        String name;
+        Double quantity;
+        String unit;
+    }
+
+    static class ImportedRecipe {
+        String title;
+        String instructions;
+        String prepTime;
+        String cookingTime;
+        Integer servings;
+        Double calories;
+        Double protein;
+        Double carbs;
+        Double fats;
+        String cuisine;
+        String difficulty;
+        boolean isPublic = true;
+        List<IngredientLine> ingredients = new ArrayList<>();
+        List<String> tags = new ArrayList<>();
+    }
+
+    /**
+     * One record at a time from the input, as field name (lower case) to value.
+     */
+    private interface RecordSource extends AutoCloseable {
+        Map<String, Object> next() throws IOException;
+
+        boolean skip() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static final int DEFAULT_CHUNK_SIZE = 5000;
+    private static final int MAX_WARNINGS = 20;
+
+    private final ConnectionManager db;
+    private final int chunkSize;
+    private NameDictionary ingredientNames;
+    private NameDictionary tagNames;
+    private int warnings;
+
+    public RecipeImporter(ConnectionManager db) {
+        this(db, DEFAULT_CHUNK_SIZE);
+    }
+
+    public RecipeImporter(ConnectionManager db, int chunkSize) {
+        this.db = db;
+        this.chunkSize = chunkSize;
+    }
+
+    static String checkpointName(String path) {
+        return "import:" + new File(path).getAbsolutePath();
+    }
+
+    /**
+     * Import (or resume importing) a file. Recipes are owned by {@code userId}.
+     */
+    public Result importFile(String path, Format format, int userId) throws IOException, SQLException {
+        String checkpoint = checkpointName(path);
+        Checkpoints.Position position;
+        try (ConnectionManager.Lease lease = db.reader()) {
+            position = Checkpoints.read(lease.connection(), checkpoint);
+            ingredientNames = NameDictionary.load(lease.connection(), "Ingredients", "IngredientID");
+            tagNames = NameDictionary.load(lease.connection(), "Tags", "TagID");
+        }
+
+        Result result = new Result();
+        if (position.completed) {
+            System.out.println(path + " was already imported. Use --restart to import it again.");
+            return result;
+        }
+
+        long start = System.nanoTime();
+        long consumed = 0;
+        try (RecordSource source = open(path, format)) {
+            // Records up to the checkpoint were committed by an earlier run
+            while (consumed < position.value && source.skip()) {
+                consumed++;
+            }
+            if (consumed > 0) {
+                System.out.printf("Resuming after record %,d.%n", consumed);
+            }
+
+            List<ImportedRecipe> chunk = new ArrayList<>(chunkSize);
+            while (true) {
+                Map<String, Object> record;
+                try {
+                    record = source.next();
+                } catch (IllegalArgumentException e) {
+                    consumed++;
+                    result.skipped++;
+                    warn("record " + consumed + ": " + e.getMessage());
+                    continue;
+                }
+                if (record == null) {
+                    break;
+                }
+                consumed++;
+
+                ImportedRecipe recipe = toRecipe(record);
+                if (recipe == null) {
+                    result.skipped++;
+                    warn("record " + consumed + ": title and instructions are required");
+                } else {
+                    chunk.add(recipe);
+                }
+
+                if (chunk.size() >= chunkSize) {
+                    writeChunk(chunk, userId, checkpoint, consumed, false, result);
+                    chunk.clear();
+                    report(result, start, consumed);
+                }
+            }
+            writeChunk(chunk, userId, checkpoint, consumed, true, result);
+        }
+
+        result.seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Imported %,d recipes (%,d rows, %,d records skipped) in %.1f s (%,.0f rows/s).%n",
+                result.recipes, result.rows, result.skipped, result.seconds, result.rowsPerSecond());
+        return result;
+    }
+
+    private void writeChunk(List<ImportedRecipe> chunk, int userId, String checkpoint,
+                            long consumed, boolean last, Result result) throws SQLException {
+        String recipeSql = "INSERT INTO Recipes (RecipeID, UserID, Title, Instructions, PrepTime, CookingTime, Servings, " +
+                           "Calories, Protein, Carbs, Fats, Cuisine, DifficultyLevel, IsPublic, " +
+                           "PrepMinutes, CookMinutes, TotalMinutes) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String ingredientSql = "INSERT OR IGNORE INTO RecipeIngredients (RecipeID, IngredientID, Quantity, Unit) VALUES (?, ?, ?, ?)";
+        String tagSql = "INSERT OR IGNORE INTO RecipeTags (RecipeID, TagID) VALUES (?, ?)";
+
+        try (ConnectionManager.Lease lease = db.writer()) {
+            Connection conn = lease.connection();
+            if (!chunk.isEmpty()) {
+                // Per-row index triggers are replaced by one reindex of the chunk, all in this transaction
+                RecipeSearchIndex.suspendForBulkLoad(conn);
+                int firstId = nextRecipeId(conn);
+                long rows = 0;
+
+                try (PreparedStatement recipeStmt = conn.prepareStatement(recipeSql);
+                     PreparedStatement ingredientStmt = conn.prepareStatement(ingredientSql);
+                     PreparedStatement tagStmt = conn.prepareStatement(tagSql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        ImportedRecipe recipe = chunk.get(i);
+                        int recipeId = firstId + i;
+                        Integer prep = DurationParser.parseMinutes(recipe.prepTime);
+                        Integer cook = DurationParser.parseMinutes(recipe.cookingTime);
+
+                        recipeStmt.setInt(1, recipeId);
+                        recipeStmt.setInt(2, userId);
+                        recipeStmt.setString(3, recipe.title);
+                        recipeStmt.setString(4, recipe.instructions);
+                        recipeStmt.setString(5, recipe.prepTime);
+                        recipeStmt.setString(6, recipe.cookingTime);
+                        recipeStmt.setObject(7, recipe.servings);
+                        recipeStmt.setObject(8, recipe.calories);
+                        recipeStmt.setObject(9, recipe.protein);
+                        recipeStmt.setObject(10, recipe.carbs);
+                        recipeStmt.setObject(11, recipe.fats);
+                        recipeStmt.setString(12, recipe.cuisine);
+                        recipeStmt.setString(13, recipe.difficulty);
+                        recipeStmt.setInt(14, recipe.isPublic ? 1 : 0);
+                        CookingTimeBackfill.setNullableInt(recipeStmt, 15, prep);
+                        CookingTimeBackfill.setNullableInt(recipeStmt, 16, cook);
+                        CookingTimeBackfill.setNullableInt(recipeStmt, 17, DurationParser.totalMinutes(prep, cook));
+                        recipeStmt.addBatch();
+
+                        for (IngredientLine line : recipe.ingredients) {
+                            ingredientStmt.setInt(1, recipeId);
+                            ingredientStmt.setInt(2, ingredientNames.resolve(lease, line.name,
+                                    "INSERT OR IGNORE INTO Ingredients (Name, Unit) VALUES (?, ?)", line.unit));
+                            ingredientStmt.setObject(3, line.quantity);
+                            ingredientStmt.setString(4, line.unit);
+                            ingredientStmt.addBatch();
+                        }
+                        for (String tag : recipe.tags) {
+                            tagStmt.setInt(1, recipeId);
+                            tagStmt.setInt(2, tagNames.resolve(lease, tag,
+                                    "INSERT OR IGNORE INTO Tags (Name) VALUES (?)"));
+                            tagStmt.addBatch();
+                        }
+                    }
+
+                    // Parents first so the junction rows' foreign keys resolve
+                    rows += sum(recipeStmt.executeBatch());
+                    rows += sum(ingredientStmt.executeBatch());
+                    rows += sum(tagStmt.executeBatch());
+                }
+
+                RecipeSearchIndex.resumeAfterBulkLoad(conn, firstId);
+                result.recipes += chunk.size();
+                result.rows += rows;
+            }
+
+            Checkpoints.write(conn, checkpoint, consumed, last);
+            conn.commit();
+            ingredientNames.publish();
+            tagNames.publish();
+
+            // Keep statistics in step as the tables grow, so later chunks are not planned for an empty database
+            ConnectionManager.optimize(conn);
+            conn.commit();
+        } finally {
+            ingredientNames.discardPending();
+            tagNames.discardPending();
+        }
+    }
+
+    private static int nextRecipeId(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(RecipeID), 0) + 1 FROM Recipes")) {
+            return rs.next() ? rs.getInt(1) : 1;
+        }
+    }
+
+    private static long sum(int[] counts) {
+        long total = 0;
+        for (int count : counts) {
+            total += Math.max(count, 0);
+        }
+        return total;
+    }
+
+    private static void report(Result result, long start, long consumed) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("  %,d records read, %,d recipes imported (%,.0f rows/s)%n",
+                consumed, result.recipes, result.rows / Math.max(seconds, 1e-9));
+    }
+
+    private void warn(String message) {
+        if (++warnings <= MAX_WARNINGS) {
+            System.err.println("Skipping " + message);
+        } else if (warnings == MAX_WARNINGS + 1) {
+            System.err.println("Further skipped records are not listed.");
+        }
+    }
+
+    // ---- Record conversion ----
+
+    static ImportedRecipe toRecipe(Map<String, Object> record) {
+        ImportedRecipe recipe = new ImportedRecipe();
+        recipe.title = text(record.get("title"));
+        recipe.instructions = text(record.get("instructions"));
+        if (recipe.title == null || recipe.instructions == null) {
+            return null;
+        }
+        recipe.prepTime = text(record.get("preptime"));
+        recipe.cookingTime = text(firstOf(record, "cookingtime", "cooktime"));
+        Double servings = number(record.get("servings"));
+        recipe.servings = servings == null ? null : servings.intValue();
+        recipe.calories = number(record.get("calories"));
+        recipe.protein = number(record.get("protein"));
+        recipe.carbs = number(record.get("carbs"));
+        recipe.fats = number(record.get("fats"));
+        recipe.cuisine = text(record.get("cuisine"));
+        recipe.difficulty = text(firstOf(record, "difficultylevel", "difficulty"));
+        Object isPublic = firstOf(record, "ispublic", "public");
+        if (isPublic != null) {
+            String flag = isPublic.toString().trim().toLowerCase(Locale.ROOT);
+            recipe.isPublic = !(flag.equals("0") || flag.equals("0.0") || flag.equals("false") || flag.equals("no"));
+        }
+
+        Object ingredients = record.get("ingredients");
+        if (ingredients instanceof List) {
+            for (Object item : (List<?>) ingredients) {
+                IngredientLine line = item instanceof Map ? ingredientFromMap((Map<?, ?>) item) : ingredientFromText(text(item));
+                if (line != null) {
+                    recipe.ingredients.add(line);
+                }
+            }
+        } else if (ingredients != null) {
+            for (String item : splitList(ingredients.toString(), '|', 0)) {
+                IngredientLine line = ingredientFromText(item);
+                if (line != null) {
+                    recipe.ingredients.add(line);
+                }
+            }
+        }
+
+        Object tags = record.get("tags");
+        if (tags instanceof List) {
+            for (Object tag : (List<?>) tags) {
+                String name = text(tag);
+                if (name != null) {
+                    recipe.tags.add(name);
+                }
+            }
+        } else if (tags != null) {
+            for (String tag : splitList(tags.toString(), '|', 0)) {
+                String name = text(unescapeList(tag));
+                if (name != null) {
+                    recipe.tags.add(name);
+                }
+            }
+        }
+        return recipe;
+    }
+
+    private static IngredientLine ingredientFromMap(Map<?, ?> map) {
+        IngredientLine line = new IngredientLine();
+        line.name = text(map.get("name"));
+        line.quantity = number(map.get("quantity"));
+        line.unit = text(map.get("unit"));
+        return line.name == null ? null : line;
+    }
+
+    /**
+     * "name", "name:quantity" or "name:quantity:unit".
+     */
+    private static IngredientLine ingredientFromText(String text) {
+        if (text == null) {
+            return null;
+        }
+        List<String> parts = splitList(text, ':', 3);
+        IngredientLine line = new IngredientLine();
+        line.name = text(unescapeList(parts.get(0)));
+        line.quantity = parts.size() > 1 ? number(parts.get(1)) : null;
+        line.unit = parts.size() > 2 ? text(unescapeList(parts.get(2))) : null;
+        return line.name == null ? null : line;
+    }
+
+    /**
+     * Append a name or unit to a CSV ingredient or tag list, escaping the separators.
+     */
+    static void appendListItem(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '|' || c == ':') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+    }
+
+    /**
+     * Split on separators that are not escaped, leaving the escapes in the parts.
+     *
+     * @param limit Most parts to return, the last holding the rest; 0 for no limit
+     */
+    static List<String> splitList(String text, char separator, int limit) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == separator && (limit == 0 || parts.size() < limit - 1)) {
+                parts.add(text.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+
+    /**
+     * Undo {@link #appendListItem}. A backslash before any other character is kept.
+     */
+    static String unescapeList(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(i + 1);
+                if (next == '\\' || next == '|' || next == ':') {
+                    c = next;
+                    i++;
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static Object firstOf(Map<String, Object> record, String... keys) {
+        for (String key : keys) {
+            Object value = record.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static String text(Object value) {
+        if (value == null) {
+            return null;
+        }
+        String s = value.toString().trim();
+        return s.isEmpty() ? null : s;
+    }
+
+    private static Double number(Object value) {
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        String s = text(value);
+        if (s == null) {
+            return null;
+        }
+        try {
+            return Double.valueOf(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // ---- Input formats ----
+
+    private static RecordSource open(String path, Format format) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8);
+        return format == Format.CSV ? csvSource(reader) : jsonlSource(reader);
+    }
+
+    private static RecordSource jsonlSource(BufferedReader reader) {
+        return new RecordSource() {
+            @Override
+            public Map<String, Object> next() throws IOException {
+                String line = nextLine();
+                if (line == null) {
+                    return null;
+                }
+                Object value = Json.parse(line);
+                if (!(value instanceof Map)) {
+                    throw new IllegalArgumentException("Expected a JSON object");
+                }
+                Map<String, Object> record = new HashMap<>();
+                for (Map.Entry<?, ?> field : ((Map<?, ?>) value).entrySet()) {
+                    record.put(field.getKey().toString().toLowerCase(Locale.ROOT), field.getValue());
+                }
+                return record;
+            }
+
+            @Override
+            public boolean skip() throws IOException {
+                return nextLine() != null;
+            }
+
+            private String nextLine() throws IOException {
+                String line;
+                do {
+                    line = reader.readLine();
+                } while (line != null && line.trim().isEmpty());
+                return line;
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    private static RecordSource csvSource(BufferedReader reader) throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        List<String> header = csv.readRecord();
+        if (header == null) {
+            header = new ArrayList<>();
+        }
+        String[] names = new String[header.size()];
+        for (int i = 0; i < names.length; i++) {
+            // Tolerate a UTF-8 byte order mark on the first column
+            names[i] = header.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+        }
+
+        return new RecordSource() {
+            @Override
+            public Map<String, Object> next() throws IOException {
+                List<String> fields = nextRecord();
+                if (fields == null) {
+                    return null;
+                }
+                if (fields.size() > names.length) {
+                    throw new IllegalArgumentException("Expected " + names.length + " fields but found " + fields.size());
+                }
+                Map<String, Object> record = new HashMap<>();
+                for (int i = 0; i < fields.size(); i++) {
+                    record.put(names[i], fields.get(i));
+                }
+                return record;
+            }
+
+            @Override
+            public boolean skip() throws IOException {
+                return nextRecord() != null;
+            }
+
+            private List<String> nextRecord() throws IOException {
+                List<String> fields;
+                do {
+                    fields = csv.readRecord();
+                } while (fields != null && fields.size() == 1 && fields.get(0).trim().isEmpty());
+                return fields;
+            }
+
+            @Override
+            public void close() throws IOException {
+                csv.close();
+            }
+        };
+    }
+}
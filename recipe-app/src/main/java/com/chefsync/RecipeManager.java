@@ -1,52 +1,87 @@
 package com.chefsync;
 
 import java.io.Console;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.io.File;
 import java.util.Scanner;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
 
 public class RecipeManager {
-    private Connection conn;
+    private ConnectionManager db;
+    private IngredientIndex ingredientIndex;
+    private SimilarRecipeIndex similarRecipes;
+    private NameDictionary ingredientNames;
+    private NameDictionary tagNames;
+    private DietaryIndex dietaryIndex;
+    private UnitConverter units;
+    // Loaded on first use; dropped when a recipe is added
+    private volatile MealPlanGenerator mealPlanGenerator;
+    private RecipeDetailCache detailCache = new RecipeDetailCache();
+    private TrendingTracker trending;
+    private PantryExpiryScheduler expiries;
+    // Trending checkpoints and pantry expiry ticks; interactive app only
+    private ScheduledExecutorService backgroundTasks;
     private Integer currentUser;
     private Scanner scanner;
     private final String DB_PATH = "recipe_manager.db";
+    private static final int SEARCH_RESULT_LIMIT = Integer.getInteger("chefsync.searchLimit", 50);
+    private static final int TABLE_SAMPLE_ROWS = 50;
+    private static final long TRENDING_CHECKPOINT_MINUTES = Long.getLong("chefsync.trendingCheckpointMinutes", 5);
+    private static final long EXPIRY_TICK_MINUTES = Long.getLong("chefsync.expiryTickMinutes", 10);
+    private static final int TRENDING_LIMIT = 10;
+    private static final int RECOMMENDATION_LIMIT = 10;
+    private static final int SIMILAR_LIMIT = 5;
     
     public RecipeManager() {
         scanner = new Scanner(System.in);
         
-        // Check if database exists, initialize if not
+        // Create the database if needed, otherwise apply any pending migrations in place
         File dbFile = new File(DB_PATH);
         if (!dbFile.exists()) {
             System.out.println("Database not found. Initializing...");
-            DBInit.initializeDatabase();
         }
+        DBInit.initializeDatabase();
         
         try {
-            // Connect to the SQLite database
-            String url = "jdbc:sqlite:" + DB_PATH;
-            
-            // Connect to the database
-            conn = DriverManager.getConnection(url);
-            
-            // Configure the connection
-            conn.setAutoCommit(false); // Set auto-commit to false
-            
-            // Ensure foreign keys are enabled
-            try (Statement stmt = conn.createStatement()) {
-                stmt.execute("PRAGMA foreign_keys = ON");
-            }
+            // One writer connection plus a pool of read-only connections (WAL mode)
+            db = new ConnectionManager();
+            
+            // Resident ingredient -> recipes index for pantry recommendations, ingredient-set
+            // signatures for similar recipes, name <-> ID lookups, tag/category bitmaps for
+            // dietary filters and ingredient densities for unit conversion
+            try (ConnectionManager.Lease lease = db.reader()) {
+                ingredientIndex = IngredientIndex.load(lease.connection());
+                similarRecipes = SimilarRecipeIndex.load(lease.connection());
+                ingredientNames = NameDictionary.load(lease.connection(), "Ingredients", "IngredientID");
+                tagNames = NameDictionary.load(lease.connection(), "Tags", "TagID");
+                dietaryIndex = DietaryIndex.load(lease.connection());
+                units = UnitConverter.load(lease.connection());
+                trending = TrendingTracker.load(lease.connection(), TrendingTracker.HALF_LIFE_HOURS,
+                        System.currentTimeMillis());
+                expiries = PantryExpiryScheduler.load(lease.connection(), LocalDate.now().toEpochDay());
+            }
+            // Today's alerts are written before anyone can log in
+            tickExpiries();
+            startBackgroundTasks();
             
             System.out.println("Connected to the database.");
         } catch (SQLException e) {
@@ -55,6 +90,84 @@ public class RecipeManager {
         }
     }
     
+    /**
+     * Use an already open (and migrated) database, e.g. from the benchmarks.
+     */
+    public RecipeManager(ConnectionManager db) throws SQLException {
+        this.db = db;
+        this.scanner = new Scanner(System.in);
+        try (ConnectionManager.Lease lease = db.reader()) {
+            ingredientIndex = IngredientIndex.load(lease.connection());
+            similarRecipes = SimilarRecipeIndex.load(lease.connection());
+            ingredientNames = NameDictionary.load(lease.connection(), "Ingredients", "IngredientID");
+            tagNames = NameDictionary.load(lease.connection(), "Tags", "TagID");
+            dietaryIndex = DietaryIndex.load(lease.connection());
+            units = UnitConverter.load(lease.connection());
+            trending = TrendingTracker.load(lease.connection(), TrendingTracker.HALF_LIFE_HOURS,
+                    System.currentTimeMillis());
+            expiries = PantryExpiryScheduler.load(lease.connection(), LocalDate.now().toEpochDay());
+        }
+    }
+    
+    private void startBackgroundTasks() {
+        backgroundTasks = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "background-tasks");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (TRENDING_CHECKPOINT_MINUTES > 0) {
+            backgroundTasks.scheduleWithFixedDelay(() -> {
+                try {
+                    checkpointTrending();
+                } catch (SQLException e) {
+                    System.err.println("Error saving trending scores: " + e.getMessage());
+                }
+            }, TRENDING_CHECKPOINT_MINUTES, TRENDING_CHECKPOINT_MINUTES, TimeUnit.MINUTES);
+        }
+        if (EXPIRY_TICK_MINUTES > 0) {
+            // Only the first tick after midnight finds anything to do
+            backgroundTasks.scheduleWithFixedDelay(this::tickExpiries,
+                    EXPIRY_TICK_MINUTES, EXPIRY_TICK_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+    
+    /**
+     * Move the pantry expiry schedule up to today and record an alert for every item that
+     * came due, for its owner to see at their next login.
+     */
+    public void tickExpiries() {
+        int[] due = expiries.advanceTo(LocalDate.now().toEpochDay());
+        if (due.length == 0) {
+            return;
+        }
+        // Items removed since they were scheduled are no longer in Pantry and drop out here
+        String sql = "INSERT OR IGNORE INTO PantryAlerts (PantryItemID, UserID, ExpiryDate) " +
+                     "SELECT PantryItemID, UserID, ExpiryDate FROM Pantry " +
+                     "WHERE PantryItemID IN (SELECT value FROM json_each(?))";
+        try (ConnectionManager.Lease lease = db.writer();
+             PreparedStatement pstmt = lease.prepare("pantryAlerts.insert", sql)) {
+            pstmt.setString(1, Json.array(due));
+            pstmt.executeUpdate();
+            lease.connection().commit();
+        } catch (SQLException e) {
+            System.err.println("Error recording pantry alerts: " + e.getMessage());
+        }
+    }
+    
+    public PantryExpiryScheduler getExpiryScheduler() {
+        return expiries;
+    }
+    
+    /**
+     * Save the trending scores, so a restart picks up from here.
+     */
+    public void checkpointTrending() throws SQLException {
+        try (ConnectionManager.Lease lease = db.writer()) {
+            trending.checkpoint(lease.connection(), System.currentTimeMillis());
+            lease.connection().commit();
+        }
+    }
+    
     public void register() {
         try {
             System.out.println("\n--- User Registration ---");
@@ -81,7 +194,8 @@ public class RecipeManager {
             String hashedPassword = DBInit.hashPassword(password);
             
             String sql = "INSERT INTO Users (Username, Email, Password, Bio) VALUES (?, ?, ?, ?)";
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            try (ConnectionManager.Lease lease = db.writer();
+                 PreparedStatement pstmt = lease.prepare("users.insert", sql)) {
                 pstmt.setString(1, username);
                 pstmt.setString(2, email);
                 pstmt.setString(3, hashedPassword);
@@ -89,20 +203,13 @@ public class RecipeManager {
                 pstmt.executeUpdate();
                 
                 // Commit the transaction
-                conn.commit();
+                lease.connection().commit();
             }
             
             System.out.println("User registered successfully!");
             
         } catch (SQLException e) {
-            try {
-                if (conn != null) {
-                    conn.rollback();
-                }
-            } catch (SQLException rollbackEx) {
-                System.out.println("Error rolling back transaction: " + rollbackEx.getMessage());
-            }
-            
+            // The writer lease rolls back anything left uncommitted
             if (e.getMessage().contains("UNIQUE constraint failed")) {
                 System.out.println("Username or email already exists.");
             } else {
@@ -122,7 +229,8 @@ public class RecipeManager {
         String hashedPassword = DBInit.hashPassword(password);
         
         String sql = "SELECT UserID, Username FROM Users WHERE Username = ? AND Password = ?";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (ConnectionManager.Lease lease = db.reader();
+             PreparedStatement pstmt = lease.prepare("users.login", sql)) {
             pstmt.setString(1, username);
             pstmt.setString(2, hashedPassword);
             
@@ -132,6 +240,7 @@ public class RecipeManager {
                 currentUser = rs.getInt("UserID");
                 String name = rs.getString("Username");
                 System.out.println("Welcome, " + name + "!");
+                showExpiryAlerts(currentUser);
                 return true;
             } else {
                 System.out.println("Invalid credentials.");
@@ -143,6 +252,45 @@ public class RecipeManager {
         }
     }
     
+    /**
+     * Print the user's pantry alerts not shown before, then mark them seen.
+     */
+    public void showExpiryAlerts(int userId) {
+        String sql = "SELECT i.Name, a.ExpiryDate, a.ExpiryDate < date('now', 'localtime') AS Expired " +
+                    "FROM PantryAlerts a " +
+                    "JOIN Pantry p ON p.PantryItemID = a.PantryItemID " +
+                    "JOIN Ingredients i ON i.IngredientID = p.IngredientID " +
+                    "WHERE a.UserID = ? AND a.Seen = 0 " +
+                    "ORDER BY a.ExpiryDate";
+        try (ConnectionManager.Lease lease = db.writer()) {
+            boolean any = false;
+            try (PreparedStatement pstmt = lease.prepare("pantryAlerts.unseen", sql)) {
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        if (!any) {
+                            System.out.println("\n⏰ Use these soon:");
+                            any = true;
+                        }
+                        System.out.println("    - " + rs.getString("Name") +
+                                (rs.getInt("Expired") == 1 ? " (expired " : " (expires ") + rs.getString("ExpiryDate") + ")");
+                    }
+                }
+            }
+            if (!any) {
+                return;
+            }
+            try (PreparedStatement pstmt = lease.prepare("pantryAlerts.markSeen",
+                    "UPDATE PantryAlerts SET Seen = 1 WHERE UserID = ? AND Seen = 0")) {
+                pstmt.setInt(1, userId);
+                pstmt.executeUpdate();
+            }
+            lease.connection().commit();
+        } catch (SQLException e) {
+            System.out.println("Error loading pantry alerts: " + e.getMessage());
+        }
+    }
+    
     public void profileManagement() {
         if (currentUser == null) {
             System.out.println("Please login first.");
@@ -179,7 +327,8 @@ public class RecipeManager {
     
     public void viewProfile() {
         String sql = "SELECT Username, Email, Bio, CreatedAt FROM Users WHERE UserID = ?";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (ConnectionManager.Lease lease = db.reader();
+             PreparedStatement pstmt = lease.prepare("users.profile", sql)) {
             pstmt.setInt(1, currentUser);
             ResultSet rs = pstmt.executeQuery();
             
@@ -222,7 +371,8 @@ public class RecipeManager {
             params.add(currentUser);
             String sql = "UPDATE Users SET " + updates.toString() + " WHERE UserID = ?";
             
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            try (ConnectionManager.Lease lease = db.writer();
+                 PreparedStatement pstmt = lease.prepare("users.updateProfile", sql)) {
                 for (int i = 0; i < params.size(); i++) {
                     pstmt.setObject(i + 1, params.get(i));
                 }
@@ -230,17 +380,10 @@ public class RecipeManager {
                 pstmt.executeUpdate();
                 
                 // Commit the transaction
-                conn.commit();
+                lease.connection().commit();
                 
                 System.out.println("Profile updated successfully!");
             } catch (SQLException e) {
-                try {
-                    if (conn != null) {
-                        conn.rollback();
-                    }
-                } catch (SQLException rollbackEx) {
-                    System.out.println("Error rolling back transaction: " + rollbackEx.getMessage());
-                }
                 System.out.println("Error updating profile: " + e.getMessage());
             }
         }
@@ -258,7 +401,9 @@ public class RecipeManager {
         
         // Check current password
         String sql = "SELECT Password FROM Users WHERE UserID = ?";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (ConnectionManager.Lease lease = db.writer();
+             PreparedStatement pstmt = lease.prepare("users.password", sql)) {
+            Connection conn = lease.connection();
             pstmt.setInt(1, currentUser);
             ResultSet rs = pstmt.executeQuery();
             
@@ -279,7 +424,7 @@ public class RecipeManager {
                 // Update password
                 String newHash = DBInit.hashPassword(newPassword);
                 String updateSql = "UPDATE Users SET Password = ? WHERE UserID = ?";
-                try (PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
+                try (PreparedStatement updateStmt = lease.prepare("users.updatePassword", updateSql)) {
                     updateStmt.setString(1, newHash);
                     updateStmt.setInt(2, currentUser);
                     updateStmt.executeUpdate();
@@ -291,13 +436,6 @@ public class RecipeManager {
                 }
             }
         } catch (SQLException e) {
-            try {
-                if (conn != null) {
-                    conn.rollback();
-                }
-            } catch (SQLException rollbackEx) {
-                System.out.println("Error rolling back transaction: " + rollbackEx.getMessage());
-            }
             System.out.println("Error changing password: " + e.getMessage());
         }
     }
@@ -349,41 +487,10 @@ public class RecipeManager {
             System.out.print("Enter fats (g): ");
             float fats = Float.parseFloat(scanner.nextLine());
             
-            // Insert the recipe
-            String sql = "INSERT INTO Recipes " +
-                        "(UserID, Title, Instructions, PrepTime, CookingTime, " +
-                        "Servings, Calories, Protein, Carbs, Fats, Cuisine, " + 
-                        "DifficultyLevel, IsPublic) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-            
-            int recipeId;
-            try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-                pstmt.setInt(1, currentUser);
-                pstmt.setString(2, title);
-                pstmt.setString(3, instructions);
-                pstmt.setString(4, String.valueOf(prepTime));
-                pstmt.setString(5, String.valueOf(cookTime));
-                pstmt.setInt(6, servings);
-                pstmt.setFloat(7, calories);
-                pstmt.setFloat(8, protein);
-                pstmt.setFloat(9, carbs);
-                pstmt.setFloat(10, fats);
-                pstmt.setString(11, cuisine);
-                pstmt.setString(12, difficulty);
-                pstmt.setInt(13, isPublic ? 1 : 0);
-                
-                pstmt.executeUpdate();
-                
-                // Get the generated recipe ID
-                ResultSet rs = pstmt.getGeneratedKeys();
-                if (rs.next()) {
-                    recipeId = rs.getInt(1);
-                } else {
-                    throw new SQLException("Creating recipe failed, no ID obtained.");
-                }
-            }
-            
-            // Add ingredients
+            // Collect ingredients and tags before opening the write transaction,
+            // so the writer connection is never held while waiting on user input
+            List<Object[]> ingredientEntries = new ArrayList<>();
+            Map<String, String[]> newIngredients = new HashMap<>();
             while (true) {
                 System.out.print("Enter ingredient name (or 'done' to finish): ");
                 String ingredientName = scanner.nextLine();
@@ -392,42 +499,18 @@ public class RecipeManager {
                     break;
                 }
                 
-                // Check if the ingredient exists
-                int ingredientId;
-                String ingredientSql = "SELECT IngredientID FROM Ingredients WHERE Name = ?";
-                try (PreparedStatement pstmt = conn.prepareStatement(ingredientSql)) {
-                    pstmt.setString(1, ingredientName);
-                    ResultSet rs = pstmt.executeQuery();
+                if (!newIngredients.containsKey(ingredientName) && ingredientNames.find(db, ingredientName) < 0) {
+                    // Create new ingredient
+                    System.out.print("Enter category for " + ingredientName + ": ");
+                    String category = scanner.nextLine();
                     
-                    if (rs.next()) {
-                        ingredientId = rs.getInt("IngredientID");
-                    } else {
-                        // Create new ingredient
-                        System.out.print("Enter category for " + ingredientName + ": ");
-                        String category = scanner.nextLine();
-                        
-                        System.out.print("Enter default unit for " + ingredientName + ": ");
-                        String unit = scanner.nextLine();
-                        
-                        System.out.print("Enter nutritional info (optional): ");
-                        String nutritionalInfo = scanner.nextLine();
-                        
-                        String newIngredientSql = "INSERT INTO Ingredients (Name, Category, Unit, NutritionalInfo) VALUES (?, ?, ?, ?)";
-                        try (PreparedStatement ingredientStmt = conn.prepareStatement(newIngredientSql, Statement.RETURN_GENERATED_KEYS)) {
-                            ingredientStmt.setString(1, ingredientName);
-                            ingredientStmt.setString(2, category);
-                            ingredientStmt.setString(3, unit);
-                            ingredientStmt.setString(4, nutritionalInfo);
-                            ingredientStmt.executeUpdate();
-                            
-                            ResultSet generatedKeys = ingredientStmt.getGeneratedKeys();
-                            if (generatedKeys.next()) {
-                                ingredientId = generatedKeys.getInt(1);
-                            } else {
-                                throw new SQLException("Creating ingredient failed, no ID obtained.");
-                            }
-                        }
-                    }
+                    System.out.print("Enter default unit for " + ingredientName + ": ");
+                    String unit = scanner.nextLine();
+                    
+                    System.out.print("Enter nutritional info (optional): ");
+                    String nutritionalInfo = scanner.nextLine();
+                    
+                    newIngredients.put(ingredientName, new String[] {category, unit, nutritionalInfo});
                 }
                 
                 // Add quantity and unit for this recipe
@@ -440,19 +523,11 @@ public class RecipeManager {
                 System.out.print("Any notes for this ingredient? (optional): ");
                 String notes = scanner.nextLine();
                 
-                // Insert into RecipeIngredients
-                String recipeIngredientSql = "INSERT INTO RecipeIngredients (RecipeID, IngredientID, Quantity, Unit, Notes) VALUES (?, ?, ?, ?, ?)";
-                try (PreparedStatement pstmt = conn.prepareStatement(recipeIngredientSql)) {
-                    pstmt.setInt(1, recipeId);
-                    pstmt.setInt(2, ingredientId);
-                    pstmt.setFloat(3, quantity);
-                    pstmt.setString(4, unit);
-                    pstmt.setString(5, notes);
-                    pstmt.executeUpdate();
-                }
+                ingredientEntries.add(new Object[] {ingredientName, quantity, unit, notes});
             }
             
-            // Add tags
+            List<String> recipeTags = new ArrayList<>();
+            Map<String, String> newTags = new HashMap<>();
             while (true) {
                 System.out.print("Enter a tag for this recipe (or 'done' to finish): ");
                 String tagName = scanner.nextLine();
@@ -461,114 +536,217 @@ public class RecipeManager {
                     break;
                 }
                 
-                // Check if the tag exists
-                int tagId;
-                String tagSql = "SELECT TagID FROM Tags WHERE Name = ?";
-                try (PreparedStatement pstmt = conn.prepareStatement(tagSql)) {
-                    pstmt.setString(1, tagName);
-                    ResultSet rs = pstmt.executeQuery();
+                if (!newTags.containsKey(tagName) && tagNames.find(db, tagName) < 0) {
+                    // Create new tag
+                    System.out.print("Enter description for tag " + tagName + ": ");
+                    newTags.put(tagName, scanner.nextLine());
+                }
+                
+                recipeTags.add(tagName);
+            }
+            
+            try (ConnectionManager.Lease lease = db.writer()) {
+                Connection conn = lease.connection();
+                
+                // Insert the recipe
+                String sql = "INSERT INTO Recipes " +
+                            "(UserID, Title, Instructions, PrepTime, CookingTime, " +
+                            "Servings, Calories, Protein, Carbs, Fats, Cuisine, " + 
+                            "DifficultyLevel, IsPublic, PrepMinutes, CookMinutes, TotalMinutes) " +
+                            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                
+                int recipeId;
+                try (PreparedStatement pstmt = lease.prepare("recipes.insert", sql, Statement.RETURN_GENERATED_KEYS)) {
+                    pstmt.setInt(1, currentUser);
+                    pstmt.setString(2, title);
+                    pstmt.setString(3, instructions);
+                    pstmt.setString(4, String.valueOf(prepTime));
+                    pstmt.setString(5, String.valueOf(cookTime));
+                    pstmt.setInt(6, servings);
+                    pstmt.setFloat(7, calories);
+                    pstmt.setFloat(8, protein);
+                    pstmt.setFloat(9, carbs);
+                    pstmt.setFloat(10, fats);
+                    pstmt.setString(11, cuisine);
+                    pstmt.setString(12, difficulty);
+                    pstmt.setInt(13, isPublic ? 1 : 0);
+                    pstmt.setInt(14, prepTime);
+                    pstmt.setInt(15, cookTime);
+                    pstmt.setInt(16, prepTime + cookTime);
+                    
+                    pstmt.executeUpdate();
                     
+                    // Get the generated recipe ID
+                    ResultSet rs = pstmt.getGeneratedKeys();
                     if (rs.next()) {
-                        tagId = rs.getInt("TagID");
+                        recipeId = rs.getInt(1);
                     } else {
-                        // Create new tag
-                        System.out.print("Enter description for tag " + tagName + ": ");
-                        String tagDescription = scanner.nextLine();
+                        throw new SQLException("Creating recipe failed, no ID obtained.");
+                    }
+                }
+                
+                // Add ingredients
+                String newIngredientSql = "INSERT OR IGNORE INTO Ingredients (Name, Category, Unit, NutritionalInfo) VALUES (?, ?, ?, ?)";
+                String recipeIngredientSql = "INSERT INTO RecipeIngredients (RecipeID, IngredientID, Quantity, Unit, Notes) VALUES (?, ?, ?, ?, ?)";
+                List<Integer> ingredientIds = new ArrayList<>();
+                try (PreparedStatement pstmt = lease.prepare("recipeIngredients.insert", recipeIngredientSql)) {
+                    for (Object[] entry : ingredientEntries) {
+                        String ingredientName = (String) entry[0];
                         
-                        String newTagSql = "INSERT INTO Tags (Name, Description) VALUES (?, ?)";
-                        try (PreparedStatement tagStmt = conn.prepareStatement(newTagSql, Statement.RETURN_GENERATED_KEYS)) {
-                            tagStmt.setString(1, tagName);
-                            tagStmt.setString(2, tagDescription);
-                            tagStmt.executeUpdate();
-                            
-                            ResultSet generatedKeys = tagStmt.getGeneratedKeys();
-                            if (generatedKeys.next()) {
-                                tagId = generatedKeys.getInt(1);
-                            } else {
-                                throw new SQLException("Creating tag failed, no ID obtained.");
-                            }
-                        }
+                        // Created here if it is new (it may have been created since we asked)
+                        String[] details = newIngredients.getOrDefault(ingredientName, new String[3]);
+                        int ingredientId = ingredientNames.resolve(lease, ingredientName, newIngredientSql,
+                                details[0], details[1], details[2]);
+                        
+                        // Insert into RecipeIngredients
+                        pstmt.setInt(1, recipeId);
+                        pstmt.setInt(2, ingredientId);
+                        pstmt.setFloat(3, (Float) entry[1]);
+                        pstmt.setString(4, (String) entry[2]);
+                        pstmt.setString(5, (String) entry[3]);
+                        pstmt.executeUpdate();
+                        ingredientIds.add(ingredientId);
                     }
                 }
                 
-                // Insert into RecipeTags
+                // Add tags
+                String newTagSql = "INSERT OR IGNORE INTO Tags (Name, Description) VALUES (?, ?)";
                 String recipeTagSql = "INSERT INTO RecipeTags (RecipeID, TagID) VALUES (?, ?)";
-                try (PreparedStatement pstmt = conn.prepareStatement(recipeTagSql)) {
-                    pstmt.setInt(1, recipeId);
-                    pstmt.setInt(2, tagId);
-                    pstmt.executeUpdate();
+                try (PreparedStatement pstmt = lease.prepare("recipeTags.insert", recipeTagSql)) {
+                    for (String tagName : recipeTags) {
+                        int tagId = tagNames.resolve(lease, tagName, newTagSql, newTags.get(tagName));
+                        
+                        // Insert into RecipeTags
+                        pstmt.setInt(1, recipeId);
+                        pstmt.setInt(2, tagId);
+                        pstmt.executeUpdate();
+                    }
                 }
+                
+                conn.commit();
+                ingredientNames.publish();
+                tagNames.publish();
+                
+                // Keep the in-memory indexes in step with RecipeIngredients and RecipeTags
+                int[] addedIngredients = ingredientIds.stream().mapToInt(Integer::intValue).toArray();
+                ingredientIndex.addRecipe(recipeId, addedIngredients);
+                similarRecipes.addRecipe(recipeId, addedIngredients);
+                dietaryIndex.addRecipe(recipeId, recipeTags);
+                mealPlanGenerator = null;
+                detailCache.invalidate(recipeId);
+            } finally {
+                // Names created by a transaction that was rolled back
+                ingredientNames.discardPending();
+                tagNames.discardPending();
             }
-            
-            conn.commit();
             System.out.println("Recipe added successfully!");
             
         } catch (SQLException | NumberFormatException e) {
-            try {
-                if (conn != null) {
-                conn.rollback();
-                }
-            } catch (SQLException rollbackEx) {
-                System.out.println("Error rolling back transaction: " + rollbackEx.getMessage());
-            }
             System.out.println("Error adding recipe: " + e.getMessage());
         }
     }
     
     public List<Object[]> viewRecipes(String filterType) {
-        List<Object[]> recipes = new ArrayList<>();
-        
+        KeysetPager pager = recipesPager(filterType);
         try {
-            StringBuilder query = new StringBuilder(
-                "SELECT RecipeID, Title, Cuisine, DifficultyLevel, " +
-                "CookingTime, Servings, IsPublic " +
-                "FROM Recipes");
-            
-            List<Object> params = new ArrayList<>();
-            
-            if (filterType.equals("my_recipes") && currentUser != null) {
-                query.append(" WHERE UserID = ?");
-                params.add(currentUser);
-            } else if (filterType.equals("public")) {
-                query.append(" WHERE IsPublic = 1");
-            }
-            
-            try (PreparedStatement pstmt = conn.prepareStatement(query.toString())) {
-                for (int i = 0; i < params.size(); i++) {
-                    pstmt.setObject(i + 1, params.get(i));
-                }
-                
-                ResultSet rs = pstmt.executeQuery();
-                
-                while (rs.next()) {
-                    Object[] recipe = new Object[7];
-                    recipe[0] = rs.getInt("RecipeID");
-                    recipe[1] = rs.getString("Title");
-                    recipe[2] = rs.getString("Cuisine");
-                    recipe[3] = rs.getString("DifficultyLevel");
-                    recipe[4] = rs.getString("CookingTime");
-                    recipe[5] = rs.getInt("Servings");
-                    recipe[6] = rs.getInt("IsPublic") == 1 ? "Yes" : "No";
-                    
-                    recipes.add(recipe);
-                }
-            }
-            
+            String[] headers = {"ID", "Title", "Cuisine", "Difficulty", "Cook Time", "Servings", "Public"};
+            int[] maxWidths = {5, 20, 10, 10, 11, 8, 6};
+            List<Object[]> recipes = browse(pager, headers, maxWidths);
             if (recipes.isEmpty()) {
                 System.out.println("No recipes found.");
-                return recipes;
             }
-            
-            // Use TableFormatter to display recipes
-            String[] headers = {"ID", "Title", "Cuisine", "Difficulty", "Cook Time", "Servings", "Public"};
-            int[] maxWidths = {5, 20, 10, 10, 11, 8, 6};
-            System.out.println(TableFormatter.formatTable(headers, recipes, maxWidths));
-            
+            return recipes;
         } catch (SQLException e) {
             System.out.println("Error viewing recipes: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Pages through the current user's recipes ("my_recipes"), the public ones ("public")
+     * or all of them.
+     */
+    KeysetPager recipesPager(String filterType) {
+        String where = "1=1";
+        List<Object> params = new ArrayList<>();
+        
+        if (filterType.equals("my_recipes") && currentUser != null) {
+            where = "UserID = ?";
+            params.add(currentUser);
+        } else if (filterType.equals("public")) {
+            where = "IsPublic = 1";
         }
         
-        return recipes;
+        // Alphabetical, a page at a time (idx_recipes_title, idx_recipes_public_title, idx_recipes_user_title)
+        return new KeysetPager(db,
+                "RecipeID, Title, Cuisine, DifficultyLevel, CookingTime, Servings, IsPublic",
+                "Recipes", where, params, "Title", "RecipeID",
+                rs -> new Object[] {
+                    rs.getInt("RecipeID"),
+                    rs.getString("Title"),
+                    rs.getString("Cuisine"),
+                    rs.getString("DifficultyLevel"),
+                    rs.getString("CookingTime"),
+                    rs.getInt("Servings"),
+                    rs.getInt("IsPublic") == 1 ? "Yes" : "No"
+                },
+                KeysetPager.DEFAULT_PAGE_SIZE);
+    }
+    
+    /**
+     * Stream rows to the console, sized to the rows themselves.
+     */
+    private void printTable(String[] headers, List<Object[]> rows, int[] maxWidths) {
+        try (TableFormatter table = new TableFormatter(System.out, headers, maxWidths, Math.max(1, rows.size()))) {
+            for (Object[] row : rows) {
+                table.addRow(row);
+            }
+        } catch (IOException e) {
+            System.out.println("Error printing table: " + e.getMessage());
+        }
+        System.out.println();
+    }
+    
+    /**
+     * Show the first page and let the user move between pages until they press Enter.
+     *
+     * @return The page on screen when the user finished (empty if there were no rows)
+     */
+    private List<Object[]> browse(KeysetPager pager, String[] headers, int[] maxWidths) throws SQLException {
+        List<Object[]> page = pager.first();
+        boolean redraw = true;
+        while (!page.isEmpty()) {
+            if (redraw) {
+                printTable(headers, page, maxWidths);
+            }
+            if (!pager.hasNext() && !pager.hasPrevious()) {
+                break;
+            }
+            
+            StringBuilder prompt = new StringBuilder("Page " + pager.getPageNumber() + " -");
+            if (pager.hasNext()) {
+                prompt.append(" [n] Next");
+            }
+            if (pager.hasPrevious()) {
+                prompt.append(" [p] Previous");
+            }
+            prompt.append(" [Enter] Done: ");
+            System.out.print(prompt);
+            
+            String choice = scanner.nextLine().trim().toLowerCase();
+            redraw = true;
+            if (choice.equals("n") && pager.hasNext()) {
+                page = pager.next();
+            } else if (choice.equals("p") && pager.hasPrevious()) {
+                page = pager.previous();
+            } else if (choice.isEmpty()) {
+                break;
+            } else {
+                System.out.println("Invalid choice. Try again.");
+                redraw = false;
+            }
+        }
+        return page;
     }
     
     private String limitString(String input, int maxLength) {
@@ -582,7 +760,9 @@ public class RecipeManager {
             System.out.println("1. View All Recipes");
             System.out.println("2. View My Recipes");
             System.out.println("3. View Recipe Details");
-            System.out.println("4. Return to Main Menu");
+            System.out.println("4. Trending Now");
+            System.out.println("5. Recommended for You");
+            System.out.println("6. Return to Main Menu");
             
             System.out.print("Enter your choice: ");
             String choice = scanner.nextLine();
@@ -598,6 +778,12 @@ public class RecipeManager {
                     viewRecipeDetails();
                     break;
                 case "4":
+                    trendingRecipes();
+                    break;
+                case "5":
+                    recommendedForYou();
+                    break;
+                case "6":
                     return;
                 default:
                     System.out.println("Invalid choice. Try again.");
@@ -605,6 +791,131 @@ public class RecipeManager {
         }
     }
     
+    public void trendingRecipes() {
+        System.out.print("\nCuisine (optional): ");
+        String cuisine = scanner.nextLine().trim();
+        try {
+            List<Object[]> rows = getTrendingRecipes(cuisine, TRENDING_LIMIT);
+            if (rows.isEmpty()) {
+                System.out.println("Nothing is trending right now.");
+                return;
+            }
+            System.out.println("\n--- Trending Now" + (cuisine.isEmpty() ? "" : " in " + cuisine) + " ---");
+            String[] headers = {"ID", "Title", "Cuisine", "Score"};
+            int[] maxWidths = {5, 20, 10, 8};
+            printTable(headers, rows, maxWidths);
+        } catch (SQLException e) {
+            System.out.println("Error loading trending recipes: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * The recipes with the most recent views and feedback, each event's weight halving
+     * every chefsync.trendingHalfLifeHours (see {@link TrendingTracker}).
+     *
+     * @param cuisine Only this cuisine; null or empty for all
+     * @return Rows of {ID, Title, Cuisine, score}, highest score first
+     */
+    public List<Object[]> getTrendingRecipes(String cuisine, int limit) throws SQLException {
+        List<TrendingTracker.Score> scores = trending.top(cuisine, limit, System.currentTimeMillis());
+        List<Object[]> rows = new ArrayList<>(scores.size());
+        if (scores.isEmpty()) {
+            return rows;
+        }
+        
+        int[] ids = new int[scores.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = scores.get(i).recipeId;
+        }
+        Map<Integer, String> titles = new HashMap<>();
+        String titlesSql = "SELECT RecipeID, Title FROM Recipes WHERE RecipeID IN (SELECT value FROM json_each(?))";
+        try (ConnectionManager.Lease lease = db.reader();
+             PreparedStatement pstmt = lease.prepare("recipes.trendingTitles", titlesSql)) {
+            pstmt.setString(1, Json.array(ids));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    titles.put(rs.getInt("RecipeID"), rs.getString("Title"));
+                }
+            }
+        }
+        
+        for (TrendingTracker.Score score : scores) {
+            // Deleted recipes keep their score until it decays away
+            String title = titles.get(score.recipeId);
+            if (title != null) {
+                rows.add(new Object[] {score.recipeId, title, score.cuisine, String.format("%.1f", score.score)});
+            }
+        }
+        return rows;
+    }
+    
+    public TrendingTracker getTrendingTracker() {
+        return trending;
+    }
+    
+    public void recommendedForYou() {
+        try {
+            List<Object[]> rows = getRecommendations(currentUser, RECOMMENDATION_LIMIT);
+            if (rows.isEmpty()) {
+                System.out.println("No recommendations yet. Rate a few recipes 4 or 5 stars first.");
+                return;
+            }
+            System.out.println("\n--- Recommended for You ---");
+            String[] headers = {"ID", "Title", "Because You Liked"};
+            int[] maxWidths = {5, 25, 25};
+            printTable(headers, rows, maxWidths);
+        } catch (SQLException e) {
+            System.out.println("Error loading recommendations: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Public recipes rated highly by the people who liked what this user liked (see
+     * {@link RecipeNeighbours}). Empty until DBInit --build-neighbours has run.
+     *
+     * @return Rows of {ID, Title, title of the liked recipe behind it}, best first
+     */
+    public List<Object[]> getRecommendations(int userId, int limit) throws SQLException {
+        try (ConnectionManager.Lease lease = db.reader()) {
+            // Extra candidates make up for recipes that turn out to be private
+            List<RecipeNeighbours.Recommendation> recommendations = RecipeNeighbours.recommend(lease, userId, limit * 2);
+            List<Object[]> rows = new ArrayList<>(limit);
+            if (recommendations.isEmpty()) {
+                return rows;
+            }
+            
+            int[] ids = new int[recommendations.size() * 2];
+            for (int i = 0; i < recommendations.size(); i++) {
+                ids[2 * i] = recommendations.get(i).recipeId;
+                ids[2 * i + 1] = recommendations.get(i).becauseOf;
+            }
+            Map<Integer, String> titles = new HashMap<>();
+            Map<Integer, Boolean> isPublic = new HashMap<>();
+            String titlesSql = "SELECT RecipeID, Title, IsPublic FROM Recipes " +
+                              "WHERE RecipeID IN (SELECT value FROM json_each(?))";
+            try (PreparedStatement pstmt = lease.prepare("recipes.recommendedTitles", titlesSql)) {
+                pstmt.setString(1, Json.array(ids));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        titles.put(rs.getInt("RecipeID"), rs.getString("Title"));
+                        isPublic.put(rs.getInt("RecipeID"), rs.getInt("IsPublic") == 1);
+                    }
+                }
+            }
+            
+            for (RecipeNeighbours.Recommendation recommendation : recommendations) {
+                if (rows.size() == limit) {
+                    break;
+                }
+                if (Boolean.TRUE.equals(isPublic.get(recommendation.recipeId))) {
+                    rows.add(new Object[] {recommendation.recipeId, titles.get(recommendation.recipeId),
+                            titles.get(recommendation.becauseOf)});
+                }
+            }
+            return rows;
+        }
+    }
+    
     public void viewRecipeDetails() {
         try {
             // First, view available recipes
@@ -617,125 +928,8 @@ public class RecipeManager {
             System.out.print("\nEnter Recipe ID to view details: ");
             int recipeId = Integer.parseInt(scanner.nextLine());
             
-            // Retrieve detailed recipe information
-            String sql = "SELECT " +
-                    "r.RecipeID, r.Title, r.Instructions, r.Cuisine, r.DifficultyLevel, " +
-                    "r.PrepTime, r.CookingTime, r.Servings, r.Calories, r.Protein, " +
-                    "r.Carbs, r.Fats " +
-                    "FROM Recipes r WHERE r.RecipeID = ?";
-            
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setInt(1, recipeId);
-                ResultSet rs = pstmt.executeQuery();
-                
-                if (!rs.next()) {
-                    System.out.println("Recipe not found.");
-                    return;
-                }
-                
-                System.out.println("\n--- Recipe Details ---");
-                System.out.println("=" + "=".repeat(30));
-                System.out.println("📜 Title: " + rs.getString("Title"));
-                System.out.println("🌍 Cuisine: " + rs.getString("Cuisine"));
-                System.out.println("🔥 Difficulty: " + rs.getString("DifficultyLevel"));
-                System.out.println("⏰ Prep Time: " + rs.getString("PrepTime") + " minutes");
-                System.out.println("🍳 Cooking Time: " + rs.getString("CookingTime") + " minutes");
-                System.out.println("👥 Servings: " + rs.getInt("Servings"));
-                
-                System.out.println("\n🍎 Nutritional Information:");
-                System.out.println("    Calories: " + rs.getInt("Calories"));
-                System.out.println("    Protein: " + rs.getFloat("Protein") + "g");
-                System.out.println("    Carbs: " + rs.getFloat("Carbs") + "g");
-                System.out.println("    Fats: " + rs.getFloat("Fats") + "g");
-                
-                // Get ingredients
-                String ingredientsSql = "SELECT i.Name, ri.Quantity, ri.Unit " +
-                                     "FROM RecipeIngredients ri " +
-                                     "JOIN Ingredients i ON ri.IngredientID = i.IngredientID " +
-                                     "WHERE ri.RecipeID = ?";
-                
-                try (PreparedStatement ingredientsStmt = conn.prepareStatement(ingredientsSql)) {
-                    ingredientsStmt.setInt(1, recipeId);
-                    ResultSet ingredientsRs = ingredientsStmt.executeQuery();
-                    
-                    System.out.println("\n🥬 Ingredients:");
-                    boolean hasIngredients = false;
-                    
-                    while (ingredientsRs.next()) {
-                        hasIngredients = true;
-                        System.out.printf("    - %s: %.2f %s\n", 
-                                ingredientsRs.getString("Name"),
-                                ingredientsRs.getFloat("Quantity"),
-                                ingredientsRs.getString("Unit"));
-                    }
-                    
-                    if (!hasIngredients) {
-                        System.out.println("    No ingredients found.");
-                    }
-                }
-                
-                // Get tags
-                String tagsSql = "SELECT t.Name FROM RecipeTags rt " +
-                               "JOIN Tags t ON rt.TagID = t.TagID " +
-                               "WHERE rt.RecipeID = ?";
-                
-                try (PreparedStatement tagsStmt = conn.prepareStatement(tagsSql)) {
-                    tagsStmt.setInt(1, recipeId);
-                    ResultSet tagsRs = tagsStmt.executeQuery();
-                    
-                    StringBuilder tags = new StringBuilder();
-                    boolean hasTags = false;
-                    
-                    while (tagsRs.next()) {
-                        if (hasTags) {
-                            tags.append(", ");
-                        }
-                        tags.append(tagsRs.getString("Name"));
-                        hasTags = true;
-                    }
-                    
-                    if (hasTags) {
-                        System.out.println("\n🏷️ Tags: " + tags.toString());
-                    }
-                }
-                
-                // Show instructions
-                System.out.println("\n📖 Instructions:");
-                System.out.println(rs.getString("Instructions"));
-                
-                // Get feedback
-                String feedbackSql = "SELECT u.Username, rf.Rating, rf.DifficultyRating, " +
-                                  "rf.ActualCookingTime, rf.Comment, rf.CreatedAt " +
-                                  "FROM RecipeFeedback rf " +
-                                  "JOIN Users u ON rf.UserID = u.UserID " +
-                                  "WHERE rf.RecipeID = ? " +
-                                  "ORDER BY rf.CreatedAt DESC";
-                
-                try (PreparedStatement feedbackStmt = conn.prepareStatement(feedbackSql)) {
-                    feedbackStmt.setInt(1, recipeId);
-                    ResultSet feedbackRs = feedbackStmt.executeQuery();
-                    
-                    boolean hasFeedback = false;
-                    System.out.println("\n📝 Recipe Feedback:");
-                    
-                    while (feedbackRs.next()) {
-                        hasFeedback = true;
-                        System.out.println("\n👤 User: " + feedbackRs.getString("Username"));
-                        System.out.println("⭐ Rating: " + feedbackRs.getInt("Rating") + "/5");
-                        System.out.println("🔥 Difficulty Rating: " + feedbackRs.getString("DifficultyRating") + "/5");
-                        System.out.println("⏰ Actual Cooking Time: " + 
-                                      (feedbackRs.getString("ActualCookingTime") != null ? 
-                                       feedbackRs.getString("ActualCookingTime") + " minutes" : "Not specified"));
-                        System.out.println("💬 Comment: " + 
-                                      (feedbackRs.getString("Comment") != null ? 
-                                       feedbackRs.getString("Comment") : "No comment"));
-                        System.out.println("📅 Submitted: " + feedbackRs.getString("CreatedAt"));
-                    }
-                    
-                    if (!hasFeedback) {
-                        System.out.println("No feedback available for this recipe.");
-                    }
-                }
+            if (!printRecipeDetails(recipeId, System.out)) {
+                System.out.println("Recipe not found.");
             }
             
         } catch (SQLException | NumberFormatException e) {
@@ -743,6 +937,99 @@ public class RecipeManager {
         }
     }
     
+    /**
+     * Print a recipe with its ingredients, tags, instructions and feedback.
+     *
+     * @return false if there is no recipe with that ID
+     */
+    public boolean printRecipeDetails(int recipeId, PrintStream out) throws SQLException {
+        RecipeDetail detail = detailCache.get(recipeId, id -> {
+            try (ConnectionManager.Lease lease = db.reader()) {
+                return RecipeDetail.load(lease, id);
+            }
+        });
+        if (detail == null) {
+            return false;
+        }
+        detail.print(out);
+        List<Object[]> similar = getSimilarRecipes(detail.recipeId, SIMILAR_LIMIT);
+        if (!similar.isEmpty()) {
+            out.println("\n🍳 Similar recipes:");
+            for (Object[] row : similar) {
+                out.println("    - " + row[1] + " (ID " + row[0] + ", " + row[2] + " ingredient overlap)");
+            }
+        }
+        trending.recordView(detail.recipeId, detail.cuisine);
+        return true;
+    }
+    
+    /**
+     * Public recipes with the most ingredients in common with this one, by the estimated
+     * Jaccard similarity of their ingredient sets (see {@link SimilarRecipeIndex}).
+     *
+     * @return Rows of {ID, Title, similarity as a percentage}, most similar first
+     */
+    public List<Object[]> getSimilarRecipes(int recipeId, int limit) throws SQLException {
+        // Extra candidates make up for recipes that turn out to be private
+        List<SimilarRecipeIndex.Match> matches = similarRecipes.similarTo(recipeId, limit * 2);
+        List<Object[]> rows = new ArrayList<>(limit);
+        if (matches.isEmpty()) {
+            return rows;
+        }
+        
+        int[] ids = new int[matches.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = matches.get(i).recipeId;
+        }
+        Map<Integer, String> titles = new HashMap<>();
+        String titlesSql = "SELECT RecipeID, Title FROM Recipes " +
+                          "WHERE RecipeID IN (SELECT value FROM json_each(?)) AND IsPublic = 1";
+        try (ConnectionManager.Lease lease = db.reader();
+             PreparedStatement pstmt = lease.prepare("recipes.similarTitles", titlesSql)) {
+            pstmt.setString(1, Json.array(ids));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    titles.put(rs.getInt("RecipeID"), rs.getString("Title"));
+                }
+            }
+        }
+        
+        for (SimilarRecipeIndex.Match match : matches) {
+            if (rows.size() == limit) {
+                break;
+            }
+            String title = titles.get(match.recipeId);
+            if (title != null) {
+                rows.add(new Object[] {match.recipeId, title, Math.round(match.similarity * 100) + "%"});
+            }
+        }
+        return rows;
+    }
+    
+    public SimilarRecipeIndex getSimilarRecipeIndex() {
+        return similarRecipes;
+    }
+    
+    /**
+     * The details of several recipes, with any not already cached read in one query.
+     *
+     * @return The details in the order requested; unknown IDs are left out
+     */
+    public Map<Integer, RecipeDetail> getRecipeDetails(int[] recipeIds) throws SQLException {
+        return detailCache.getAll(recipeIds, ids -> {
+            try (ConnectionManager.Lease lease = db.reader()) {
+                return RecipeDetail.loadAll(lease, ids);
+            }
+        });
+    }
+    
+    /**
+     * Hit, miss and eviction counts for the recipe details cache.
+     */
+    public RecipeDetailCache.Stats getDetailCacheStats() {
+        return detailCache.getStats();
+    }
+    
     public void mealPlanning() {
         if (currentUser == null) {
             System.out.println("Please login first.");
@@ -755,7 +1042,10 @@ public class RecipeManager {
             System.out.println("2. View Meal Plans");
             System.out.println("3. View Meal Plan Details");
             System.out.println("4. Add Recipe to Meal Plan");
-            System.out.println("5. Return to Main Menu");
+            System.out.println("5. Remove Recipe from Meal Plan");
+            System.out.println("6. Generate Shopping List");
+            System.out.println("7. Generate Meal Plan from Targets");
+            System.out.println("8. Return to Main Menu");
 
             System.out.print("Enter your choice: ");
             String choice = scanner.nextLine();
@@ -774,6 +1064,15 @@ public class RecipeManager {
                     addRecipeToMealPlan();
                     break;
                 case "5":
+                    removeRecipeFromMealPlan();
+                    break;
+                case "6":
+                    shoppingList();
+                    break;
+                case "7":
+                    generateMealPlan();
+                    break;
+                case "8":
                     return;
                 default:
                     System.out.println("Invalid choice. Try again.");
@@ -793,7 +1092,8 @@ public class RecipeManager {
             String endDate = scanner.nextLine();
             
             String sql = "INSERT INTO MealPlans (UserID, Name, StartDate, EndDate) VALUES (?, ?, ?, ?)";
-            try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            try (ConnectionManager.Lease lease = db.writer();
+                 PreparedStatement pstmt = lease.prepare("mealPlans.insert", sql, Statement.RETURN_GENERATED_KEYS)) {
                 pstmt.setInt(1, currentUser);
                 pstmt.setString(2, name);
                 pstmt.setString(3, startDate);
@@ -807,7 +1107,7 @@ public class RecipeManager {
                     int planId = rs.getInt(1);
                     
                     // Commit the transaction
-                    conn.commit();
+                    lease.connection().commit();
                     
                     System.out.println("Meal plan '" + name + "' created successfully!");
                     return planId;
@@ -815,25 +1115,170 @@ public class RecipeManager {
             }
             
         } catch (SQLException e) {
-            try {
-                if (conn != null) {
-                    conn.rollback();
-                }
-            } catch (SQLException rollbackEx) {
-                System.out.println("Error rolling back transaction: " + rollbackEx.getMessage());
-            }
             System.out.println("Error creating meal plan: " + e.getMessage());
         }
         
         return null;
     }
     
+    public void generateMealPlan() {
+        try {
+            System.out.print("Enter meal plan name: ");
+            String name = scanner.nextLine();
+            
+            System.out.print("Enter start date (YYYY-MM-DD): ");
+            LocalDate startDate = LocalDate.parse(scanner.nextLine().trim());
+            
+            System.out.print("Number of days (default: 7): ");
+            String daysInput = scanner.nextLine().trim();
+            int days = daysInput.isEmpty() ? 7 : Integer.parseInt(daysInput);
+            if (days < 1) {
+                System.out.println("A meal plan needs at least one day.");
+                return;
+            }
+            
+            System.out.print("Meal types (comma-separated, default: Breakfast, Lunch, Dinner): ");
+            String mealTypesInput = scanner.nextLine().trim();
+            List<String> mealTypes = new ArrayList<>();
+            for (String mealType : (mealTypesInput.isEmpty() ? "Breakfast, Lunch, Dinner" : mealTypesInput).split(",")) {
+                if (!mealType.trim().isEmpty()) {
+                    mealTypes.add(mealType.trim());
+                }
+            }
+            
+            System.out.print("Daily calorie target: ");
+            double calories = Double.parseDouble(scanner.nextLine().trim());
+            
+            System.out.print("Daily protein, carbs and fats in grams (optional - e.g., 120, 250, 70): ");
+            String macrosInput = scanner.nextLine().trim();
+            double[] macros = new double[3];
+            if (!macrosInput.isEmpty()) {
+                String[] parts = macrosInput.split(",");
+                for (int i = 0; i < parts.length && i < macros.length; i++) {
+                    macros[i] = parts[i].trim().isEmpty() ? 0 : Double.parseDouble(parts[i].trim());
+                }
+            }
+            
+            System.out.print("Dietary tags or categories (comma-separated, -name to exclude, optional - e.g., Vegetarian, -Spicy): ");
+            String dietaryInput = scanner.nextLine().trim();
+            List<String> dietary = new ArrayList<>();
+            List<String> excluded = new ArrayList<>();
+            for (String tag : dietaryInput.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("-") && tag.length() > 1) {
+                    excluded.add(tag.substring(1).trim());
+                } else if (!tag.isEmpty()) {
+                    dietary.add(tag);
+                }
+            }
+            
+            MealPlanGenerator.Targets targets = new MealPlanGenerator.Targets(calories, macros[0], macros[1], macros[2]);
+            Integer planId = generateMealPlan(currentUser, name, startDate, days, mealTypes, targets,
+                    dietary, excluded, System.nanoTime());
+            if (planId == null) {
+                System.out.println("No public recipes with nutrition information match those dietary requirements.");
+                return;
+            }
+            
+            System.out.println("Meal plan '" + name + "' generated successfully!");
+            printMealPlanDetails(currentUser, planId, System.out);
+            
+        } catch (SQLException | RuntimeException e) {
+            System.out.println("Error generating meal plan: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Create a meal plan filled by {@link MealPlanGenerator}: public recipes close to the daily
+     * targets, within the dietary requirements, favouring the user's pantry and not repeating.
+     *
+     * @param seed Search seed; the same seed and data give the same plan
+     * @return The new plan's ID, or null if no recipe meets the dietary requirements
+     */
+    public Integer generateMealPlan(int userId, String name, LocalDate startDate, int days, List<String> mealTypes,
+                                    MealPlanGenerator.Targets targets, List<String> dietary, List<String> excluded,
+                                    long seed) throws SQLException {
+        // Share of each recipe's ingredients the user has, for the best pantry matches
+        Map<Integer, Double> pantryScores = new HashMap<>();
+        try (ConnectionManager.Lease lease = db.reader();
+             PreparedStatement pstmt = lease.prepare("pantry.ingredients", "SELECT IngredientID FROM Pantry WHERE UserID = ?")) {
+            pstmt.setInt(1, userId);
+            List<Integer> pantryIngredients = new ArrayList<>();
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                pantryIngredients.add(rs.getInt("IngredientID"));
+            }
+            if (!pantryIngredients.isEmpty()) {
+                int[] pantryIds = pantryIngredients.stream().mapToInt(Integer::intValue).toArray();
+                for (IngredientIndex.Match match : ingredientIndex.topMatches(pantryIds, 1000)) {
+                    pantryScores.put(match.recipeId, match.ratio());
+                }
+            }
+        }
+        
+        MealPlanGenerator.Plan plan = getMealPlanGenerator().generate(targets, days, mealTypes, dietaryIndex,
+                dietary, excluded, pantryScores, seed);
+        if (plan == null) {
+            return null;
+        }
+        
+        String planSql = "INSERT INTO MealPlans (UserID, Name, StartDate, EndDate) VALUES (?, ?, ?, ?)";
+        String entrySql = "INSERT OR IGNORE INTO MealPlanRecipes (PlanID, RecipeID, MealDate, MealType) VALUES (?, ?, ?, ?)";
+        try (ConnectionManager.Lease lease = db.writer();
+             PreparedStatement planStmt = lease.prepare("mealPlans.insert", planSql, Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement entryStmt = lease.prepare("mealPlanRecipes.insertOrIgnore", entrySql)) {
+            planStmt.setInt(1, userId);
+            planStmt.setString(2, name);
+            planStmt.setString(3, startDate.toString());
+            planStmt.setString(4, startDate.plusDays(days - 1).toString());
+            planStmt.executeUpdate();
+            
+            int planId;
+            try (ResultSet rs = planStmt.getGeneratedKeys()) {
+                rs.next();
+                planId = rs.getInt(1);
+            }
+            
+            for (int d = 0; d < days; d++) {
+                for (int m = 0; m < mealTypes.size(); m++) {
+                    entryStmt.setInt(1, planId);
+                    entryStmt.setInt(2, plan.recipeIds[d][m]);
+                    entryStmt.setString(3, startDate.plusDays(d).toString());
+                    entryStmt.setString(4, mealTypes.get(m));
+                    entryStmt.addBatch();
+                }
+            }
+            entryStmt.executeBatch();
+            
+            // Closing the lease without a commit rolls both inserts back
+            lease.connection().commit();
+            return planId;
+        }
+    }
+    
+    private MealPlanGenerator getMealPlanGenerator() throws SQLException {
+        MealPlanGenerator generator = mealPlanGenerator;
+        if (generator == null) {
+            synchronized (this) {
+                generator = mealPlanGenerator;
+                if (generator == null) {
+                    try (ConnectionManager.Lease lease = db.reader()) {
+                        generator = MealPlanGenerator.load(lease.connection());
+                    }
+                    mealPlanGenerator = generator;
+                }
+            }
+        }
+        return generator;
+    }
+    
     public List<Object[]> viewMealPlans() {
         List<Object[]> plans = new ArrayList<>();
         
         try {
             String sql = "SELECT PlanID, Name, StartDate, EndDate FROM MealPlans WHERE UserID = ?";
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            try (ConnectionManager.Lease lease = db.reader();
+                 PreparedStatement pstmt = lease.prepare("mealPlans.byUser", sql)) {
                 pstmt.setInt(1, currentUser);
                 ResultSet rs = pstmt.executeQuery();
                 
@@ -877,91 +1322,115 @@ public class RecipeManager {
             System.out.print("\nEnter Meal Plan ID to view details: ");
             int planId = Integer.parseInt(scanner.nextLine());
             
-            // Get basic plan information
-            String planSql = "SELECT Name, StartDate, EndDate FROM MealPlans WHERE PlanID = ? AND UserID = ?";
-            try (PreparedStatement pstmt = conn.prepareStatement(planSql)) {
-                pstmt.setInt(1, planId);
-                pstmt.setInt(2, currentUser);
-                ResultSet rs = pstmt.executeQuery();
-                
-                if (!rs.next()) {
-                    System.out.println("Meal plan not found.");
-                    return;
-                }
-                
-                String planName = rs.getString("Name");
-                String startDate = rs.getString("StartDate");
-                String endDate = rs.getString("EndDate");
+            if (!printMealPlanDetails(currentUser, planId, System.out)) {
+                System.out.println("Meal plan not found.");
+            }
+            
+        } catch (SQLException | NumberFormatException e) {
+            System.out.println("Error viewing meal plan details: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Print one of a user's meal plans, grouped by date and meal type.
+     *
+     * @return false if the plan does not exist or belongs to another user
+     */
+    public boolean printMealPlanDetails(int userId, int planId, PrintStream out) throws SQLException {
+        // Get basic plan information
+        String planSql = "SELECT Name, StartDate, EndDate FROM MealPlans WHERE PlanID = ? AND UserID = ?";
+        try (ConnectionManager.Lease lease = db.reader();
+             PreparedStatement pstmt = lease.prepare("mealPlans.byId", planSql)) {
+            pstmt.setInt(1, planId);
+            pstmt.setInt(2, userId);
+            ResultSet rs = pstmt.executeQuery();
+            
+            if (!rs.next()) {
+                return false;
+            }
+            
+            String planName = rs.getString("Name");
+            String startDate = rs.getString("StartDate");
+            String endDate = rs.getString("EndDate");
+            
+            // Get recipes in this meal plan
+            String recipesSql = "SELECT r.Title, r.Calories, r.Protein, r.Carbs, r.Fats, " +
+                               "mpr.MealDate, mpr.MealType " +
+                               "FROM MealPlanRecipes mpr " +
+                               "JOIN Recipes r ON mpr.RecipeID = r.RecipeID " +
+                               "WHERE mpr.PlanID = ? " +
+                               "ORDER BY mpr.MealDate, mpr.MealType";
+            
+            try (PreparedStatement recipesStmt = lease.prepare("mealPlanRecipes.byPlan", recipesSql)) {
+                recipesStmt.setInt(1, planId);
+                ResultSet recipesRs = recipesStmt.executeQuery();
                 
-                // Get recipes in this meal plan
-                String recipesSql = "SELECT r.Title, r.Calories, r.Protein, r.Carbs, r.Fats, " +
-                                   "mpr.MealDate, mpr.MealType " +
-                                   "FROM MealPlanRecipes mpr " +
-                                   "JOIN Recipes r ON mpr.RecipeID = r.RecipeID " +
-                                   "WHERE mpr.PlanID = ? " +
-                                   "ORDER BY mpr.MealDate, mpr.MealType";
+                // Organize meal plan by date and meal type
+                Map<String, Map<String, Map<String, Object>>> mealPlanDetails = new LinkedHashMap<>();
                 
-                try (PreparedStatement recipesStmt = conn.prepareStatement(recipesSql)) {
-                    recipesStmt.setInt(1, planId);
-                    ResultSet recipesRs = recipesStmt.executeQuery();
+                while (recipesRs.next()) {
+                    String date = recipesRs.getString("MealDate");
+                    String mealType = recipesRs.getString("MealType");
                     
-                    // Organize meal plan by date and meal type
-                    Map<String, Map<String, Map<String, Object>>> mealPlanDetails = new HashMap<>();
+                    // Initialize date in map if it doesn't exist
+                    if (!mealPlanDetails.containsKey(date)) {
+                        mealPlanDetails.put(date, new LinkedHashMap<>());
+                    }
                     
-                    while (recipesRs.next()) {
-                        String date = recipesRs.getString("MealDate");
-                        String mealType = recipesRs.getString("MealType");
+                    // Initialize meal type in date map if it doesn't exist
+                    Map<String, Map<String, Object>> dateMap = mealPlanDetails.get(date);
+                    if (!dateMap.containsKey(mealType)) {
+                        Map<String, Object> recipeDetails = new HashMap<>();
+                        recipeDetails.put("title", recipesRs.getString("Title"));
+                        recipeDetails.put("calories", recipesRs.getInt("Calories"));
+                        recipeDetails.put("protein", recipesRs.getFloat("Protein"));
+                        recipeDetails.put("carbs", recipesRs.getFloat("Carbs"));
+                        recipeDetails.put("fats", recipesRs.getFloat("Fats"));
                         
-                        // Initialize date in map if it doesn't exist
-                        if (!mealPlanDetails.containsKey(date)) {
-                            mealPlanDetails.put(date, new HashMap<>());
-                        }
-                        
-                        // Initialize meal type in date map if it doesn't exist
-                        Map<String, Map<String, Object>> dateMap = mealPlanDetails.get(date);
-                        if (!dateMap.containsKey(mealType)) {
-                            Map<String, Object> recipeDetails = new HashMap<>();
-                            recipeDetails.put("title", recipesRs.getString("Title"));
-                            recipeDetails.put("calories", recipesRs.getInt("Calories"));
-                            recipeDetails.put("protein", recipesRs.getFloat("Protein"));
-                            recipeDetails.put("carbs", recipesRs.getFloat("Carbs"));
-                            recipeDetails.put("fats", recipesRs.getFloat("Fats"));
-                            
-                            dateMap.put(mealType, recipeDetails);
-                        }
+                        dateMap.put(mealType, recipeDetails);
                     }
+                }
+                
+                // Display the meal plan
+                out.println("\n--- Meal Plan: " + planName + " ---");
+                out.println("From " + startDate + " to " + endDate + "\n");
+                
+                if (mealPlanDetails.isEmpty()) {
+                    out.println("No recipes added to this meal plan.");
+                    return true;
+                }
+                
+                // Kept up to date by triggers, so no need to add up the meals here
+                NutritionRollup.Totals planTotals = NutritionRollup.forPlan(lease, planId);
+                Map<String, NutritionRollup.Totals> dayTotals = NutritionRollup.byDay(lease, planId);
+                
+                for (String date : mealPlanDetails.keySet()) {
+                    out.println("Date: " + date);
                     
-                    // Display the meal plan
-                    System.out.println("\n--- Meal Plan: " + planName + " ---");
-                    System.out.println("From " + startDate + " to " + endDate + "\n");
-                    
-                    if (mealPlanDetails.isEmpty()) {
-                        System.out.println("No recipes added to this meal plan.");
-                        return;
+                    Map<String, Map<String, Object>> mealsForDay = mealPlanDetails.get(date);
+                    for (String mealType : mealsForDay.keySet()) {
+                        Map<String, Object> recipe = mealsForDay.get(mealType);
+                        
+                        out.println("  " + mealType + ": " + recipe.get("title"));
+                        out.println("    Calories: " + recipe.get("calories") + 
+                                       ", Protein: " + recipe.get("protein") + "g" +
+                                       ", Carbs: " + recipe.get("carbs") + "g" +
+                                       ", Fats: " + recipe.get("fats") + "g");
                     }
                     
-                    for (String date : mealPlanDetails.keySet()) {
-                        System.out.println("Date: " + date);
-                        
-                        Map<String, Map<String, Object>> mealsForDay = mealPlanDetails.get(date);
-                        for (String mealType : mealsForDay.keySet()) {
-                            Map<String, Object> recipe = mealsForDay.get(mealType);
-                            
-                            System.out.println("  " + mealType + ": " + recipe.get("title"));
-                            System.out.println("    Calories: " + recipe.get("calories") + 
-                                           ", Protein: " + recipe.get("protein") + "g" +
-                                           ", Carbs: " + recipe.get("carbs") + "g" +
-                                           ", Fats: " + recipe.get("fats") + "g");
-                        }
-                        
-                        System.out.println();
+                    NutritionRollup.Totals day = dayTotals.get(date);
+                    if (day != null) {
+                        out.println("  Day total: " + day);
                     }
+                    out.println();
                 }
+                
+                out.println("Plan total (" + planTotals.meals + " meals over " + planTotals.days + " days): " + planTotals);
+                out.println("Daily average: " + planTotals.perDay());
             }
-            
-        } catch (SQLException | NumberFormatException e) {
-            System.out.println("Error viewing meal plan details: " + e.getMessage());
         }
+        
+        return true;
     }
     
     public void addRecipeToMealPlan() {
@@ -978,7 +1447,8 @@ public class RecipeManager {
             
             // Check if the plan exists and belongs to the current user
             String planSql = "SELECT PlanID FROM MealPlans WHERE PlanID = ? AND UserID = ?";
-            try (PreparedStatement pstmt = conn.prepareStatement(planSql)) {
+            try (ConnectionManager.Lease lease = db.reader();
+                 PreparedStatement pstmt = lease.prepare("mealPlans.owned", planSql)) {
                 pstmt.setInt(1, planId);
                 pstmt.setInt(2, currentUser);
                 ResultSet rs = pstmt.executeQuery();
@@ -1001,7 +1471,8 @@ public class RecipeManager {
             
             // Check if the recipe exists
             String recipeSql = "SELECT RecipeID FROM Recipes WHERE RecipeID = ?";
-            try (PreparedStatement pstmt = conn.prepareStatement(recipeSql)) {
+            try (ConnectionManager.Lease lease = db.reader();
+                 PreparedStatement pstmt = lease.prepare("recipes.exists", recipeSql)) {
                 pstmt.setInt(1, recipeId);
                 ResultSet rs = pstmt.executeQuery();
                 
@@ -1019,7 +1490,8 @@ public class RecipeManager {
             
             // Add recipe to meal plan
             String sql = "INSERT INTO MealPlanRecipes (PlanID, RecipeID, MealDate, MealType) VALUES (?, ?, ?, ?)";
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            try (ConnectionManager.Lease lease = db.writer();
+                 PreparedStatement pstmt = lease.prepare("mealPlanRecipes.insert", sql)) {
                 pstmt.setInt(1, planId);
                 pstmt.setInt(2, recipeId);
                 pstmt.setString(3, mealDate);
@@ -1028,21 +1500,182 @@ public class RecipeManager {
                 pstmt.executeUpdate();
                 
                 // Commit the transaction
-                conn.commit();
+                lease.connection().commit();
                 
                 System.out.println("Recipe added to meal plan successfully!");
             }
             
         } catch (SQLException | NumberFormatException e) {
-            try {
-                if (conn != null) {
-                    conn.rollback();
+            System.out.println("Error adding recipe to meal plan: " + e.getMessage());
+        }
+    }
+    
+    public void removeRecipeFromMealPlan() {
+        try {
+            List<Object[]> plans = viewMealPlans();
+            
+            if (plans.isEmpty()) {
+                return;
+            }
+            
+            System.out.print("\nEnter Meal Plan ID to remove a recipe from: ");
+            int planId = Integer.parseInt(scanner.nextLine());
+            
+            // List the plan's meals; the join on MealPlans limits it to the user's own plans
+            String entriesSql = "SELECT mpr.RecipeID, r.Title, mpr.MealDate, mpr.MealType " +
+                               "FROM MealPlanRecipes mpr " +
+                               "JOIN MealPlans mp ON mp.PlanID = mpr.PlanID " +
+                               "JOIN Recipes r ON r.RecipeID = mpr.RecipeID " +
+                               "WHERE mpr.PlanID = ? AND mp.UserID = ? " +
+                               "ORDER BY mpr.MealDate, mpr.MealType";
+            List<Object[]> entries = new ArrayList<>();
+            try (ConnectionManager.Lease lease = db.reader();
+                 PreparedStatement pstmt = lease.prepare("mealPlanRecipes.entries", entriesSql)) {
+                pstmt.setInt(1, planId);
+                pstmt.setInt(2, currentUser);
+                ResultSet rs = pstmt.executeQuery();
+                
+                while (rs.next()) {
+                    entries.add(new Object[] {rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4)});
                 }
-            } catch (SQLException rollbackEx) {
-                System.out.println("Error rolling back transaction: " + rollbackEx.getMessage());
             }
-            System.out.println("Error adding recipe to meal plan: " + e.getMessage());
+            
+            if (entries.isEmpty()) {
+                System.out.println("No recipes found in this meal plan.");
+                return;
+            }
+            
+            String[] headers = {"Recipe ID", "Title", "Date", "Meal Type"};
+            int[] maxWidths = {9, 30, 10, 10};
+            System.out.println(TableFormatter.formatTable(headers, entries, maxWidths));
+            
+            System.out.print("\nEnter Recipe ID to remove: ");
+            int recipeId = Integer.parseInt(scanner.nextLine());
+            
+            System.out.print("Enter date of the meal (YYYY-MM-DD): ");
+            String mealDate = scanner.nextLine();
+            
+            System.out.print("Enter meal type (Breakfast/Lunch/Dinner/Snack): ");
+            String mealType = scanner.nextLine();
+            
+            if (removeRecipeFromMealPlan(currentUser, planId, recipeId, mealDate, mealType)) {
+                System.out.println("Recipe removed from meal plan successfully!");
+            } else {
+                System.out.println("That meal is not in the plan.");
+            }
+            
+        } catch (SQLException | NumberFormatException e) {
+            System.out.println("Error removing recipe from meal plan: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Take one meal out of a user's meal plan; the plan's nutrition totals follow.
+     *
+     * @return false if there is no such meal in a plan of this user's
+     */
+    public boolean removeRecipeFromMealPlan(int userId, int planId, int recipeId, String mealDate, String mealType)
+            throws SQLException {
+        String sql = "DELETE FROM MealPlanRecipes WHERE PlanID = ? AND RecipeID = ? AND MealDate = ? AND MealType = ? " +
+                     "AND PlanID IN (SELECT PlanID FROM MealPlans WHERE UserID = ?)";
+        try (ConnectionManager.Lease lease = db.writer();
+             PreparedStatement pstmt = lease.prepare("mealPlanRecipes.delete", sql)) {
+            pstmt.setInt(1, planId);
+            pstmt.setInt(2, recipeId);
+            pstmt.setString(3, mealDate);
+            pstmt.setString(4, mealType);
+            pstmt.setInt(5, userId);
+            
+            int removed = pstmt.executeUpdate();
+            lease.connection().commit();
+            return removed > 0;
+        }
+    }
+    
+    /**
+     * Calorie and macro totals of a user's meal plan, read from the maintained rollup.
+     *
+     * @return null if the plan does not exist or belongs to another user
+     */
+    public NutritionRollup.Totals getMealPlanNutrition(int userId, int planId) throws SQLException {
+        String sql = "SELECT PlanID FROM MealPlans WHERE PlanID = ? AND UserID = ?";
+        try (ConnectionManager.Lease lease = db.reader();
+             PreparedStatement pstmt = lease.prepare("mealPlans.owned", sql)) {
+            pstmt.setInt(1, planId);
+            pstmt.setInt(2, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+            }
+            return NutritionRollup.forPlan(lease, planId);
+        }
+    }
+    
+    public void shoppingList() {
+        try {
+            List<Object[]> plans = viewMealPlans();
+            
+            if (plans.isEmpty()) {
+                return;
+            }
+            
+            System.out.print("\nEnter Meal Plan IDs to shop for (comma-separated): ");
+            String[] ids = scanner.nextLine().split(",");
+            int[] planIds = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                planIds[i] = Integer.parseInt(ids[i].trim());
+            }
+            
+            System.out.print("Number of people to cook for (optional, default: servings in each recipe): ");
+            String people = scanner.nextLine().trim();
+            int servings = people.isEmpty() ? 0 : Integer.parseInt(people);
+            
+            generateShoppingList(currentUser, planIds, servings).print(System.out);
+            
+        } catch (SQLException | NumberFormatException e) {
+            System.out.println("Error generating shopping list: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * What the user needs to buy for the given meal plans, less their pantry; see {@link ShoppingList}.
+     *
+     * @param servings People each meal is cooked for; 0 to cook every recipe as written
+     */
+    public ShoppingList generateShoppingList(int userId, int[] planIds, int servings) throws SQLException {
+        try (ConnectionManager.Lease lease = db.reader()) {
+            return ShoppingList.build(lease, units, userId, planIds, servings);
+        }
+    }
+    
+    /**
+     * Record how many grams a millilitre of an ingredient weighs, so its volumes and weights
+     * add up on shopping lists; 0 clears it.
+     *
+     * @return Whether the ingredient exists
+     */
+    public boolean setIngredientDensity(int ingredientId, double gramsPerMl) throws SQLException {
+        try (ConnectionManager.Lease lease = db.writer();
+             PreparedStatement pstmt = lease.prepare("ingredients.setDensity",
+                     "UPDATE Ingredients SET Density = ? WHERE IngredientID = ?")) {
+            if (gramsPerMl > 0) {
+                pstmt.setDouble(1, gramsPerMl);
+            } else {
+                pstmt.setNull(1, Types.REAL);
+            }
+            pstmt.setInt(2, ingredientId);
+            if (pstmt.executeUpdate() == 0) {
+                return false;
+            }
+            lease.connection().commit();
         }
+        units.setDensity(ingredientId, gramsPerMl);
+        return true;
+    }
+    
+    public UnitConverter getUnitConverter() {
+        return units;
     }
     
     public void pantryManagement() {
@@ -1056,7 +1689,8 @@ public class RecipeManager {
             System.out.println("1. Add Ingredient to Pantry");
             System.out.println("2. View Pantry");
             System.out.println("3. Remove Ingredient from Pantry");
-            System.out.println("4. Return to Main Menu");
+            System.out.println("4. Set Ingredient Density");
+            System.out.println("5. Return to Main Menu");
 
             System.out.print("Enter your choice: ");
             String choice = scanner.nextLine();
@@ -1072,6 +1706,9 @@ public class RecipeManager {
                     removeFromPantry();
                     break;
                 case "4":
+                    editIngredientDensity();
+                    break;
+                case "5":
                     return;
                 default:
                     System.out.println("Invalid choice. Try again.");
@@ -1085,38 +1722,15 @@ public class RecipeManager {
             String ingredientName = scanner.nextLine();
             
             // Check if the ingredient exists
-            int ingredientId;
-            String ingredientSql = "SELECT IngredientID FROM Ingredients WHERE Name = ?";
-            try (PreparedStatement pstmt = conn.prepareStatement(ingredientSql)) {
-                pstmt.setString(1, ingredientName);
-                ResultSet rs = pstmt.executeQuery();
+            String category = null;
+            String unit = null;
+            if (ingredientNames.find(db, ingredientName) < 0) {
+                // Create new ingredient
+                System.out.print("Enter category for " + ingredientName + ": ");
+                category = scanner.nextLine();
                 
-                if (rs.next()) {
-                    ingredientId = rs.getInt("IngredientID");
-                } else {
-                    // Create new ingredient
-                    System.out.print("Enter category for " + ingredientName + ": ");
-                    String category = scanner.nextLine();
-                    
-                    System.out.print("Enter default unit: ");
-                    String unit = scanner.nextLine();
-                    
-                    String newIngredientSql = "INSERT INTO Ingredients (Name, Category, Unit) VALUES (?, ?, ?)";
-                    try (PreparedStatement ingredientStmt = conn.prepareStatement(newIngredientSql, Statement.RETURN_GENERATED_KEYS)) {
-                        ingredientStmt.setString(1, ingredientName);
-                        ingredientStmt.setString(2, category);
-                        ingredientStmt.setString(3, unit);
-                        
-                        ingredientStmt.executeUpdate();
-                        
-                        ResultSet generatedKeys = ingredientStmt.getGeneratedKeys();
-                        if (generatedKeys.next()) {
-                            ingredientId = generatedKeys.getInt(1);
-                        } else {
-                            throw new SQLException("Creating ingredient failed, no ID obtained.");
-                        }
-                    }
-                }
+                System.out.print("Enter default unit: ");
+                unit = scanner.nextLine();
             }
             
             System.out.print("Enter quantity: ");
@@ -1124,38 +1738,65 @@ public class RecipeManager {
             
             System.out.print("Enter expiry date (YYYY-MM-DD, optional): ");
             String expiryDate = scanner.nextLine();
+            LocalDate expiry = null;
             if (expiryDate.isEmpty()) {
                 expiryDate = null;
+            } else {
+                expiry = LocalDate.parse(expiryDate.trim());
+                expiryDate = expiry.toString();
             }
             
             // Current date for purchase date
             LocalDate purchaseDate = LocalDate.now();
             
-            // Add to pantry
-            String sql = "INSERT OR REPLACE INTO Pantry (UserID, IngredientID, Quantity, ExpiryDate, PurchaseDate) VALUES (?, ?, ?, ?, ?)";
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setInt(1, currentUser);
-                pstmt.setInt(2, ingredientId);
-                pstmt.setFloat(3, quantity);
-                pstmt.setString(4, expiryDate);
-                pstmt.setString(5, purchaseDate.toString());
-                
-                pstmt.executeUpdate();
-                
-                // Commit the transaction
-                conn.commit();
-                
-                System.out.println("Ingredient added to pantry successfully!");
-            }
-            
-        } catch (SQLException | NumberFormatException e) {
-            try {
-                if (conn != null) {
-                    conn.rollback();
+            try (ConnectionManager.Lease lease = db.writer()) {
+                Connection conn = lease.connection();
+                
+                String newIngredientSql = "INSERT OR IGNORE INTO Ingredients (Name, Category, Unit) VALUES (?, ?, ?)";
+                int ingredientId = ingredientNames.resolve(lease, ingredientName, newIngredientSql, category, unit);
+                
+                // Add to pantry. An upsert rather than INSERT OR REPLACE, so the item keeps its
+                // PantryItemID and the expiry schedule and PantryAlerts stay keyed to it
+                String sql = "INSERT INTO Pantry (UserID, IngredientID, Quantity, ExpiryDate, PurchaseDate) " +
+                             "VALUES (?, ?, ?, ?, ?) " +
+                             "ON CONFLICT (UserID, IngredientID) DO UPDATE SET Quantity = excluded.Quantity, " +
+                             "ExpiryDate = excluded.ExpiryDate, PurchaseDate = excluded.PurchaseDate " +
+                             "RETURNING PantryItemID";
+                try (PreparedStatement pstmt = lease.prepare("pantry.upsert", sql)) {
+                    pstmt.setInt(1, currentUser);
+                    pstmt.setInt(2, ingredientId);
+                    pstmt.setFloat(3, quantity);
+                    pstmt.setString(4, expiryDate);
+                    pstmt.setString(5, purchaseDate.toString());
+                    
+                    int pantryItemId;
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        pantryItemId = rs.next() ? rs.getInt(1) : 0;
+                    }
+                    
+                    // An alert raised for the old expiry date no longer applies
+                    try (PreparedStatement clear = lease.prepare("pantryAlerts.clear",
+                            "DELETE FROM PantryAlerts WHERE PantryItemID = ?")) {
+                        clear.setInt(1, pantryItemId);
+                        clear.executeUpdate();
+                    }
+                    
+                    // Commit the transaction
+                    conn.commit();
+                    ingredientNames.publish();
+                    if (expiry != null) {
+                        expiries.schedule(pantryItemId, expiry.toEpochDay());
+                    } else {
+                        expiries.cancel(pantryItemId);
+                    }
+                    
+                    System.out.println("Ingredient added to pantry successfully!");
                 }
-            } catch (SQLException rollbackEx) {
-                System.out.println("Error rolling back transaction: " + rollbackEx.getMessage());
+            } finally {
+                ingredientNames.discardPending();
             }
+            
+        } catch (SQLException | NumberFormatException | DateTimeParseException e) {
             System.out.println("Error adding to pantry: " + e.getMessage());
         }
     }
@@ -1167,34 +1808,37 @@ public class RecipeManager {
                         "JOIN Ingredients i ON p.IngredientID = i.IngredientID " +
                         "WHERE p.UserID = ?";
             
-            List<Object[]> pantryItems = new ArrayList<>();
+            String[] headers = {"Ingredient", "Quantity", "Unit", "Expiry Date"};
+            int[] maxWidths = {20, 8, 8, 14};
+            TableFormatter table = null;
             
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            try (ConnectionManager.Lease lease = db.reader();
+                 PreparedStatement pstmt = lease.prepare("pantry.byUser", sql)) {
                 pstmt.setInt(1, currentUser);
                 ResultSet rs = pstmt.executeQuery();
                 
+                // Rows are printed as they are read; column widths come from the first screenful
                 while (rs.next()) {
-                    Object[] item = new Object[4];
-                    item[0] = rs.getString("Name");
-                    item[1] = rs.getFloat("Quantity");
-                    item[2] = rs.getString("Unit");
-                    item[3] = rs.getString("ExpiryDate") != null ? rs.getString("ExpiryDate") : "N/A";
-                    
-                    pantryItems.add(item);
+                    if (table == null) {
+                        table = new TableFormatter(System.out, headers, maxWidths, TABLE_SAMPLE_ROWS);
+                    }
+                    table.addRow(new Object[] {
+                        rs.getString("Name"),
+                        rs.getFloat("Quantity"),
+                        rs.getString("Unit"),
+                        rs.getString("ExpiryDate") != null ? rs.getString("ExpiryDate") : "N/A"
+                    });
                 }
             }
             
-            if (pantryItems.isEmpty()) {
+            if (table == null) {
                 System.out.println("Pantry is empty.");
                 return;
             }
+            table.close();
+            System.out.println();
             
-            // Use TableFormatter to display pantry items
-            String[] headers = {"Ingredient", "Quantity", "Unit", "Expiry Date"};
-            int[] maxWidths = {20, 8, 8, 14};
-            System.out.println(TableFormatter.formatTable(headers, pantryItems, maxWidths));
-            
-        } catch (SQLException e) {
+        } catch (SQLException | IOException e) {
             System.out.println("Error viewing pantry: " + e.getMessage());
         }
     }
@@ -1206,20 +1850,23 @@ public class RecipeManager {
         String ingredientName = scanner.nextLine();
         
         try {
-            String sql = "DELETE FROM Pantry " +
-                        "WHERE UserID = ? AND IngredientID = (" +
-                        "    SELECT IngredientID FROM Ingredients " +
-                        "    WHERE Name = ?" +
-                        ")";
+            int ingredientId = ingredientNames.find(db, ingredientName);
+            if (ingredientId < 0) {
+                System.out.println("Ingredient not found in pantry.");
+                return;
+            }
+            
+            String sql = "DELETE FROM Pantry WHERE UserID = ? AND IngredientID = ?";
             
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            try (ConnectionManager.Lease lease = db.writer();
+                 PreparedStatement pstmt = lease.prepare("pantry.delete", sql)) {
                 pstmt.setInt(1, currentUser);
-                pstmt.setString(2, ingredientName);
+                pstmt.setInt(2, ingredientId);
                 
                 int rowsAffected = pstmt.executeUpdate();
                 
                 // Commit the transaction
-                conn.commit();
+                lease.connection().commit();
                 
                 if (rowsAffected > 0) {
                     System.out.println("Ingredient removed from pantry successfully!");
@@ -1229,22 +1876,54 @@ public class RecipeManager {
             }
             
         } catch (SQLException e) {
-            try {
-                if (conn != null) {
-                    conn.rollback();
-                }
-            } catch (SQLException rollbackEx) {
-                System.out.println("Error rolling back transaction: " + rollbackEx.getMessage());
-            }
             System.out.println("Error removing from pantry: " + e.getMessage());
         }
     }
     
+    /**
+     * Ask for an ingredient and its density, for ingredients bought by weight but used by volume.
+     */
+    public void editIngredientDensity() {
+        System.out.print("Enter ingredient name: ");
+        String ingredientName = scanner.nextLine().trim();
+        
+        try {
+            int ingredientId = ingredientNames.find(db, ingredientName);
+            if (ingredientId < 0) {
+                System.out.println("Ingredient not found.");
+                return;
+            }
+            
+            double current = units.getDensity(ingredientId);
+            System.out.print("Enter grams per millilitre (0 to clear" +
+                    (current > 0 ? ", currently " + current : "") + "): ");
+            double gramsPerMl = Double.parseDouble(scanner.nextLine().trim());
+            if (gramsPerMl < 0 || Double.isNaN(gramsPerMl) || Double.isInfinite(gramsPerMl)) {
+                System.out.println("Density must be 0 or a positive number.");
+                return;
+            }
+            
+            if (setIngredientDensity(ingredientId, gramsPerMl)) {
+                System.out.println(gramsPerMl > 0 ? "Density saved." : "Density cleared.");
+            } else {
+                System.out.println("Ingredient not found.");
+            }
+        } catch (SQLException | NumberFormatException e) {
+            System.out.println("Error setting density: " + e.getMessage());
+        }
+    }
+    
     public void advancedRecipeSearch() {
         System.out.println("\n--- Advanced Recipe Search ---");
         
         Map<String, Object> searchCriteria = new HashMap<>();
         
+        System.out.print("Keywords in title, ingredients, tags or instructions (optional): ");
+        String keywords = RecipeSearchIndex.toMatchQuery(scanner.nextLine().trim());
+        if (keywords != null) {
+            searchCriteria.put("Keywords", keywords);
+        }
+        
         System.out.print("Enter cuisine (optional): ");
         String cuisine = scanner.nextLine().trim();
         if (!cuisine.isEmpty()) {
@@ -1267,162 +1946,271 @@ public class RecipeManager {
             }
         }
         
-        System.out.print("Dietary tags (comma-separated, optional - e.g., Vegetarian, Gluten-Free): ");
+        System.out.print("Dietary tags or categories (comma-separated, -name to exclude, optional - e.g., Vegetarian, Gluten-Free, -Spicy): ");
         String dietaryTags = scanner.nextLine().trim();
         List<String> tags = new ArrayList<>();
+        List<String> excludedTags = new ArrayList<>();
         
         if (!dietaryTags.isEmpty()) {
             String[] tagArray = dietaryTags.split(",");
             for (String tag : tagArray) {
-                tags.add(tag.trim());
+                tag = tag.trim();
+                if (tag.startsWith("-") && tag.length() > 1) {
+                    excludedTags.add(tag.substring(1).trim());
+                } else if (!tag.isEmpty()) {
+                    tags.add(tag);
+                }
             }
         }
+        if (!excludedTags.isEmpty()) {
+            searchCriteria.put("ExcludedTags", excludedTags);
+        }
+        
+        if (tags.size() > 1) {
+            System.out.print("Match all of them, or any? (all/any, default any): ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("all")) {
+                searchCriteria.put("MatchAllTags", true);
+            }
+        }
+        
+        System.out.print("Minimum average rating (1-5, optional): ");
+        String minRating = scanner.nextLine().trim();
+        if (!minRating.isEmpty()) {
+            try {
+                searchCriteria.put("MinRating", Double.parseDouble(minRating));
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number format for rating. Ignoring this criterion.");
+            }
+        }
+        
+        System.out.print("Sort by rating, highest first? (yes/no, default no): ");
+        if (scanner.nextLine().trim().equalsIgnoreCase("yes")) {
+            searchCriteria.put("SortBy", "rating");
+        }
         
         try {
-            StringBuilder query = new StringBuilder("SELECT DISTINCT r.RecipeID, r.Title, r.Cuisine, r.DifficultyLevel, r.CookingTime, r.Servings FROM Recipes r WHERE 1=1 ");
-            List<Object> params = new ArrayList<>();
+            KeysetPager pager = searchPager(searchCriteria, tags, KeysetPager.DEFAULT_PAGE_SIZE);
             
-            // Add search criteria to query
-            if (searchCriteria.containsKey("Cuisine")) {
-                query.append("AND r.Cuisine = ? ");
-                params.add(searchCriteria.get("Cuisine"));
+            // Use TableFormatter to display search results
+            String[] headers = {"ID", "Title", "Cuisine", "Difficulty", "Cook Time", "Servings", "Rating"};
+            int[] maxWidths = {5, 20, 10, 10, 11, 8, 10};
+            if (browse(pager, headers, maxWidths).isEmpty()) {
+                System.out.println("No recipes found matching your criteria.");
             }
             
-            if (searchCriteria.containsKey("DifficultyLevel")) {
-                query.append("AND r.DifficultyLevel = ? ");
-                params.add(searchCriteria.get("DifficultyLevel"));
+        } catch (SQLException e) {
+            System.out.println("Error performing advanced search: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * The first page (up to chefsync.searchLimit rows) of public recipes matching the
+     * given criteria; see {@link #searchPager}.
+     */
+    public List<Object[]> searchRecipes(Map<String, Object> criteria, List<String> tags) throws SQLException {
+        return searchPager(criteria, tags, SEARCH_RESULT_LIMIT).first();
+    }
+    
+    /**
+     * Pages through public recipes matching the given criteria (Keywords as an FTS5 match
+     * expression, Cuisine, DifficultyLevel, MaxCookTime, MinRating) and any of the given tags
+     * or categories; all of them if MatchAllTags is true, and none of ExcludedTags (a list).
+     * With SortBy "rating" the best rated come first; otherwise keyword matches come best
+     * first by bm25 rank, a search on MaxCookTime without Cuisine or DifficultyLevel
+     * quickest first, and everything else alphabetically.
+     */
+    public KeysetPager searchPager(Map<String, Object> criteria, List<String> tags, int pageSize) {
+        String columns = "r.RecipeID, r.Title, r.Cuisine, r.DifficultyLevel, r.CookingTime, r.Servings, " +
+                         "r.AvgRating, r.RatingCount";
+        String from;
+        String sortKey;
+        StringBuilder where;
+        List<Object> params = new ArrayList<>();
+        IntPredicate rowFilter = null;
+        
+        if (criteria.containsKey("Keywords")) {
+            // Full-text match, ranked by bm25 (see RecipeSearchIndex)
+            from = "RecipeSearch s JOIN Recipes r ON r.RecipeID = s.rowid";
+            sortKey = "s.rank";
+            where = new StringBuilder("RecipeSearch MATCH ? ");
+            params.add(criteria.get("Keywords"));
+        } else {
+            from = "Recipes r";
+            sortKey = "r.Title";
+            where = new StringBuilder("1=1 ");
+        }
+        
+        // Add search criteria to query
+        if (criteria.containsKey("Cuisine")) {
+            where.append("AND r.Cuisine = ? ");
+            params.add(criteria.get("Cuisine"));
+        }
+        
+        if (criteria.containsKey("DifficultyLevel")) {
+            where.append("AND r.DifficultyLevel = ? ");
+            params.add(criteria.get("DifficultyLevel"));
+        }
+        
+        if (criteria.containsKey("MaxCookTime")) {
+            // Numeric range on the typed column; NULLs (unparsed times) drop out
+            where.append("AND r.CookMinutes <= ? ");
+            params.add(criteria.get("MaxCookTime"));
+            if (!criteria.containsKey("Keywords") && !criteria.containsKey("Cuisine")
+                    && !criteria.containsKey("DifficultyLevel")) {
+                // Quickest first, so idx_recipes_public_cook_minutes reads only the recipes in range
+                sortKey = "r.CookMinutes";
             }
-            
-            if (searchCriteria.containsKey("MaxCookTime")) {
-                query.append("AND r.CookingTime <= ? ");
-                params.add(searchCriteria.get("MaxCookTime"));
+        }
+        
+        if (criteria.containsKey("MinRating")) {
+            // Maintained average (see RatingAggregates); unrated recipes are 0 and drop out
+            where.append("AND r.AvgRating >= ? ");
+            params.add(criteria.get("MinRating"));
+        }
+        
+        // Top rated first, from idx_recipes_public_rating or idx_recipes_public_cuisine_rating
+        boolean byRating = "rating".equals(criteria.get("SortBy"));
+        if (byRating) {
+            sortKey = "r.AvgRating";
+        }
+        
+        // Dietary tags and categories are resolved against the resident bitmaps (see DietaryIndex)
+        boolean matchAll = Boolean.TRUE.equals(criteria.get("MatchAllTags"));
+        @SuppressWarnings("unchecked")
+        List<String> excludedTags = (List<String>) criteria.getOrDefault("ExcludedTags", Collections.emptyList());
+        RecipeBitmap matches = dietaryIndex.matching(tags, matchAll, excludedTags);
+        if (matches != null) {
+            // A short list is cheapest looked up by RecipeID; a long one is cheaper checked
+            // while scanning in sort order, which then fills a page after few rows
+            long count = matches.cardinality();
+            if (count * count <= (long) pageSize * dietaryIndex.getMaxRecipeId()) {
+                where.append("AND r.RecipeID IN (SELECT value FROM json_each(?)) ");
+                params.add(Json.array(matches.toArray()));
+            } else {
+                rowFilter = matches::contains;
             }
+        } else if (!excludedTags.isEmpty()) {
+            RecipeBitmap excluded = dietaryIndex.excluded(excludedTags);
+            rowFilter = recipeId -> !excluded.contains(recipeId);
+        }
+        
+        // Only public recipes
+        where.append("AND r.IsPublic = 1");
+        
+        return new KeysetPager(db, columns, from, where.toString(), params, sortKey, "r.RecipeID",
+                rs -> new Object[] {
+                    rs.getInt("RecipeID"),
+                    rs.getString("Title"),
+                    rs.getString("Cuisine"),
+                    rs.getString("DifficultyLevel"),
+                    rs.getString("CookingTime"),
+                    rs.getInt("Servings"),
+                    formatRating(rs.getDouble("AvgRating"), rs.getInt("RatingCount"))
+                },
+                pageSize, rowFilter, byRating);
+    }
+    
+    private static String formatRating(double average, int count) {
+        return count == 0 ? "-" : String.format("%.1f (%d)", average, count);
+    }
+    
+    public void pantryBasedRecommendations() {
+        try {
+            List<Object[]> recommendations = findPantryRecommendations(currentUser, 10);
             
-            // Handle tags with a subquery
-            if (!tags.isEmpty()) {
-                query.append("AND r.RecipeID IN (SELECT rt.RecipeID FROM RecipeTags rt JOIN Tags t ON rt.TagID = t.TagID WHERE t.Name IN (");
-                
-                for (int i = 0; i < tags.size(); i++) {
-                    if (i > 0) {
-                        query.append(", ");
-                    }
-                    query.append("?");
-                    params.add(tags.get(i));
-                }
-                
-                query.append(")) ");
+            if (recommendations == null) {
+                System.out.println("Your pantry is empty. Add some ingredients first.");
+                return;
             }
             
-            // Only public recipes
-            query.append("AND r.IsPublic = 1");
-            
-            try (PreparedStatement pstmt = conn.prepareStatement(query.toString())) {
-                for (int i = 0; i < params.size(); i++) {
-                    pstmt.setObject(i + 1, params.get(i));
-                }
-                
-                ResultSet rs = pstmt.executeQuery();
-                
-                List<Object[]> results = new ArrayList<>();
-                while (rs.next()) {
-                    Object[] recipe = new Object[6];
-                    recipe[0] = rs.getInt("RecipeID");
-                    recipe[1] = rs.getString("Title");
-                    recipe[2] = rs.getString("Cuisine");
-                    recipe[3] = rs.getString("DifficultyLevel");
-                    recipe[4] = rs.getString("CookingTime");
-                    recipe[5] = rs.getInt("Servings");
-                    
-                    results.add(recipe);
-                }
-                
-                if (results.isEmpty()) {
-                    System.out.println("No recipes found matching your criteria.");
-                    return;
-                }
-                
-                // Use TableFormatter to display search results
-                String[] headers = {"ID", "Title", "Cuisine", "Difficulty", "Cook Time", "Servings"};
-                int[] maxWidths = {5, 20, 10, 10, 11, 8};
-                System.out.println(TableFormatter.formatTable(headers, results, maxWidths));
+            if (recommendations.isEmpty()) {
+                System.out.println("No recipes found that match your pantry ingredients.");
+                return;
             }
             
+            // Display the results
+            System.out.println("\n--- Recipes You Can Make With Your Pantry ---");
+            String[] headers = {"ID", "Title", "Ingredients", "Match Percentage", "Uses Soon"};
+            int[] maxWidths = {5, 20, 15, 15, 10};
+            System.out.println(TableFormatter.formatTable(headers, recommendations, maxWidths));
+            System.out.println("\nUse 'View Recipe Details' to see the full recipe information.");
+            
         } catch (SQLException e) {
-            System.out.println("Error performing advanced search: " + e.getMessage());
+            System.out.println("Error generating pantry-based recommendations: " + e.getMessage());
         }
     }
     
-    public void pantryBasedRecommendations() {
-        try {
-            // Get user's pantry ingredients
-            String pantryIngredientsSql = "SELECT IngredientID FROM Pantry WHERE UserID = ?";
+    /**
+     * Rank recipes by how much of their ingredient list the user's pantry covers. Pantry
+     * items within PantryExpiryScheduler.WARNING_DAYS of expiring count twice.
+     *
+     * @return Rows of {ID, Title, "matched of total", percentage, items to use soon}, or null
+     *         if the pantry is empty
+     */
+    public List<Object[]> findPantryRecommendations(int userId, int limit) throws SQLException {
+        try (ConnectionManager.Lease lease = db.reader()) {
+
+            // Get user's pantry ingredients, and which of them expire soon
+            String pantryIngredientsSql = "SELECT IngredientID, " +
+                                         "date(ExpiryDate) BETWEEN date('now', 'localtime') AND date('now', 'localtime', ?) AS UseSoon " +
+                                         "FROM Pantry WHERE UserID = ?";
             List<Integer> pantryIngredients = new ArrayList<>();
+            List<Integer> useSoonIngredients = new ArrayList<>();
             
-            try (PreparedStatement pstmt = conn.prepareStatement(pantryIngredientsSql)) {
-                pstmt.setInt(1, currentUser);
+            try (PreparedStatement pstmt = lease.prepare("pantry.ingredientsUseSoon", pantryIngredientsSql)) {
+                pstmt.setString(1, "+" + PantryExpiryScheduler.WARNING_DAYS + " days");
+                pstmt.setInt(2, userId);
                 ResultSet rs = pstmt.executeQuery();
                 
                 while (rs.next()) {
                     pantryIngredients.add(rs.getInt("IngredientID"));
+                    if (rs.getInt("UseSoon") == 1) {
+                        useSoonIngredients.add(rs.getInt("IngredientID"));
+                    }
                 }
             }
             
             if (pantryIngredients.isEmpty()) {
-                System.out.println("Your pantry is empty. Add some ingredients first.");
-                return;
+                return null;
             }
             
-            // Create a list to store all recommendations
+            // Rank recipes from the in-memory ingredient index instead of aggregating RecipeIngredients
+            int[] pantryIds = pantryIngredients.stream().mapToInt(Integer::intValue).toArray();
+            int[] useSoonIds = useSoonIngredients.stream().mapToInt(Integer::intValue).toArray();
+            List<IngredientIndex.Match> matches = ingredientIndex.topMatches(pantryIds, useSoonIds, limit);
+            
             List<Object[]> recommendations = new ArrayList<>();
+            if (matches.isEmpty()) {
+                return recommendations;
+            }
             
-            // Find recipes that use these ingredients
-            String recipesSql = "SELECT r.RecipeID, r.Title, " +
-                              "COUNT(DISTINCT CASE WHEN ri.IngredientID IN (" + String.join(",", Collections.nCopies(pantryIngredients.size(), "?")) + ") THEN ri.IngredientID END) AS IngredientsMatched, " +
-                              "COUNT(DISTINCT ri.IngredientID) AS TotalIngredients " +
-                              "FROM Recipes r " +
-                              "JOIN RecipeIngredients ri ON r.RecipeID = ri.RecipeID " +
-                              "GROUP BY r.RecipeID " +
-                              "HAVING IngredientsMatched > 0 " +
-                              "ORDER BY (IngredientsMatched * 1.0 / TotalIngredients) DESC, IngredientsMatched DESC " +
-                              "LIMIT 10";
-            
-            // Use a forward-only ResultSet (SQLite default)
-            try (PreparedStatement pstmt = conn.prepareStatement(recipesSql)) {
-                for (int i = 0; i < pantryIngredients.size(); i++) {
-                    pstmt.setInt(i + 1, pantryIngredients.get(i));
+            // Look up titles for the ranked recipes only
+            Map<Integer, String> titles = new HashMap<>();
+            String titlesSql = "SELECT RecipeID, Title FROM Recipes WHERE RecipeID IN (" +
+                              String.join(",", Collections.nCopies(matches.size(), "?")) + ")";
+            try (PreparedStatement pstmt = lease.prepare("recipes.titles", titlesSql)) {
+                for (int i = 0; i < matches.size(); i++) {
+                    pstmt.setInt(i + 1, matches.get(i).recipeId);
                 }
                 
-                // Process results directly as we read them
                 ResultSet rs = pstmt.executeQuery();
-                boolean hasResults = false;
-                
                 while (rs.next()) {
-                    hasResults = true;
-                    Object[] recipe = new Object[4];
-                    recipe[0] = rs.getInt("RecipeID");
-                    recipe[1] = rs.getString("Title");
-                    recipe[2] = rs.getInt("IngredientsMatched") + " of " + rs.getInt("TotalIngredients");
-                    double matchPercent = (rs.getInt("IngredientsMatched") * 100.0) / rs.getInt("TotalIngredients");
-                    recipe[3] = String.format("%.1f%%", matchPercent);
-                    
-                    recommendations.add(recipe);
-                }
-                
-                if (!hasResults) {
-                    System.out.println("No recipes found that match your pantry ingredients.");
-                    return;
+                    titles.put(rs.getInt("RecipeID"), rs.getString("Title"));
                 }
+            }
+            
+            for (IngredientIndex.Match match : matches) {
+                Object[] recipe = new Object[5];
+                recipe[0] = match.recipeId;
+                recipe[1] = titles.get(match.recipeId);
+                recipe[2] = match.matched + " of " + match.total;
+                recipe[3] = String.format("%.1f%%", match.ratio() * 100.0);
+                recipe[4] = match.useSoon == 0 ? "" : match.useSoon;
                 
-                // Display the results
-                System.out.println("\n--- Recipes You Can Make With Your Pantry ---");
-                String[] headers = {"ID", "Title", "Ingredients", "Match Percentage"};
-                int[] maxWidths = {5, 20, 15, 15};
-                System.out.println(TableFormatter.formatTable(headers, recommendations, maxWidths));
-                System.out.println("\nUse 'View Recipe Details' to see the full recipe information.");
+                recommendations.add(recipe);
             }
             
-        } catch (SQLException e) {
-            System.out.println("Error generating pantry-based recommendations: " + e.getMessage());
+            return recommendations;
         }
     }
     
@@ -1439,8 +2227,10 @@ public class RecipeManager {
             int recipeId = Integer.parseInt(scanner.nextLine());
             
             // Check if the recipe exists
-            String recipeSql = "SELECT Title FROM Recipes WHERE RecipeID = ?";
-            try (PreparedStatement pstmt = conn.prepareStatement(recipeSql)) {
+            String recipeSql = "SELECT Title, Cuisine FROM Recipes WHERE RecipeID = ?";
+            String cuisine;
+            try (ConnectionManager.Lease lease = db.reader();
+                 PreparedStatement pstmt = lease.prepare("recipes.titleCuisine", recipeSql)) {
                 pstmt.setInt(1, recipeId);
                 ResultSet rs = pstmt.executeQuery();
                 
@@ -1450,12 +2240,14 @@ public class RecipeManager {
                 }
                 
                 String recipeTitle = rs.getString("Title");
+                cuisine = rs.getString("Cuisine");
                 System.out.println("\nProviding feedback for: " + recipeTitle);
             }
             
             // Check if user has already given feedback for this recipe
             String checkFeedbackSql = "SELECT FeedbackID FROM RecipeFeedback WHERE RecipeID = ? AND UserID = ?";
-            try (PreparedStatement pstmt = conn.prepareStatement(checkFeedbackSql)) {
+            try (ConnectionManager.Lease lease = db.reader();
+                 PreparedStatement pstmt = lease.prepare("feedback.exists", checkFeedbackSql)) {
                 pstmt.setInt(1, recipeId);
                 pstmt.setInt(2, currentUser);
                 ResultSet rs = pstmt.executeQuery();
@@ -1496,12 +2288,18 @@ public class RecipeManager {
                 comment = null;
             }
             
-            // Insert or update feedback
-            String feedbackSql = "INSERT OR REPLACE INTO RecipeFeedback " +
+            // Insert or update feedback. An upsert rather than INSERT OR REPLACE, so replacing an
+            // earlier review fires the update trigger that keeps RecipeRatings in step
+            String feedbackSql = "INSERT INTO RecipeFeedback " +
                               "(RecipeID, UserID, Rating, DifficultyRating, ActualCookingTime, Comment) " +
-                              "VALUES (?, ?, ?, ?, ?, ?)";
-            
-            try (PreparedStatement pstmt = conn.prepareStatement(feedbackSql)) {
+                              "VALUES (?, ?, ?, ?, ?, ?) " +
+                              "ON CONFLICT (RecipeID, UserID) DO UPDATE SET Rating = excluded.Rating, " +
+                              "DifficultyRating = excluded.DifficultyRating, " +
+                              "ActualCookingTime = excluded.ActualCookingTime, " +
+                              "Comment = excluded.Comment, CreatedAt = CURRENT_TIMESTAMP";
+            
+            try (ConnectionManager.Lease lease = db.writer();
+                 PreparedStatement pstmt = lease.prepare("feedback.insert", feedbackSql)) {
                 pstmt.setInt(1, recipeId);
                 pstmt.setInt(2, currentUser);
                 pstmt.setInt(3, rating);
@@ -1512,19 +2310,14 @@ public class RecipeManager {
                 pstmt.executeUpdate();
                 
                 // Commit the transaction
-                conn.commit();
+                lease.connection().commit();
+                detailCache.invalidate(recipeId);
+                trending.recordFeedback(recipeId, cuisine);
                 
                 System.out.println("Feedback submitted successfully!");
             }
             
         } catch (SQLException | NumberFormatException e) {
-            try {
-                if (conn != null) {
-                    conn.rollback();
-                }
-            } catch (SQLException rollbackEx) {
-                System.out.println("Error rolling back transaction: " + rollbackEx.getMessage());
-            }
             System.out.println("Error submitting feedback: " + e.getMessage());
         }
     }
@@ -1661,26 +2454,25 @@ public class RecipeManager {
     }
     
     private void close() {
-        if (conn != null) {
+        if (backgroundTasks != null) {
+            // Let a checkpoint in progress finish, then save the latest scores
+            backgroundTasks.shutdown();
             try {
-                // Commit any pending transactions
-                try {
-                    conn.commit();
-                } catch (SQLException e) {
-                    System.err.println("Error committing final transactions: " + e.getMessage());
-                    try {
-                        conn.rollback();
-                    } catch (SQLException rollbackEx) {
-                        System.err.println("Error rolling back: " + rollbackEx.getMessage());
-                    }
+                backgroundTasks.awaitTermination(30, TimeUnit.SECONDS);
+                if (TRENDING_CHECKPOINT_MINUTES > 0) {
+                    checkpointTrending();
                 }
-                
-                conn.close();
-                System.out.println("Database connection closed.");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             } catch (SQLException e) {
-                System.err.println("Error closing database connection: " + e.getMessage());
+                System.err.println("Error saving trending scores: " + e.getMessage());
             }
         }
+        if (db != null) {
+            // Every write commits before releasing the writer, so nothing is pending here
+            db.close();
+            System.out.println("Database connection closed.");
+        }
         if (scanner != null) {
             scanner.close();
         }
@@ -0,0 +1,494 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * "People who liked this also liked": item-to-item collaborative filtering over the
+ * user x recipe rating matrix in RecipeFeedback.
+ *
+ * {@link #build} is an offline job (DBInit --build-neighbours). It reads every rating once
+ * into compressed sparse rows (primitive arrays by user, and transposed by recipe), centres
+ * each rating on its user's mean, and scores every pair of recipes rated by the same users
+ * by adjusted cosine, shrunk towards 0 when few users rated both. Recipes are split across
+ * the fork-join pool; each worker keeps one dense accumulator and a top-N heap. The N most
+ * similar recipes of each recipe replace the RecipeNeighbours table.
+ *
+ * {@link #recommend} serves a user from that table: the recipes they rated 4 or 5 (the 20
+ * best rated) vote for their neighbours, weighted by similarity and by how far the rating
+ * is above 3.
+ */
+public class RecipeNeighbours {
+
+    public static final int DEFAULT_NEIGHBOURS = 20;
+
+    // A pair rated by n users keeps n / (n + SHRINKAGE) of its similarity
+    private static final int SHRINKAGE = 10;
+    // Users rating more than this are left out: their pairs grow with the square of it
+    private static final int MAX_USER_RATINGS = 1000;
+    // Ratings that count as liking a recipe, and how many of them seed a user's recommendations
+    private static final int LIKED_RATING = 4;
+    private static final int MAX_SEEDS = 20;
+    private static final int BATCH_SIZE = 10_000;
+
+    static final String[] CREATE_TABLES = {
+        // Clustered by RecipeID, so a recipe's neighbours are one range read
+        "CREATE TABLE IF NOT EXISTS RecipeNeighbours (" +
+            "RecipeID INTEGER NOT NULL, " +
+            "NeighbourID INTEGER NOT NULL, " +
+            "Similarity REAL NOT NULL, " +
+            "PRIMARY KEY (RecipeID, NeighbourID)) WITHOUT ROWID",
+        // A user's ratings, best first, without touching the table
+        "CREATE INDEX IF NOT EXISTS idx_feedback_user_rating ON RecipeFeedback(UserID, Rating, RecipeID)",
+        // Prefix of the above
+        "DROP INDEX IF EXISTS idx_feedback_user"
+    };
+
+    private static final String SELECT_RATINGS =
+        "SELECT UserID, RecipeID, Rating FROM RecipeFeedback WHERE Rating IS NOT NULL";
+
+    private static final String SELECT_USER_RATINGS =
+        "SELECT RecipeID, Rating FROM RecipeFeedback WHERE UserID = ? ORDER BY Rating DESC";
+
+    private static final String SELECT_NEIGHBOURS =
+        "SELECT RecipeID, NeighbourID, Similarity FROM RecipeNeighbours " +
+        "WHERE RecipeID IN (SELECT value FROM json_each(?))";
+
+    /**
+     * A recipe recommended to a user, with the liked recipe that contributed most to it.
+     */
+    public static class Recommendation {
+        public final int recipeId;
+        public final double score;
+        public final int becauseOf;
+
+        Recommendation(int recipeId, double score, int becauseOf) {
+            this.recipeId = recipeId;
+            this.score = score;
+            this.becauseOf = becauseOf;
+        }
+    }
+
+    static void install(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : CREATE_TABLES) {
+                stmt.executeUpdate(sql);
+            }
+        }
+    }
+
+    /**
+     * Recompute every recipe's {@code neighbours} most similar recipes and replace
+     * RecipeNeighbours with them, in one transaction.
+     *
+     * @return Number of neighbour rows written
+     */
+    public static int build(Connection conn, int neighbours) throws SQLException {
+        if (neighbours <= 0) {
+            throw new IllegalArgumentException("Neighbours must be positive");
+        }
+        long start = System.nanoTime();
+        Matrix matrix = Matrix.read(conn);
+        System.out.printf("  %,d ratings of %,d recipes by %,d users read in %.1f s%n",
+                matrix.ratings, matrix.recipeIds.length, matrix.users, (System.nanoTime() - start) / 1e9);
+
+        long phase = System.nanoTime();
+        int items = matrix.recipeIds.length;
+        int[] neighbourOf = new int[items * neighbours];
+        float[] similarity = new float[items * neighbours];
+        int[] counts = new int[items];
+        int workers = Math.max(1, ForkJoinPool.commonPool().getParallelism());
+        ForkJoinPool.commonPool().invoke(new Workers(matrix, neighbours, neighbourOf, similarity, counts, workers, 0, workers));
+        long pairs = 0;
+        for (int count : counts) {
+            pairs += count;
+        }
+        System.out.printf("  %,d neighbours found on %d workers in %.1f s%n",
+                pairs, workers, (System.nanoTime() - phase) / 1e9);
+
+        phase = System.nanoTime();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        int written = 0;
+        try {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DELETE FROM RecipeNeighbours");
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO RecipeNeighbours (RecipeID, NeighbourID, Similarity) VALUES (?, ?, ?)")) {
+                int pending = 0;
+                for (int i = 0; i < items; i++) {
+                    int base = i * neighbours;
+                    // Recipes are numbered in RecipeID order, so sorting by number keeps the inserts in key order
+                    sortByRecipe(neighbourOf, similarity, base, base + counts[i]);
+                    for (int k = base; k < base + counts[i]; k++) {
+                        pstmt.setInt(1, matrix.recipeIds[i]);
+                        pstmt.setInt(2, matrix.recipeIds[neighbourOf[k]]);
+                        pstmt.setFloat(3, similarity[k]);
+                        pstmt.addBatch();
+                        written++;
+                    }
+                    pending += counts[i];
+                    if (pending >= BATCH_SIZE) {
+                        pstmt.executeBatch();
+                        pending = 0;
+                    }
+                }
+                pstmt.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        System.out.printf("  %,d rows written in %.1f s%n", written, (System.nanoTime() - phase) / 1e9);
+        return written;
+    }
+
+    /**
+     * Up to {@code limit} recipes for a user, best first, leaving out any they have rated.
+     * Empty for a user with no liked recipes or before the first build.
+     */
+    public static List<Recommendation> recommend(ConnectionManager.Lease lease, int userId, int limit) throws SQLException {
+        Set<Integer> rated = new HashSet<>();
+        Map<Integer, Integer> seeds = new HashMap<>();
+        try (PreparedStatement pstmt = lease.prepare("neighbours.userRatings", SELECT_USER_RATINGS)) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int recipeId = rs.getInt(1);
+                    int rating = rs.getInt(2);
+                    rated.add(recipeId);
+                    if (rating >= LIKED_RATING && seeds.size() < MAX_SEEDS) {
+                        seeds.put(recipeId, rating);
+                    }
+                }
+            }
+        }
+        if (seeds.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        // RecipeID -> {score, largest single contribution, the seed it came from}
+        Map<Integer, double[]> scores = new HashMap<>();
+        int[] seedIds = seeds.keySet().stream().mapToInt(Integer::intValue).toArray();
+        try (PreparedStatement pstmt = lease.prepare("neighbours.ofRecipes", SELECT_NEIGHBOURS)) {
+            pstmt.setString(1, Json.array(seedIds));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int seed = rs.getInt(1);
+                    int neighbour = rs.getInt(2);
+                    if (rated.contains(neighbour)) {
+                        continue;
+                    }
+                    double vote = rs.getDouble(3) * (seeds.get(seed) - (LIKED_RATING - 1));
+                    double[] score = scores.computeIfAbsent(neighbour, id -> new double[3]);
+                    score[0] += vote;
+                    if (vote > score[1]) {
+                        score[1] = vote;
+                        score[2] = seed;
+                    }
+                }
+            }
+        }
+
+        List<Recommendation> recommendations = new ArrayList<>(scores.size());
+        for (Map.Entry<Integer, double[]> entry : scores.entrySet()) {
+            double[] score = entry.getValue();
+            recommendations.add(new Recommendation(entry.getKey(), score[0], (int) score[2]));
+        }
+        recommendations.sort((a, b) -> {
+            int cmp = Double.compare(b.score, a.score);
+            return cmp != 0 ? cmp : Integer.compare(a.recipeId, b.recipeId);
+        });
+        return recommendations.size() > limit ? new ArrayList<>(recommendations.subList(0, limit)) : recommendations;
+    }
+
+    /**
+     * Sort one recipe's neighbours (a few dozen at most) by recipe number.
+     */
+    private static void sortByRecipe(int[] ids, float[] sims, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int id = ids[i];
+            float sim = sims[i];
+            int j = i - 1;
+            while (j >= from && ids[j] > id) {
+                ids[j + 1] = ids[j];
+                sims[j + 1] = sims[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            sims[j + 1] = sim;
+        }
+    }
+
+    /**
+     * The centred rating matrix as CSR arrays both ways. Recipes are numbered 0..n-1 in
+     * RecipeID order and users 0..m-1.
+     */
+    private static final class Matrix {
+        long ratings;
+        int users;
+        int[] recipeIds;
+        // By user: userStart[u]..userStart[u + 1] index userItems/userValues
+        int[] userStart;
+        int[] userItems;
+        float[] userValues;
+        // By recipe
+        int[] itemStart;
+        int[] itemUsers;
+        float[] itemValues;
+        double[] norms;
+
+        static Matrix read(Connection conn) throws SQLException {
+            int[] userCol = new int[1 << 16];
+            int[] recipeCol = new int[1 << 16];
+            byte[] ratingCol = new byte[1 << 16];
+            int n = 0;
+            int maxUser = 0;
+            int maxRecipe = 0;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(SELECT_RATINGS)) {
+                while (rs.next()) {
+                    if (n == userCol.length) {
+                        userCol = Arrays.copyOf(userCol, n * 2);
+                        recipeCol = Arrays.copyOf(recipeCol, n * 2);
+                        ratingCol = Arrays.copyOf(ratingCol, n * 2);
+                    }
+                    userCol[n] = rs.getInt(1);
+                    recipeCol[n] = rs.getInt(2);
+                    ratingCol[n] = (byte) rs.getInt(3);
+                    maxUser = Math.max(maxUser, userCol[n]);
+                    maxRecipe = Math.max(maxRecipe, recipeCol[n]);
+                    n++;
+                }
+            }
+
+            // Number users and recipes densely; recipes in RecipeID order
+            int[] userIndex = new int[maxUser + 1];
+            int[] recipeIndex = new int[maxRecipe + 1];
+            for (int k = 0; k < n; k++) {
+                userIndex[userCol[k]]++;
+                recipeIndex[recipeCol[k]] = 1;
+            }
+            int users = 0;
+            for (int id = 0; id <= maxUser; id++) {
+                int count = userIndex[id];
+                userIndex[id] = count > 0 && count <= MAX_USER_RATINGS ? users++ : -1;
+            }
+            int items = 0;
+            for (int id = 0; id <= maxRecipe; id++) {
+                recipeIndex[id] = recipeIndex[id] > 0 ? items++ : -1;
+            }
+
+            Matrix m = new Matrix();
+            m.users = users;
+            m.recipeIds = new int[items];
+            for (int id = 0; id <= maxRecipe; id++) {
+                if (recipeIndex[id] >= 0) {
+                    m.recipeIds[recipeIndex[id]] = id;
+                }
+            }
+
+            // By user, with each user's mean
+            m.userStart = new int[users + 1];
+            double[] sums = new double[users];
+            for (int k = 0; k < n; k++) {
+                int u = userIndex[userCol[k]];
+                if (u >= 0) {
+                    m.userStart[u + 1]++;
+                    sums[u] += ratingCol[k];
+                }
+            }
+            for (int u = 0; u < users; u++) {
+                m.userStart[u + 1] += m.userStart[u];
+            }
+            int kept = m.userStart[users];
+            m.ratings = kept;
+            m.userItems = new int[kept];
+            m.userValues = new float[kept];
+            int[] fill = Arrays.copyOf(m.userStart, users);
+            for (int k = 0; k < n; k++) {
+                int u = userIndex[userCol[k]];
+                if (u >= 0) {
+                    int at = fill[u]++;
+                    double mean = sums[u] / (m.userStart[u + 1] - m.userStart[u]);
+                    m.userItems[at] = recipeIndex[recipeCol[k]];
+                    m.userValues[at] = (float) (ratingCol[k] - mean);
+                }
+            }
+
+            // Transposed, by recipe
+            m.itemStart = new int[items + 1];
+            for (int k = 0; k < kept; k++) {
+                m.itemStart[m.userItems[k] + 1]++;
+            }
+            for (int i = 0; i < items; i++) {
+                m.itemStart[i + 1] += m.itemStart[i];
+            }
+            m.itemUsers = new int[kept];
+            m.itemValues = new float[kept];
+            m.norms = new double[items];
+            fill = Arrays.copyOf(m.itemStart, items);
+            for (int u = 0; u < users; u++) {
+                for (int k = m.userStart[u]; k < m.userStart[u + 1]; k++) {
+                    int i = m.userItems[k];
+                    int at = fill[i]++;
+                    m.itemUsers[at] = u;
+                    m.itemValues[at] = m.userValues[k];
+                    m.norms[i] += (double) m.userValues[k] * m.userValues[k];
+                }
+            }
+            for (int i = 0; i < items; i++) {
+                m.norms[i] = Math.sqrt(m.norms[i]);
+            }
+            return m;
+        }
+    }
+
+    /**
+     * Splits the workers in halves until one is left; worker w takes every recipe
+     * i with i % workers == w, so the few heavily rated recipes are spread out.
+     */
+    @SuppressWarnings("serial")
+    private static final class Workers extends RecursiveAction {
+        private final Matrix m;
+        private final int neighbours;
+        private final int[] neighbourOf;
+        private final float[] similarity;
+        private final int[] counts;
+        private final int workers;
+        private final int from;
+        private final int to;
+
+        Workers(Matrix m, int neighbours, int[] neighbourOf, float[] similarity, int[] counts,
+                int workers, int from, int to) {
+            this.m = m;
+            this.neighbours = neighbours;
+            this.neighbourOf = neighbourOf;
+            this.similarity = similarity;
+            this.counts = counts;
+            this.workers = workers;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                run(from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            Workers left = new Workers(m, neighbours, neighbourOf, similarity, counts, workers, from, mid);
+            left.fork();
+            new Workers(m, neighbours, neighbourOf, similarity, counts, workers, mid, to).compute();
+            left.join();
+        }
+
+        private void run(int worker) {
+            int items = m.recipeIds.length;
+            double[] dot = new double[items];
+            int[] together = new int[items];
+            int[] touched = new int[items];
+
+            for (int i = worker; i < items; i += workers) {
+                if (m.norms[i] == 0) {
+                    continue;
+                }
+                // Dot products with every recipe sharing a user with recipe i
+                int touchedCount = 0;
+                for (int p = m.itemStart[i]; p < m.itemStart[i + 1]; p++) {
+                    int u = m.itemUsers[p];
+                    double vi = m.itemValues[p];
+                    for (int q = m.userStart[u]; q < m.userStart[u + 1]; q++) {
+                        int j = m.userItems[q];
+                        if (j == i) {
+                            continue;
+                        }
+                        if (together[j] == 0) {
+                            touched[touchedCount++] = j;
+                        }
+                        together[j]++;
+                        dot[j] += vi * m.userValues[q];
+                    }
+                }
+
+                // Keep the best in a min-heap in this recipe's slice of the output
+                int base = i * neighbours;
+                int size = 0;
+                for (int t = 0; t < touchedCount; t++) {
+                    int j = touched[t];
+                    if (m.norms[j] > 0 && dot[j] > 0) {
+                        float sim = (float) (dot[j] / (m.norms[i] * m.norms[j])
+                                * together[j] / (together[j] + SHRINKAGE));
+                        if (size < neighbours) {
+                            neighbourOf[base + size] = j;
+                            similarity[base + size] = sim;
+                            siftUp(base, size++);
+                        } else if (sim > similarity[base]) {
+                            neighbourOf[base] = j;
+                            similarity[base] = sim;
+                            siftDown(base, size);
+                        }
+                    }
+                    dot[j] = 0;
+                    together[j] = 0;
+                }
+                counts[i] = size;
+            }
+        }
+
+        private void siftUp(int base, int k) {
+            while (k > 0) {
+                int parent = (k - 1) >>> 1;
+                if (similarity[base + parent] <= similarity[base + k]) {
+                    break;
+                }
+                swap(base + parent, base + k);
+                k = parent;
+            }
+        }
+
+        private void siftDown(int base, int size) {
+            int k = 0;
+            while (true) {
+                int child = 2 * k + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && similarity[base + child + 1] < similarity[base + child]) {
+                    child++;
+                }
+                if (similarity[base + k] <= similarity[base + child]) {
+                    break;
+                }
+                swap(base + k, base + child);
+                k = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int id = neighbourOf[a];
+            neighbourOf[a] = neighbourOf[b];
+            neighbourOf[b] = id;
+            float sim = similarity[a];
+            similarity[a] = similarity[b];
+            similarity[b] = sim;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * FTS5 full-text index over recipe titles, instructions, ingredient names and tag names.
+ *
+ * The RecipeSearch virtual table uses RecipeID as its rowid and is kept in sync by
+ * triggers on Recipes, RecipeIngredients, RecipeTags, Ingredients and Tags. It is
+ * contentless: only the index is stored, so queries can use rowid, rank and MATCH but
+ * not read the columns back, and a changed recipe is indexed again as a whole row.
+ */
+public class RecipeSearchIndex {
+
+    static final String CREATE_TABLE =
+        "CREATE VIRTUAL TABLE IF NOT EXISTS RecipeSearch USING fts5(" +
+        "Title, Instructions, Ingredients, Tags, tokenize = 'porter unicode61', " +
+        "content = '', contentless_delete = 1)";
+
+    // Title matches count most, then ingredients, tags and finally the instruction text
+    static final String CONFIGURE_RANK =
+        "INSERT INTO RecipeSearch (RecipeSearch, rank) VALUES ('rank', 'bm25(10.0, 1.0, 4.0, 2.0)')";
+
+    private static final String INGREDIENT_NAMES =
+        "(SELECT COALESCE(group_concat(i.Name, ' '), '') FROM RecipeIngredients ri " +
+        "JOIN Ingredients i ON i.IngredientID = ri.IngredientID WHERE ri.RecipeID = %s)";
+
+    private static final String TAG_NAMES =
+        "(SELECT COALESCE(group_concat(t.Name, ' '), '') FROM RecipeTags rt " +
+        "JOIN Tags t ON t.TagID = rt.TagID WHERE rt.RecipeID = %s)";
+
+    // A contentless table cannot update single columns, so every change rewrites the
+    // recipe's whole entry from the source tables. Recipes that are gone are skipped.
+    private static final String REINDEX_RECIPES =
+        "INSERT OR REPLACE INTO RecipeSearch (rowid, Title, Instructions, Ingredients, Tags) " +
+        "SELECT r.RecipeID, r.Title, r.Instructions, " +
+        String.format(INGREDIENT_NAMES, "r.RecipeID") + ", " +
+        String.format(TAG_NAMES, "r.RecipeID") + " " +
+        "FROM Recipes r WHERE r.RecipeID ";
+
+    static final String[] RECIPE_TRIGGERS = {
+        "CREATE TRIGGER IF NOT EXISTS trg_recipes_search_insert AFTER INSERT ON Recipes BEGIN " +
+            "INSERT INTO RecipeSearch (rowid, Title, Instructions, Ingredients, Tags) " +
+            "VALUES (new.RecipeID, new.Title, new.Instructions, '', ''); END",
+        "CREATE TRIGGER IF NOT EXISTS trg_recipes_search_update AFTER UPDATE OF Title, Instructions ON Recipes BEGIN " +
+            REINDEX_RECIPES + "= new.RecipeID; END",
+        "CREATE TRIGGER IF NOT EXISTS trg_recipes_search_delete AFTER DELETE ON Recipes BEGIN " +
+            "DELETE FROM RecipeSearch WHERE rowid = old.RecipeID; END",
+        "CREATE TRIGGER IF NOT EXISTS trg_ingredients_search_rename AFTER UPDATE OF Name ON Ingredients BEGIN " +
+            REINDEX_RECIPES + "IN (SELECT RecipeID FROM RecipeIngredients WHERE IngredientID = new.IngredientID); END",
+        "CREATE TRIGGER IF NOT EXISTS trg_tags_search_rename AFTER UPDATE OF Name ON Tags BEGIN " +
+            REINDEX_RECIPES + "IN (SELECT RecipeID FROM RecipeTags WHERE TagID = new.TagID); END"
+    };
+
+    private static final String[] RECIPE_TRIGGER_NAMES = {
+        "trg_recipes_search_insert",
+        "trg_recipes_search_update",
+        "trg_recipes_search_delete",
+        "trg_ingredients_search_rename",
+        "trg_tags_search_rename"
+    };
+
+    /**
+     * Per-row triggers on the junction tables. Bulk loaders drop these for the
+     * duration of a load and call {@link #reindexFrom} afterwards.
+     */
+    static final String[] JUNCTION_TRIGGERS = {
+        "CREATE TRIGGER IF NOT EXISTS trg_recipe_ingredients_search_insert AFTER INSERT ON RecipeIngredients BEGIN " +
+            REINDEX_RECIPES + "= new.RecipeID; END",
+        "CREATE TRIGGER IF NOT EXISTS trg_recipe_ingredients_search_delete AFTER DELETE ON RecipeIngredients BEGIN " +
+            REINDEX_RECIPES + "= old.RecipeID; END",
+        "CREATE TRIGGER IF NOT EXISTS trg_recipe_tags_search_insert AFTER INSERT ON RecipeTags BEGIN " +
+            REINDEX_RECIPES + "= new.RecipeID; END",
+        "CREATE TRIGGER IF NOT EXISTS trg_recipe_tags_search_delete AFTER DELETE ON RecipeTags BEGIN " +
+            REINDEX_RECIPES + "= old.RecipeID; END"
+    };
+
+    private static final String[] JUNCTION_TRIGGER_NAMES = {
+        "trg_recipe_ingredients_search_insert",
+        "trg_recipe_ingredients_search_delete",
+        "trg_recipe_tags_search_insert",
+        "trg_recipe_tags_search_delete"
+    };
+
+
+    /**
+     * Rebuild the index entries of every recipe with an ID of at least {@code fromRecipeId}.
+     * Runs inside the caller's transaction.
+     */
+    public static void reindexFrom(Connection conn, int fromRecipeId) throws SQLException {
+        try (PreparedStatement delete = conn.prepareStatement("DELETE FROM RecipeSearch WHERE rowid >= ?");
+             PreparedStatement insert = conn.prepareStatement(REINDEX_RECIPES + ">= ?")) {
+            delete.setInt(1, fromRecipeId);
+            delete.executeUpdate();
+            insert.setInt(1, fromRecipeId);
+            insert.executeUpdate();
+        }
+    }
+
+    public static void dropJunctionTriggers(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String name : JUNCTION_TRIGGER_NAMES) {
+                stmt.executeUpdate("DROP TRIGGER IF EXISTS " + name);
+            }
+        }
+    }
+
+    public static void createJunctionTriggers(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String trigger : JUNCTION_TRIGGERS) {
+                stmt.executeUpdate(trigger);
+            }
+        }
+    }
+
+    /**
+     * Drop every trigger that fires on insert, so a bulk load writes no index rows at all.
+     * Pair with {@link #resumeAfterBulkLoad} in the same transaction.
+     */
+    public static void suspendForBulkLoad(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DROP TRIGGER IF EXISTS trg_recipes_search_insert");
+        }
+        dropJunctionTriggers(conn);
+    }
+
+    /**
+     * Restore the triggers and index the recipes loaded since {@code fromRecipeId} in one pass.
+     */
+    public static void resumeAfterBulkLoad(Connection conn, int fromRecipeId) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String trigger : RECIPE_TRIGGERS) {
+                stmt.executeUpdate(trigger);
+            }
+        }
+        createJunctionTriggers(conn);
+        reindexFrom(conn, fromRecipeId);
+    }
+
+    /**
+     * Migration body: create the table and triggers, then index existing recipes.
+     */
+    static void install(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(CREATE_TABLE);
+            stmt.executeUpdate(CONFIGURE_RANK);
+            for (String trigger : RECIPE_TRIGGERS) {
+                stmt.executeUpdate(trigger);
+            }
+        }
+        createJunctionTriggers(conn);
+        reindexFrom(conn, 0);
+    }
+
+    /**
+     * Migration body: replace a RecipeSearch that stored its own copy of the text with
+     * the contentless table, and index every recipe into it.
+     */
+    static void rebuildContentless(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String name : RECIPE_TRIGGER_NAMES) {
+                stmt.executeUpdate("DROP TRIGGER IF EXISTS " + name);
+            }
+            stmt.executeUpdate("DROP TABLE IF EXISTS RecipeSearch");
+        }
+        dropJunctionTriggers(conn);
+        install(conn);
+    }
+
+    /**
+     * Turn free text into an FTS5 query: every word must match, and the last word
+     * also matches as a prefix so partial input still finds results. Returns null
+     * if the input has no searchable words.
+     */
+    public static String toMatchQuery(String input) {
+        if (input == null) {
+            return null;
+        }
+        String[] words = input.toLowerCase().split("[^\\p{L}\\p{N}]+");
+        StringBuilder query = new StringBuilder();
+        String last = null;
+        for (String word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (last != null) {
+                query.append('"').append(last).append("\" ");
+            }
+            last = word;
+        }
+        if (last == null) {
+            return null;
+        }
+        query.append('"').append(last).append("\"*");
+        return query.toString();
+    }
+}
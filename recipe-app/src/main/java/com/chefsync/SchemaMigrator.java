@@ -0,0 +1,341 @@
+package com.chefsync;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Applies ordered, versioned schema migrations to an existing database in place.
+ *
+ * Applied versions are recorded in the SchemaVersion table. Each migration runs in
+ * its own transaction, so a failure leaves the database at the last good version.
+ */
+public class SchemaMigrator {
+
+    /**
+     * The body of a migration.
+     */
+    @FunctionalInterface
+    interface Step {
+        void apply(Connection conn) throws SQLException, IOException;
+    }
+
+    static class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    private static final List<Migration> MIGRATIONS = new ArrayList<>();
+
+    static {
+        register(1, "Baseline schema", conn -> runScript(conn, DBInit.SCHEMA_PATH));
+
+        register(2, "Secondary indexes for RecipeManager queries", sql(
+            // viewRecipes("my_recipes")
+            "CREATE INDEX IF NOT EXISTS idx_recipes_user ON Recipes(UserID)",
+            // viewRecipes("public") and advancedRecipeSearch equality filters
+            "CREATE INDEX IF NOT EXISTS idx_recipes_public_cuisine ON Recipes(IsPublic, Cuisine, DifficultyLevel)",
+            "CREATE INDEX IF NOT EXISTS idx_recipes_cuisine ON Recipes(Cuisine)",
+            // Ingredient -> recipes lookups (pantry recommendations)
+            "CREATE INDEX IF NOT EXISTS idx_recipe_ingredients_ingredient ON RecipeIngredients(IngredientID, RecipeID)",
+            // Tag -> recipes lookups (advancedRecipeSearch tag filter)
+            "CREATE INDEX IF NOT EXISTS idx_recipe_tags_tag ON RecipeTags(TagID, RecipeID)",
+            // Feedback for a recipe, newest first
+            "CREATE INDEX IF NOT EXISTS idx_feedback_recipe_created ON RecipeFeedback(RecipeID, CreatedAt)",
+            "CREATE INDEX IF NOT EXISTS idx_feedback_user ON RecipeFeedback(UserID)",
+            // Meal plans for a user, and the meals of a plan in display order
+            "CREATE INDEX IF NOT EXISTS idx_meal_plans_user ON MealPlans(UserID)",
+            "CREATE INDEX IF NOT EXISTS idx_meal_plan_recipes_plan_date ON MealPlanRecipes(PlanID, MealDate, MealType)",
+            "CREATE INDEX IF NOT EXISTS idx_recipe_categories_category ON RecipeCategories(CategoryID, RecipeID)"
+        ));
+
+        register(3, "Unique keys behind the INSERT OR REPLACE writes on Pantry and RecipeFeedback",
+                SchemaMigrator::addUniqueKeys);
+
+        register(4, "Full-text recipe search (FTS5)", RecipeSearchIndex::install);
+
+        register(5, "Typed cooking-time columns and batch job checkpoints", sql(
+            // Filled from PrepTime/CookingTime by CookingTimeBackfill, then maintained on insert
+            "ALTER TABLE Recipes ADD COLUMN PrepMinutes INTEGER",
+            "ALTER TABLE Recipes ADD COLUMN CookMinutes INTEGER",
+            "ALTER TABLE Recipes ADD COLUMN TotalMinutes INTEGER",
+            "CREATE INDEX IF NOT EXISTS idx_recipes_public_cook_minutes ON Recipes(IsPublic, CookMinutes)",
+            "CREATE TABLE IF NOT EXISTS Checkpoints (" +
+                "Name TEXT PRIMARY KEY, " +
+                "Position INTEGER NOT NULL, " +
+                "Completed INTEGER NOT NULL DEFAULT 0, " +
+                "UpdatedAt TEXT NOT NULL DEFAULT CURRENT_TIMESTAMP)"
+        ));
+
+        register(6, "Title-ordered indexes for paged recipe listings", sql(
+            // KeysetPager seeks on (Title, RecipeID); the rowid completes each key
+            "CREATE INDEX IF NOT EXISTS idx_recipes_title ON Recipes(Title)",
+            "CREATE INDEX IF NOT EXISTS idx_recipes_public_title ON Recipes(IsPublic, Title)",
+            "CREATE INDEX IF NOT EXISTS idx_recipes_user_title ON Recipes(UserID, Title)",
+            // Cuisine/difficulty searches come back in title order straight from the index
+            "CREATE INDEX IF NOT EXISTS idx_recipes_public_cuisine_title ON Recipes(IsPublic, Cuisine, DifficultyLevel, Title)",
+            // Prefixes of the two above
+            "DROP INDEX IF EXISTS idx_recipes_user",
+            "DROP INDEX IF EXISTS idx_recipes_public_cuisine"
+        ));
+
+        register(7, "Ingredient densities for unit conversion", sql(
+            // Grams per millilitre; lets UnitConverter add up "2 cups" and "250 g" of flour
+            "ALTER TABLE Ingredients ADD COLUMN Density REAL",
+            "UPDATE Ingredients SET Density = 1.2 WHERE Name = 'Salt'",
+            "UPDATE Ingredients SET Density = 0.91 WHERE Name = 'Olive Oil'",
+            "UPDATE Ingredients SET Density = 0.85 WHERE Name IN ('Rice', 'Sugar')",
+            "UPDATE Ingredients SET Density = 0.53 WHERE Name = 'Flour'",
+            "UPDATE Ingredients SET Density = 1.03 WHERE Name = 'Milk'",
+            "UPDATE Ingredients SET Density = 0.96 WHERE Name = 'Butter'"
+        ));
+
+        register(8, "Daily and per-plan nutrition totals for meal plans", NutritionRollup::install);
+
+        register(9, "Covering index for the meal plan generator", sql(
+            // MealPlanGenerator reads public recipes' nutrition in calorie order without touching the table
+            "CREATE INDEX IF NOT EXISTS idx_recipes_public_nutrition ON Recipes(IsPublic, Calories, Protein, Carbs, Fats)"
+        ));
+
+        register(10, "Incrementally maintained recipe rating aggregates", RatingAggregates::install);
+
+        register(11, "Trending score checkpoints", TrendingTracker::install);
+
+        register(12, "Item-to-item recipe neighbours", RecipeNeighbours::install);
+
+        register(13, "Pantry expiry alerts", sql(
+            // Written by RecipeManager as PantryExpiryScheduler items come due; shown at login
+            "CREATE TABLE IF NOT EXISTS PantryAlerts (" +
+                "PantryItemID INTEGER PRIMARY KEY, " +
+                "UserID INTEGER NOT NULL, " +
+                "ExpiryDate TEXT NOT NULL, " +
+                "CreatedAt TEXT NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                "Seen INTEGER NOT NULL DEFAULT 0)",
+            "CREATE INDEX IF NOT EXISTS idx_pantry_alerts_user ON PantryAlerts(UserID, Seen, ExpiryDate)",
+            // Removing a pantry item takes its alert with it. INSERT OR REPLACE would not fire
+            // this without recursive_triggers, so pantry writes upsert instead
+            "CREATE TRIGGER IF NOT EXISTS trg_pantry_alerts_delete AFTER DELETE ON Pantry BEGIN " +
+                "DELETE FROM PantryAlerts WHERE PantryItemID = OLD.PantryItemID; END"
+        ));
+
+        register(14, "Bulk load recovery", sql(
+            // What DataGenerator dropped for a bulk load and must put back: index definitions,
+            // and the first ID each suspended trigger has to catch up from
+            "CREATE TABLE IF NOT EXISTS BulkLoadRestore (" +
+                "Name TEXT NOT NULL, " +
+                "Definition TEXT, " +
+                "FromID INTEGER)"
+        ));
+
+        register(15, "Contentless full-text search table", RecipeSearchIndex::rebuildContentless);
+    }
+
+    private static void register(int version, String description, Step step) {
+        if (!MIGRATIONS.isEmpty() && MIGRATIONS.get(MIGRATIONS.size() - 1).version >= version) {
+            throw new IllegalStateException("Migrations must be registered in increasing version order");
+        }
+        MIGRATIONS.add(new Migration(version, description, step));
+    }
+
+    static Step sql(String... statements) {
+        return conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                for (String statement : statements) {
+                    stmt.executeUpdate(statement);
+                }
+            }
+        };
+    }
+
+    /**
+     * Without a unique key INSERT OR REPLACE just appended rows, so a user can hold several
+     * rows for one pantry ingredient or several reviews of one recipe. Each pantry write set the
+     * quantity, unit and expiry, so the newest row is what the user last entered and the older
+     * ones are dropped. Duplicate reviews cannot be told apart that way and stop the migration
+     * with the keys involved, to be resolved by hand.
+     */
+    private static void addUniqueKeys(Connection conn) throws SQLException {
+        String conflicts = duplicateKeys(conn,
+                "SELECT RecipeID, UserID, COUNT(*) FROM RecipeFeedback GROUP BY RecipeID, UserID HAVING COUNT(*) > 1");
+        if (!conflicts.isEmpty()) {
+            throw new SQLException("RecipeFeedback has more than one review per user, as (RecipeID, UserID) x rows: " +
+                    conflicts + ". Keep one review for each and run the migration again.");
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            int superseded = stmt.executeUpdate("DELETE FROM Pantry WHERE PantryItemID NOT IN " +
+                    "(SELECT MAX(PantryItemID) FROM Pantry GROUP BY UserID, IngredientID)");
+            if (superseded > 0) {
+                System.out.println("Removed " + superseded + " pantry rows superseded by a newer row for the same ingredient");
+            }
+            stmt.executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS idx_pantry_user_ingredient ON Pantry(UserID, IngredientID)");
+            stmt.executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS idx_feedback_recipe_user ON RecipeFeedback(RecipeID, UserID)");
+        }
+    }
+
+    /**
+     * The first few rows of a (key, key, count) query as "(a, b) xN, ...", with the total.
+     */
+    private static String duplicateKeys(Connection conn, String sql) throws SQLException {
+        StringBuilder keys = new StringBuilder();
+        int total = 0;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                if (total < 20) {
+                    keys.append(total == 0 ? "" : ", ")
+                        .append('(').append(rs.getInt(1)).append(", ").append(rs.getInt(2)).append(") x").append(rs.getInt(3));
+                }
+                total++;
+            }
+        }
+        if (total > 20) {
+            keys.append(" and ").append(total - 20).append(" more");
+        }
+        return keys.toString();
+    }
+
+    private static void runScript(Connection conn, String path) throws SQLException, IOException {
+        try (Statement stmt = conn.createStatement();
+             BufferedReader reader = openScript(path)) {
+
+            StringBuilder script = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                script.append(line).append(System.lineSeparator());
+            }
+
+            // The baseline script has no triggers, so splitting on ';' is safe here
+            for (String statement : script.toString().split(";")) {
+                if (!statement.trim().isEmpty()) {
+                    stmt.executeUpdate(statement.trim() + ";");
+                }
+            }
+        }
+    }
+
+    /**
+     * Open a script from the working directory, falling back to the classpath
+     * (the Maven build packages schema.sql into the jar).
+     */
+    private static BufferedReader openScript(String path) throws IOException {
+        File file = new File(path);
+        if (file.exists()) {
+            return new BufferedReader(new FileReader(file, StandardCharsets.UTF_8));
+        }
+        InputStream in = SchemaMigrator.class.getResourceAsStream("/" + path);
+        if (in == null) {
+            throw new FileNotFoundException(path);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    public static List<Migration> migrations() {
+        return Collections.unmodifiableList(MIGRATIONS);
+    }
+
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    /**
+     * Returns the schema version of the database, or 0 for an empty database.
+     * A database created before versioning existed is reported as the baseline (1).
+     */
+    public static int currentVersion(Connection conn) throws SQLException {
+        if (tableExists(conn, "SchemaVersion")) {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(Version), 0) FROM SchemaVersion")) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+        return tableExists(conn, "Users") ? 1 : 0;
+    }
+
+    /**
+     * Bring the database up to the latest version.
+     *
+     * @return Number of migrations applied
+     */
+    public static int migrate(Connection conn) throws SQLException, IOException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            int current = currentVersion(conn);
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS SchemaVersion (" +
+                        "Version INTEGER PRIMARY KEY, " +
+                        "Description TEXT NOT NULL, " +
+                        "AppliedAt TEXT NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+                if (current == 1 && !hasVersionRow(conn)) {
+                    // Adopt a database that was created from schema.sql before versioning
+                    stmt.executeUpdate("INSERT INTO SchemaVersion (Version, Description) VALUES (1, 'Baseline schema (adopted)')");
+                }
+            }
+            conn.commit();
+
+            int applied = 0;
+            String recordSql = "INSERT INTO SchemaVersion (Version, Description) VALUES (?, ?)";
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= current) {
+                    continue;
+                }
+                try {
+                    migration.step.apply(conn);
+                    try (PreparedStatement pstmt = conn.prepareStatement(recordSql)) {
+                        pstmt.setInt(1, migration.version);
+                        pstmt.setString(2, migration.description);
+                        pstmt.executeUpdate();
+                    }
+                    conn.commit();
+                } catch (SQLException | IOException | RuntimeException e) {
+                    conn.rollback();
+                    throw new SQLException("Migration " + migration.version + " (" + migration.description + ") failed: " + e.getMessage(), e);
+                }
+                System.out.println("Applied migration " + migration.version + ": " + migration.description);
+                applied++;
+            }
+            return applied;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static boolean hasVersionRow(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM SchemaVersion LIMIT 1")) {
+            return rs.next();
+        }
+    }
+
+    static boolean tableExists(Connection conn, String table) throws SQLException {
+        String sql = "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+}
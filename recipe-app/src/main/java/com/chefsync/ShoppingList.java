@@ -0,0 +1,328 @@
+package com.chefsync;
+
+import java.io.PrintStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a user needs to buy for one or more of their meal plans: every planned meal's
+ * ingredients, scaled to the number of people cooked for, less what the pantry holds.
+ *
+ * Plan ingredients and pantry stock are read by one query and summed in a single pass into
+ * primitive arrays keyed by (IngredientID, base unit), each quantity converted by its
+ * {@link UnitConverter} factor; names and categories are only looked up for the
+ * ingredients left to buy. Pantry stock is in the pantry row's unit, or else the
+ * ingredient's default unit, and counts against plan quantities it converts to; stock
+ * with no unit at all counts against an ingredient planned in a single base unit.
+ * Quantities are shown in the first unit the plans use for them.
+ */
+public class ShoppingList {
+
+    /**
+     * One ingredient to buy, in one unit.
+     */
+    public static class Item {
+        public final int ingredientId;
+        public final String name;
+        public final String category;
+        public final String unit;
+        public final double needed;
+        public final double inPantry;
+
+        Item(int ingredientId, String name, String category, String unit, double needed, double inPantry) {
+            this.ingredientId = ingredientId;
+            this.name = name;
+            this.category = category;
+            this.unit = unit;
+            this.needed = needed;
+            this.inPantry = inPantry;
+        }
+
+        /**
+         * The amount still to buy.
+         */
+        public double getQuantity() {
+            return needed - inPantry;
+        }
+    }
+
+    private static final String UNCATEGORIZED = "Other";
+
+    /*
+     * Plan lines (Planned = 1), then the user's pantry (Planned = 0). One row per planned
+     * meal and ingredient, so a recipe planned twice counts twice.
+     */
+    private static final String SELECT_LINES =
+            "SELECT ri.IngredientID, ri.Unit, ri.Quantity, r.Servings, 1 AS Planned " +
+            "FROM MealPlans mp " +
+            "JOIN MealPlanRecipes mpr ON mpr.PlanID = mp.PlanID " +
+            "JOIN Recipes r ON r.RecipeID = mpr.RecipeID " +
+            "JOIN RecipeIngredients ri ON ri.RecipeID = mpr.RecipeID " +
+            "WHERE mp.PlanID IN (SELECT value FROM json_each(?)) AND mp.UserID = ? " +
+            "UNION ALL " +
+            "SELECT p.IngredientID, COALESCE(p.Unit, i.Unit), p.Quantity, NULL, 0 " +
+            "FROM Pantry p " +
+            "JOIN Ingredients i ON i.IngredientID = p.IngredientID " +
+            "WHERE p.UserID = ?";
+
+    private static final String SELECT_INGREDIENTS =
+            "SELECT IngredientID, Name, Category FROM Ingredients " +
+            "WHERE IngredientID IN (SELECT value FROM json_each(?))";
+
+    private final Map<String, List<Item>> byCategory;
+    private final int itemCount;
+
+    private ShoppingList(Map<String, List<Item>> byCategory, int itemCount) {
+        this.byCategory = byCategory;
+        this.itemCount = itemCount;
+    }
+
+    /**
+     * Build the list for some of a user's meal plans. Plans that do not exist or belong to
+     * someone else are ignored.
+     *
+     * @param servings People each meal is cooked for; 0 to cook every recipe as written
+     */
+    public static ShoppingList build(ConnectionManager.Lease lease, UnitConverter converter, int userId,
+                                     int[] planIds, int servings) throws SQLException {
+        Totals totals = new Totals(converter);
+        try (PreparedStatement pstmt = lease.prepare("shoppingList.lines", SELECT_LINES)) {
+            pstmt.setString(1, Json.array(planIds));
+            pstmt.setInt(2, userId);
+            pstmt.setInt(3, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int ingredientId = rs.getInt(1);
+                    UnitConverter.Unit unit = converter.unit(rs.getString(2));
+                    double quantity = rs.getDouble(3);
+                    if (rs.getInt(5) == 1) {
+                        int recipeServings = rs.getInt(4);
+                        double scale = servings > 0 && recipeServings > 0 ? (double) servings / recipeServings : 1.0;
+                        totals.add(ingredientId, unit, quantity * scale, true);
+                    } else {
+                        totals.add(ingredientId, unit, quantity, false);
+                    }
+                }
+            }
+        }
+
+        totals.matchUnitlessStock();
+
+        // Only lines the pantry does not cover
+        int[] slots = new int[totals.size];
+        int count = 0;
+        for (int slot = 0; slot < totals.keys.length; slot++) {
+            if (totals.keys[slot] != Totals.EMPTY && totals.needed[slot] > totals.stocked[slot]) {
+                slots[count++] = slot;
+            }
+        }
+        int[] ingredientIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            ingredientIds[i] = (int) (totals.keys[slots[i]] >>> 32);
+        }
+
+        Map<Integer, String[]> ingredients = new HashMap<>();
+        if (count > 0) {
+            try (PreparedStatement pstmt = lease.prepare("shoppingList.ingredients", SELECT_INGREDIENTS)) {
+                pstmt.setString(1, Json.array(ingredientIds));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        ingredients.put(rs.getInt(1), new String[] {rs.getString(2), rs.getString(3)});
+                    }
+                }
+            }
+        }
+
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int slot = slots[i];
+            String[] ingredient = ingredients.getOrDefault(ingredientIds[i], new String[2]);
+            String category = ingredient[1] == null || ingredient[1].isBlank() ? UNCATEGORIZED : ingredient[1];
+            UnitConverter.Unit shown = converter.unit(totals.shown[slot]);
+            double factor = converter.toBase(ingredientIds[i], shown);
+            items.add(new Item(ingredientIds[i], ingredient[0], category, shown.name,
+                    totals.needed[slot] / factor, Math.max(0, totals.stocked[slot]) / factor));
+        }
+        items.sort(ShoppingList::compare);
+
+        Map<String, List<Item>> byCategory = new LinkedHashMap<>();
+        for (Item item : items) {
+            byCategory.computeIfAbsent(item.category, c -> new ArrayList<>()).add(item);
+        }
+        for (Map.Entry<String, List<Item>> entry : byCategory.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        return new ShoppingList(Collections.unmodifiableMap(byCategory), count);
+    }
+
+    private static int compare(Item a, Item b) {
+        int cmp = a.category.compareToIgnoreCase(b.category);
+        if (cmp == 0) {
+            cmp = String.valueOf(a.name).compareToIgnoreCase(String.valueOf(b.name));
+        }
+        if (cmp == 0) {
+            cmp = String.valueOf(a.unit).compareTo(String.valueOf(b.unit));
+        }
+        return cmp;
+    }
+
+    /**
+     * The items to buy by ingredient category, categories and items in alphabetical order.
+     */
+    public Map<String, List<Item>> getItemsByCategory() {
+        return byCategory;
+    }
+
+    public int size() {
+        return itemCount;
+    }
+
+    public boolean isEmpty() {
+        return itemCount == 0;
+    }
+
+    public void print(PrintStream out) {
+        out.println("\n--- Shopping List ---");
+        if (isEmpty()) {
+            out.println("Nothing to buy for these meal plans.");
+            return;
+        }
+        for (Map.Entry<String, List<Item>> entry : byCategory.entrySet()) {
+            out.println("\n" + entry.getKey() + ":");
+            for (Item item : entry.getValue()) {
+                out.printf("    - %s: %.2f %s", item.name, item.getQuantity(), item.unit != null ? item.unit : "");
+                if (item.inPantry > 0) {
+                    out.printf(" (need %.2f, have %.2f)", item.needed, item.inPantry);
+                }
+                out.println();
+            }
+        }
+    }
+
+    /**
+     * Needed and stocked sums in base units per (IngredientID, base unit ID), in an
+     * open-addressing table, with the ID of the unit to show each in.
+     */
+    private static final class Totals {
+        static final long EMPTY = -1L;
+
+        final UnitConverter converter;
+        long[] keys = newKeys(256);
+        double[] needed = new double[256];
+        double[] stocked = new double[256];
+        int[] shown = new int[256];
+        int size;
+
+        Totals(UnitConverter converter) {
+            this.converter = converter;
+        }
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+
+        void add(int ingredientId, UnitConverter.Unit unit, double quantity, boolean planned) {
+            UnitConverter.Unit base = converter.baseUnit(ingredientId, unit);
+            int slot = slotOf(ingredientId, base.id);
+            double amount = quantity * converter.toBase(ingredientId, unit);
+            if (planned) {
+                if (needed[slot] == 0) {
+                    shown[slot] = unit.id;
+                }
+                needed[slot] += amount;
+            } else {
+                stocked[slot] += amount;
+            }
+        }
+
+        private int slotOf(int ingredientId, int unit) {
+            long key = ((long) ingredientId << 32) | unit;
+            int slot = find(keys, key);
+            if (keys[slot] == EMPTY) {
+                if ((size + 1) * 2 > keys.length) {
+                    grow();
+                    slot = find(keys, key);
+                }
+                keys[slot] = key;
+                size++;
+            }
+            return slot;
+        }
+
+        /**
+         * Move stock recorded without a unit onto the ingredient's planned quantity when
+         * it is planned in exactly one base unit.
+         */
+        void matchUnitlessStock() {
+            int none = UnitConverter.NONE;
+            // IngredientID -> {slot of the unitless stock, slot of the only planned unit or -1, units planned}
+            Map<Integer, int[]> unitless = new HashMap<>();
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY && (int) keys[slot] == none && stocked[slot] > 0) {
+                    unitless.put((int) (keys[slot] >>> 32), new int[] {slot, -1, 0});
+                }
+            }
+            if (unitless.isEmpty()) {
+                return;
+            }
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] == EMPTY || (int) keys[slot] == none || needed[slot] <= 0) {
+                    continue;
+                }
+                int[] match = unitless.get((int) (keys[slot] >>> 32));
+                if (match != null) {
+                    match[1] = slot;
+                    match[2]++;
+                }
+            }
+            for (int[] match : unitless.values()) {
+                if (match[2] == 1) {
+                    // Taken to be in the unit the plans use
+                    int ingredientId = (int) (keys[match[1]] >>> 32);
+                    stocked[match[1]] += stocked[match[0]] * converter.toBase(ingredientId, converter.unit(shown[match[1]]));
+                    stocked[match[0]] = 0;
+                }
+            }
+        }
+
+        private static int find(long[] keys, long key) {
+            int mask = keys.length - 1;
+            long h = key * 0x9E3779B97F4A7C15L;
+            int slot = (int) (h ^ (h >>> 32)) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            double[] oldNeeded = needed;
+            double[] oldStocked = stocked;
+            int[] oldShown = shown;
+            keys = newKeys(oldKeys.length * 2);
+            needed = new double[keys.length];
+            stocked = new double[keys.length];
+            shown = new int[keys.length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = find(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    needed[slot] = oldNeeded[i];
+                    stocked[slot] = oldStocked[i];
+                    shown[slot] = oldShown[i];
+                }
+            }
+        }
+    }
+}
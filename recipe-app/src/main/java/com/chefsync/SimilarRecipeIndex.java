@@ -0,0 +1,297 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Resident MinHash/LSH index of recipes by ingredient set, for "similar recipes".
+ *
+ * Each recipe gets a signature of BANDS x ROWS MinHash values, of which the low 16 bits
+ * are kept; the share of positions where two signatures agree estimates the Jaccard
+ * similarity of the two ingredient sets. Recipes whose signatures agree across a whole
+ * band share a bucket, and only recipes sharing a bucket are ever compared.
+ *
+ * Two recipes of similarity s share a bucket with probability 1 - (1 - s^ROWS)^BANDS.
+ * More bands find more of the similar recipes; more rows per band keep out more of the
+ * dissimilar ones. The defaults (-Dchefsync.similarBands=16, -Dchefsync.similarRows=4)
+ * find half the pairs at s = 0.45 and nearly all above 0.7.
+ *
+ * Arrays are indexed by RecipeID: 2 x BANDS x ROWS bytes of signature and 4 x BANDS bytes
+ * of bucket chains per recipe, plus 4 to 8 x BANDS bytes of bucket heads (256 to 320
+ * bytes with the defaults). A lookup reads at most MAX_BUCKET recipes per band, so its
+ * cost does not grow with the number of recipes.
+ */
+public class SimilarRecipeIndex {
+
+    public static final int BANDS = Integer.getInteger("chefsync.similarBands", 16);
+    public static final int ROWS = Integer.getInteger("chefsync.similarRows", 4);
+    static final int HASHES = BANDS * ROWS;
+
+    // Recipes read per band bucket; a huge bucket is a set of near-identical recipes anyway
+    private static final int MAX_BUCKET = 64;
+
+    // h_i(x) = (A[i] * mix(x) + B[i]) >>> 33, a non-negative 31-bit value
+    private static final long[] A = new long[HASHES];
+    private static final long[] B = new long[HASHES];
+
+    static {
+        if (BANDS <= 0 || ROWS <= 0) {
+            throw new IllegalArgumentException("chefsync.similarBands and chefsync.similarRows must be positive");
+        }
+        SplittableRandom random = new SplittableRandom(0x5EEDL);
+        for (int i = 0; i < HASHES; i++) {
+            A[i] = random.nextLong() | 1;
+            B[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * A recipe and its estimated similarity to the one looked up.
+     */
+    public static class Match {
+        public final int recipeId;
+        public final double similarity;
+
+        Match(int recipeId, double similarity) {
+            this.recipeId = recipeId;
+            this.similarity = similarity;
+        }
+    }
+
+    private short[] signatures = new short[1024 * HASHES];
+    private int[] next = new int[1024 * BANDS];
+    private final BitSet indexed = new BitSet();
+    private int[] heads = new int[16 * BANDS];
+    private int tableSize = 16;
+    private int recipeCount;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Sign every recipe in RecipeIngredients, one recipe at a time in primary key order.
+     */
+    public static SimilarRecipeIndex load(Connection conn) throws SQLException {
+        SimilarRecipeIndex index = new SimilarRecipeIndex();
+        String sql = "SELECT RecipeID, IngredientID FROM RecipeIngredients ORDER BY RecipeID";
+        int[] ingredients = new int[32];
+        int count = 0;
+        int current = 0;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                int recipeId = rs.getInt(1);
+                if (recipeId != current && count > 0) {
+                    index.add(current, ingredients, count);
+                    count = 0;
+                }
+                current = recipeId;
+                if (count == ingredients.length) {
+                    ingredients = Arrays.copyOf(ingredients, count * 2);
+                }
+                ingredients[count++] = rs.getInt(2);
+            }
+        }
+        if (count > 0) {
+            index.add(current, ingredients, count);
+        }
+        return index;
+    }
+
+    /**
+     * Record the ingredients of a newly inserted recipe.
+     */
+    public void addRecipe(int recipeId, int[] ingredientIds) {
+        lock.writeLock().lock();
+        try {
+            add(recipeId, ingredientIds, ingredientIds.length);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(int recipeId, int[] ingredientIds, int count) {
+        if (recipeId <= 0 || count == 0) {
+            return;
+        }
+        if (recipeId >= next.length / BANDS) {
+            int capacity = Math.max(next.length / BANDS * 2, recipeId + 1);
+            signatures = Arrays.copyOf(signatures, capacity * HASHES);
+            next = Arrays.copyOf(next, capacity * BANDS);
+        }
+        if (indexed.get(recipeId)) {
+            unlink(recipeId);
+        } else {
+            recipeCount++;
+        }
+        sign(ingredientIds, count, signatures, recipeId * HASHES);
+        indexed.set(recipeId);
+        if (recipeCount > tableSize) {
+            resize(tableSize * 2);
+        } else {
+            link(recipeId);
+        }
+    }
+
+    /**
+     * The MinHash signature of a set of ingredients, as the low 16 bits of each minimum.
+     */
+    static void sign(int[] ingredientIds, int count, short[] out, int offset) {
+        int[] mins = new int[HASHES];
+        Arrays.fill(mins, Integer.MAX_VALUE);
+        for (int i = 0; i < count; i++) {
+            long x = mix(ingredientIds[i]);
+            for (int h = 0; h < HASHES; h++) {
+                int value = (int) ((A[h] * x + B[h]) >>> 33);
+                if (value < mins[h]) {
+                    mins[h] = value;
+                }
+            }
+        }
+        for (int h = 0; h < HASHES; h++) {
+            out[offset + h] = (short) mins[h];
+        }
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return x ^ (x >>> 33);
+    }
+
+    private int bucket(int recipeId, int band) {
+        int offset = recipeId * HASHES + band * ROWS;
+        long h = band;
+        for (int r = 0; r < ROWS; r++) {
+            h = h * 31 + signatures[offset + r];
+        }
+        return band * tableSize + (int) (mix(h) & (tableSize - 1));
+    }
+
+    private boolean sameBand(int a, int b, int band) {
+        int offsetA = a * HASHES + band * ROWS;
+        int offsetB = b * HASHES + band * ROWS;
+        for (int r = 0; r < ROWS; r++) {
+            if (signatures[offsetA + r] != signatures[offsetB + r]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void link(int recipeId) {
+        for (int band = 0; band < BANDS; band++) {
+            int slot = bucket(recipeId, band);
+            next[recipeId * BANDS + band] = heads[slot];
+            heads[slot] = recipeId;
+        }
+    }
+
+    private void unlink(int recipeId) {
+        for (int band = 0; band < BANDS; band++) {
+            int slot = bucket(recipeId, band);
+            if (heads[slot] == recipeId) {
+                heads[slot] = next[recipeId * BANDS + band];
+                continue;
+            }
+            for (int c = heads[slot]; c != 0; c = next[c * BANDS + band]) {
+                if (next[c * BANDS + band] == recipeId) {
+                    next[c * BANDS + band] = next[recipeId * BANDS + band];
+                    break;
+                }
+            }
+        }
+    }
+
+    private void resize(int size) {
+        tableSize = size;
+        heads = new int[size * BANDS];
+        for (int recipeId = indexed.nextSetBit(0); recipeId >= 0; recipeId = indexed.nextSetBit(recipeId + 1)) {
+            link(recipeId);
+        }
+    }
+
+    /**
+     * The recipes most similar to {@code recipeId} among those sharing a band bucket with it.
+     *
+     * @return Matches ordered by estimated Jaccard similarity, highest first
+     */
+    public List<Match> similarTo(int recipeId, int limit) {
+        lock.readLock().lock();
+        try {
+            if (limit <= 0 || recipeId <= 0 || !indexed.get(recipeId)) {
+                return Collections.emptyList();
+            }
+            // Worst match on top, ties going to the lower RecipeID
+            PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, (a, b) -> {
+                int cmp = Double.compare(a.similarity, b.similarity);
+                return cmp != 0 ? cmp : Integer.compare(b.recipeId, a.recipeId);
+            });
+            Set<Integer> seen = new HashSet<>();
+            for (int band = 0; band < BANDS; band++) {
+                int scanned = 0;
+                for (int c = heads[bucket(recipeId, band)]; c != 0 && scanned < MAX_BUCKET; c = next[c * BANDS + band]) {
+                    scanned++;
+                    if (c == recipeId || !sameBand(recipeId, c, band) || !seen.add(c)) {
+                        continue;
+                    }
+                    Match match = new Match(c, similarity(recipeId, c));
+                    best.add(match);
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            }
+
+            List<Match> results = new ArrayList<>(best);
+            results.sort(Collections.reverseOrder(best.comparator()));
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private double similarity(int a, int b) {
+        int offsetA = a * HASHES;
+        int offsetB = b * HASHES;
+        int same = 0;
+        for (int h = 0; h < HASHES; h++) {
+            if (signatures[offsetA + h] == signatures[offsetB + h]) {
+                same++;
+            }
+        }
+        return (double) same / HASHES;
+    }
+
+    public int getRecipeCount() {
+        lock.readLock().lock();
+        try {
+            return recipeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate heap used by signatures and buckets, in bytes.
+     */
+    public long getMemoryBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) signatures.length * Short.BYTES + (long) next.length * Integer.BYTES
+                    + (long) heads.length * Integer.BYTES + indexed.size() / 8;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
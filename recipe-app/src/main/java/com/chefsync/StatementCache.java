@@ -0,0 +1,251 @@
+package com.chefsync;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prepared statements kept open on one connection and handed out again for the same
+ * SQL, so repeated calls skip SQLite's parse and plan step.
+ *
+ * Statements are lent out behind a wrapper whose close() resets the statement instead
+ * of finalizing it: the ResultSets it produced are closed (so a reader does not keep its
+ * snapshot) and the parameters cleared. Callers keep using try-with-resources as with
+ * any statement. SQL that is already lent out in the same lease gets a fresh statement
+ * that is really closed afterwards. Each connection keeps up to
+ * -Dchefsync.statementCacheSize (64) statements, dropping the least recently used.
+ *
+ * Not thread-safe; a connection is only used by the holder of its lease.
+ */
+public class StatementCache {
+
+    static final int DEFAULT_SIZE = Integer.getInteger("chefsync.statementCacheSize", 64);
+
+    /**
+     * Execution counts and times for one named statement, across all connections.
+     * Only the execute call is timed, which for a query includes finding the first row.
+     */
+    public static class Timing {
+        private final LongAdder prepares = new LongAdder();
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            executions.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        /**
+         * Times the statement had to be compiled rather than taken from a cache.
+         */
+        public long getPrepares() {
+            return prepares.sum();
+        }
+
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        public double getTotalMillis() {
+            return totalNanos.sum() / 1_000_000.0;
+        }
+
+        public double getAverageMillis() {
+            long count = executions.sum();
+            return count == 0 ? 0.0 : totalNanos.sum() / (count * 1_000_000.0);
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("prepared=%d, executions=%d, total=%.3fms, avg=%.3fms, max=%.3fms",
+                    getPrepares(), getExecutions(), getTotalMillis(), getAverageMillis(), getMaxMillis());
+        }
+    }
+
+    private final Connection conn;
+    private final int size;
+    private final ConcurrentMap<String, Timing> timings;
+    // Access order, so iteration starts at the least recently used
+    private final LinkedHashMap<String, Entry> statements = new LinkedHashMap<>(16, 0.75f, true);
+    private final List<Entry> onLoan = new ArrayList<>();
+
+    StatementCache(Connection conn, int size, ConcurrentMap<String, Timing> timings) {
+        this.conn = conn;
+        this.size = size;
+        this.timings = timings;
+    }
+
+    /**
+     * The statement for {@code sql}, prepared on first use and reused after that.
+     *
+     * @param name Label the statement's executions are timed under
+     * @param autoGeneratedKeys As for {@link Connection#prepareStatement(String, int)}
+     */
+    PreparedStatement prepare(String name, String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys + ":" + sql;
+        Timing timing = timings.computeIfAbsent(name, n -> new Timing());
+
+        Entry entry = statements.get(key);
+        if (entry == null || entry.lent) {
+            timing.prepares.increment();
+            entry = new Entry(conn.prepareStatement(sql, autoGeneratedKeys), entry == null && size > 0);
+            if (entry.cached) {
+                statements.put(key, entry);
+                evict();
+            }
+        }
+        entry.timing = timing;
+        entry.lent = true;
+        onLoan.add(entry);
+        return entry.proxy;
+    }
+
+    private void evict() {
+        Iterator<Entry> eldest = statements.values().iterator();
+        while (statements.size() > size && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            if (!entry.lent) {
+                eldest.remove();
+                entry.discard();
+            }
+        }
+    }
+
+    /**
+     * Reset every statement still lent out; called when the lease is returned.
+     */
+    void release() {
+        for (int i = onLoan.size() - 1; i >= 0; i--) {
+            onLoan.get(i).reset();
+        }
+        onLoan.clear();
+    }
+
+    void close() {
+        release();
+        for (Entry entry : statements.values()) {
+            entry.discard();
+        }
+        statements.clear();
+    }
+
+    private class Entry implements InvocationHandler {
+        final PreparedStatement statement;
+        final PreparedStatement proxy;
+        final boolean cached;
+        Timing timing;
+        boolean lent;
+        private ResultSet results;
+        private ResultSet keys;
+
+        Entry(PreparedStatement statement, boolean cached) {
+            this.statement = statement;
+            this.cached = cached;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close") && method.getParameterCount() == 0) {
+                reset();
+                onLoan.remove(this);
+                return null;
+            }
+            if (name.equals("isClosed") && method.getParameterCount() == 0) {
+                return !lent;
+            }
+            if (!lent) {
+                throw new SQLException("Statement is closed");
+            }
+
+            if (name.startsWith("execute")) {
+                closeResults();
+                long start = System.nanoTime();
+                try {
+                    Object result = call(method, args);
+                    if (result instanceof ResultSet) {
+                        results = (ResultSet) result;
+                    }
+                    return result;
+                } finally {
+                    timing.record(System.nanoTime() - start);
+                }
+            }
+
+            Object result = call(method, args);
+            if (name.equals("getGeneratedKeys")) {
+                keys = (ResultSet) result;
+            } else if (name.equals("getResultSet") && result != null) {
+                results = (ResultSet) result;
+            }
+            return result;
+        }
+
+        private Object call(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void closeResults() throws SQLException {
+            if (results != null) {
+                results.close();
+                results = null;
+            }
+            if (keys != null) {
+                keys.close();
+                keys = null;
+            }
+        }
+
+        void reset() {
+            if (!lent) {
+                return;
+            }
+            lent = false;
+            if (!cached) {
+                discard();
+                return;
+            }
+            try {
+                closeResults();
+                statement.clearParameters();
+                statement.clearBatch();
+            } catch (SQLException e) {
+                // Not safe to hand out again
+                statements.values().remove(this);
+                discard();
+            }
+        }
+
+        void discard() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing statement: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -1,15 +1,65 @@
 package com.chefsync;
 
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Utility class for formatting data as text tables
+ *
+ * {@link #formatTable} renders a complete list. For long listings, create a
+ * TableFormatter over an Appendable and add rows as they are read: column widths come
+ * from the first {@code sampleSize} rows (or are fixed up front), after which each row
+ * is written straight through, with a flush after every {@code sampleSize} rows.
  */
-public class TableFormatter {
-    
+public class TableFormatter implements AutoCloseable {
+
+    private static final String SPACES = " ".repeat(256);
+    private static final String DASHES = "-".repeat(256);
+
+    private final Appendable out;
+    private final String[] headers;
+    private final int[] maxWidths;
+    private final int sampleSize;
+
+    // Rows seen before the widths are known, already converted to text
+    private List<String[]> sample = new ArrayList<>();
+    private int[] columnWidths;
+    private int rowsSinceFlush;
+    private boolean closed;
+
+    /**
+     * @param sampleSize Rows used to size the columns, and rows written between flushes
+     */
+    public TableFormatter(Appendable out, String[] headers, int[] maxWidths, int sampleSize) {
+        if (headers.length != maxWidths.length) {
+            throw new IllegalArgumentException("Headers, data, and maxWidths must have the same length");
+        }
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Sample size must be positive");
+        }
+        this.out = out;
+        this.headers = headers;
+        this.maxWidths = maxWidths;
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * A table whose columns are always {@code widths} wide; rows are written as soon as they are added.
+     */
+    public static TableFormatter fixedWidths(Appendable out, String[] headers, int[] widths, int flushEvery) throws IOException {
+        TableFormatter table = new TableFormatter(out, headers, widths, flushEvery);
+        table.columnWidths = widths.clone();
+        table.sample = null;
+        table.writeHeader();
+        return table;
+    }
+
     /**
      * Format a list of data rows as a table
-     * 
+     *
      * @param headers Column headers
      * @param data List of Object arrays with row data
      * @param maxWidths Maximum width for each column
@@ -19,71 +69,159 @@ public class TableFormatter {
         if (headers.length != maxWidths.length || (data.size() > 0 && data.get(0).length != headers.length)) {
             throw new IllegalArgumentException("Headers, data, and maxWidths must have the same length");
         }
-        
+
         StringBuilder result = new StringBuilder();
-        
+        try (TableFormatter table = new TableFormatter(result, headers, maxWidths, Math.max(1, data.size()))) {
+            for (Object[] row : data) {
+                table.addRow(row);
+            }
+        } catch (IOException e) {
+            // StringBuilder.append does not throw
+            throw new UncheckedIOException(e);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Add a row. Each cell's toString() is called exactly once.
+     */
+    public void addRow(Object[] row) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Table is already closed");
+        }
+        if (row.length > headers.length) {
+            throw new IllegalArgumentException("Row has " + row.length + " cells but the table has " + headers.length + " columns");
+        }
+
+        if (sample != null) {
+            String[] cells = new String[row.length];
+            for (int i = 0; i < row.length; i++) {
+                cells[i] = row[i] != null ? row[i].toString() : "";
+            }
+            sample.add(cells);
+            if (sample.size() >= sampleSize) {
+                writeSample();
+            }
+            return;
+        }
+
+        out.append("| ");
+        for (int i = 0; i < row.length; i++) {
+            appendCell(row[i] != null ? row[i].toString() : "", columnWidths[i]);
+        }
+        out.append("\n");
+        if (++rowsSinceFlush >= sampleSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Write out everything added so far, including rows still held for sizing.
+     */
+    public void flush() throws IOException {
+        if (sample != null) {
+            writeSample();
+        }
+        rowsSinceFlush = 0;
+        if (out instanceof Flushable) {
+            ((Flushable) out).flush();
+        }
+    }
+
+    /**
+     * Write any remaining rows and the bottom border.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (sample != null) {
+            writeSample();
+        }
+        appendBorder();
+        closed = true;
+        if (out instanceof Flushable) {
+            ((Flushable) out).flush();
+        }
+    }
+
+    private void writeSample() throws IOException {
         // Calculate actual column widths (minimum of maxWidth and the longest content)
-        int[] columnWidths = new int[headers.length];
+        columnWidths = new int[headers.length];
         for (int i = 0; i < headers.length; i++) {
-            columnWidths[i] = Math.min(maxWidths[i], Math.max(headers[i].length(), getMaxContentLength(data, i)));
+            int longest = headers[i].length();
+            for (String[] cells : sample) {
+                if (i < cells.length) {
+                    longest = Math.max(longest, cells[i].length());
+                }
+            }
+            columnWidths[i] = Math.min(maxWidths[i], longest);
+        }
+
+        List<String[]> rows = sample;
+        sample = null;
+        writeHeader();
+        for (String[] cells : rows) {
+            out.append("| ");
+            for (int i = 0; i < cells.length; i++) {
+                appendCell(cells[i], columnWidths[i]);
+            }
+            out.append("\n");
+        }
+        rowsSinceFlush = rows.size();
+        if (rowsSinceFlush >= sampleSize) {
+            flush();
         }
-        
+    }
+
+    private void writeHeader() throws IOException {
         // Create top border
-        appendBorder(result, columnWidths);
-        
+        appendBorder();
+
         // Create header row
-        result.append("| ");
+        out.append("| ");
         for (int i = 0; i < headers.length; i++) {
-            result.append(padRight(headers[i], columnWidths[i])).append(" | ");
+            // Headers are never cut, even when a fixed width is narrower
+            out.append(headers[i]);
+            repeat(SPACES, columnWidths[i] - headers[i].length());
+            out.append(" | ");
         }
-        result.append("\n");
-        
+        out.append("\n");
+
         // Create header/data separator
-        appendBorder(result, columnWidths);
-        
-        // Create data rows
-        for (Object[] row : data) {
-            result.append("| ");
-            for (int i = 0; i < row.length; i++) {
-                String cellValue = row[i] != null ? row[i].toString() : "";
-                result.append(padRight(limitString(cellValue, columnWidths[i]), columnWidths[i])).append(" | ");
-            }
-            result.append("\n");
-        }
-        
-        // Create bottom border
-        appendBorder(result, columnWidths);
-        
-        return result.toString();
+        appendBorder();
     }
-    
-    private static void appendBorder(StringBuilder sb, int[] columnWidths) {
-        sb.append("+");
+
+    private void appendBorder() throws IOException {
+        out.append("+");
         for (int width : columnWidths) {
-            sb.append("-".repeat(width + 2)).append("+");
+            repeat(DASHES, width + 2);
+            out.append("+");
         }
-        sb.append("\n");
+        out.append("\n");
     }
-    
-    private static int getMaxContentLength(List<Object[]> data, int columnIndex) {
-        int maxLength = 0;
-        for (Object[] row : data) {
-            if (columnIndex < row.length && row[columnIndex] != null) {
-                maxLength = Math.max(maxLength, row[columnIndex].toString().length());
-            }
+
+    /**
+     * The cell cut to {@code width} (ending in "..."), padded to {@code width}, then " | ".
+     */
+    private void appendCell(String value, int width) throws IOException {
+        if (value.length() <= width) {
+            out.append(value);
+            repeat(SPACES, width - value.length());
+        } else if (width >= 3) {
+            out.append(value, 0, width - 3).append("...");
+        } else {
+            out.append(value, 0, width);
         }
-        return maxLength;
+        out.append(" | ");
     }
-    
-    private static String padRight(String s, int n) {
-        if (s.length() >= n) {
-            return s;
+
+    private void repeat(String fill, int count) throws IOException {
+        while (count > 0) {
+            int n = Math.min(count, fill.length());
+            out.append(fill, 0, n);
+            count -= n;
         }
-        return s + " ".repeat(n - s.length());
-    }
-    
-    private static String limitString(String input, int maxLength) {
-        if (input == null) return "";
-        return input.length() <= maxLength ? input : input.substring(0, maxLength - 3) + "...";
     }
-} 
\ No newline at end of file
+}
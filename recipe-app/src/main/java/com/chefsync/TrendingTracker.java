@@ -0,0 +1,290 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Resident "trending now" scores: views and feedback per recipe, each decaying
+ * exponentially with a half-life of -Dchefsync.trendingHalfLifeHours (default 48).
+ *
+ * Decay is applied forward from a fixed landmark time: an event at time t adds
+ * e^(λ(t - landmark)) to its recipe's weight, so existing weights never change as time
+ * passes and the ranking is the ranking of the weights. Recording an event is then a
+ * remove and re-insert in an ordered set per cuisine and overall, O(log n), and the top K
+ * are the first K of a set. The landmark moves forward, rescaling every weight, only
+ * when the weights grow too large for a double.
+ *
+ * Scores are saved to TrendingScores by {@link #checkpoint}; {@link #load} reads the last
+ * checkpoint and replays the feedback given after it (to the second). Views since the
+ * last checkpoint are not stored anywhere else and are lost if the process dies.
+ */
+public class TrendingTracker {
+
+    public static final double HALF_LIFE_HOURS = Double.parseDouble(
+            System.getProperty("chefsync.trendingHalfLifeHours", "48"));
+
+    static final String CHECKPOINT_NAME = "trending";
+
+    // One feedback counts as much as this many views
+    static final double VIEW_WEIGHT = 1.0;
+    static final double FEEDBACK_WEIGHT = 5.0;
+
+    // Events older than this many half-lives count for less than a billionth and are not replayed
+    private static final int REPLAY_HALF_LIVES = 30;
+    // Scores below this (in views, as of a checkpoint) are dropped
+    private static final double MIN_SCORE = 1e-3;
+    // Rebase well before e^x overflows (x ~ 709)
+    private static final double MAX_EXPONENT = 300;
+
+    static final String[] CREATE_TABLES = {
+        // Scores as of the checkpoint time in Checkpoints ('trending')
+        "CREATE TABLE IF NOT EXISTS TrendingScores (" +
+            "RecipeID INTEGER PRIMARY KEY, " +
+            "Score REAL NOT NULL)",
+        // Feedback since a checkpoint is replayed on startup
+        "CREATE INDEX IF NOT EXISTS idx_feedback_created ON RecipeFeedback(CreatedAt)"
+    };
+
+    private static final String SELECT_CHECKPOINT =
+        "SELECT t.RecipeID, r.Cuisine, t.Score FROM TrendingScores t JOIN Recipes r ON r.RecipeID = t.RecipeID";
+
+    private static final String SELECT_FEEDBACK_SINCE =
+        "SELECT f.RecipeID, r.Cuisine, CAST(strftime('%s', f.CreatedAt) AS INTEGER) " +
+        "FROM RecipeFeedback f JOIN Recipes r ON r.RecipeID = f.RecipeID " +
+        "WHERE f.CreatedAt > datetime(?, 'unixepoch')";
+
+    /**
+     * A recipe's current score.
+     */
+    public static class Score {
+        public final int recipeId;
+        public final String cuisine;
+        public final double score;
+
+        Score(int recipeId, String cuisine, double score) {
+            this.recipeId = recipeId;
+            this.cuisine = cuisine;
+            this.score = score;
+        }
+    }
+
+    private static final class Entry {
+        final int recipeId;
+        final String cuisine;
+        double weight;
+
+        Entry(int recipeId, String cuisine) {
+            this.recipeId = recipeId;
+            this.cuisine = cuisine;
+        }
+    }
+
+    private static final Comparator<Entry> BY_WEIGHT = (a, b) -> {
+        int cmp = Double.compare(b.weight, a.weight);
+        return cmp != 0 ? cmp : Integer.compare(a.recipeId, b.recipeId);
+    };
+
+    private final double lambda;
+    private long landmarkMillis;
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> all = new TreeSet<>(BY_WEIGHT);
+    private final Map<String, TreeSet<Entry>> byCuisine = new HashMap<>();
+
+    public TrendingTracker(double halfLifeHours, long landmarkMillis) {
+        if (halfLifeHours <= 0) {
+            throw new IllegalArgumentException("Half-life must be positive");
+        }
+        this.lambda = Math.log(2) / (halfLifeHours * 3_600_000.0);
+        this.landmarkMillis = landmarkMillis;
+    }
+
+    static void install(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : CREATE_TABLES) {
+                stmt.executeUpdate(sql);
+            }
+        }
+    }
+
+    /**
+     * Start from the last checkpoint, or from the recent feedback if there is none, and
+     * replay the feedback given since.
+     */
+    public static TrendingTracker load(Connection conn, double halfLifeHours, long nowMillis) throws SQLException {
+        Checkpoints.Position position = Checkpoints.read(conn, CHECKPOINT_NAME);
+        long sinceSeconds;
+        TrendingTracker tracker;
+        if (position.completed) {
+            sinceSeconds = position.value;
+            tracker = new TrendingTracker(halfLifeHours, sinceSeconds * 1000);
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(SELECT_CHECKPOINT)) {
+                while (rs.next()) {
+                    tracker.add(rs.getInt(1), rs.getString(2), rs.getDouble(3));
+                }
+            }
+        } else {
+            long window = (long) (REPLAY_HALF_LIVES * halfLifeHours * 3600);
+            sinceSeconds = nowMillis / 1000 - window;
+            tracker = new TrendingTracker(halfLifeHours, nowMillis);
+        }
+
+        try (PreparedStatement pstmt = conn.prepareStatement(SELECT_FEEDBACK_SINCE)) {
+            pstmt.setLong(1, sinceSeconds);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    tracker.record(rs.getInt(1), rs.getString(2), FEEDBACK_WEIGHT, rs.getLong(3) * 1000);
+                }
+            }
+        }
+        return tracker;
+    }
+
+    public void recordView(int recipeId, String cuisine) {
+        record(recipeId, cuisine, VIEW_WEIGHT, System.currentTimeMillis());
+    }
+
+    public void recordFeedback(int recipeId, String cuisine) {
+        record(recipeId, cuisine, FEEDBACK_WEIGHT, System.currentTimeMillis());
+    }
+
+    /**
+     * Count an event of the given weight at {@code timeMillis}.
+     */
+    public synchronized void record(int recipeId, String cuisine, double weight, long timeMillis) {
+        double exponent = lambda * (timeMillis - landmarkMillis);
+        if (exponent > MAX_EXPONENT) {
+            rebase(timeMillis);
+            exponent = 0;
+        }
+        add(recipeId, cuisine, weight * Math.exp(exponent));
+    }
+
+    private void add(int recipeId, String cuisine, double weight) {
+        Entry entry = entries.get(recipeId);
+        TreeSet<Entry> cuisineSet;
+        if (entry == null) {
+            entry = new Entry(recipeId, cuisine);
+            entries.put(recipeId, entry);
+            cuisineSet = cuisineSet(cuisine, true);
+        } else {
+            all.remove(entry);
+            cuisineSet = cuisineSet(entry.cuisine, false);
+            if (cuisineSet != null) {
+                cuisineSet.remove(entry);
+            }
+        }
+        entry.weight += weight;
+        all.add(entry);
+        if (cuisineSet != null) {
+            cuisineSet.add(entry);
+        }
+    }
+
+    private TreeSet<Entry> cuisineSet(String cuisine, boolean create) {
+        if (cuisine == null || cuisine.isBlank()) {
+            return null;
+        }
+        String key = cuisine.trim().toLowerCase(Locale.ROOT);
+        return create ? byCuisine.computeIfAbsent(key, k -> new TreeSet<>(BY_WEIGHT)) : byCuisine.get(key);
+    }
+
+    /**
+     * Move the landmark to {@code timeMillis}, scaling every weight down to match and
+     * dropping the ones that have decayed away.
+     */
+    private void rebase(long timeMillis) {
+        double scale = Math.exp(-lambda * (timeMillis - landmarkMillis));
+        landmarkMillis = timeMillis;
+        all.clear();
+        byCuisine.clear();
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            entry.weight *= scale;
+            if (entry.weight < MIN_SCORE) {
+                it.remove();
+                continue;
+            }
+            all.add(entry);
+            TreeSet<Entry> cuisineSet = cuisineSet(entry.cuisine, true);
+            if (cuisineSet != null) {
+                cuisineSet.add(entry);
+            }
+        }
+    }
+
+    /**
+     * The highest scoring recipes, decayed to {@code nowMillis}.
+     *
+     * @param cuisine Only recipes of this cuisine (any case); null or blank for all
+     */
+    public synchronized List<Score> top(String cuisine, int limit, long nowMillis) {
+        TreeSet<Entry> set = cuisine == null || cuisine.isBlank() ? all : cuisineSet(cuisine, false);
+        if (set == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        double decay = Math.exp(-lambda * (nowMillis - landmarkMillis));
+        List<Score> scores = new ArrayList<>(Math.min(limit, set.size()));
+        for (Entry entry : set) {
+            if (scores.size() == limit) {
+                break;
+            }
+            scores.add(new Score(entry.recipeId, entry.cuisine, entry.weight * decay));
+        }
+        return scores;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Replace the saved scores with the current ones, decayed to {@code nowMillis}.
+     * Runs inside the caller's transaction; scores are copied under the lock and
+     * written after it is released.
+     */
+    public void checkpoint(Connection conn, long nowMillis) throws SQLException {
+        int[] ids;
+        double[] scores;
+        int count = 0;
+        synchronized (this) {
+            double decay = Math.exp(-lambda * (nowMillis - landmarkMillis));
+            ids = new int[entries.size()];
+            scores = new double[entries.size()];
+            for (Entry entry : entries.values()) {
+                double score = entry.weight * decay;
+                if (score >= MIN_SCORE) {
+                    ids[count] = entry.recipeId;
+                    scores[count++] = score;
+                }
+            }
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM TrendingScores");
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO TrendingScores (RecipeID, Score) VALUES (?, ?)")) {
+            for (int i = 0; i < count; i++) {
+                pstmt.setInt(1, ids[i]);
+                pstmt.setDouble(2, scores[i]);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        Checkpoints.write(conn, CHECKPOINT_NAME, nowMillis / 1000, true);
+    }
+}
@@ -0,0 +1,246 @@
+package com.chefsync;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts the free-text units on RecipeIngredients, Pantry and Ingredients ("cups",
+ * "Tbsp.", "grams") into a base unit per dimension: grams for mass, millilitres for
+ * volume and pieces for counts.
+ *
+ * Each spelling is parsed once into a {@link Unit} carrying its factor to the base unit,
+ * so summing quantities is a lookup, a multiply and an add per row. An ingredient with a
+ * density (Ingredients.Density, grams per millilitre) has its volumes converted to grams
+ * too, so "2 cups" and "100 g" of flour add up. Units the converter does not know
+ * ("cloves", "bunch") are kept as they are and only add up with the same unit.
+ */
+public class UnitConverter {
+
+    public enum Dimension {
+        MASS, VOLUME, COUNT, OTHER
+    }
+
+    /**
+     * A parsed unit. Spellings that mean the same unit share one instance.
+     */
+    public static final class Unit {
+        public final int id;
+        /** The first spelling seen, as shown to the user */
+        public final String name;
+        public final Dimension dimension;
+        /** Base units (g, ml or pieces) per one of this unit; 1 for {@link Dimension#OTHER} */
+        public final double toBase;
+
+        Unit(int id, String name, Dimension dimension, double toBase) {
+            this.id = id;
+            this.name = name;
+            this.dimension = dimension;
+            this.toBase = toBase;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final Map<String, Object[]> KNOWN = new HashMap<>();
+
+    static {
+        known(Dimension.MASS, 1, "g", "gram", "gramme", "gr");
+        known(Dimension.MASS, 1000, "kg", "kilogram", "kilo");
+        known(Dimension.MASS, 0.001, "mg", "milligram");
+        known(Dimension.MASS, 28.349523125, "oz", "ounce");
+        known(Dimension.MASS, 453.59237, "lb", "pound");
+        known(Dimension.VOLUME, 1, "ml", "milliliter", "millilitre", "cc");
+        known(Dimension.VOLUME, 10, "cl", "centiliter", "centilitre");
+        known(Dimension.VOLUME, 100, "dl", "deciliter", "decilitre");
+        known(Dimension.VOLUME, 1000, "l", "liter", "litre");
+        known(Dimension.VOLUME, 4.92892159375, "tsp", "teaspoon");
+        known(Dimension.VOLUME, 14.78676478125, "tbsp", "tablespoon", "tbs", "tbl");
+        known(Dimension.VOLUME, 236.5882365, "cup", "c");
+        known(Dimension.VOLUME, 29.5735295625, "fl oz", "floz", "fluid ounce");
+        known(Dimension.VOLUME, 473.176473, "pint", "pt");
+        known(Dimension.VOLUME, 946.352946, "quart", "qt");
+        known(Dimension.VOLUME, 3785.411784, "gallon", "gal");
+        known(Dimension.VOLUME, 4.92892159375 / 16, "pinch");
+        known(Dimension.VOLUME, 4.92892159375 / 8, "dash");
+        known(Dimension.COUNT, 1, "piece", "pc", "pcs", "each", "ea", "whole", "item", "unit");
+        known(Dimension.COUNT, 12, "dozen", "doz");
+    }
+
+    private static void known(Dimension dimension, double toBase, String... spellings) {
+        for (String spelling : spellings) {
+            KNOWN.put(spelling, new Object[] {dimension, toBase, spellings[0]});
+        }
+    }
+
+    // Unit 0 is "no unit"; 1-3 are the base units
+    public static final int NONE = 0;
+    private static final int GRAMS = 1;
+    private static final int MILLILITRES = 2;
+    private static final int PIECES = 3;
+
+    private final Map<String, Unit> bySpelling = new ConcurrentHashMap<>();
+    private final Map<String, Unit> byKey = new HashMap<>();
+    private volatile Unit[] units = new Unit[16];
+    private int unitCount;
+    // Grams per millilitre by IngredientID; 0 where unknown
+    private volatile double[] densities = new double[0];
+
+    public UnitConverter() {
+        addUnit("", null, Dimension.OTHER, 1);
+        addUnit("g", "g", Dimension.MASS, 1);
+        addUnit("ml", "ml", Dimension.VOLUME, 1);
+        addUnit("piece", "pieces", Dimension.COUNT, 1);
+    }
+
+    /**
+     * A converter with the densities recorded in Ingredients.
+     */
+    public static UnitConverter load(Connection conn) throws SQLException {
+        UnitConverter converter = new UnitConverter();
+        double[] densities = new double[0];
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT IngredientID, Density FROM Ingredients WHERE Density > 0")) {
+            while (rs.next()) {
+                int ingredientId = rs.getInt(1);
+                if (ingredientId >= densities.length) {
+                    densities = Arrays.copyOf(densities, Math.max(ingredientId + 1, densities.length * 2));
+                }
+                densities[ingredientId] = rs.getDouble(2);
+            }
+        }
+        converter.densities = densities;
+        return converter;
+    }
+
+    /**
+     * The unit a spelling stands for; null or blank is {@link #NONE}.
+     */
+    public Unit unit(String spelling) {
+        if (spelling == null) {
+            return units[NONE];
+        }
+        Unit unit = bySpelling.get(spelling);
+        return unit != null ? unit : parse(spelling);
+    }
+
+    public Unit unit(int id) {
+        return units[id];
+    }
+
+    private synchronized Unit parse(String spelling) {
+        Unit unit = bySpelling.get(spelling);
+        if (unit != null) {
+            return unit;
+        }
+        String key = normalize(spelling);
+        Object[] known = KNOWN.get(key);
+        if (known == null) {
+            // Plurals: "cups", "inches"
+            for (String suffix : new String[] {"es", "s"}) {
+                if (key.endsWith(suffix) && key.length() > suffix.length()
+                        && (known = KNOWN.get(key.substring(0, key.length() - suffix.length()))) != null) {
+                    break;
+                }
+            }
+        }
+        if (known != null) {
+            key = (String) known[2];
+        }
+        unit = byKey.get(key);
+        if (unit == null) {
+            unit = known != null
+                    ? addUnit(key, spelling.trim(), (Dimension) known[0], (Double) known[1])
+                    : addUnit(key, spelling.trim(), Dimension.OTHER, 1);
+        }
+        bySpelling.put(spelling, unit);
+        return unit;
+    }
+
+    private static String normalize(String spelling) {
+        return spelling.trim().toLowerCase().replace(".", "").replaceAll("\\s+", " ");
+    }
+
+    private Unit addUnit(String key, String name, Dimension dimension, double toBase) {
+        if (key.isEmpty() && unitCount > 0) {
+            return units[NONE];
+        }
+        Unit unit = new Unit(unitCount, name, dimension, toBase);
+        Unit[] grown = units.length == unitCount ? Arrays.copyOf(units, unitCount * 2) : units;
+        grown[unitCount++] = unit;
+        units = grown;
+        byKey.put(key, unit);
+        return unit;
+    }
+
+    /**
+     * Record an ingredient's density; 0 forgets it.
+     */
+    public synchronized void setDensity(int ingredientId, double gramsPerMl) {
+        double[] current = densities;
+        double[] updated = ingredientId < current.length ? current.clone()
+                : Arrays.copyOf(current, Math.max(ingredientId + 1, current.length * 2));
+        updated[ingredientId] = gramsPerMl > 0 ? gramsPerMl : 0;
+        densities = updated;
+    }
+
+    /**
+     * Grams per millilitre, or 0 if the ingredient has no density.
+     */
+    public double getDensity(int ingredientId) {
+        double[] current = densities;
+        return ingredientId >= 0 && ingredientId < current.length ? current[ingredientId] : 0;
+    }
+
+    /**
+     * The unit quantities of {@code unit} are summed in for this ingredient: grams, millilitres
+     * or pieces, grams for volumes of an ingredient with a density, otherwise {@code unit} itself.
+     */
+    public Unit baseUnit(int ingredientId, Unit unit) {
+        switch (unit.dimension) {
+            case MASS:
+                return units[GRAMS];
+            case VOLUME:
+                return getDensity(ingredientId) > 0 ? units[GRAMS] : units[MILLILITRES];
+            case COUNT:
+                return units[PIECES];
+            default:
+                return unit;
+        }
+    }
+
+    /**
+     * The factor taking a quantity in {@code unit} to {@link #baseUnit} for this ingredient.
+     */
+    public double toBase(int ingredientId, Unit unit) {
+        if (unit.dimension == Dimension.VOLUME) {
+            double density = getDensity(ingredientId);
+            if (density > 0) {
+                return unit.toBase * density;
+            }
+        }
+        return unit.toBase;
+    }
+
+    /**
+     * Convert a quantity of an ingredient between two units.
+     *
+     * @return NaN if the units cannot be converted (different dimensions and no density)
+     */
+    public double convert(int ingredientId, double quantity, String from, String to) {
+        Unit source = unit(from);
+        Unit target = unit(to);
+        if (baseUnit(ingredientId, source) != baseUnit(ingredientId, target)) {
+            return Double.NaN;
+        }
+        return quantity * toBase(ingredientId, source) / toBase(ingredientId, target);
+    }
+}
@@ -0,0 +1,64 @@
+package com.chefsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DataGeneratorRecoveryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void interruptedRunIsRepairedOnNextStart() throws SQLException {
+        String path = dir.resolve("generate.db").toString();
+        DBInit.initializeDatabase(path);
+        int indexes;
+        int triggers;
+        try (Connection conn = DBInit.connect(path)) {
+            indexes = count(conn, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND sql IS NOT NULL");
+            triggers = count(conn, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'trigger'");
+
+            // What a run killed after its first batch leaves behind
+            conn.setAutoCommit(false);
+            int nextRecipeId = count(conn, "SELECT COALESCE(MAX(RecipeID), 0) + 1 FROM Recipes");
+            DataGenerator.suspend(conn, nextRecipeId,
+                    count(conn, "SELECT COALESCE(MAX(PlanID), 0) + 1 FROM MealPlans"),
+                    count(conn, "SELECT COALESCE(MAX(FeedbackID), 0) + 1 FROM RecipeFeedback"));
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("INSERT INTO Recipes (RecipeID, UserID, Title, Instructions, IsPublic) " +
+                        "SELECT " + nextRecipeId + ", UserID, 'Interrupted Quince Tart', 'Bake.', 1 FROM Users LIMIT 1");
+            }
+            conn.commit();
+            conn.setAutoCommit(true);
+            assertTrue(count(conn, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND sql IS NOT NULL") < indexes);
+            assertTrue(count(conn, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'trigger'") < triggers);
+        }
+
+        DBInit.initializeDatabase(path);
+        try (Connection conn = DBInit.connect(path)) {
+            assertEquals(indexes, count(conn, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND sql IS NOT NULL"));
+            assertEquals(triggers, count(conn, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'trigger'"));
+            assertEquals(0, count(conn, "SELECT COUNT(*) FROM BulkLoadRestore"));
+            assertEquals(1, count(conn, "SELECT COUNT(*) FROM RecipeSearch WHERE RecipeSearch MATCH 'quince'"));
+            assertFalse(DataGenerator.restorePending(conn));
+        }
+    }
+
+    private static int count(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.chefsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class DurationParserTest {
+
+    @Test
+    void bareNumbersAreMinutes() {
+        assertEquals(45, DurationParser.parseMinutes("45"));
+        assertEquals(45, DurationParser.parseMinutes(" 45 mins "));
+    }
+
+    @Test
+    void unitsAndCombinations() {
+        assertEquals(60, DurationParser.parseMinutes("1 hour"));
+        assertEquals(90, DurationParser.parseMinutes("1h 30m"));
+        assertEquals(90, DurationParser.parseMinutes("1.5 hrs"));
+        assertEquals(150, DurationParser.parseMinutes("2 Hours 30 Minutes"));
+        assertEquals(1440, DurationParser.parseMinutes("1 day"));
+    }
+
+    @Test
+    void clockNotation() {
+        assertEquals(75, DurationParser.parseMinutes("1:15"));
+    }
+
+    @Test
+    void rangesKeepTheUpperBound() {
+        assertEquals(30, DurationParser.parseMinutes("20-30 minutes"));
+        assertEquals(120, DurationParser.parseMinutes("1 to 2 hours"));
+    }
+
+    @Test
+    void fractionsAreOneNumber() {
+        assertEquals(30, DurationParser.parseMinutes("1/2 hour"));
+        assertEquals(45, DurationParser.parseMinutes("3/4 hr"));
+        assertEquals(90, DurationParser.parseMinutes("1 1/2 hours"));
+        assertEquals(135, DurationParser.parseMinutes("2 1/4 hrs"));
+        assertEquals(120, DurationParser.parseMinutes("1 1/2 to 2 hours"));
+        assertEquals(60, DurationParser.parseMinutes("1/2-1 hour"));
+    }
+
+    @Test
+    void nothingToParse() {
+        assertNull(DurationParser.parseMinutes(null));
+        assertNull(DurationParser.parseMinutes(""));
+        assertNull(DurationParser.parseMinutes("a while"));
+    }
+
+    @Test
+    void totalOfKnownParts() {
+        assertEquals(50, DurationParser.totalMinutes(20, 30));
+        assertEquals(20, DurationParser.totalMinutes(20, null));
+        assertNull(DurationParser.totalMinutes(null, null));
+    }
+}
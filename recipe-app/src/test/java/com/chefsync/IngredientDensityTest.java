@@ -0,0 +1,58 @@
+package com.chefsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class IngredientDensityTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void densitySurvivesAReopen() throws SQLException {
+        String path = dir.resolve("density.db").toString();
+        DBInit.initializeDatabase(path);
+        int oliveOil;
+        try (ConnectionManager db = open(path)) {
+            RecipeManager manager = new RecipeManager(db);
+            try (ConnectionManager.Lease lease = db.reader()) {
+                oliveOil = NameDictionary.load(lease.connection(), "Ingredients", "IngredientID").idOf("Olive Oil");
+            }
+            assertTrue(manager.setIngredientDensity(oliveOil, 0.91));
+            assertFalse(manager.setIngredientDensity(99999, 1.0));
+            assertEquals(0.91, manager.getUnitConverter().getDensity(oliveOil));
+        }
+
+        try (ConnectionManager db = open(path)) {
+            assertEquals(0.91, new RecipeManager(db).getUnitConverter().getDensity(oliveOil));
+            try (ConnectionManager.Lease lease = db.reader();
+                 PreparedStatement pstmt = lease.connection().prepareStatement(
+                         "SELECT Density FROM Ingredients WHERE IngredientID = ?")) {
+                pstmt.setInt(1, oliveOil);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    assertTrue(rs.next());
+                    assertEquals(0.91, rs.getDouble(1));
+                }
+            }
+
+            // Clearing it is saved too
+            assertTrue(new RecipeManager(db).setIngredientDensity(oliveOil, 0));
+        }
+        try (ConnectionManager db = open(path)) {
+            assertEquals(0, new RecipeManager(db).getUnitConverter().getDensity(oliveOil));
+        }
+    }
+
+    private static ConnectionManager open(String path) throws SQLException {
+        return new ConnectionManager(new ConnectionManager.Config().databasePath(path).readerPoolSize(1));
+    }
+}
@@ -0,0 +1,124 @@
+package com.chefsync;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+class IngredientIndexTest {
+
+    @Test
+    void postingListRoundTripsVarintGaps() {
+        IngredientIndex.PostingList list = new IngredientIndex.PostingList();
+        int[] ids = {1, 2, 130, 16_500, 2_100_000, Integer.MAX_VALUE};
+        for (int id : ids) {
+            list.add(id);
+        }
+        assertArrayEquals(ids, list.decode());
+        assertEquals(ids.length, list.size());
+        // 1 + 1 + 2 + 2 + 3 + 5 bytes of gaps
+        assertEquals(14, list.byteSize());
+
+        IngredientIndex.Cursor cursor = new IngredientIndex.Cursor(list);
+        for (int id : ids) {
+            assertEquals(id, cursor.next());
+        }
+        assertEquals(-1, cursor.next());
+    }
+
+    @Test
+    void postingListKeepsOrderAndDropsDuplicates() {
+        Random random = new Random(5);
+        IngredientIndex.PostingList list = new IngredientIndex.PostingList();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 2000; i++) {
+            int id = 1 + random.nextInt(i < 1000 ? 5000 : 1 << 24);
+            list.add(id);
+            expected.add(id);
+        }
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), list.decode());
+        assertEquals(expected.size(), list.size());
+    }
+
+    @Test
+    void ranksByShareOfIngredientsInThePantry() {
+        IngredientIndex index = new IngredientIndex();
+        index.addRecipe(1, new int[] {10, 11, 12, 13});
+        index.addRecipe(2, new int[] {10, 11});
+        index.addRecipe(3, new int[] {12, 20, 21});
+        index.addRecipe(4, new int[] {30});
+        assertEquals(4, index.getRecipeCount());
+        assertEquals(2, index.getIngredientCount(2));
+
+        List<IngredientIndex.Match> matches = index.topMatches(new int[] {10, 11, 12}, 10);
+        assertEquals(3, matches.size());
+        assertEquals(2, matches.get(0).recipeId);
+        assertEquals(1.0, matches.get(0).ratio());
+        assertEquals(1, matches.get(1).recipeId);
+        assertEquals(3, matches.get(1).matched);
+        assertEquals(4, matches.get(1).total);
+        assertEquals(3, matches.get(2).recipeId);
+
+        assertEquals(1, index.topMatches(new int[] {10, 11, 12}, 1).size());
+    }
+
+    @Test
+    void useSoonIngredientsCountTwice() {
+        IngredientIndex index = new IngredientIndex();
+        index.addRecipe(1, new int[] {10, 11});
+        index.addRecipe(2, new int[] {12, 13});
+
+        // Half of each recipe is in the pantry; recipe 2's half expires soon
+        List<IngredientIndex.Match> matches = index.topMatches(new int[] {10, 12}, new int[] {12}, 10);
+        assertEquals(2, matches.get(0).recipeId);
+        assertEquals(1, matches.get(0).useSoon);
+        assertEquals(1, matches.get(1).recipeId);
+    }
+
+    @Test
+    void topMatchesAgreeWithBruteForce() {
+        Random random = new Random(9);
+        IngredientIndex index = new IngredientIndex();
+        List<int[]> recipes = new ArrayList<>();
+        recipes.add(new int[0]);
+        for (int recipeId = 1; recipeId <= 3000; recipeId++) {
+            int[] ingredients = random.ints(1 + random.nextInt(12), 1, 400).distinct().toArray();
+            recipes.add(ingredients);
+            index.addRecipe(recipeId, ingredients);
+        }
+        int[] pantry = random.ints(60, 1, 400).distinct().toArray();
+        TreeSet<Integer> inPantry = new TreeSet<>();
+        for (int id : pantry) {
+            inPantry.add(id);
+        }
+
+        List<int[]> expected = new ArrayList<>();
+        for (int recipeId = 1; recipeId < recipes.size(); recipeId++) {
+            int matched = 0;
+            for (int id : recipes.get(recipeId)) {
+                if (inPantry.contains(id)) {
+                    matched++;
+                }
+            }
+            if (matched > 0) {
+                expected.add(new int[] {recipeId, matched, recipes.get(recipeId).length});
+            }
+        }
+        // Best ratio first, then more matched, then lower RecipeID
+        expected.sort(Comparator.<int[]>comparingDouble(m -> -(double) m[1] / m[2])
+                .thenComparingInt(m -> -m[1]).thenComparingInt(m -> m[0]));
+
+        List<IngredientIndex.Match> matches = index.topMatches(pantry, 25);
+        assertEquals(25, matches.size());
+        for (int i = 0; i < matches.size(); i++) {
+            assertEquals(expected.get(i)[0], matches.get(i).recipeId);
+            assertEquals(expected.get(i)[1], matches.get(i).matched);
+        }
+    }
+}
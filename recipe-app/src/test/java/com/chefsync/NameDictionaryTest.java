@@ -0,0 +1,101 @@
+package com.chefsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class NameDictionaryTest {
+
+    private static final String INSERT_TAG = "INSERT OR IGNORE INTO Tags (Name, Description) VALUES (?, ?)";
+
+    @TempDir
+    Path dir;
+
+    private ConnectionManager db;
+    private NameDictionary tags;
+
+    @BeforeEach
+    void open() throws SQLException {
+        String path = dir.resolve("names.db").toString();
+        DBInit.initializeDatabase(path);
+        db = new ConnectionManager(new ConnectionManager.Config().databasePath(path).readerPoolSize(1));
+        try (ConnectionManager.Lease lease = db.reader()) {
+            tags = NameDictionary.load(lease.connection(), "Tags", "TagID");
+        }
+    }
+
+    @AfterEach
+    void close() {
+        db.close();
+    }
+
+    @Test
+    void loadsEveryRow() {
+        // The sample tags DBInit inserts
+        assertEquals(4, tags.size());
+        int id = tags.idOf("Vegetarian");
+        assertTrue(id > 0);
+        assertEquals("Vegetarian", tags.nameOf(id));
+        assertEquals(-1, tags.idOf("vegetarian"));
+        assertNull(tags.nameOf(12345));
+    }
+
+    @Test
+    void createdRowsArePendingUntilPublished() throws SQLException {
+        int id;
+        try (ConnectionManager.Lease writer = db.writer()) {
+            id = tags.resolve(writer, "Spicy", INSERT_TAG, "Generated tag");
+            assertEquals(id, tags.resolve(writer, "Spicy", INSERT_TAG, "Generated tag"));
+            assertEquals(-1, tags.idOf("Spicy"));
+            writer.connection().commit();
+        }
+        tags.publish();
+        assertEquals(id, tags.idOf("Spicy"));
+        assertEquals("Spicy", tags.nameOf(id));
+    }
+
+    @Test
+    void discardedRowsAreForgotten() throws SQLException {
+        try (ConnectionManager.Lease writer = db.writer()) {
+            tags.resolve(writer, "Rolled Back", INSERT_TAG, "Generated tag");
+            writer.connection().rollback();
+        }
+        tags.discardPending();
+        tags.publish();
+        assertEquals(-1, tags.idOf("Rolled Back"));
+        assertEquals(-1, tags.find(db, "Rolled Back"));
+    }
+
+    @Test
+    void findsRowsAddedElsewhere() throws SQLException {
+        // Rows inserted behind the dictionary's back, e.g. by another process
+        try (ConnectionManager.Lease writer = db.writer();
+             PreparedStatement insert = writer.connection().prepareStatement(INSERT_TAG)) {
+            for (int i = 0; i < 500; i++) {
+                insert.setString(1, "Tag " + i);
+                insert.setString(2, "Generated tag");
+                insert.executeUpdate();
+            }
+            writer.connection().commit();
+        }
+        assertEquals(-1, tags.idOf("Tag 7"));
+
+        for (int i = 0; i < 500; i++) {
+            int id = tags.find(db, "Tag " + i);
+            assertTrue(id > 0);
+            assertEquals(id, tags.idOf("Tag " + i));
+            assertEquals("Tag " + i, tags.nameOf(id));
+        }
+        assertEquals(504, tags.size());
+        assertEquals(-1, tags.find(db, "No Such Tag"));
+    }
+}
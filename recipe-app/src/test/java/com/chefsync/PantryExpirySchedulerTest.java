@@ -0,0 +1,100 @@
+package com.chefsync;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class PantryExpirySchedulerTest {
+
+    private static final int WARNING = PantryExpiryScheduler.WARNING_DAYS;
+
+    @Test
+    void firesWarningDaysBeforeExpiry() {
+        PantryExpiryScheduler scheduler = new PantryExpiryScheduler(100);
+        scheduler.schedule(1, 110);
+        scheduler.schedule(2, 101);
+        scheduler.schedule(3, 100);
+        assertEquals(2, scheduler.size());
+
+        // Already inside its warning period, so due tomorrow
+        assertArrayEquals(new int[] {2}, scheduler.advanceTo(101));
+        assertArrayEquals(new int[0], scheduler.advanceTo(110 - WARNING - 1));
+        assertArrayEquals(new int[] {1}, scheduler.advanceTo(110 - WARNING));
+        assertEquals(0, scheduler.size());
+        assertEquals(110 - WARNING, scheduler.getToday());
+    }
+
+    @Test
+    void rescheduleAndCancel() {
+        PantryExpiryScheduler scheduler = new PantryExpiryScheduler(0);
+        scheduler.schedule(1, 20);
+        scheduler.schedule(1, 50);
+        scheduler.schedule(2, 20);
+        scheduler.cancel(2);
+        scheduler.cancel(99);
+        assertEquals(1, scheduler.size());
+        assertArrayEquals(new int[0], scheduler.advanceTo(40));
+        assertArrayEquals(new int[] {1}, scheduler.advanceTo(50));
+    }
+
+    @Test
+    void distantExpiriesCascadeDownTheWheels() {
+        PantryExpiryScheduler scheduler = new PantryExpiryScheduler(1000);
+        // Second wheel, the overflow list, and far beyond both
+        long[] expiries = {1000 + 200, 1000 + 5000, 1000 + 40_000};
+        for (int i = 0; i < expiries.length; i++) {
+            scheduler.schedule(i + 1, expiries[i]);
+        }
+        for (int i = 0; i < expiries.length; i++) {
+            assertArrayEquals(new int[0], scheduler.advanceTo(expiries[i] - WARNING - 1));
+            assertArrayEquals(new int[] {i + 1}, scheduler.advanceTo(expiries[i] - WARNING));
+        }
+    }
+
+    @Test
+    void agreesWithBruteForce() {
+        Random random = new Random(3);
+        for (int trial = 0; trial < 50; trial++) {
+            long today = 20_000 + random.nextInt(10_000);
+            PantryExpiryScheduler scheduler = new PantryExpiryScheduler(today);
+            Map<Integer, Long> due = new HashMap<>();
+            for (int step = 0; step < 400; step++) {
+                int op = random.nextInt(10);
+                int id = 1 + random.nextInt(500);
+                if (op < 5) {
+                    long expiry = today + random.nextInt(random.nextBoolean() ? 70 : 9000) - 5;
+                    scheduler.schedule(id, expiry);
+                    due.remove(id);
+                    if (expiry > today) {
+                        due.put(id, Math.max(expiry - WARNING, today + 1));
+                    }
+                } else if (op < 6) {
+                    scheduler.cancel(id);
+                    due.remove(id);
+                } else {
+                    long to = today + (random.nextInt(4) == 0 ? random.nextInt(5000) : random.nextInt(10));
+                    List<Integer> expected = new ArrayList<>();
+                    for (Map.Entry<Integer, Long> entry : due.entrySet()) {
+                        if (entry.getValue() <= to) {
+                            expected.add(entry.getKey());
+                        }
+                    }
+                    due.keySet().removeAll(expected);
+                    int[] fired = scheduler.advanceTo(to);
+                    Arrays.sort(fired);
+                    assertArrayEquals(expected.stream().mapToInt(Integer::intValue).sorted().toArray(), fired);
+                    assertEquals(due.size(), scheduler.size());
+                    today = to;
+                }
+            }
+        }
+    }
+}
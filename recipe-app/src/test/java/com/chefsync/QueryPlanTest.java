@@ -0,0 +1,189 @@
+package com.chefsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Explains the page queries RecipeManager actually builds, on a small generated database
+ * with planner statistics, and fails on a full table scan or an unplanned sort.
+ */
+class QueryPlanTest {
+
+    @TempDir
+    static Path dir;
+
+    private static ConnectionManager db;
+    private static RecipeManager manager;
+    private static String rareTag;
+    private static String commonTag;
+
+    @BeforeAll
+    static void createDatabase() throws SQLException {
+        String path = dir.resolve("plans.db").toString();
+        DBInit.initializeDatabase(path);
+        try (Connection conn = DBInit.connect(path)) {
+            new DataGenerator(new DataGenerator.Config().seed(7).users(300).recipes(5000).ingredients(500)
+                    .tags(40).pantryItems(3000).mealPlans(200).feedback(20000)).generate(conn);
+            conn.setAutoCommit(false);
+            ConnectionManager.optimize(conn);
+            conn.commit();
+
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT t.Name FROM RecipeTags rt JOIN Tags t ON t.TagID = rt.TagID " +
+                         "GROUP BY rt.TagID ORDER BY COUNT(*), rt.TagID")) {
+                assertTrue(rs.next());
+                rareTag = rs.getString(1);
+                String name = rareTag;
+                while (rs.next()) {
+                    name = rs.getString(1);
+                }
+                commonTag = name;
+            }
+        }
+        db = new ConnectionManager(new ConnectionManager.Config().databasePath(path).readerPoolSize(1));
+        manager = new RecipeManager(db);
+    }
+
+    @AfterAll
+    static void close() {
+        if (db != null) {
+            db.close();
+        }
+    }
+
+    @Test
+    void verifierQueriesAreIndexed() throws SQLException {
+        try (ConnectionManager.Lease lease = db.reader()) {
+            assertTrue(QueryPlanVerifier.verify(lease.connection()));
+        }
+    }
+
+    @Test
+    void publicListing() throws SQLException {
+        assertIndexed(manager.recipesPager("public"), false);
+    }
+
+    @Test
+    void allRecipesListing() throws SQLException {
+        assertIndexed(manager.recipesPager("all"), false);
+    }
+
+    @Test
+    void searchByCuisineAndDifficulty() throws SQLException {
+        Map<String, Object> criteria = new HashMap<>();
+        criteria.put("Cuisine", "Italian");
+        criteria.put("DifficultyLevel", "Easy");
+        assertIndexed(manager.searchPager(criteria, Collections.emptyList(), 20), false);
+    }
+
+    @Test
+    void searchByMaxCookingTime() throws SQLException {
+        Map<String, Object> criteria = new HashMap<>();
+        criteria.put("MaxCookTime", 5);
+        KeysetPager pager = manager.searchPager(criteria, Collections.emptyList(), 20);
+        assertIndexed(pager, false);
+        // A range on CookMinutes, not a walk of every public title checking each row
+        assertUsesIndex(pager, "SEARCH r USING INDEX idx_recipes_public_cook_minutes (IsPublic=? AND CookMinutes");
+
+        List<Object[]> quickest = pager.first();
+        assertFalse(quickest.isEmpty());
+        for (Object[] row : quickest) {
+            Integer minutes = DurationParser.parseMinutes((String) row[4]);
+            assertTrue(minutes != null && minutes <= 5, String.valueOf(row[4]));
+        }
+    }
+
+    @Test
+    void searchByRating() throws SQLException {
+        Map<String, Object> criteria = new HashMap<>();
+        criteria.put("SortBy", "rating");
+        assertIndexed(manager.searchPager(criteria, Collections.emptyList(), 20), false);
+
+        criteria.put("Cuisine", "Italian");
+        assertIndexed(manager.searchPager(criteria, Collections.emptyList(), 20), false);
+    }
+
+    @Test
+    void searchByTagLooksUpFewMatchesById() throws SQLException {
+        KeysetPager pager = manager.searchPager(new HashMap<>(), Arrays.asList(rareTag), 1000);
+        assertTrue(pager.pageSql(false, true).contains("json_each"));
+        // The matches are few enough to sort; they must be read by RecipeID, not found by a scan
+        assertIndexed(pager, true);
+        try (ConnectionManager.Lease lease = db.reader()) {
+            List<String> plan = QueryPlanVerifier.explain(lease.connection(), pager.pageSql(false, true));
+            assertTrue(plan.stream().anyMatch(step -> step.contains("INTEGER PRIMARY KEY")), plan.toString());
+        }
+    }
+
+    @Test
+    void searchByTagFiltersManyMatchesWhileScanning() throws SQLException {
+        KeysetPager pager = manager.searchPager(new HashMap<>(), Arrays.asList(commonTag), 1);
+        assertFalse(pager.pageSql(false, true).contains("json_each"));
+        assertIndexed(pager, false);
+    }
+
+    @Test
+    void keywordSearchSortsOnlyByRank() throws SQLException {
+        Map<String, Object> criteria = new HashMap<>();
+        criteria.put("Keywords", "chicken");
+        criteria.put("Cuisine", "Italian");
+        assertIndexed(manager.searchPager(criteria, Collections.emptyList(), 20), true);
+    }
+
+    @Test
+    void pagesReadInOrderWithoutRepeats() throws SQLException {
+        KeysetPager pager = manager.searchPager(new HashMap<>(), Collections.emptyList(), 50);
+        List<Object[]> first = pager.first();
+        List<Object[]> second = pager.next();
+        assertEquals(50, first.size());
+        assertEquals(2, pager.getPageNumber());
+        assertTrue(compareTitles(first.get(first.size() - 1), second.get(0)) <= 0);
+        assertFalse(first.get(first.size() - 1)[0].equals(second.get(0)[0]));
+
+        List<Object[]> back = pager.previous();
+        assertEquals(1, pager.getPageNumber());
+        assertEquals(first.get(0)[0], back.get(0)[0]);
+    }
+
+    private static void assertUsesIndex(KeysetPager pager, String search) throws SQLException {
+        try (ConnectionManager.Lease lease = db.reader()) {
+            for (String sql : new String[] {pager.pageSql(false, true), pager.pageSql(true, true), pager.pageSql(true, false)}) {
+                List<String> plan = QueryPlanVerifier.explain(lease.connection(), sql);
+                assertTrue(plan.stream().anyMatch(step -> step.contains(search)), sql + "\n" + plan);
+            }
+        }
+    }
+
+    private static int compareTitles(Object[] a, Object[] b) {
+        return ((String) a[1]).compareTo((String) b[1]);
+    }
+
+    /**
+     * Explain the first page, the next page and the previous page of a pager.
+     */
+    private static void assertIndexed(KeysetPager pager, boolean sortExpected) throws SQLException {
+        try (ConnectionManager.Lease lease = db.reader()) {
+            for (String sql : new String[] {pager.pageSql(false, true), pager.pageSql(true, true), pager.pageSql(true, false)}) {
+                List<String> plan = QueryPlanVerifier.explain(lease.connection(), sql);
+                assertEquals(Collections.emptyList(), QueryPlanVerifier.problems(plan, sortExpected), sql + "\n" + plan);
+            }
+        }
+    }
+}
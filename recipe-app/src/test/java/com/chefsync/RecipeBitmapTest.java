@@ -0,0 +1,87 @@
+package com.chefsync;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+class RecipeBitmapTest {
+
+    @Test
+    void addAndContains() {
+        RecipeBitmap bitmap = RecipeBitmap.of(5, 3, 70000, 3);
+        assertEquals(3, bitmap.cardinality());
+        assertTrue(bitmap.contains(3));
+        assertTrue(bitmap.contains(70000));
+        assertFalse(bitmap.contains(4));
+        assertFalse(bitmap.contains(-1));
+        assertArrayEquals(new int[] {3, 5, 70000}, bitmap.toArray());
+        assertTrue(new RecipeBitmap().isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(-1));
+    }
+
+    @Test
+    void setOperationsMatchASortedSet() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 20; trial++) {
+            // Sparse chunks stay arrays; dense ones (over 4096 IDs) become bitsets
+            TreeSet<Integer> a = randomIds(random, trial % 2 == 0 ? 3000 : 20000);
+            TreeSet<Integer> b = randomIds(random, trial % 3 == 0 ? 3000 : 20000);
+            RecipeBitmap x = bitmapOf(a);
+            RecipeBitmap y = bitmapOf(b);
+
+            TreeSet<Integer> and = new TreeSet<>(a);
+            and.retainAll(b);
+            TreeSet<Integer> or = new TreeSet<>(a);
+            or.addAll(b);
+            TreeSet<Integer> andNot = new TreeSet<>(a);
+            andNot.removeAll(b);
+
+            assertArrayEquals(toArray(a), x.toArray());
+            assertArrayEquals(toArray(and), x.and(y).toArray());
+            assertArrayEquals(toArray(or), x.or(y).toArray());
+            assertArrayEquals(toArray(andNot), x.andNot(y).toArray());
+            assertEquals(or.size(), x.or(y).cardinality());
+            // The inputs are left alone
+            assertArrayEquals(toArray(a), x.toArray());
+            assertArrayEquals(toArray(b), y.toArray());
+        }
+    }
+
+    @Test
+    void copyIsIndependent() {
+        RecipeBitmap bitmap = RecipeBitmap.of(1, 2);
+        RecipeBitmap copy = bitmap.copy();
+        copy.add(3);
+        assertFalse(bitmap.contains(3));
+        assertTrue(copy.contains(3));
+    }
+
+    private static TreeSet<Integer> randomIds(Random random, int count) {
+        TreeSet<Integer> ids = new TreeSet<>();
+        for (int i = 0; i < count; i++) {
+            // Mostly the first two chunks, with a few far out
+            ids.add(random.nextInt(10) == 0 ? random.nextInt(Integer.MAX_VALUE) : random.nextInt(3 << 15));
+        }
+        return ids;
+    }
+
+    private static RecipeBitmap bitmapOf(TreeSet<Integer> ids) {
+        RecipeBitmap bitmap = new RecipeBitmap();
+        // Out of order, to exercise inserts as well as appends
+        for (int id : ids.descendingSet()) {
+            bitmap.add(id);
+        }
+        return bitmap;
+    }
+
+    private static int[] toArray(TreeSet<Integer> ids) {
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
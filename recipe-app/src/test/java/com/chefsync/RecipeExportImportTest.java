@@ -0,0 +1,95 @@
+package com.chefsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RecipeExportImportTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void csvListsKeepSeparatorsInNames() throws IOException, SQLException {
+        String source = dir.resolve("source.db").toString();
+        DBInit.initializeDatabase(source);
+        try (Connection conn = DBInit.connect(source);
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO Recipes (RecipeID, UserID, Title, Instructions, IsPublic) " +
+                    "SELECT 1000, UserID, 'Salted Caramel', 'Melt, then stir.', 1 FROM Users LIMIT 1");
+            stmt.executeUpdate("INSERT INTO Ingredients (IngredientID, Name, Unit) VALUES " +
+                    "(1000, 'Salt: Flaky', 'g'), (1001, 'Cream | Double', 'ml'), (1002, 'C:\\Sugar', 'tbsp')");
+            stmt.executeUpdate("INSERT INTO RecipeIngredients (RecipeID, IngredientID, Quantity, Unit) VALUES " +
+                    "(1000, 1000, 2, 'g'), (1000, 1001, 250, 'ml|fl oz'), (1000, 1002, 1.5, 'tbsp:heaped')");
+            stmt.executeUpdate("INSERT INTO Tags (TagID, Name) VALUES (1000, 'Sweet|Salty')");
+            stmt.executeUpdate("INSERT INTO RecipeTags (RecipeID, TagID) VALUES (1000, 1000)");
+        }
+        String csv = dir.resolve("recipes.csv").toString();
+        try (ConnectionManager db = open(source)) {
+            new RecipeExporter(db).exportFile(csv, RecipeExporter.Format.CSV);
+        }
+
+        String target = dir.resolve("target.db").toString();
+        DBInit.initializeDatabase(target);
+        try (ConnectionManager db = open(target)) {
+            int userId;
+            try (ConnectionManager.Lease lease = db.reader();
+                 Statement stmt = lease.connection().createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT MIN(UserID) FROM Users")) {
+                rs.next();
+                userId = rs.getInt(1);
+            }
+            new RecipeImporter(db).importFile(csv, RecipeImporter.Format.CSV, userId);
+        }
+
+        try (Connection conn = DBInit.connect(target)) {
+            assertEquals(Arrays.asList("C:\\Sugar 1.5 tbsp:heaped", "Cream | Double 250.0 ml|fl oz", "Salt: Flaky 2.0 g"),
+                    rows(conn, "SELECT i.Name || ' ' || ri.Quantity || ' ' || ri.Unit FROM RecipeIngredients ri " +
+                            "JOIN Ingredients i ON i.IngredientID = ri.IngredientID JOIN Recipes r ON r.RecipeID = ri.RecipeID " +
+                            "WHERE r.Title = 'Salted Caramel' ORDER BY 1"));
+            assertEquals(Arrays.asList("Sweet|Salty"),
+                    rows(conn, "SELECT t.Name FROM RecipeTags rt JOIN Tags t ON t.TagID = rt.TagID " +
+                            "JOIN Recipes r ON r.RecipeID = rt.RecipeID WHERE r.Title = 'Salted Caramel'"));
+        }
+    }
+
+    @Test
+    void listSplittingHonoursEscapes() {
+        StringBuilder sb = new StringBuilder();
+        RecipeImporter.appendListItem(sb, "a:b|c\\d");
+        assertEquals("a\\:b\\|c\\\\d", sb.toString());
+        List<String> parts = RecipeImporter.splitList(sb + "|plain", '|', 0);
+        assertEquals(2, parts.size());
+        assertEquals("a:b|c\\d", RecipeImporter.unescapeList(parts.get(0)));
+        assertEquals(Arrays.asList("x\\:y", "2", "cup:s"), RecipeImporter.splitList("x\\:y:2:cup:s", ':', 3));
+        // Files written before escaping keep a lone backslash as it was
+        assertEquals("C:\\Temp", RecipeImporter.unescapeList("C:\\Temp"));
+    }
+
+    private static ConnectionManager open(String path) throws SQLException {
+        return new ConnectionManager(new ConnectionManager.Config().databasePath(path).readerPoolSize(1));
+    }
+
+    private static List<String> rows(Connection conn, String sql) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(rs.getString(1));
+            }
+        }
+        return rows;
+    }
+}
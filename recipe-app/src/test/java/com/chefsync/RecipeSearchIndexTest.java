@@ -0,0 +1,95 @@
+package com.chefsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RecipeSearchIndexTest {
+
+    @TempDir
+    Path dir;
+
+    private Connection conn;
+
+    @BeforeEach
+    void createRecipe() throws SQLException {
+        String path = dir.resolve("search.db").toString();
+        DBInit.initializeDatabase(path);
+        conn = DBInit.connect(path);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO Recipes (RecipeID, UserID, Title, Instructions, IsPublic) " +
+                    "SELECT 1000, UserID, 'Quince Tart', 'Poach the fruit.', 1 FROM Users LIMIT 1");
+            stmt.executeUpdate("INSERT INTO Ingredients (IngredientID, Name, Unit) VALUES (1000, 'Medlar', 'g')");
+            stmt.executeUpdate("INSERT INTO RecipeIngredients (RecipeID, IngredientID, Quantity, Unit) VALUES (1000, 1000, 2, 'g')");
+            stmt.executeUpdate("INSERT INTO Tags (TagID, Name) VALUES (1000, 'Autumnal')");
+            stmt.executeUpdate("INSERT INTO RecipeTags (RecipeID, TagID) VALUES (1000, 1000)");
+        }
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    void storesNoCopyOfTheText() throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT Title, Instructions FROM RecipeSearch WHERE rowid = 1000")) {
+            assertTrue(rs.next());
+            assertNull(rs.getString(1));
+            assertNull(rs.getString(2));
+        }
+        assertEquals(1000, match("quince poach medlar autumnal"));
+    }
+
+    @Test
+    void followsChangesToTheRecipeAndItsNames() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE Recipes SET Title = 'Pear Tart' WHERE RecipeID = 1000");
+            assertEquals(0, match("quince"));
+            assertEquals(1000, match("pear medlar autumnal"));
+
+            stmt.executeUpdate("UPDATE Ingredients SET Name = 'Sloe' WHERE IngredientID = 1000");
+            stmt.executeUpdate("UPDATE Tags SET Name = 'Wintry' WHERE TagID = 1000");
+            assertEquals(0, match("medlar"));
+            assertEquals(0, match("autumnal"));
+            assertEquals(1000, match("pear sloe wintry"));
+
+            stmt.executeUpdate("DELETE FROM RecipeTags WHERE RecipeID = 1000");
+            assertEquals(0, match("wintry"));
+            assertEquals(1000, match("pear sloe"));
+
+            stmt.executeUpdate("DELETE FROM RecipeIngredients WHERE RecipeID = 1000");
+            stmt.executeUpdate("DELETE FROM Recipes WHERE RecipeID = 1000");
+            assertEquals(0, match("pear"));
+        }
+    }
+
+    /**
+     * The one recipe matching every word, or 0 if none does.
+     */
+    private int match(String words) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT rowid FROM RecipeSearch WHERE RecipeSearch MATCH ? ORDER BY rank")) {
+            pstmt.setString(1, RecipeSearchIndex.toMatchQuery(words));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                int found = rs.next() ? rs.getInt(1) : 0;
+                assertFalse(rs.next(), "more than one match for " + words);
+                return found;
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.chefsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class SimilarRecipeIndexTest {
+
+    @Test
+    void identicalRecipesComeFirst() {
+        SimilarRecipeIndex index = new SimilarRecipeIndex();
+        index.addRecipe(1, new int[] {1, 2, 3, 4, 5, 6, 7, 8});
+        index.addRecipe(2, new int[] {8, 7, 6, 5, 4, 3, 2, 1});
+        index.addRecipe(3, new int[] {1, 2, 3, 4, 5, 6, 7, 9});
+        index.addRecipe(4, new int[] {100, 101, 102});
+
+        List<SimilarRecipeIndex.Match> matches = index.similarTo(1, 10);
+        assertEquals(2, matches.get(0).recipeId);
+        assertEquals(1.0, matches.get(0).similarity);
+        assertTrue(matches.stream().anyMatch(m -> m.recipeId == 3));
+        assertFalse(matches.stream().anyMatch(m -> m.recipeId == 1 || m.recipeId == 4));
+        for (int i = 1; i < matches.size(); i++) {
+            assertTrue(matches.get(i - 1).similarity >= matches.get(i).similarity);
+        }
+        assertEquals(1, index.similarTo(1, 1).size());
+    }
+
+    @Test
+    void estimatesJaccardSimilarity() {
+        SimilarRecipeIndex index = new SimilarRecipeIndex();
+        // 12 shared of 16 ingredients: Jaccard 0.75
+        index.addRecipe(1, IntStream.rangeClosed(1, 14).toArray());
+        index.addRecipe(2, IntStream.rangeClosed(3, 16).toArray());
+        List<SimilarRecipeIndex.Match> matches = index.similarTo(1, 5);
+        assertEquals(1, matches.size());
+        assertEquals(0.75, matches.get(0).similarity, 0.2);
+    }
+
+    @Test
+    void readdingARecipeReplacesItsIngredients() {
+        SimilarRecipeIndex index = new SimilarRecipeIndex();
+        index.addRecipe(1, new int[] {1, 2, 3, 4});
+        index.addRecipe(2, new int[] {1, 2, 3, 4});
+        index.addRecipe(2, new int[] {50, 51, 52, 53});
+        assertEquals(2, index.getRecipeCount());
+        assertTrue(index.similarTo(1, 5).isEmpty());
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        SimilarRecipeIndex index = new SimilarRecipeIndex();
+        for (int recipeId = 1; recipeId <= 5000; recipeId++) {
+            // Pairs of recipes with the same ingredients
+            int base = (recipeId + 1) / 2 * 10;
+            index.addRecipe(recipeId, new int[] {base, base + 1, base + 2, base + 3});
+        }
+        assertEquals(5000, index.getRecipeCount());
+        List<SimilarRecipeIndex.Match> matches = index.similarTo(4999, 3);
+        assertEquals(5000, matches.get(0).recipeId);
+        assertEquals(1.0, matches.get(0).similarity);
+        assertTrue(index.similarTo(9999, 3).isEmpty());
+        assertTrue(index.getMemoryBytes() > 0);
+    }
+}
@@ -0,0 +1,59 @@
+package com.chefsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class UnitConverterTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    void spellingsOfOneUnitShareIt() {
+        UnitConverter units = new UnitConverter();
+        UnitConverter.Unit tablespoon = units.unit("tbsp");
+        assertSame(tablespoon, units.unit("Tbsp."));
+        assertSame(tablespoon, units.unit("tablespoons"));
+        assertSame(units.unit("cup"), units.unit(" Cups "));
+        assertSame(units.unit(UnitConverter.NONE), units.unit((String) null));
+        assertEquals(UnitConverter.Dimension.VOLUME, tablespoon.dimension);
+    }
+
+    @Test
+    void convertsWithinADimension() {
+        UnitConverter units = new UnitConverter();
+        assertEquals(1000, units.convert(1, 1, "kg", "g"), EPSILON);
+        assertEquals(3, units.convert(1, 1, "tablespoon", "tsp"), EPSILON);
+        assertEquals(16, units.convert(1, 1, "lb", "ounces"), EPSILON);
+        assertEquals(24, units.convert(1, 2, "dozen", "pieces"), EPSILON);
+    }
+
+    @Test
+    void densityLetsVolumeMeetMass() {
+        UnitConverter units = new UnitConverter();
+        assertTrue(Double.isNaN(units.convert(7, 1, "cup", "g")));
+
+        units.setDensity(7, 0.5);
+        assertEquals(236.5882365 * 0.5, units.convert(7, 1, "cup", "g"), EPSILON);
+        assertSame(units.unit("g"), units.baseUnit(7, units.unit("ml")));
+        // Other ingredients keep millilitres
+        assertSame(units.unit("ml"), units.baseUnit(8, units.unit("cup")));
+
+        units.setDensity(7, 0);
+        assertTrue(Double.isNaN(units.convert(7, 1, "cup", "g")));
+    }
+
+    @Test
+    void unknownUnitsOnlyMatchThemselves() {
+        UnitConverter units = new UnitConverter();
+        UnitConverter.Unit cloves = units.unit("cloves");
+        assertEquals(UnitConverter.Dimension.OTHER, cloves.dimension);
+        assertEquals("cloves", cloves.name);
+        assertNotSame(cloves, units.unit("bunch"));
+        assertEquals(3, units.convert(1, 3, "cloves", "cloves"), EPSILON);
+        assertTrue(Double.isNaN(units.convert(1, 3, "cloves", "g")));
+    }
+}